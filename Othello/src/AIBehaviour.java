@@ -0,0 +1,46 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * AIBehaviour interface:
+ * Defines an AI that can choose a move for a player from a board position.
+ * The game calls these methods from a background thread so the window keeps responding
+ * while the AI thinks. Only stop() may be called from another thread while the AI is busy.
+ *
+ * A stop() stays in effect until clearStop() is called, so a stop() that lands just before
+ * chooseMove() or ponder() starts still stops it. Call clearStop() on the thread that will run
+ * the AI, before checking that the work is still wanted, and then make the call.
+ */
+public interface AIBehaviour {
+    /**
+     * Chooses the move to play for the specified player.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for, 1 for black or 2 for white.
+     * @return The cell index (x + y*8) of the move to play, or -1 if the player has no valid moves.
+     */
+    int chooseMove(BitBoard board, int playerID);
+
+    /**
+     * Thinks about the game while the opponent is choosing their move, so that the next call to
+     * chooseMove() can reply sooner. Keeps going until stop() is called or there is nothing left
+     * to think about. Does nothing by default.
+     *
+     * @param board The current board with the opponent to move. Must not be modified.
+     * @param playerID The player this AI chooses moves for, 1 for black or 2 for white.
+     */
+    default void ponder(BitBoard board, int playerID) {}
+
+    /**
+     * Asks a chooseMove() or ponder() running on another thread to return as soon as it can,
+     * along with any started before clearStop() is called.
+     * A stopped chooseMove() still returns a valid move. Does nothing by default.
+     */
+    default void stop() {}
+
+    /**
+     * Forgets any earlier stop() so the next chooseMove() or ponder() runs in full.
+     * Does nothing by default.
+     */
+    default void clearStop() {}
+}
@@ -0,0 +1,221 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * BackgroundAnalyser class:
+ * Keeps searching the latest position on its own thread with SearchAI.analyse(), and hands out a
+ * Result with the score of every valid move each time the search gets one move deeper. Giving it a
+ * new position stops the current search and starts on the new one straight away. The search keeps
+ * its transposition table between positions, so when the game follows the line it expected, the
+ * early depths of the new position are answered from the table and the scores come back quickly.
+ *
+ * The thread runs at low priority so the window and the AI that plays get the processor first.
+ * Results are passed to the listener on the analysis thread, and are never changed afterwards,
+ * so they can be handed to any other thread.
+ */
+public class BackgroundAnalyser {
+    /**
+     * Receives the results of the analysis.
+     */
+    public interface ResultListener {
+        /**
+         * Called on the analysis thread each time a position has been searched one move deeper.
+         *
+         * @param result The scores found so far.
+         */
+        void analysed(Result result);
+    }
+
+    /**
+     * Result class:
+     * The scores of the valid moves in one position after searching to a depth.
+     */
+    public static final class Result {
+        /**
+         * The position that was analysed.
+         */
+        private final PositionSnapshot position;
+        /**
+         * The depth that was searched to.
+         */
+        private final int depth;
+        /**
+         * Cell index of the best move.
+         */
+        private final int bestMove;
+        /**
+         * Score of each valid move indexed by cell, from the point of view of the player to move.
+         */
+        private final int[] scores;
+        /**
+         * Score of each valid move written for showing on its cell, indexed by cell.
+         */
+        private final String[] labels;
+
+        /**
+         * Creates a result and writes the labels for its scores.
+         *
+         * @param position The position that was analysed.
+         * @param depth The depth that was searched to.
+         * @param bestMove Cell index of the best move.
+         * @param scores Score of each valid move indexed by cell, kept without copying.
+         */
+        private Result(PositionSnapshot position, int depth, int bestMove, int[] scores) {
+            this.position = position;
+            this.depth = depth;
+            this.bestMove = bestMove;
+            this.scores = scores;
+            labels = new String[BitBoard.CELLS];
+            // Searching as deep as there are empty cells reaches the end of every line, so the scores are exact.
+            boolean exact = depth >= BitBoard.CELLS - position.getMoveNumber();
+            for(long moves = position.getValidMoves(); moves != 0; moves &= moves - 1) {
+                int move = Long.numberOfTrailingZeros(moves);
+                labels[move] = SearchAI.toLabel(scores[move], exact);
+            }
+        }
+
+        /**
+         * Gets the position that was analysed.
+         *
+         * @return The position.
+         */
+        public PositionSnapshot getPosition() {
+            return position;
+        }
+
+        /**
+         * Gets the depth that was searched to.
+         *
+         * @return The depth in moves.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Gets the best move found.
+         *
+         * @return Cell index of the best move.
+         */
+        public int getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Gets the score of a valid move.
+         *
+         * @param move Cell index of a valid move.
+         * @return The score from the point of view of the player to move, as given by SearchAI.analyse().
+         */
+        public int getScore(int move) {
+            return scores[move];
+        }
+
+        /**
+         * Gets the text to show for a valid move.
+         *
+         * @param move Cell index of a valid move.
+         * @return The score as text from SearchAI.toLabel(), or null if the move is not valid.
+         */
+        public String getLabel(int move) {
+            return labels[move];
+        }
+    }
+
+    /**
+     * The search used for the analysis.
+     */
+    private final SearchAI ai;
+    /**
+     * Receives the results.
+     */
+    private final ResultListener listener;
+    /**
+     * The position to analyse next, or null to wait. Only changed while holding the lock on this object.
+     */
+    private volatile PositionSnapshot position;
+    /**
+     * True once shutdown() has been called.
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * Creates the analyser and starts its thread, which waits for a position.
+     *
+     * @param ai The search to analyse with. It should not be used for anything else.
+     * @param listener Receives the results on the analysis thread.
+     */
+    public BackgroundAnalyser(SearchAI ai, ResultListener listener) {
+        this.ai = ai;
+        this.listener = listener;
+        Thread thread = new Thread(this::run, "Analysis");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Changes the position being analysed. Any search of another position is stopped.
+     * Does nothing if the position is already being analysed.
+     *
+     * @param newPosition The position to analyse, or null to stop until another is given.
+     */
+    public synchronized void setPosition(PositionSnapshot newPosition) {
+        if(newPosition == null ? position == null : newPosition.equals(position)) return;
+        position = newPosition;
+        ai.stop();
+        notifyAll();
+    }
+
+    /**
+     * Stops the analysis and its thread. The analyser cannot be used again.
+     */
+    public void shutdown() {
+        shutdown = true;
+        setPosition(null);
+        synchronized(this) {
+            notifyAll();
+        }
+        ai.shutdown();
+    }
+
+    /**
+     * Analyses each position given until shutdown() is called. A position is searched until the
+     * search reaches the end of the game or the position is changed.
+     */
+    private void run() {
+        PositionSnapshot analysed = null;
+        while(!shutdown) {
+            PositionSnapshot current;
+            synchronized(this) {
+                while(!shutdown && (position == null || position.equals(analysed))) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                current = position;
+                // Cleared under the lock, so a setPosition() from now on stops the search that follows.
+                ai.clearStop();
+            }
+            if(current == null) continue;
+            analysed = current;
+            if(current.isGameOver()) continue;
+            analyse(current);
+            // A search that was stopped part way is started again if the same position comes back.
+            if(position != current) analysed = null;
+        }
+    }
+
+    /**
+     * Searches a position until the search reaches the end of the game or the position is changed,
+     * passing a result to the listener after each depth.
+     *
+     * @param current The position to analyse.
+     */
+    private void analyse(PositionSnapshot current) {
+        ai.analyse(current.toBitBoard(), current.getPlayerID(),
+                (depth, bestMove, scores, nodes) -> listener.analysed(new Result(current, depth, bestMove, scores)));
+    }
+}
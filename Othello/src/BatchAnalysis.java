@@ -0,0 +1,331 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * BatchAnalysis class:
+ * Scores a large set of positions without a window. Positions are read one at a time, analysed
+ * by a pool of worker threads that each have their own copy of the AI, and the results are written
+ * in the same order as the input. Only a fixed number of positions are in progress at once, so any
+ * number of positions can be analysed in a fixed amount of memory. The number of positions per second
+ * and the percentiles of the time taken by each position are printed at the end.
+ *
+ * Positions follow the rules of GameGrid, which uses BitBoard on an 8x8 grid. A player with no valid
+ * moves passes like in GamePanel.setGameState(), so the other player is analysed instead.
+ *
+ * Input is one of:
+ * - FILE or -: one position per line, the 64 cells written as by BitBoard.toString() followed by
+ *   the player to move (B or W). Blank lines and lines starting with # are ignored.
+ * - records:FILE: every position a move was played from in every game of a game record file.
+ * - corpus:COUNT:MOVES:SEED: COUNT random positions with MOVES moves played, from PositionCorpus.
+ *
+ * The AI is described the same way as for Tournament, such as depth:8 or time:100.
+ *
+ * Each result is one tab separated line: the input number, the board, the player who moves, the chosen
+ * move (or "end" when neither player can move), the score from that player's point of view, the search depth,
+ * the nodes searched, and the time taken in microseconds. Scores and depths are only given for the Search AI.
+ * Scores are written by SearchAI.toLabel() in pieces, the same as the analysis in the game window: an estimated
+ * piece difference such as +2.5, W+8 or L-4 for a game that is won or lost by that many pieces, W or L when
+ * the margin is not known, or D for a draw. At the end of the game the score is the final result.
+ *
+ * Results are written to standard output and the summary to standard error.
+ *
+ * Usage: java BatchAnalysis [input] [ai] [threads] [maxInProgress]
+ */
+public class BatchAnalysis {
+    /**
+     * Runs the analysis of each position.
+     */
+    private final ExecutorService pool;
+    /**
+     * Largest number of positions being analysed or waiting to be written at once.
+     */
+    private final int maxInProgress;
+    /**
+     * Copy of the AI for each worker thread.
+     */
+    private final ThreadLocal<AIBehaviour> workerAI;
+    /**
+     * Positions read but not yet written, oldest first.
+     */
+    private final ArrayDeque<Future<Result>> inProgress = new ArrayDeque<>();
+    /**
+     * Time taken to analyse each position.
+     */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    /**
+     * Number of positions read so far.
+     */
+    private long positionsRead;
+
+    /**
+     * Result of analysing a single position, passed from a worker to the writer.
+     */
+    private static class Result {
+        /**
+         * The line to write.
+         */
+        private final String line;
+        /**
+         * Time taken in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * Creates a result.
+         *
+         * @param line The line to write.
+         * @param nanos Time taken in nanoseconds.
+         */
+        private Result(String line, long nanos) {
+            this.line = line;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Analyses the positions described on the command line.
+     *
+     * @param args Optional input, AI, number of threads, and number of positions in progress at once.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String input = args.length > 0 ? args[0] : "-";
+        String aiSpec = args.length > 1 ? args[1] : "depth:6";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int maxInProgress = args.length > 3 ? Integer.parseInt(args[3]) : threads * 4;
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        BatchAnalysis analysis = new BatchAnalysis(Tournament.createPlayer(aiSpec), threads, maxInProgress);
+        long startTime = System.nanoTime();
+        try {
+            analysis.analyse(input, out);
+        } finally {
+            analysis.shutdown();
+            out.flush();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.printf("%s on %d threads: %d positions in %.2f s, %.1f positions/s%n",
+                aiSpec, threads, analysis.latencies.getCount(), seconds, analysis.latencies.getCount() / seconds);
+        System.err.println("Time per position: " + analysis.latencies);
+    }
+
+    /**
+     * Sets up an analysis.
+     *
+     * @param aiFactory Creates a copy of the AI for each worker thread.
+     * @param threads Number of worker threads.
+     * @param maxInProgress Largest number of positions being analysed or waiting to be written at once.
+     */
+    public BatchAnalysis(Supplier<AIBehaviour> aiFactory, int threads, int maxInProgress) {
+        this.maxInProgress = Math.max(1, maxInProgress);
+        pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        workerAI = ThreadLocal.withInitial(aiFactory);
+    }
+
+    /**
+     * Reads every position from the input, analyses them, and writes the results in order.
+     *
+     * @param input File, -, records:FILE, or corpus:COUNT:MOVES:SEED as described for the class.
+     * @param out Where to write the results.
+     * @throws IOException If the input cannot be read or has a line that is not a position.
+     * @throws InterruptedException If interrupted while waiting for a result.
+     */
+    public void analyse(String input, PrintWriter out) throws IOException, InterruptedException {
+        if(input.startsWith("records:")) {
+            readRecords(input.substring("records:".length()), out);
+        } else if(input.startsWith("corpus:")) {
+            String[] parts = input.split(":");
+            PositionCorpus corpus;
+            try {
+                if(parts.length != 4) {
+                    throw new IllegalArgumentException("Expected corpus:COUNT:MOVES:SEED.");
+                }
+                corpus = new PositionCorpus(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                        Long.parseLong(parts[3]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Not a position corpus: " + input + ": " + e.getMessage(), e);
+            }
+            for(int i = 0; i < corpus.size(); i++) {
+                submit(corpus.getBoard(i), corpus.getPlayer(i), out);
+            }
+        } else {
+            try(BufferedReader reader = new BufferedReader(input.equals("-")
+                    ? new InputStreamReader(System.in) : new FileReader(input))) {
+                readPositions(reader, out);
+            }
+        }
+        while(!inProgress.isEmpty()) {
+            writeOldest(out);
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Gets the time taken to analyse each position so far.
+     *
+     * @return The histogram of times.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Reads one position per line.
+     *
+     * @param reader The lines to read.
+     * @param out Where to write the results.
+     * @throws IOException If a line cannot be read or is not a position.
+     * @throws InterruptedException If interrupted while waiting for a result.
+     */
+    private void readPositions(BufferedReader reader, PrintWriter out) throws IOException, InterruptedException {
+        String line;
+        int lineNumber = 0;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            try {
+                if(parts.length < 2) {
+                    throw new IllegalArgumentException("Expected the cells and the player to move.");
+                }
+                submit(BitBoard.fromString(parts[0]), parsePlayer(parts[1]), out);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + " is not a position: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Replays every 8x8 game in a record file and submits the position before each move.
+     * Games on other board sizes and games with an illegal move are skipped.
+     *
+     * @param fileName The game record file.
+     * @param out Where to write the results.
+     * @throws IOException If the file cannot be read.
+     * @throws InterruptedException If interrupted while waiting for a result.
+     */
+    private void readRecords(String fileName, PrintWriter out) throws IOException, InterruptedException {
+        GameRecordReader reader = new GameRecordReader(fileName);
+        BitBoard board = new BitBoard();
+        while(reader.next()) {
+            if(reader.getWidth() != BitBoard.SIZE || reader.getHeight() != BitBoard.SIZE) continue;
+            board.reset();
+            int player = 1;
+            for(int i = 0; i < reader.getMoveCount(); i++) {
+                if(board.getValidMoves(player) == 0) {
+                    player = player == 1 ? 2 : 1;
+                }
+                int move = reader.getMove(i);
+                if((board.getValidMoves(player) & (1L << move)) == 0) break;
+                submit(new BitBoard(board), player, out);
+                board.playMove(move, player);
+                player = player == 1 ? 2 : 1;
+            }
+        }
+    }
+
+    /**
+     * Starts the analysis of a position, first writing the oldest result if too many positions are in progress.
+     *
+     * @param board The position, which must not be changed afterwards.
+     * @param playerID The player to move.
+     * @param out Where to write the results.
+     * @throws InterruptedException If interrupted while waiting for a result.
+     */
+    private void submit(BitBoard board, int playerID, PrintWriter out) throws InterruptedException {
+        while(inProgress.size() >= maxInProgress) {
+            writeOldest(out);
+        }
+        long index = positionsRead++;
+        inProgress.add(pool.submit(() -> analysePosition(index, board, playerID)));
+    }
+
+    /**
+     * Waits for the oldest position in progress and writes its result.
+     *
+     * @param out Where to write the result.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void writeOldest(PrintWriter out) throws InterruptedException {
+        try {
+            Result result = inProgress.poll().get();
+            out.println(result.line);
+            latencies.record(result.nanos);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Analysis failed", e.getCause());
+        }
+    }
+
+    /**
+     * Analyses a single position on a worker thread.
+     *
+     * @param index Number of the position in the input.
+     * @param board The position.
+     * @param playerID The player to move.
+     * @return The result line and time taken.
+     */
+    private Result analysePosition(long index, BitBoard board, int playerID) {
+        long start = System.nanoTime();
+        if(board.getValidMoves(playerID) == 0) {
+            playerID = playerID == 1 ? 2 : 1;
+        }
+        String move;
+        String score = "-";
+        String depth = "-";
+        String nodes = "-";
+        if(board.getValidMoves(playerID) == 0) {
+            move = "end";
+            int otherPlayer = playerID == 1 ? 2 : 1;
+            score = SearchAI.toLabel(SearchAI.finalScore(board.getPieces(playerID), board.getPieces(otherPlayer)), true);
+            depth = "0";
+        } else {
+            AIBehaviour ai = workerAI.get();
+            move = GameRecordConverter.toNotation(ai.chooseMove(board, playerID), BitBoard.SIZE);
+            if(ai instanceof SearchAI) {
+                SearchAI search = (SearchAI) ai;
+                int empties = BitBoard.CELLS - Long.bitCount(board.getBlack() | board.getWhite());
+                score = SearchAI.toLabel(search.getScore(), search.getDepthReached() >= empties);
+                depth = String.valueOf(search.getDepthReached());
+                nodes = String.valueOf(search.getNodes());
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        String line = index + "\t" + board + "\t" + (playerID == 1 ? 'B' : 'W') + "\t" + move + "\t" + score
+                + "\t" + depth + "\t" + nodes + "\t" + nanos / 1000;
+        return new Result(line, nanos);
+    }
+
+    /**
+     * Reads the player to move.
+     *
+     * @param text B or X for black, W or O for white, or the player ID.
+     * @return 1 for black or 2 for white.
+     */
+    private static int parsePlayer(String text) {
+        switch(text.toUpperCase()) {
+            case "B": case "X": case "1": return 1;
+            case "W": case "O": case "2": return 2;
+            default: throw new IllegalArgumentException("Unknown player: " + text);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * BitBoard class:
+ * Stores an 8x8 board as two 64-bit masks, one for the black pieces and one for the white pieces.
+ * Square (x, y) is stored in bit x + y*8. Moves and flips are found with shifts of whole masks
+ * instead of walking cell by cell, using the same rules as GameGrid: pieces only swap along the
+ * four directions up, down, left, and right, and the first four moves must fill the centre four cells.
+ */
+public class BitBoard {
+    /**
+     * Number of cells along each side of the board.
+     */
+    public static final int SIZE = 8;
+    /**
+     * Number of cells on the board.
+     */
+    public static final int CELLS = SIZE * SIZE;
+    /**
+     * Mask of the centre four cells that must be filled during the first four moves.
+     */
+    public static final long CENTRE = (1L << toIndex(3,3)) | (1L << toIndex(4,3))
+                                    | (1L << toIndex(3,4)) | (1L << toIndex(4,4));
+    /**
+     * Mask of every cell in the left most column (x = 0).
+     */
+    public static final long LEFT_COLUMN = 0x0101010101010101L;
+    /**
+     * Mask of every cell in the right most column (x = 7).
+     */
+    public static final long RIGHT_COLUMN = 0x8080808080808080L;
+    /**
+     * Mask of every cell that is not in the left or right column. Used to stop horizontal
+     * lines wrapping around from one row to the next.
+     */
+    private static final long INNER_COLUMNS = ~(LEFT_COLUMN | RIGHT_COLUMN);
+
+    /**
+     * Black pieces, player 1.
+     */
+    private long black;
+    /**
+     * White pieces, player 2.
+     */
+    private long white;
+
+    /**
+     * Creates an empty board ready for the first move.
+     */
+    public BitBoard() {
+        reset();
+    }
+
+    /**
+     * Creates a board with the specified pieces.
+     *
+     * @param black Mask of the black pieces.
+     * @param white Mask of the white pieces.
+     */
+    public BitBoard(long black, long white) {
+        this.black = black;
+        this.white = white;
+    }
+
+    /**
+     * Copy constructor to create a new BitBoard using the pieces in another.
+     *
+     * @param boardToCopy BitBoard to copy pieces from.
+     */
+    public BitBoard(BitBoard boardToCopy) {
+        this(boardToCopy.black, boardToCopy.white);
+    }
+
+    /**
+     * Removes all pieces from the board.
+     */
+    public void reset() {
+        black = 0;
+        white = 0;
+    }
+
+    /**
+     * Replaces all pieces on the board.
+     *
+     * @param black Mask of the black pieces.
+     * @param white Mask of the white pieces.
+     */
+    public void setPieces(long black, long white) {
+        this.black = black;
+        this.white = white;
+    }
+
+    /**
+     * Gets the mask of black pieces.
+     *
+     * @return Mask of the black pieces.
+     */
+    public long getBlack() {
+        return black;
+    }
+
+    /**
+     * Gets the mask of white pieces.
+     *
+     * @return Mask of the white pieces.
+     */
+    public long getWhite() {
+        return white;
+    }
+
+    /**
+     * Gets the mask of pieces belonging to the specified player.
+     *
+     * @param playerID 1 for black, or 2 for white.
+     * @return Mask of the pieces for that player.
+     */
+    public long getPieces(int playerID) {
+        return playerID == 1 ? black : white;
+    }
+
+    /**
+     * Every move places exactly one piece and the board starts empty,
+     * so the number of pieces on the board is the number of moves played.
+     *
+     * @return The number of moves that have been played.
+     */
+    public int getMoveNumber() {
+        return Long.bitCount(black | white);
+    }
+
+    /**
+     * Gets the state of a single cell using the same values as GridCell.
+     *
+     * @param x X coordinate on the grid.
+     * @param y Y coordinate on the grid.
+     * @return 0 for empty, 1 for black, or 2 for white.
+     */
+    public int getCellState(int x, int y) {
+        long bit = 1L << toIndex(x, y);
+        if((black & bit) != 0) return 1;
+        if((white & bit) != 0) return 2;
+        return 0;
+    }
+
+    /**
+     * Finds all valid moves for the specified player.
+     *
+     * @param playerID The player to find moves for.
+     * @return Mask with a bit set for every valid move.
+     */
+    public long getValidMoves(int playerID) {
+        return playerID == 1 ? getMoves(black, white) : getMoves(white, black);
+    }
+
+    /**
+     * Finds the pieces that would swap if the player played at the specified cell.
+     *
+     * @param index Cell index (x + y*8) to check outward from.
+     * @param playerID Current player to test with.
+     * @return Mask of all pieces that would swap. Will be 0 if the move would change nothing.
+     */
+    public long getFlips(int index, int playerID) {
+        return playerID == 1 ? getFlips(black, white, index) : getFlips(white, black, index);
+    }
+
+    /**
+     * Places a piece for the player and swaps all pieces that should be swapped.
+     *
+     * @param index Cell index (x + y*8) to play the move at.
+     * @param playerID The player ID of the player who is placing their piece.
+     * @return Mask of the pieces that were swapped.
+     */
+    public long playMove(int index, int playerID) {
+        long flips = getFlips(index, playerID);
+        long placed = flips | (1L << index);
+        if(playerID == 1) {
+            black |= placed;
+            white &= ~flips;
+        } else {
+            white |= placed;
+            black &= ~flips;
+        }
+        return flips;
+    }
+
+    /**
+     * Takes back a move played with playMove(), restoring the board exactly.
+     *
+     * @param index Cell index (x + y*8) the move was played at.
+     * @param flips Mask of the pieces swapped by the move, as returned by playMove().
+     * @param playerID The player ID of the player who played the move.
+     */
+    public void undoMove(int index, long flips, int playerID) {
+        long placed = flips | (1L << index);
+        if(playerID == 1) {
+            black &= ~placed;
+            white |= flips;
+        } else {
+            white &= ~placed;
+            black |= flips;
+        }
+    }
+
+    /**
+     * Counts the pieces on the board and reports a winner if there is one.
+     * Matches the result values of GameGrid.getWinner().
+     *
+     * @param stillValidMoves If false, ignore empty cells and choose a winner.
+     * @return 0 for no winner, 3 for draw, 1 for player 1, and 2 for player 2.
+     */
+    public int getWinner(boolean stillValidMoves) {
+        int blackCount = Long.bitCount(black);
+        int whiteCount = Long.bitCount(white);
+        if(stillValidMoves && blackCount + whiteCount < CELLS) return 0;
+        else if(blackCount == whiteCount) return 3;
+        else return blackCount > whiteCount ? 1 : 2;
+    }
+
+    /**
+     * Writes the board as 64 characters, one for each cell row by row from the top left:
+     * '.' for empty, 'B' for black, and 'W' for white.
+     *
+     * @return The board as text.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(CELLS);
+        for(int i = 0; i < CELLS; i++) {
+            long bit = 1L << i;
+            text.append((black & bit) != 0 ? 'B' : (white & bit) != 0 ? 'W' : '.');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a board written by toString(). 'X' and 'O' are also accepted for black and white,
+     * and '-' for empty.
+     *
+     * @param text 64 characters describing the cells.
+     * @return The board.
+     */
+    public static BitBoard fromString(String text) {
+        if(text.length() != CELLS) {
+            throw new IllegalArgumentException("A board needs " + CELLS + " cells but got " + text.length());
+        }
+        long black = 0;
+        long white = 0;
+        for(int i = 0; i < CELLS; i++) {
+            switch(Character.toUpperCase(text.charAt(i))) {
+                case 'B': case 'X': black |= 1L << i; break;
+                case 'W': case 'O': white |= 1L << i; break;
+                case '.': case '-': break;
+                default: throw new IllegalArgumentException("Unknown cell '" + text.charAt(i) + "' at " + i);
+            }
+        }
+        return new BitBoard(black, white);
+    }
+
+    /**
+     * Finds all valid moves for the player owning the own mask. While fewer than four
+     * pieces have been played only the empty centre cells are valid.
+     *
+     * @param own Mask of pieces for the player to move.
+     * @param opponent Mask of pieces for the other player.
+     * @return Mask with a bit set for every valid move.
+     */
+    public static long getMoves(long own, long opponent) {
+        long occupied = own | opponent;
+        if(Long.bitCount(occupied) < 4) {
+            return CENTRE & ~occupied;
+        }
+        return getCaptureMoves(own, opponent);
+    }
+
+    /**
+     * Finds every empty cell that would swap at least one piece of the opponent. Each direction
+     * is followed from the player's own pieces across runs of opponent pieces, at most six in a row.
+     *
+     * @param own Mask of pieces for the player to move.
+     * @param opponent Mask of pieces for the other player.
+     * @return Mask with a bit set for every move that swaps pieces.
+     */
+    public static long getCaptureMoves(long own, long opponent) {
+        long empty = ~(own | opponent);
+        long horizontal = opponent & INNER_COLUMNS;
+        long moves;
+
+        // Right
+        long run = (own << 1) & horizontal;
+        run |= (run << 1) & horizontal;
+        run |= (run << 1) & horizontal;
+        run |= (run << 1) & horizontal;
+        run |= (run << 1) & horizontal;
+        run |= (run << 1) & horizontal;
+        moves = run << 1;
+        // Left
+        run = (own >>> 1) & horizontal;
+        run |= (run >>> 1) & horizontal;
+        run |= (run >>> 1) & horizontal;
+        run |= (run >>> 1) & horizontal;
+        run |= (run >>> 1) & horizontal;
+        run |= (run >>> 1) & horizontal;
+        moves |= run >>> 1;
+        // Down
+        run = (own << 8) & opponent;
+        run |= (run << 8) & opponent;
+        run |= (run << 8) & opponent;
+        run |= (run << 8) & opponent;
+        run |= (run << 8) & opponent;
+        run |= (run << 8) & opponent;
+        moves |= run << 8;
+        // Up
+        run = (own >>> 8) & opponent;
+        run |= (run >>> 8) & opponent;
+        run |= (run >>> 8) & opponent;
+        run |= (run >>> 8) & opponent;
+        run |= (run >>> 8) & opponent;
+        run |= (run >>> 8) & opponent;
+        moves |= run >>> 8;
+
+        return moves & empty;
+    }
+
+    /**
+     * Finds the opponent pieces that would swap if the player owning the own mask played at index.
+     * Each of the four directions only swaps if the run of opponent pieces ends at one of the player's pieces.
+     *
+     * @param own Mask of pieces for the player to move.
+     * @param opponent Mask of pieces for the other player.
+     * @param index Cell index (x + y*8) of the move.
+     * @return Mask of all pieces that would swap.
+     */
+    public static long getFlips(long own, long opponent, int index) {
+        long move = 1L << index;
+        long flips = 0;
+
+        // Right
+        long run = 0;
+        long next = (move << 1) & ~LEFT_COLUMN;
+        while((next & opponent) != 0) {
+            run |= next;
+            next = (next << 1) & ~LEFT_COLUMN;
+        }
+        if((next & own) != 0) flips |= run;
+        // Left
+        run = 0;
+        next = (move >>> 1) & ~RIGHT_COLUMN;
+        while((next & opponent) != 0) {
+            run |= next;
+            next = (next >>> 1) & ~RIGHT_COLUMN;
+        }
+        if((next & own) != 0) flips |= run;
+        // Down
+        run = 0;
+        next = move << 8;
+        while((next & opponent) != 0) {
+            run |= next;
+            next <<= 8;
+        }
+        if((next & own) != 0) flips |= run;
+        // Up
+        run = 0;
+        next = move >>> 8;
+        while((next & opponent) != 0) {
+            run |= next;
+            next >>>= 8;
+        }
+        if((next & own) != 0) flips |= run;
+
+        return flips;
+    }
+
+    /**
+     * Converts a grid coordinate to a cell index.
+     *
+     * @param x X coordinate on the grid.
+     * @param y Y coordinate on the grid.
+     * @return The index x + y*8.
+     */
+    public static int toIndex(int x, int y) {
+        return x + y * SIZE;
+    }
+
+    /**
+     * Converts a cell index back to a grid Position.
+     *
+     * @param index Cell index (x + y*8).
+     * @return A new Position with the x and y coordinate of the cell.
+     */
+    public static Position toPosition(int index) {
+        return new Position(index % SIZE, index / SIZE);
+    }
+}
@@ -0,0 +1,524 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * EndgameSolver class:
+ * Plays the end of the game perfectly by searching every move to the end of the game,
+ * using the same final count as GameGrid.getWinner(false): the difference in pieces, with empty
+ * cells left when neither player can move counting for nobody. It can find the exact difference or,
+ * faster, only whether the game is a win, loss, or draw.
+ *
+ * Near the end of the search the work is dominated by the last few moves, so they get their own code:
+ * - One empty cell is scored straight from the pieces each player would swap there.
+ * - Two empty cells try both orders directly without generating move lists.
+ * - With few empty cells moves are ordered by parity: a move in a quadrant with an odd number of empty
+ *   cells is tried first, as it is usually better to play last in each region.
+ * - With more empty cells moves leaving the opponent the fewest replies are tried first,
+ *   and results are kept in a transposition table.
+ */
+public class EndgameSolver {
+    /**
+     * Number of empty cells at or below which SearchAI hands over to the solver.
+     */
+    public static final int DEFAULT_EMPTIES = 20;
+    /**
+     * Number of empty cells below which moves are ordered by parity instead of by the opponent's replies.
+     */
+    private static final int PARITY_EMPTIES = 7;
+    /**
+     * Number of empty cells at or above which results are stored in the transposition table.
+     */
+    private static final int TABLE_EMPTIES = 7;
+    /**
+     * Larger than any piece difference.
+     */
+    private static final int INFINITY = BitBoard.CELLS + 1;
+    /**
+     * How many nodes are searched between each check of the time and node limits.
+     */
+    private static final int CHECK_INTERVAL = 4096;
+    /**
+     * Masks of the four 4x4 quadrants of the board used for parity ordering.
+     */
+    private static final long[] QUADRANTS = {
+            0x000000000F0F0F0FL, 0x00000000F0F0F0F0L, 0x0F0F0F0F00000000L, 0xF0F0F0F000000000L
+    };
+    /**
+     * Mask of the four corner cells. Pieces in the corners can never be swapped.
+     */
+    private static final long CORNERS = 0x8100000000000081L;
+    /**
+     * Mask of every cell in the top and bottom rows.
+     */
+    private static final long TOP_AND_BOTTOM_ROWS = 0xFF000000000000FFL;
+    /**
+     * Mask of a single full row.
+     */
+    private static final long ROW = 0xFFL;
+
+    /**
+     * Results of positions with many empty cells kept between searches.
+     */
+    private final TranspositionTable table;
+    /**
+     * Preallocated move lists for each number of empty cells so the search does not allocate.
+     */
+    private final int[][] moveLists = new int[BitBoard.CELLS + 1][BitBoard.CELLS];
+    /**
+     * Preallocated ordering scores matching the move lists.
+     */
+    private final int[][] moveScores = new int[BitBoard.CELLS + 1][BitBoard.CELLS];
+
+    /**
+     * Time from System.nanoTime() at which the current solve must stop, used when timeLimited is set.
+     */
+    private long deadline;
+    /**
+     * True if the current solve has a time limit.
+     */
+    private boolean timeLimited;
+    /**
+     * Maximum number of positions the current solve may visit, or 0 for no limit.
+     */
+    private long nodeLimit;
+    /**
+     * Number of positions visited by the most recent solve.
+     */
+    private long nodes;
+    /**
+     * Set once a limit is reached and the current solve should unwind.
+     */
+    private boolean stopped;
+    /**
+     * Set by stop() from another thread until clearStop() is called. Every solve started while it is set stops at once.
+     */
+    private volatile boolean stopRequested;
+    /**
+     * Result of the most recent solve.
+     */
+    private int score;
+    /**
+     * Time taken by the most recent solve in nanoseconds.
+     */
+    private long elapsedNanos;
+
+    /**
+     * Creates a solver with a transposition table of the specified size.
+     *
+     * @param tableSizeMB Size of the transposition table in megabytes.
+     */
+    public EndgameSolver(int tableSizeMB) {
+        table = new TranspositionTable(tableSizeMB);
+    }
+
+    /**
+     * Creates a solver with the default table size.
+     */
+    public EndgameSolver() {
+        this(SearchAI.DEFAULT_TABLE_MB);
+    }
+
+    /**
+     * Searches every move to the end of the game and returns the best one.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for.
+     * @param exact True to find the exact final piece difference, or false to only find if the game is won, lost, or drawn.
+     * @param timeLimitMillis Maximum time to spend in milliseconds, or 0 for no limit.
+     * @param nodeLimit Maximum positions to visit, or 0 for no limit.
+     * @return The cell index of the best move, or -1 if there are no valid moves or a limit was reached first.
+     */
+    public int solve(BitBoard board, int playerID, boolean exact, long timeLimitMillis, long nodeLimit) {
+        long startTime = System.nanoTime();
+        this.timeLimited = timeLimitMillis > 0;
+        this.deadline = startTime + timeLimitMillis * 1000000L;
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+        stopped = false;
+        score = 0;
+        table.newSearch();
+
+        long own = board.getPieces(playerID);
+        long opponent = board.getPieces(playerID == 1 ? 2 : 1);
+        long moves = BitBoard.getMoves(own, opponent);
+        if(moves == 0) {
+            elapsedNanos = System.nanoTime() - startTime;
+            return -1;
+        }
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        long hash = Zobrist.hash(board.getBlack(), board.getWhite(), playerID);
+        int empties = BitBoard.CELLS - Long.bitCount(own | opponent);
+        int alpha = exact ? -INFINITY : -1;
+        int beta = exact ? INFINITY : 1;
+
+        int count = orderMoves(own, opponent, moves, empties, -1);
+        int[] moveList = moveLists[empties];
+        int bestMove = moveList[0];
+        int best = -INFINITY;
+        for(int i = 0; i < count && !stopped; i++) {
+            int move = moveList[i];
+            long flips = BitBoard.getFlips(own, opponent, move);
+            long nextOwn = opponent & ~flips;
+            long nextOpponent = own | flips | (1L << move);
+            long nextHash = Zobrist.playMove(hash, move, flips, playerID);
+            int value;
+            if(i == 0) {
+                value = -search(nextOwn, nextOpponent, nextHash, otherPlayer, empties - 1, -beta, -alpha);
+            } else {
+                value = -search(nextOwn, nextOpponent, nextHash, otherPlayer, empties - 1, -alpha - 1, -alpha);
+                if(value > alpha && value < beta) {
+                    value = -search(nextOwn, nextOpponent, nextHash, otherPlayer, empties - 1, -beta, -value);
+                }
+            }
+            if(value > best && !stopped) {
+                best = value;
+                bestMove = move;
+                if(value > alpha) {
+                    alpha = value;
+                    if(alpha >= beta) break;
+                }
+            }
+        }
+        score = best;
+        elapsedNanos = System.nanoTime() - startTime;
+        return stopped ? -1 : bestMove;
+    }
+
+    /**
+     * Stops a solve running on another thread, and any started before clearStop() is called.
+     * The solve returns -1 the same as when a limit is reached.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Forgets any earlier stop() so the next solve runs until its limits.
+     */
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Gets the result of the most recent solve. When solving exactly this is the final piece difference
+     * with best play. Otherwise only the sign is meaningful: positive for a win, 0 for a draw, and negative for a loss.
+     *
+     * @return The result from the point of view of the player who was choosing a move.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Checks if the most recent solve finished before reaching a limit.
+     *
+     * @return True if the result is exact.
+     */
+    public boolean isSolved() {
+        return !stopped;
+    }
+
+    /**
+     * Gets the number of positions visited by the most recent solve.
+     *
+     * @return Number of nodes searched.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the time taken by the most recent solve.
+     *
+     * @return Time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Searches a position to the end of the game with alpha-beta pruning.
+     * When the player to move cannot move the turn passes to the opponent, and the game
+     * ends when neither can move. Capture moves are generated directly because the
+     * opening rule can no longer apply.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param hash Zobrist hash of the position.
+     * @param playerID The player to move.
+     * @param empties Number of empty cells.
+     * @param alpha Lower bound of the search window.
+     * @param beta Upper bound of the search window.
+     * @return Final piece difference from the point of view of the player to move.
+     */
+    private int search(long own, long opponent, long hash, int playerID, int empties, int alpha, int beta) {
+        if((++nodes & (CHECK_INTERVAL - 1)) == 0) checkLimits();
+        if(stopped) return 0;
+        if(empties == 1) {
+            return solveLastOne(own, opponent, Long.numberOfTrailingZeros(~(own | opponent)));
+        }
+        if(empties == 2) {
+            return solveLastTwo(own, opponent, alpha, beta);
+        }
+
+        long moves = BitBoard.getCaptureMoves(own, opponent);
+        if(moves == 0) {
+            if(BitBoard.getCaptureMoves(opponent, own) == 0) {
+                return Long.bitCount(own) - Long.bitCount(opponent);
+            }
+            return -search(opponent, own, hash ^ Zobrist.WHITE_TO_MOVE, playerID == 1 ? 2 : 1, empties, -beta, -alpha);
+        }
+        if(empties < PARITY_EMPTIES) {
+            return searchParity(own, opponent, hash, playerID, moves, empties, alpha, beta);
+        }
+
+        // Pieces that can never swap limit how well either player can finish.
+        long stable = getStable(own | opponent);
+        int upper = BitBoard.CELLS - 2 * Long.bitCount(opponent & stable);
+        if(upper <= alpha) return upper;
+        int lower = 2 * Long.bitCount(own & stable) - BitBoard.CELLS;
+        if(lower >= beta) return lower;
+
+        int tableMove = -1;
+        long entry = table.probe(hash);
+        if(entry != 0) {
+            tableMove = TranspositionTable.getMove(entry);
+            int tableScore = TranspositionTable.getScore(entry);
+            int bound = TranspositionTable.getBound(entry);
+            if(bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && tableScore >= beta)
+                    || (bound == TranspositionTable.UPPER && tableScore <= alpha)) {
+                return tableScore;
+            }
+        }
+
+        int originalAlpha = alpha;
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        int count = orderMoves(own, opponent, moves, empties, tableMove);
+        int[] moveList = moveLists[empties];
+        int best = -INFINITY;
+        int bestMove = -1;
+        for(int i = 0; i < count; i++) {
+            int move = moveList[i];
+            long flips = BitBoard.getFlips(own, opponent, move);
+            long nextOwn = opponent & ~flips;
+            long nextOpponent = own | flips | (1L << move);
+            long nextHash = Zobrist.playMove(hash, move, flips, playerID);
+            int value;
+            if(i == 0) {
+                value = -search(nextOwn, nextOpponent, nextHash, otherPlayer, empties - 1, -beta, -alpha);
+            } else {
+                // Prove the move is no better than the best so far with a zero width window,
+                // and only search it again with the full window when it is.
+                value = -search(nextOwn, nextOpponent, nextHash, otherPlayer, empties - 1, -alpha - 1, -alpha);
+                if(value > alpha && value < beta) {
+                    value = -search(nextOwn, nextOpponent, nextHash, otherPlayer, empties - 1, -beta, -value);
+                }
+            }
+            if(value > best) {
+                best = value;
+                bestMove = move;
+                if(value > alpha) {
+                    alpha = value;
+                    if(alpha >= beta) break;
+                }
+            }
+        }
+        if(!stopped && empties >= TABLE_EMPTIES) {
+            int bound = best >= beta ? TranspositionTable.LOWER
+                      : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+            table.store(hash, empties, bound, best, bestMove);
+        }
+        return best;
+    }
+
+    /**
+     * Searches a position with few empty cells, trying moves in quadrants with an odd number
+     * of empty cells before the rest. The moves are taken straight from the masks without sorting.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param hash Zobrist hash of the position.
+     * @param playerID The player to move.
+     * @param moves Mask of valid moves. Must not be empty.
+     * @param empties Number of empty cells.
+     * @param alpha Lower bound of the search window.
+     * @param beta Upper bound of the search window.
+     * @return Final piece difference from the point of view of the player to move.
+     */
+    private int searchParity(long own, long opponent, long hash, int playerID, long moves, int empties, int alpha, int beta) {
+        long empty = ~(own | opponent);
+        long oddRegions = 0;
+        for(long quadrant : QUADRANTS) {
+            if((Long.bitCount(empty & quadrant) & 1) != 0) oddRegions |= quadrant;
+        }
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        int best = -INFINITY;
+        for(int pass = 0; pass < 2; pass++) {
+            long passMoves = moves & (pass == 0 ? oddRegions : ~oddRegions);
+            for(; passMoves != 0; passMoves &= passMoves - 1) {
+                int move = Long.numberOfTrailingZeros(passMoves);
+                long flips = BitBoard.getFlips(own, opponent, move);
+                int value = -search(opponent & ~flips, own | flips | (1L << move),
+                        Zobrist.playMove(hash, move, flips, playerID), otherPlayer, empties - 1, -beta, -alpha);
+                if(value > best) {
+                    best = value;
+                    if(value > alpha) {
+                        alpha = value;
+                        if(alpha >= beta) return best;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Scores a position with two empty cells by trying both orders directly.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param alpha Lower bound of the search window.
+     * @param beta Upper bound of the search window.
+     * @return Final piece difference from the point of view of the player to move.
+     */
+    private int solveLastTwo(long own, long opponent, int alpha, int beta) {
+        long empty = ~(own | opponent);
+        int first = Long.numberOfTrailingZeros(empty);
+        int second = Long.numberOfTrailingZeros(empty & (empty - 1));
+        int best = -INFINITY;
+        long flips = BitBoard.getFlips(own, opponent, first);
+        if(flips != 0) {
+            nodes++;
+            best = -solveLastOne(opponent & ~flips, own | flips | (1L << first), second);
+            if(best >= beta) return best;
+        }
+        flips = BitBoard.getFlips(own, opponent, second);
+        if(flips != 0) {
+            nodes++;
+            best = Math.max(best, -solveLastOne(opponent & ~flips, own | flips | (1L << second), first));
+        }
+        if(best != -INFINITY) {
+            return best;
+        }
+
+        // Pass, so the opponent tries both cells instead.
+        flips = BitBoard.getFlips(opponent, own, first);
+        if(flips != 0) {
+            nodes++;
+            best = solveLastOne(own & ~flips, opponent | flips | (1L << first), second);
+            if(best <= alpha) return best;
+        }
+        flips = BitBoard.getFlips(opponent, own, second);
+        if(flips != 0) {
+            nodes++;
+            int value = solveLastOne(own & ~flips, opponent | flips | (1L << second), first);
+            best = best == -INFINITY ? value : Math.min(best, value);
+        }
+        if(best != -INFINITY) {
+            return best;
+        }
+        // Neither player can move.
+        return Long.bitCount(own) - Long.bitCount(opponent);
+    }
+
+    /**
+     * Scores a position with one empty cell from the pieces each player would swap there.
+     * The player to move plays it if they can, otherwise the opponent does if they can.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param index Cell index of the empty cell.
+     * @return Final piece difference from the point of view of the player to move.
+     */
+    private int solveLastOne(long own, long opponent, int index) {
+        nodes++;
+        int difference = Long.bitCount(own) - Long.bitCount(opponent);
+        int swapped = Long.bitCount(BitBoard.getFlips(own, opponent, index));
+        if(swapped > 0) {
+            return difference + 2 * swapped + 1;
+        }
+        swapped = Long.bitCount(BitBoard.getFlips(opponent, own, index));
+        if(swapped > 0) {
+            return difference - 2 * swapped - 1;
+        }
+        return difference;
+    }
+
+    /**
+     * Fills the move list for the number of empty cells with the moves sorted from most to least promising:
+     * the table move first, then moves that leave the opponent the fewest replies, with corners and
+     * moves in odd parity quadrants preferred when the reply counts are close.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param moves Mask of valid moves.
+     * @param empties Number of empty cells, selects which list to fill.
+     * @param firstMove Move to always place first, or -1 for none.
+     * @return The number of moves in the list.
+     */
+    private int orderMoves(long own, long opponent, long moves, int empties, int firstMove) {
+        int[] moveList = moveLists[empties];
+        int[] scores = moveScores[empties];
+        long empty = ~(own | opponent);
+        long oddRegions = 0;
+        for(long quadrant : QUADRANTS) {
+            if((Long.bitCount(empty & quadrant) & 1) != 0) oddRegions |= quadrant;
+        }
+        int count = 0;
+        for(; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long bit = 1L << move;
+            int value;
+            if(move == firstMove) {
+                value = INFINITY * 16;
+            } else {
+                long flips = BitBoard.getFlips(own, opponent, move);
+                long replies = BitBoard.getCaptureMoves(opponent & ~flips, own | flips | bit);
+                value = -16 * Long.bitCount(replies);
+                if((replies & CORNERS) != 0) value -= 16;
+                if((bit & CORNERS) != 0) value += 8;
+                if((bit & oddRegions) != 0) value += 4;
+            }
+            // Insertion sort, the lists are short.
+            int i = count++;
+            while(i > 0 && scores[i - 1] < value) {
+                scores[i] = scores[i - 1];
+                moveList[i] = moveList[i - 1];
+                i--;
+            }
+            scores[i] = value;
+            moveList[i] = move;
+        }
+        return count;
+    }
+
+    /**
+     * Finds pieces that can never be swapped again. Pieces only swap along their row or column,
+     * and a piece cannot be surrounded along a line where it is on the edge of the board or
+     * where the line has no empty cells left for a move. A piece safe along both is stable.
+     *
+     * @param occupied Mask of every piece on the board.
+     * @return Mask of the stable pieces.
+     */
+    private static long getStable(long occupied) {
+        long safeAlongRows = BitBoard.LEFT_COLUMN | BitBoard.RIGHT_COLUMN;
+        long safeAlongColumns = TOP_AND_BOTTOM_ROWS;
+        for(int i = 0; i < BitBoard.SIZE; i++) {
+            long row = ROW << (i * BitBoard.SIZE);
+            if((occupied & row) == row) safeAlongRows |= row;
+            long column = BitBoard.LEFT_COLUMN << i;
+            if((occupied & column) == column) safeAlongColumns |= column;
+        }
+        return occupied & safeAlongRows & safeAlongColumns;
+    }
+
+    /**
+     * Stops the solve once the time or node limit has been reached, or stop() has been called.
+     */
+    private void checkLimits() {
+        if(stopRequested || (timeLimited && System.nanoTime() - deadline > 0) || (nodeLimit > 0 && nodes >= nodeLimit)) {
+            stopped = true;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * EngineEvents class:
+ * Java Flight Recorder events for the hot paths measured by Metrics. They show up under the
+ * Othello category in JDK Mission Control or "jfr print --categories Othello" when the game is
+ * started with --profile. Each event is committed after the work it describes has finished, so
+ * the time the work took is in its elapsed field.
+ */
+public class EngineEvents {
+    /**
+     * Listing the valid moves of a player in GameGrid.updateValidMoves().
+     */
+    @Name("othello.MoveGeneration")
+    @Label("Move Generation")
+    @Category({"Othello", "Engine"})
+    @StackTrace(false)
+    public static class MoveGeneration extends Event {
+        /**
+         * Time taken.
+         */
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        /**
+         * The player whose moves were listed.
+         */
+        @Label("Player")
+        int playerID;
+        /**
+         * Number of valid moves found.
+         */
+        @Label("Valid Moves")
+        int validMoves;
+    }
+
+    /**
+     * Playing a move on the grid in GameGrid.playMove().
+     */
+    @Name("othello.MoveApplication")
+    @Label("Move Application")
+    @Category({"Othello", "Engine"})
+    @StackTrace(false)
+    public static class MoveApplication extends Event {
+        /**
+         * Time taken.
+         */
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        /**
+         * The player who played the move.
+         */
+        @Label("Player")
+        int playerID;
+        /**
+         * Cell index (x + y*width) of the move.
+         */
+        @Label("Cell")
+        int cell;
+    }
+
+    /**
+     * The AI choosing a move.
+     */
+    @Name("othello.AIMove")
+    @Label("AI Move")
+    @Category({"Othello", "AI"})
+    @Description("Nodes are playouts for MCTSAI. Depth is 0 when it is not known.")
+    @StackTrace(false)
+    public static class AIMove extends Event {
+        /**
+         * Time taken to choose the move.
+         */
+        @Label("Time To Move")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        /**
+         * Name of the AI class that chose the move.
+         */
+        @Label("AI")
+        String ai;
+        /**
+         * Cell index (x + y*8) of the move, or -1 if there was none.
+         */
+        @Label("Move")
+        int move;
+        /**
+         * Nodes searched.
+         */
+        @Label("Nodes")
+        long nodes;
+        /**
+         * Nodes searched per second.
+         */
+        @Label("Nodes Per Second")
+        long nodesPerSecond;
+        /**
+         * Depth reached by the search.
+         */
+        @Label("Depth")
+        int depth;
+        /**
+         * True if the move was played from the opening book without searching.
+         */
+        @Label("From Book")
+        boolean fromBook;
+    }
+
+    /**
+     * Painting the whole game panel in GamePanel.paint().
+     */
+    @Name("othello.Paint")
+    @Label("Paint")
+    @Category({"Othello", "UI"})
+    @StackTrace(false)
+    public static class Paint extends Event {
+        /**
+         * Time taken.
+         */
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        /**
+         * Width of the area that was painted in pixels.
+         */
+        @Label("Clip Width")
+        int clipWidth;
+        /**
+         * Height of the area that was painted in pixels.
+         */
+        @Label("Clip Height")
+        int clipHeight;
+    }
+}
@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * EngineServer class:
+ * Lets other processes play against the AI without a window, over a local TCP port or a Unix domain
+ * socket. Every connection has its own EngineSession holding its game, and speaks the line based text
+ * protocol described there.
+ *
+ * One thread handles every connection with a Selector and answers the quick commands straight away.
+ * Searches are run on a pool of worker threads that each keep one SearchAI, so the memory used by
+ * transposition tables depends on the number of workers and not the number of connections. Commands
+ * from a connection are answered in order: while a connection waits for a search its later commands
+ * are held, and reading from it stops once too many are waiting or too many reply bytes have not been
+ * taken by the client yet.
+ *
+ * Usage: java EngineServer [port|unix:PATH] [threads] [defaultMillis]
+ */
+public class EngineServer {
+    /**
+     * TCP port used when none is given.
+     */
+    public static final int DEFAULT_PORT = 7781;
+    /**
+     * Size of the transposition table given to each worker in megabytes.
+     */
+    private static final int TABLE_MB = 16;
+    /**
+     * Longest command line accepted in bytes. Longer lines close the connection.
+     */
+    private static final int MAX_LINE_BYTES = 1024;
+    /**
+     * Number of commands waiting on one connection at which reading from it stops until some are answered.
+     */
+    private static final int MAX_WAITING_COMMANDS = 64;
+    /**
+     * Number of reply bytes not yet written to one connection at which reading from it stops until the
+     * client has taken some of them.
+     */
+    private static final int MAX_OUTPUT_BYTES = 16 * 1024;
+    /**
+     * Put in place of a command line that was too long, compared by reference so no command can match it.
+     */
+    private static final String LINE_TOO_LONG = new String("error line too long");
+
+    /**
+     * Waits for events on every channel.
+     */
+    private final Selector selector;
+    /**
+     * Accepts new connections.
+     */
+    private final ServerSocketChannel serverChannel;
+    /**
+     * Runs search commands.
+     */
+    private final ExecutorService workers;
+    /**
+     * Search for each worker thread, searching with no depth limit until its time runs out.
+     */
+    private final ThreadLocal<SearchAI> workerAI;
+    /**
+     * Connections whose search has finished, for the selector thread to send the reply.
+     */
+    private final ConcurrentLinkedQueue<Connection> finishedSearches = new ConcurrentLinkedQueue<>();
+    /**
+     * Time given to searches that do not ask for one, in milliseconds.
+     */
+    private final long defaultMillis;
+    /**
+     * Set to stop the selector thread.
+     */
+    private volatile boolean stopping;
+    /**
+     * Number of open connections.
+     */
+    private int connectionCount;
+
+    /**
+     * One client connection, only used by the selector thread except for the reply of a running search.
+     */
+    private static class Connection {
+        /**
+         * The client's channel.
+         */
+        private final SocketChannel channel;
+        /**
+         * The game played over this connection.
+         */
+        private final EngineSession session;
+        /**
+         * Bytes read that have not made a whole line yet.
+         */
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_LINE_BYTES);
+        /**
+         * Command lines read but not yet run.
+         */
+        private final ArrayDeque<String> waitingCommands = new ArrayDeque<>();
+        /**
+         * Replies that have not been completely written yet.
+         */
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        /**
+         * Number of bytes left to write in output.
+         */
+        private int outputBytes;
+        /**
+         * The selection key of the channel.
+         */
+        private SelectionKey key;
+        /**
+         * True while a search for this connection is running on a worker.
+         */
+        private boolean searching;
+        /**
+         * Reply of the search that has just finished, set by the worker.
+         */
+        private volatile String searchReply;
+        /**
+         * True once the client has asked to quit or closed its side, so the connection closes
+         * once every reply has been written.
+         */
+        private boolean closing;
+
+        /**
+         * Creates a connection with a new game.
+         *
+         * @param channel The client's channel.
+         * @param defaultMillis Time given to searches that do not ask for one, in milliseconds.
+         */
+        private Connection(SocketChannel channel, long defaultMillis) {
+            this.channel = channel;
+            this.session = new EngineSession(defaultMillis);
+        }
+    }
+
+    /**
+     * Starts the server from the command line and runs it until the process is stopped.
+     *
+     * @param args Optional port or unix:PATH, number of worker threads, and default search time.
+     */
+    public static void main(String[] args) throws IOException {
+        String address = args.length > 0 ? args[0] : String.valueOf(DEFAULT_PORT);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long defaultMillis = args.length > 2 ? Long.parseLong(args[2]) : 100;
+        EngineServer server = new EngineServer(parseAddress(address), threads, defaultMillis);
+        System.out.println("Engine server listening on " + server.getLocalAddress() + " with " + threads
+                + " search threads");
+        server.run();
+    }
+
+    /**
+     * Reads an address to listen on or connect to.
+     *
+     * @param address A port number on the loopback address, or unix:PATH for a Unix domain socket.
+     * @return The address.
+     */
+    public static SocketAddress parseAddress(String address) {
+        if(address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+    }
+
+    /**
+     * Opens the server socket. Call run() to start answering connections.
+     *
+     * @param address Loopback address and port, where port 0 picks a free port, or a Unix domain socket path.
+     *                An old socket file left at the path is replaced.
+     * @param threads Number of searches that can run at once.
+     * @param defaultMillis Time given to searches that do not ask for one, in milliseconds.
+     * @throws IOException If the address cannot be listened on.
+     */
+    public EngineServer(SocketAddress address, int threads, long defaultMillis) throws IOException {
+        this.defaultMillis = defaultMillis;
+        if(address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            serverChannel = ServerSocketChannel.open();
+        }
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        selector = Selector.open();
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "EngineServer search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        workerAI = ThreadLocal.withInitial(() -> new SearchAI(0, 0, BitBoard.CELLS, TABLE_MB));
+    }
+
+    /**
+     * Gets the address the server is listening on, which has the real port when port 0 was asked for.
+     *
+     * @return The address.
+     * @throws IOException If the server socket is closed.
+     */
+    public SocketAddress getLocalAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Answers connections on the calling thread until stop() is called.
+     *
+     * @throws IOException If the selector or server socket fails.
+     */
+    public void run() throws IOException {
+        SocketAddress address = serverChannel.getLocalAddress();
+        try {
+            while(!stopping) {
+                selector.select();
+                Connection finished;
+                while((finished = finishedSearches.poll()) != null) {
+                    finished.searching = false;
+                    reply(finished, finished.searchReply);
+                    runWaitingCommands(finished);
+                }
+                for(SelectionKey key : selector.selectedKeys()) {
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if(key.isReadable()) read(connection);
+                        if(key.isValid() && key.isWritable()) write(connection);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            for(SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+            workers.shutdownNow();
+            if(address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+    }
+
+    /**
+     * Makes run() return and close every connection. Can be called from any thread.
+     */
+    public void stop() {
+        stopping = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Gets the number of open connections. Only accurate on the selector thread.
+     *
+     * @return The number of connections.
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Accepts every waiting connection. A connection that cannot be set up is closed, and a failure to
+     * accept, such as running out of file descriptors, leaves the rest waiting until the next round,
+     * so neither stops the server or drops the other connections.
+     */
+    private void accept() {
+        while(true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                return;
+            }
+            if(channel == null) return;
+            try {
+                channel.configureBlocking(false);
+                if(channel.getLocalAddress() instanceof InetSocketAddress) {
+                    // Replies are single small lines, so they should not wait to be combined.
+                    channel.socket().setTcpNoDelay(true);
+                }
+                Connection connection = new Connection(channel, defaultMillis);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connectionCount++;
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException closeFailure) {
+                    // The connection is being dropped anyway.
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads whatever a connection has sent and runs the complete command lines.
+     *
+     * @param connection The connection to read.
+     */
+    private void read(Connection connection) {
+        int bytesRead;
+        try {
+            bytesRead = connection.channel.read(connection.input);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if(bytesRead < 0) {
+            connection.closing = true;
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        ByteBuffer input = connection.input;
+        input.flip();
+        int lineStart = 0;
+        for(int i = 0; i < input.limit(); i++) {
+            if(input.get(i) == '\n') {
+                int lineEnd = i > lineStart && input.get(i - 1) == '\r' ? i - 1 : i;
+                String line = new String(input.array(), lineStart, lineEnd - lineStart, StandardCharsets.US_ASCII);
+                if(!line.isBlank()) connection.waitingCommands.add(line);
+                lineStart = i + 1;
+            }
+        }
+        input.position(lineStart);
+        input.compact();
+        if(!input.hasRemaining()) {
+            connection.waitingCommands.add(LINE_TOO_LONG);
+            connection.closing = true;
+        }
+        runWaitingCommands(connection);
+    }
+
+    /**
+     * Runs the commands a connection is waiting on, in order, until one needs a search.
+     *
+     * @param connection The connection.
+     */
+    private void runWaitingCommands(Connection connection) {
+        if(!connection.key.isValid()) return;
+        while(!connection.searching && !connection.waitingCommands.isEmpty()) {
+            String line = connection.waitingCommands.poll();
+            if(line == LINE_TOO_LONG) {
+                reply(connection, line);
+            } else if(EngineSession.isSearchCommand(line)) {
+                connection.searching = true;
+                workers.execute(() -> {
+                    // Always handed back, or the connection would wait on the search forever.
+                    connection.searchReply = "error the search failed";
+                    try {
+                        connection.searchReply = connection.session.execute(line, workerAI.get());
+                    } finally {
+                        finishedSearches.add(connection);
+                        selector.wakeup();
+                    }
+                });
+            } else {
+                reply(connection, connection.session.execute(line, null));
+                if(EngineSession.isQuitCommand(line)) {
+                    connection.waitingCommands.clear();
+                    connection.closing = true;
+                }
+            }
+        }
+        if(!connection.key.isValid()) return;
+        updateReading(connection);
+        if(connection.closing && !connection.searching && connection.waitingCommands.isEmpty()
+                && connection.output.isEmpty()) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Stops reading from clients that send commands faster than they are answered or than they read the
+     * replies, and starts reading again once they have caught up.
+     *
+     * @param connection The connection.
+     */
+    private void updateReading(Connection connection) {
+        boolean full = connection.waitingCommands.size() >= MAX_WAITING_COMMANDS
+                || connection.outputBytes >= MAX_OUTPUT_BYTES;
+        int ops = connection.key.interestOps();
+        if(full || connection.closing) {
+            ops &= ~SelectionKey.OP_READ;
+        } else {
+            ops |= SelectionKey.OP_READ;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    /**
+     * Sends a reply line, writing as much as the channel will take now and the rest when it is writable.
+     *
+     * @param connection The connection to reply to.
+     * @param reply The reply, without the line ending.
+     */
+    private void reply(Connection connection, String reply) {
+        if(!connection.key.isValid()) return;
+        ByteBuffer buffer = ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.US_ASCII));
+        connection.output.add(buffer);
+        connection.outputBytes += buffer.remaining();
+        write(connection);
+    }
+
+    /**
+     * Writes waiting replies until they are all written or the channel is full.
+     *
+     * @param connection The connection to write to.
+     */
+    private void write(Connection connection) {
+        try {
+            while(!connection.output.isEmpty()) {
+                ByteBuffer buffer = connection.output.peek();
+                connection.outputBytes -= connection.channel.write(buffer);
+                if(buffer.hasRemaining()) break;
+                connection.output.poll();
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if(connection.output.isEmpty()) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+            if(connection.closing && !connection.searching && connection.waitingCommands.isEmpty()) {
+                close(connection);
+            }
+        } else {
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+        if(connection.key.isValid()) updateReading(connection);
+    }
+
+    /**
+     * Closes a connection. A search still running for it finishes and its reply is dropped.
+     *
+     * @param connection The connection to close.
+     */
+    private void close(Connection connection) {
+        if(!connection.key.isValid()) return;
+        connection.key.cancel();
+        connectionCount--;
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // The connection is being dropped anyway.
+        }
+    }
+}
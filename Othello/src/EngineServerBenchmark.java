@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * EngineServerBenchmark class:
+ * Measures an EngineServer under load from many connections at once. Every connection plays games
+ * over and over, asking for the valid moves, playing a random one, then asking the server for a reply
+ * with genmove, and starting a new game when one ends. Each connection sends its next command as soon
+ * as the last one is answered, so the number of connections is the number of commands in progress.
+ * All connections are driven from one thread with a Selector, the same way the server handles them.
+ *
+ * Reports the commands answered per second, and the percentiles of the time from sending each command
+ * to its reply, separately for the quick commands and for genmove.
+ *
+ * Usage: java EngineServerBenchmark [connections] [seconds] [genmoveMillis] [port|unix:PATH]
+ *        With no address a server is started in this process on a free port.
+ */
+public class EngineServerBenchmark {
+    /**
+     * The commands a connection sends in turn.
+     */
+    private enum Step { MOVES, PLAY, GENMOVE, NEW }
+
+    /**
+     * One benchmark connection and the game it is playing.
+     */
+    private static class Client {
+        /**
+         * The channel to the server.
+         */
+        private final SocketChannel channel;
+        /**
+         * Bytes of the reply read so far.
+         */
+        private final ByteBuffer input = ByteBuffer.allocate(1024);
+        /**
+         * The command waiting for a reply.
+         */
+        private Step step;
+        /**
+         * Time the command waiting for a reply was sent.
+         */
+        private long sentTime;
+
+        /**
+         * Creates a client.
+         *
+         * @param channel The connected channel.
+         */
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Time from sending a quick command to its reply.
+     */
+    private final LatencyHistogram quickLatencies = new LatencyHistogram();
+    /**
+     * Time from sending genmove to its reply.
+     */
+    private final LatencyHistogram genmoveLatencies = new LatencyHistogram();
+    /**
+     * Chooses the random moves.
+     */
+    private final Random random = new Random(1);
+    /**
+     * Time given to genmove in milliseconds, or 0 to only play random moves.
+     */
+    private final long genmoveMillis;
+    /**
+     * Number of replies that were errors.
+     */
+    private long errors;
+    /**
+     * Number of games finished.
+     */
+    private long games;
+
+    /**
+     * Runs the benchmark from the command line and prints the report.
+     *
+     * @param args Optional connections, seconds, genmove time, and server address.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long genmoveMillis = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        EngineServer server = null;
+        Thread serverThread = null;
+        SocketAddress address;
+        if(args.length > 3) {
+            address = EngineServer.parseAddress(args[3]);
+        } else {
+            EngineServer localServer = new EngineServer(EngineServer.parseAddress("0"),
+                    Runtime.getRuntime().availableProcessors(), genmoveMillis);
+            server = localServer;
+            address = server.getLocalAddress();
+            serverThread = new Thread(() -> {
+                try {
+                    localServer.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "EngineServer");
+            serverThread.start();
+        }
+
+        EngineServerBenchmark benchmark = new EngineServerBenchmark(genmoveMillis);
+        long[] totals = benchmark.run(address, connections, seconds);
+        double elapsedSeconds = totals[1] / 1e9;
+        System.out.printf("%d connections to %s for %.1f s, genmove %d ms on %d processors%n", connections,
+                address, elapsedSeconds, genmoveMillis, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%d commands, %.0f commands/s, %d games finished, %d errors%n",
+                totals[0], totals[0] / elapsedSeconds, benchmark.games, benchmark.errors);
+        System.out.println("Quick commands: " + benchmark.quickLatencies);
+        System.out.println("genmove:        " + benchmark.genmoveLatencies);
+
+        if(server != null) {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    /**
+     * Sets up a benchmark.
+     *
+     * @param genmoveMillis Time given to genmove in milliseconds, or 0 to only play random moves.
+     */
+    public EngineServerBenchmark(long genmoveMillis) {
+        this.genmoveMillis = genmoveMillis;
+    }
+
+    /**
+     * Connects every client and keeps them all busy for the specified time.
+     *
+     * @param address Address of the server.
+     * @param connections Number of connections.
+     * @param seconds Time to run for.
+     * @return The number of replies and the time taken in nanoseconds.
+     * @throws IOException If a connection fails.
+     */
+    public long[] run(SocketAddress address, int connections, int seconds) throws IOException {
+        Selector selector = Selector.open();
+        Client[] clients = new Client[connections];
+        for(int i = 0; i < connections; i++) {
+            SocketChannel channel = address instanceof UnixDomainSocketAddress
+                    ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+            channel.connect(address);
+            if(address instanceof InetSocketAddress) {
+                channel.socket().setTcpNoDelay(true);
+            }
+            channel.configureBlocking(false);
+            clients[i] = new Client(channel);
+            channel.register(selector, SelectionKey.OP_READ, clients[i]);
+        }
+
+        long replies = 0;
+        long startTime = System.nanoTime();
+        long endTime = startTime + seconds * 1000000000L;
+        for(Client client : clients) {
+            send(client, Step.NEW, "new");
+        }
+        while(System.nanoTime() < endTime) {
+            selector.select(100);
+            for(SelectionKey key : selector.selectedKeys()) {
+                Client client = (Client) key.attachment();
+                if(client.channel.read(client.input) < 0) {
+                    throw new IOException("The server closed a connection");
+                }
+                String reply;
+                while((reply = takeLine(client.input)) != null) {
+                    replies++;
+                    handleReply(client, reply);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        for(Client client : clients) {
+            client.channel.close();
+        }
+        selector.close();
+        return new long[] {replies, elapsed};
+    }
+
+    /**
+     * Records the time taken by a reply and sends the client's next command.
+     *
+     * @param client The client that got the reply.
+     * @param reply The reply line.
+     * @throws IOException If the command cannot be sent.
+     */
+    private void handleReply(Client client, String reply) throws IOException {
+        long latency = System.nanoTime() - client.sentTime;
+        if(client.step == Step.GENMOVE) {
+            genmoveLatencies.record(latency);
+        } else {
+            quickLatencies.record(latency);
+        }
+        boolean ok = reply.startsWith("ok");
+        if(!ok && client.step != Step.GENMOVE) {
+            errors++;
+        }
+        switch(client.step) {
+            case MOVES:
+                String[] moves = reply.split(" ");
+                if(moves.length == 1) {
+                    games++;
+                    send(client, Step.NEW, "new");
+                } else {
+                    send(client, Step.PLAY, "play " + moves[1 + random.nextInt(moves.length - 1)]);
+                }
+                break;
+            case PLAY:
+                if(genmoveMillis > 0) {
+                    send(client, Step.GENMOVE, "genmove " + genmoveMillis);
+                } else {
+                    send(client, Step.MOVES, "moves");
+                }
+                break;
+            default:
+                // genmove at the end of the game replies with an error, and the next moves finds it over.
+                send(client, Step.MOVES, "moves");
+        }
+    }
+
+    /**
+     * Sends a command and remembers when it was sent.
+     *
+     * @param client The client to send from.
+     * @param step The command being sent.
+     * @param command The command line, without the line ending.
+     * @throws IOException If the command cannot be written.
+     */
+    private static void send(Client client, Step step, String command) throws IOException {
+        client.step = step;
+        client.sentTime = System.nanoTime();
+        ByteBuffer bytes = ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.US_ASCII));
+        // A single short command always fits in the socket buffer of an idle connection.
+        while(bytes.hasRemaining()) {
+            client.channel.write(bytes);
+        }
+    }
+
+    /**
+     * Takes a complete line from the front of a buffer being filled.
+     *
+     * @param input The buffer, in write mode.
+     * @return The line without its line ending, or null if there is no complete line yet.
+     */
+    private static String takeLine(ByteBuffer input) {
+        for(int i = 0; i < input.position(); i++) {
+            if(input.get(i) == '\n') {
+                String line = new String(input.array(), 0, i, StandardCharsets.US_ASCII);
+                input.flip();
+                input.position(i + 1);
+                input.compact();
+                return line;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * EngineSession class:
+ * The game played over one connection to EngineServer. Holds the board and the player to move,
+ * and runs the text commands of the engine protocol against them with the rules of GameGrid,
+ * using BitBoard the same way GameGrid does on an 8x8 grid. A player with no valid moves passes
+ * the same way as in GamePanel.setGameState(), so the player to move always has a valid move
+ * unless the game is over.
+ *
+ * Each command is one line, a word followed by its arguments separated by spaces, and gets one line
+ * back: "ok" followed by any results, or "error" followed by a message. Cells are written as in
+ * GameRecordConverter, such as d3, and boards as in BitBoard.toString().
+ *
+ * - new                      Starts a new game with black to move.
+ * - position CELLS B|W       Sets up a position with that player to move.
+ * - board                    ok CELLS B|W
+ * - moves                    ok followed by every valid move of the player to move.
+ * - play CELL                Plays a move for the player to move.
+ * - genmove [MILLIS]         Searches for up to MILLIS, plays the move, and replies: ok CELL SCORE DEPTH NODES
+ *                            with SCORE from the mover's point of view written by SearchAI.toLabel(), such as
+ *                            +2.5 pieces, W+8 or L-4 for a proven result, W or L, or D for a proven draw.
+ * - analyse [MILLIS]         The same as genmove without playing the move.
+ * - score                    ok BLACK WHITE RESULT, the pieces of each player and the result
+ *                            (* while playing, 1-0 black won, 0-1 white won, or 1/2-1/2).
+ * - quit                     Closes the connection.
+ *
+ * Only genmove and analyse need an AI. They take much longer than the others, so the server runs
+ * them on a worker thread, and never runs two commands of a session at once.
+ */
+public class EngineSession {
+    /**
+     * Longest time a search command can ask for in milliseconds.
+     */
+    public static final long MAX_SEARCH_MILLIS = 60000;
+    /**
+     * Results as written by the score command, indexed by the result of BitBoard.getWinner().
+     */
+    private static final String[] RESULTS = {"*", "1-0", "0-1", "1/2-1/2"};
+
+    /**
+     * The current position.
+     */
+    private final BitBoard board = new BitBoard();
+    /**
+     * The player to move, 1 for black or 2 for white.
+     */
+    private int playerID = 1;
+    /**
+     * Time given to genmove and analyse when they are not given one, in milliseconds.
+     */
+    private final long defaultMillis;
+
+    /**
+     * Starts a session with a new game.
+     *
+     * @param defaultMillis Time given to genmove and analyse when they are not given one, in milliseconds.
+     */
+    public EngineSession(long defaultMillis) {
+        this.defaultMillis = defaultMillis;
+    }
+
+    /**
+     * Checks if a command needs an AI, so it should be run on a worker thread.
+     * The command is read the same way as by execute().
+     *
+     * @param line The command line.
+     * @return True for genmove and analyse.
+     */
+    public static boolean isSearchCommand(String line) {
+        String command = split(line)[0];
+        return command.equals("genmove") || command.equals("analyse");
+    }
+
+    /**
+     * Checks if a command closes the connection.
+     * The command is read the same way as by execute().
+     *
+     * @param line The command line.
+     * @return True for quit.
+     */
+    public static boolean isQuitCommand(String line) {
+        return split(line)[0].equals("quit");
+    }
+
+    /**
+     * Splits a command line into the command word and its arguments, ignoring spaces at either end.
+     *
+     * @param line The command line.
+     * @return The command word followed by the arguments.
+     */
+    private static String[] split(String line) {
+        return line.trim().split("\\s+");
+    }
+
+    /**
+     * Runs a command. Any failure is returned as an error reply rather than thrown,
+     * so a bad command cannot stop the server.
+     *
+     * @param line The command line, without the line ending.
+     * @param ai The AI to use for genmove and analyse, or null if the command does not need one.
+     * @return The reply line, without the line ending.
+     */
+    public String execute(String line, SearchAI ai) {
+        String[] parts = split(line);
+        try {
+            switch(parts[0]) {
+                case "new":
+                    board.reset();
+                    playerID = 1;
+                    return "ok";
+                case "position":
+                    return setPosition(parts);
+                case "board":
+                    return "ok " + board + " " + (playerID == 1 ? 'B' : 'W');
+                case "moves":
+                    return listMoves();
+                case "play":
+                    return play(parts);
+                case "genmove":
+                    return search(parts, ai, true);
+                case "analyse":
+                    return search(parts, ai, false);
+                case "score":
+                    int result = board.getWinner(hasMoves());
+                    return "ok " + Long.bitCount(board.getBlack()) + " " + Long.bitCount(board.getWhite())
+                            + " " + RESULTS[result];
+                case "quit":
+                    return "ok";
+                default:
+                    return "error unknown command: " + parts[0];
+            }
+        } catch (RuntimeException e) {
+            return "error " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Sets up a position from the cells and the player to move.
+     *
+     * @param parts The command split at spaces.
+     * @return The reply.
+     */
+    private String setPosition(String[] parts) {
+        if(parts.length < 3) {
+            return "error expected: position CELLS B|W";
+        }
+        BitBoard position = BitBoard.fromString(parts[1]);
+        int player;
+        switch(parts[2].toUpperCase()) {
+            case "B": player = 1; break;
+            case "W": player = 2; break;
+            default: return "error the player to move must be B or W";
+        }
+        board.setPieces(position.getBlack(), position.getWhite());
+        playerID = player;
+        passIfNeeded();
+        return "ok";
+    }
+
+    /**
+     * Lists the valid moves of the player to move.
+     *
+     * @return The reply.
+     */
+    private String listMoves() {
+        StringBuilder reply = new StringBuilder("ok");
+        for(long moves = board.getValidMoves(playerID); moves != 0; moves &= moves - 1) {
+            reply.append(' ').append(GameRecordConverter.toNotation(Long.numberOfTrailingZeros(moves), BitBoard.SIZE));
+        }
+        return reply.toString();
+    }
+
+    /**
+     * Plays a move for the player to move.
+     *
+     * @param parts The command split at spaces.
+     * @return The reply.
+     */
+    private String play(String[] parts) {
+        if(parts.length < 2) {
+            return "error expected: play CELL";
+        }
+        int move = GameRecordConverter.parseCell(parts[1], BitBoard.SIZE, BitBoard.SIZE);
+        if((board.getValidMoves(playerID) & (1L << move)) == 0) {
+            return "error not a valid move: " + parts[1];
+        }
+        playMove(move);
+        return "ok";
+    }
+
+    /**
+     * Searches the position and optionally plays the move found.
+     *
+     * @param parts The command split at spaces.
+     * @param ai The AI to search with.
+     * @param playFoundMove True to play the move found.
+     * @return The reply.
+     */
+    private String search(String[] parts, SearchAI ai, boolean playFoundMove) {
+        if(ai == null) {
+            throw new IllegalStateException(parts[0] + " must be run with an AI");
+        }
+        long millis = parts.length > 1 ? Long.parseLong(parts[1]) : defaultMillis;
+        if(millis < 1 || millis > MAX_SEARCH_MILLIS) {
+            return "error the time must be from 1 to " + MAX_SEARCH_MILLIS + " milliseconds";
+        }
+        if(!hasMoves()) {
+            return "error the game is over";
+        }
+        int empties = BitBoard.CELLS - Long.bitCount(board.getBlack() | board.getWhite());
+        int move = ai.chooseMove(board, playerID, millis);
+        String score = SearchAI.toLabel(ai.getScore(), ai.getDepthReached() >= empties);
+        String reply = "ok " + GameRecordConverter.toNotation(move, BitBoard.SIZE) + " " + score
+                + " " + ai.getDepthReached() + " " + ai.getNodes();
+        if(playFoundMove) {
+            playMove(move);
+        }
+        return reply;
+    }
+
+    /**
+     * Plays a valid move and passes the turn.
+     *
+     * @param move Cell index of the move.
+     */
+    private void playMove(int move) {
+        board.playMove(move, playerID);
+        playerID = playerID == 1 ? 2 : 1;
+        passIfNeeded();
+    }
+
+    /**
+     * Gives the turn to the other player if the player to move has no valid moves and the other player does.
+     */
+    private void passIfNeeded() {
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        if(board.getValidMoves(playerID) == 0 && board.getValidMoves(otherPlayer) != 0) {
+            playerID = otherPlayer;
+        }
+    }
+
+    /**
+     * Checks if the game is still going.
+     *
+     * @return True if the player to move has a valid move.
+     */
+    private boolean hasMoves() {
+        return board.getValidMoves(playerID) != 0;
+    }
+}
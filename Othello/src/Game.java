@@ -1,6 +1,7 @@
 import javax.swing.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.IOException;
 
 /**
  * Othello
@@ -9,14 +10,29 @@ import java.awt.event.KeyListener;
  * Game class:
  * Defines the entry point for the game by creating the frame,
  * and populating it with a GamePanel.
+ *
+ * Starting with --profile turns on Metrics, which prints percentiles for the move generation,
+ * move, AI, and paint times on exit and writes a flight recording to othello.jfr, or to FILE.
+ *
+ * Usage: java Game [--profile[=FILE]]
  */
 public class Game implements KeyListener {
     /**
      * Entry point for the application to create an instance of the Game class.
      *
-     * @param args Not used.
+     * @param args Optional --profile or --profile=FILE to measure the game while it is played.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        for(String arg : args) {
+            if(arg.equals("--profile")) {
+                Metrics.enable(Metrics.DEFAULT_RECORDING_FILE);
+            } else if(arg.startsWith("--profile=")) {
+                Metrics.enable(arg.substring("--profile=".length()));
+            } else {
+                System.out.println("Usage: java Game [--profile[=FILE]]");
+                return;
+            }
+        }
         Game game = new Game();
     }
 
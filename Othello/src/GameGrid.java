@@ -1,5 +1,7 @@
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -9,6 +11,9 @@ import java.util.List;
  * GameGrid class:
  * Manages a grid of GridCells providing methods to
  * draw and check the state of them.
+ * The grid is drawn into a cached image where only the cells that changed since the
+ * last paint are drawn again. Every kind of cell is drawn once into its own layer image
+ * on top of the grid lines, so drawing a cell again is a single copy from a layer.
  */
 public class GameGrid extends Rectangle {
     /**
@@ -24,6 +29,112 @@ public class GameGrid extends Rectangle {
      * A list of valid moves used for testing of who can play a move and showing valid moves.
      */
     private List<Position> validMoves;
+    /**
+     * Bit mask board engine used for all rule checks when the grid is 8x8.
+     * Null for any other grid size, in which case largeBoard is used.
+     */
+    private BitBoard bitBoard;
+    /**
+     * Packed bit set board engine used for all rule checks when the grid is not 8x8.
+     * It keeps the valid moves of both players up to date itself. Null for an 8x8 grid.
+     */
+    private LargeBoard largeBoard;
+    /**
+     * Valid moves for both players indexed by player ID, when the grid is 8x8. Both are recalculated
+     * after every move with whole-mask shifts, which is cheaper than finding which cells changed.
+     */
+    private long[] validMoveMasks;
+    /**
+     * Number of valid moves for each player indexed by player ID when the grid is 8x8,
+     * so checking if a player has to pass is free.
+     */
+    private int[] validMoveCounts;
+    /**
+     * One shared Position for every cell, used to fill the valid move list without creating new objects.
+     */
+    private Position[][] cellPositions;
+    /**
+     * Reused buffer of changed cell indexes for playMove on grids that are not 8x8.
+     */
+    private int[] changedBuffer;
+    /**
+     * The player whose moves are in the valid move list.
+     */
+    private int validMovesPlayer;
+    /**
+     * The latest unchangeable copy of an 8x8 position, replaced every time the valid moves are updated.
+     * Volatile so other threads always read the newest one.
+     */
+    private volatile PositionSnapshot snapshot;
+    /**
+     * Cell index (x + y*gridWidth) of every move played, oldest first. Moves past historySize
+     * have been taken back and can be played again with redoMove().
+     */
+    private int[] historyMoves;
+    /**
+     * Player ID of the player who played each move in the history.
+     */
+    private int[] historyPlayers;
+    /**
+     * The move number from before each move in the history.
+     */
+    private int[] historyMoveNumbers;
+    /**
+     * The player whose moves were in the valid move list before each move in the history.
+     */
+    private int[] historyValidMovesPlayers;
+    /**
+     * Mask of the pieces swapped by each move in the history, when the grid is 8x8.
+     */
+    private long[] historyFlipMasks;
+    /**
+     * Indexes of the pieces swapped by each move in the history, when the grid is not 8x8.
+     * The pieces of each move follow straight after those of the move before it.
+     */
+    private int[] historyFlipCells;
+    /**
+     * Position in historyFlipCells of the first piece swapped by each move in the history.
+     */
+    private int[] historyFlipStarts;
+    /**
+     * Number of pieces swapped by each move in the history.
+     */
+    private int[] historyFlipCounts;
+    /**
+     * Number of moves currently played from the history.
+     */
+    private int historySize;
+    /**
+     * Number of moves in the history including those that have been taken back.
+     */
+    private int historyEnd;
+    /**
+     * Colour behind the grid. The cached images are filled with it so they can be copied without blending.
+     */
+    private Color backgroundColour = Color.LIGHT_GRAY;
+    /**
+     * Number of layer images: empty, black, white, and highlighted.
+     */
+    private static final int LAYERS = 4;
+    /**
+     * Layer of highlighted empty cells. The other layers are indexed by cell state.
+     */
+    private static final int HIGHLIGHT_LAYER = 3;
+
+    /**
+     * The grid lines on the background with every cell drawn the same way, one image for each
+     * kind of cell. A cell is drawn again by copying its area from the matching layer.
+     * Null until the first paint.
+     */
+    private BufferedImage[] layerImages;
+    /**
+     * The whole grid as it was last painted. Null until the first paint.
+     */
+    private BufferedImage gridImage;
+    /**
+     * Graphics kept open for drawing changed cells into gridImage, offset so cells draw at their own positions.
+     */
+    private Graphics2D gridImageGraphics;
 
     /**
      * Creates a grid of GridCells with the specified offset and sizing.
@@ -37,16 +148,40 @@ public class GameGrid extends Rectangle {
     public GameGrid(Position position, int width, int height, int gridWidth, int gridHeight) {
         super(position, width, height);
         grid = new GridCell[gridWidth][gridHeight];
+        cellPositions = new Position[gridWidth][gridHeight];
         int cellWidth = (width-position.x)/gridWidth;
         int cellHeight = (height-position.y)/gridHeight;
         for(int x = 0; x < gridWidth; x++) {
             for(int y = 0; y < gridHeight; y++) {
                 grid[x][y] = new GridCell(new Position(position.x+cellWidth*x, position.y+cellHeight*y),
                         cellWidth, cellHeight);
+                cellPositions[x][y] = new Position(x, y);
             }
         }
+        if(gridWidth == BitBoard.SIZE && gridHeight == BitBoard.SIZE) {
+            bitBoard = new BitBoard();
+            validMoveMasks = new long[3];
+        } else {
+            largeBoard = new LargeBoard(gridWidth, gridHeight);
+            changedBuffer = new int[gridWidth + gridHeight];
+        }
+        // Every move fills an empty cell, so there can never be more moves than cells.
+        int cells = gridWidth * gridHeight;
+        historyMoves = new int[cells];
+        historyPlayers = new int[cells];
+        historyMoveNumbers = new int[cells];
+        historyValidMovesPlayers = new int[cells];
+        if(bitBoard != null) {
+            historyFlipMasks = new long[cells];
+        } else {
+            historyFlipCells = new int[cells * 2];
+            historyFlipStarts = new int[cells];
+            historyFlipCounts = new int[cells];
+        }
+        validMoveCounts = new int[3];
         moveNumber = 0;
         validMoves = new ArrayList<>();
+        recalculateMoveSets();
         updateValidMoves(1);
     }
 
@@ -59,12 +194,72 @@ public class GameGrid extends Rectangle {
                 grid[x][y].reset();
             }
         }
+        if(bitBoard != null) {
+            bitBoard.reset();
+        } else {
+            largeBoard.reset();
+        }
         moveNumber = 0;
+        clearHistory();
+        recalculateMoveSets();
         updateValidMoves(1);
     }
 
     /**
-     * Gets the grid cell data.
+     * Gets the bit mask board engine that mirrors the grid.
+     *
+     * @return The BitBoard for an 8x8 grid, or null for any other grid size.
+     */
+    public BitBoard getBitBoard() {
+        return bitBoard;
+    }
+
+    /**
+     * Gets the packed bit set board engine that mirrors the grid.
+     *
+     * @return The LargeBoard for any grid that is not 8x8, or null for an 8x8 grid.
+     */
+    public LargeBoard getLargeBoard() {
+        return largeBoard;
+    }
+
+    /**
+     * Replaces the pieces on an 8x8 grid with the pieces on a BitBoard, then updates the valid moves
+     * for the specified player. Used to set up positions that were not reached by playing on this grid.
+     *
+     * @param board The board to copy the pieces from.
+     * @param playerID The player to move.
+     */
+    public void setPosition(BitBoard board, int playerID) {
+        if(bitBoard == null) {
+            throw new IllegalStateException("Positions can only be set on an 8x8 grid.");
+        }
+        bitBoard.setPieces(board.getBlack(), board.getWhite());
+        for(int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[0].length; y++) {
+                grid[x][y].setCellState(bitBoard.getCellState(x, y));
+            }
+        }
+        moveNumber = bitBoard.getMoveNumber();
+        clearHistory();
+        recalculateMoveSets();
+        updateValidMoves(playerID);
+    }
+
+    /**
+     * Gets a copy of the current position that can not change, so it can be read from any thread
+     * without locks. A new snapshot is made after every move, undo, and reset, and whenever the
+     * valid moves are shown for a different player, so a player passing is included as well.
+     *
+     * @return The current position on an 8x8 grid, or null for any other grid size.
+     */
+    public PositionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the grid cell data. The cells are changed by every move on the Swing thread, so they
+     * must not be modified and should only be read from that thread; use getSnapshot() elsewhere.
      *
      * @return The array of all grid cells.
      */
@@ -72,8 +267,21 @@ public class GameGrid extends Rectangle {
         return grid;
     }
 
+    /**
+     * Gets the Position of a cell that is shared with the grid, so moves can be played without creating objects.
+     * The position must not be modified.
+     *
+     * @param x X coordinate on the grid.
+     * @param y Y coordinate on the grid.
+     * @return The shared Position of the cell.
+     */
+    public Position getCellPosition(int x, int y) {
+        return cellPositions[x][y];
+    }
+
     /**
      * Searches the grid to find all currently valid moves.
+     * The list and the positions in it are shared with the grid and must not be modified.
      *
      * @return A list containing all valid moves.
      */
@@ -81,21 +289,162 @@ public class GameGrid extends Rectangle {
         return validMoves;
     }
 
+    /**
+     * Checks if a player has any valid moves. Both players' moves are kept up to date after every move,
+     * so this does not need to search the grid.
+     *
+     * @param playerID The player to check.
+     * @return True if the player has at least one valid move.
+     */
+    public boolean hasValidMoves(int playerID) {
+        if(largeBoard != null) {
+            return largeBoard.getValidMoveCount(playerID) > 0;
+        }
+        return validMoveCounts[playerID] > 0;
+    }
+
+    /**
+     * Gets the valid moves of a player on an 8x8 grid as a mask, with bit x + y*8 set for each valid move.
+     *
+     * @param playerID The player to get the moves of.
+     * @return Mask of the valid moves.
+     */
+    public long getValidMoveMask(int playerID) {
+        if(bitBoard == null) {
+            throw new IllegalStateException("Move masks are only available on an 8x8 grid.");
+        }
+        return validMoveMasks[playerID];
+    }
+
     /**
      * Plays the move and swaps all adjacent cells that should be swapped.
-     * Then updates the valid move list to match the opposite player.
+     * Then updates both players' valid moves and shows those of the opposite player.
+     * The move is recorded in the history so it can be taken back with unmakeMove().
      *
      * @param position Grid position to play the move at.
      * @param player The player ID of the player who is placing their piece.
      */
     public void playMove(Position position, int player) {
+        long startTime = Metrics.startTimer();
+        int entry = pushHistory(position.x + position.y * grid.length, player);
         moveNumber++;
         grid[position.x][position.y].setCellState(player);
-        List<Position> changeCellPositions = getChangedPositionsForMove(position, player);
-        for(Position swapPosition : changeCellPositions) {
-            grid[swapPosition.x][swapPosition.y].setCellState(player);
+        if(bitBoard != null) {
+            long flips = bitBoard.playMove(BitBoard.toIndex(position.x, position.y), player);
+            historyFlipMasks[entry] = flips;
+            for(; flips != 0; flips &= flips - 1) {
+                int index = Long.numberOfTrailingZeros(flips);
+                grid[index % BitBoard.SIZE][index / BitBoard.SIZE].setCellState(player);
+            }
+            recalculateMoveSets();
+        } else {
+            int changedCount = largeBoard.playMove(position.x, position.y, player, changedBuffer);
+            for(int i = 0; i < changedCount; i++) {
+                grid[changedBuffer[i] % grid.length][changedBuffer[i] / grid.length].setCellState(player);
+            }
+            recordFlipCells(entry, changedCount);
         }
         updateValidMoves(player == 1 ? 2 : 1);
+        Metrics.recordMoveApplication(startTime, player, position.x + position.y * grid.length);
+    }
+
+    /**
+     * Takes back the last move played, putting back the swapped pieces, the move number,
+     * and the valid moves shown before it was played. The move stays in the history so it
+     * can be played again with redoMove() until a different move is played.
+     *
+     * @return The player ID of the player whose move was taken back, or 0 if there were no moves to take back.
+     */
+    public int unmakeMove() {
+        if(historySize == 0) {
+            return 0;
+        }
+        int entry = --historySize;
+        int player = historyPlayers[entry];
+        int otherPlayer = player == 1 ? 2 : 1;
+        int x = historyMoves[entry] % grid.length;
+        int y = historyMoves[entry] / grid.length;
+        moveNumber = historyMoveNumbers[entry];
+        grid[x][y].setCellState(0);
+        if(bitBoard != null) {
+            long flips = historyFlipMasks[entry];
+            bitBoard.undoMove(historyMoves[entry], flips, player);
+            for(; flips != 0; flips &= flips - 1) {
+                int index = Long.numberOfTrailingZeros(flips);
+                grid[index % BitBoard.SIZE][index / BitBoard.SIZE].setCellState(otherPlayer);
+            }
+            recalculateMoveSets();
+        } else {
+            int changedCount = historyFlipCounts[entry];
+            System.arraycopy(historyFlipCells, historyFlipStarts[entry], changedBuffer, 0, changedCount);
+            for(int i = 0; i < changedCount; i++) {
+                grid[changedBuffer[i] % grid.length][changedBuffer[i] / grid.length].setCellState(otherPlayer);
+            }
+            largeBoard.undoMove(x, y, player, changedBuffer, changedCount);
+        }
+        updateValidMoves(historyValidMovesPlayers[entry]);
+        return player;
+    }
+
+    /**
+     * Plays the next move that was taken back with unmakeMove() again.
+     *
+     * @return The player ID of the player whose move was played, or 0 if there were no moves to play again.
+     */
+    public int redoMove() {
+        if(historySize == historyEnd) {
+            return 0;
+        }
+        int player = historyPlayers[historySize];
+        int move = historyMoves[historySize];
+        playMove(cellPositions[move % grid.length][move / grid.length], player);
+        return player;
+    }
+
+    /**
+     * Checks if there is a move that can be taken back.
+     *
+     * @return True if unmakeMove() would take back a move.
+     */
+    public boolean canUndo() {
+        return historySize > 0;
+    }
+
+    /**
+     * Checks if there is a taken back move that can be played again.
+     *
+     * @return True if redoMove() would play a move.
+     */
+    public boolean canRedo() {
+        return historySize < historyEnd;
+    }
+
+    /**
+     * Gets the number of moves that can currently be taken back.
+     *
+     * @return The number of moves in the history that have not been taken back.
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Gets a move from the history.
+     *
+     * @param move Index of the move from the start of the game, less than getHistorySize().
+     * @return The cell index (x + y*gridWidth) of the move.
+     */
+    public int getHistoryMove(int move) {
+        return historyMoves[move];
+    }
+
+    /**
+     * Gets the player ID of the player who played the next move that redoMove() would play.
+     *
+     * @return The player ID, or 0 if there is nothing to play again.
+     */
+    public int getRedoPlayer() {
+        return canRedo() ? historyPlayers[historySize] : 0;
     }
 
     /**
@@ -120,7 +469,25 @@ public class GameGrid extends Rectangle {
      * @return True if the position can be played as a valid move by the current player.
      */
     public boolean isValidMove(Position position) {
-        return getAllValidMoves().contains(position);
+        return isValidMove(position.x, position.y);
+    }
+
+    /**
+     * Checks if a cell is a valid move for the player whose moves are in the valid move list.
+     * Looks the cell up in the move set directly instead of searching the list.
+     *
+     * @param x X coordinate on the grid.
+     * @param y Y coordinate on the grid.
+     * @return True if the cell can be played as a valid move by the current player.
+     */
+    public boolean isValidMove(int x, int y) {
+        if(!inBounds(x, y)) {
+            return false;
+        }
+        if(bitBoard != null) {
+            return (validMoveMasks[validMovesPlayer] & (1L << BitBoard.toIndex(x, y))) != 0;
+        }
+        return largeBoard.isValidMove(x, y, validMovesPlayer);
     }
 
     /**
@@ -130,24 +497,38 @@ public class GameGrid extends Rectangle {
      * @return 0 for no winner, 3 for draw, 1 for player 1, and 2 for player 2.
      */
     public int getWinner(boolean stillValidMoves) {
-        int[] counts = new int[3];
-        for(int y = 0; y < grid[0].length; y++) {
-            for(int x = 0; x < grid.length; x++) {
-                counts[grid[x][y].getCellState()]++;
-            }
+        if(bitBoard != null) {
+            return bitBoard.getWinner(stillValidMoves);
         }
-
-        if(stillValidMoves && counts[0] > 0) return 0;
-        else if(counts[1] == counts[2]) return 3;
-        else return counts[1] > counts[2] ? 1 : 2;
+        return largeBoard.getWinner(stillValidMoves);
     }
 
     /**
-     * Draws grid lines to box in the cells, and then draws the content of all GridCells.
+     * Draws the cells that changed since the last paint into the cached image, then draws the image.
      *
      * @param g Reference to the Graphics object for rendering.
      */
     public void paint(Graphics g) {
+        if(gridImage == null) {
+            createImages();
+        }
+        for(int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[0].length; y++) {
+                if(grid[x][y].isChanged()) {
+                    paintCellToImage(grid[x][y]);
+                }
+            }
+        }
+        g.drawImage(gridImage, position.x, position.y, null);
+    }
+
+    /**
+     * Draws grid lines to box in the cells, and then draws the content of all GridCells straight
+     * onto the graphics without using the cached image. Used to compare against paint().
+     *
+     * @param g Reference to the Graphics object for rendering.
+     */
+    public void paintAllCells(Graphics g) {
         drawGridLines(g);
         for(int x = 0; x < grid.length; x++) {
             for (int y = 0; y < grid[0].length; y++) {
@@ -156,6 +537,101 @@ public class GameGrid extends Rectangle {
         }
     }
 
+    /**
+     * Finds the area covered by the cells that changed since the last paint, so only that area needs repainting.
+     *
+     * @return The bounds of the changed cells, or null if no cells have changed.
+     */
+    public Rectangle getChangedBounds() {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for(int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[0].length; y++) {
+                GridCell cell = grid[x][y];
+                if(!cell.isChanged()) continue;
+                minX = Math.min(minX, cell.position.x);
+                minY = Math.min(minY, cell.position.y);
+                maxX = Math.max(maxX, cell.position.x + cell.width);
+                maxY = Math.max(maxY, cell.position.y + cell.height);
+            }
+        }
+        if(minX > maxX) return null;
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Sets the colour behind the grid, which should match the panel it is drawn on.
+     *
+     * @param backgroundColour The colour behind the grid.
+     */
+    public void setBackgroundColour(Color backgroundColour) {
+        this.backgroundColour = backgroundColour;
+        gridImage = null;
+    }
+
+    /**
+     * Creates the layer images and the cached grid image. One pixel is added to the size
+     * for the lines along the right and bottom edges. The images are filled with the
+     * background so they can be copied without blending.
+     */
+    private void createImages() {
+        layerImages = new BufferedImage[LAYERS];
+        for(int layer = 0; layer < LAYERS; layer++) {
+            layerImages[layer] = new BufferedImage(width + 1, height + 1, BufferedImage.TYPE_INT_RGB);
+            Graphics2D layerGraphics = layerImages[layer].createGraphics();
+            layerGraphics.setColor(backgroundColour);
+            layerGraphics.fillRect(0, 0, width + 1, height + 1);
+            layerGraphics.translate(-position.x, -position.y);
+            drawGridLines(layerGraphics);
+            for(int x = 0; x < grid.length; x++) {
+                for (int y = 0; y < grid[0].length; y++) {
+                    if(layer == HIGHLIGHT_LAYER) {
+                        grid[x][y].paint(layerGraphics, 0, true);
+                    } else {
+                        grid[x][y].paint(layerGraphics, layer, false);
+                    }
+                }
+            }
+            layerGraphics.dispose();
+        }
+
+        if(gridImageGraphics != null) {
+            gridImageGraphics.dispose();
+        }
+        gridImage = new BufferedImage(width + 1, height + 1, BufferedImage.TYPE_INT_RGB);
+        gridImageGraphics = gridImage.createGraphics();
+        gridImageGraphics.drawImage(layerImages[0], 0, 0, null);
+        gridImageGraphics.translate(-position.x, -position.y);
+        for(int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[0].length; y++) {
+                paintCellToImage(grid[x][y]);
+            }
+        }
+    }
+
+    /**
+     * Draws a cell into the cached image again by copying its area from the layer that matches it.
+     * This replaces whatever the cell showed before, so the result is the same as drawing the
+     * lines and then every cell. A highlighted cell with a piece, which never happens in a game,
+     * is drawn over the highlight layer instead.
+     *
+     * @param cell The cell to draw.
+     */
+    private void paintCellToImage(GridCell cell) {
+        int x1 = cell.position.x;
+        int y1 = cell.position.y;
+        int x2 = x1 + cell.width;
+        int y2 = y1 + cell.height;
+        int state = cell.getCellState();
+        BufferedImage layer = layerImages[cell.isHighlighted() ? HIGHLIGHT_LAYER : state];
+        gridImageGraphics.drawImage(layer, x1, y1, x2, y2,
+                x1 - position.x, y1 - position.y, x2 - position.x, y2 - position.y, null);
+        if(cell.isHighlighted() && state != 0) {
+            cell.paint(gridImageGraphics, state, false);
+        }
+        cell.clearChanged();
+    }
+
     /**
      * Draws lines to create boxes around all the positions where GridCells are located.
      *
@@ -177,42 +653,99 @@ public class GameGrid extends Rectangle {
     }
 
     /**
-     * Updates the list of valid moves based on the current game state.
-     * Leaves only the current moves highlighted.
+     * Updates the list of valid moves to show the moves of the specified player.
+     * Leaves only the current moves highlighted. The moves themselves are already
+     * known for both players, so this only copies them into the list.
      *
      * @param playerID The current player to update the move list with.
      */
     public void updateValidMoves(int playerID) {
+        long startTime = Metrics.startTimer();
         // Remove all highlighted elements so they are not valid moves visually
         for(Position validMove : validMoves) {
             grid[validMove.x][validMove.y].setHighlight(false);
         }
         validMoves.clear();
-        // When in the first 4 turns only the middle 4 cells can be played.
-        if(moveNumber < 4) {
-            int midX = grid.length/2-1;
-            int midY = grid[0].length/2-1;
-            for (int x = midX; x < midX+2; x++) {
-                for (int y = midY; y < midY+2; y++) {
-                    if (grid[x][y].getCellState() == 0) {
-                        validMoves.add(new Position(x, y));
-                    }
-                }
+        validMovesPlayer = playerID;
+        if(bitBoard != null) {
+            long moves = validMoveMasks[playerID];
+            for(; moves != 0; moves &= moves - 1) {
+                int index = Long.numberOfTrailingZeros(moves);
+                validMoves.add(cellPositions[index % BitBoard.SIZE][index / BitBoard.SIZE]);
             }
+            snapshot = new PositionSnapshot(bitBoard, playerID);
         } else {
-            // Otherwise find valid moves for the current player that change adjacent pieces
-            for (int x = 0; x < grid.length; x++) {
-                for (int y = 0; y < grid[0].length; y++) {
-                    if (grid[x][y].getCellState() == 0 && getChangedPositionsForMove(new Position(x,y),playerID).size()>0) {
-                        validMoves.add(new Position(x, y));
-                    }
-                }
+            for(int index = largeBoard.nextValidMove(playerID, 0); index >= 0;
+                    index = largeBoard.nextValidMove(playerID, index + 1)) {
+                validMoves.add(cellPositions[index % grid.length][index / grid.length]);
             }
         }
         // Visually update all valid move positions to show with a highlight
         for(Position validMove : validMoves) {
             grid[validMove.x][validMove.y].setHighlight(true);
         }
+        Metrics.recordMoveGeneration(startTime, playerID, validMoves.size());
+    }
+
+    /**
+     * Forgets every move in the history. Used when the grid is changed without playing moves.
+     */
+    private void clearHistory() {
+        historySize = 0;
+        historyEnd = 0;
+    }
+
+    /**
+     * Adds a move to the end of the history along with the state needed to take it back.
+     * Playing the same move that redoMove() would play keeps the moves after it,
+     * but any other move replaces them.
+     *
+     * @param move Cell index (x + y*gridWidth) of the move.
+     * @param player The player ID of the player playing the move.
+     * @return The position of the move in the history.
+     */
+    private int pushHistory(int move, int player) {
+        int entry = historySize++;
+        if(entry >= historyEnd || historyMoves[entry] != move || historyPlayers[entry] != player) {
+            historyEnd = historySize;
+        }
+        historyMoves[entry] = move;
+        historyPlayers[entry] = player;
+        historyMoveNumbers[entry] = moveNumber;
+        historyValidMovesPlayers[entry] = validMovesPlayer;
+        return entry;
+    }
+
+    /**
+     * Copies the swapped cell indexes in changedBuffer into the history for a move on a grid that is not 8x8.
+     * The buffer only grows when a game swaps more than two pieces per move on average.
+     *
+     * @param entry Position of the move in the history.
+     * @param changedCount Number of indexes in changedBuffer.
+     */
+    private void recordFlipCells(int entry, int changedCount) {
+        int start = entry == 0 ? 0 : historyFlipStarts[entry - 1] + historyFlipCounts[entry - 1];
+        if(start + changedCount > historyFlipCells.length) {
+            historyFlipCells = Arrays.copyOf(historyFlipCells, Math.max(historyFlipCells.length * 2, start + changedCount));
+        }
+        System.arraycopy(changedBuffer, 0, historyFlipCells, start, changedCount);
+        historyFlipStarts[entry] = start;
+        historyFlipCounts[entry] = changedCount;
+    }
+
+    /**
+     * Finds the valid moves of both players from scratch on an 8x8 grid.
+     * Any other grid size keeps its moves up to date in largeBoard.
+     */
+    private void recalculateMoveSets() {
+        if(bitBoard == null) {
+            return;
+        }
+        // The bit board applies both the opening and the swapping rules at once.
+        for(int playerID = 1; playerID <= 2; playerID++) {
+            validMoveMasks[playerID] = bitBoard.getValidMoves(playerID);
+            validMoveCounts[playerID] = Long.bitCount(validMoveMasks[playerID]);
+        }
     }
 
     /**
@@ -225,46 +758,68 @@ public class GameGrid extends Rectangle {
      */
     public List<Position> getChangedPositionsForMove(Position position, int playerID) {
         List<Position> result = new ArrayList<>();
-        result.addAll(getChangedPositionsForMoveInDirection(position, playerID, Position.DOWN));
-        result.addAll(getChangedPositionsForMoveInDirection(position, playerID, Position.LEFT));
-        result.addAll(getChangedPositionsForMoveInDirection(position, playerID, Position.UP));
-        result.addAll(getChangedPositionsForMoveInDirection(position, playerID, Position.RIGHT));
+        if(bitBoard != null) {
+            long flips = bitBoard.getFlips(BitBoard.toIndex(position.x, position.y), playerID);
+            for(; flips != 0; flips &= flips - 1) {
+                result.add(BitBoard.toPosition(Long.numberOfTrailingZeros(flips)));
+            }
+            return result;
+        }
+        int[] changedCells = new int[grid.length + grid[0].length];
+        int changedCount = largeBoard.getFlips(position.x, position.y, playerID, changedCells);
+        for(int i = 0; i < changedCount; i++) {
+            result.add(new Position(changedCells[i] % grid.length, changedCells[i] / grid.length));
+        }
         return result;
     }
 
     /**
-     * Tests for a single given direction finding all cells that would be changed from the given position.
+     * Finds the pieces that would swap if the player played at a cell of an 8x8 grid, as a mask.
+     * Does not create any objects.
      *
-     * @param position Grid position to check outward from.
+     * @param x X coordinate to check outward from.
+     * @param y Y coordinate to check outward from.
      * @param playerID Current player to test with.
-     * @param direction Direction of motion to test in.
-     * @return A list of all positions that were changed in the given direction if the position was played as a move.
+     * @return Mask with bit x + y*8 set for every piece that would swap. Will be 0 if the move is invalid.
      */
-    private List<Position> getChangedPositionsForMoveInDirection(Position position, int playerID, Position direction) {
-        List<Position> result = new ArrayList<>();
-        Position movingPos = new Position(position);
-        int otherPlayer = playerID == 1 ? 2 : 1;
-        movingPos.add(direction);
-        // Keep moving while there are positions that would be changed.
-        while(inBounds(movingPos) && grid[movingPos.x][movingPos.y].getCellState() == otherPlayer) {
-            result.add(new Position(movingPos));
-            movingPos.add(direction);
-        }
-        // If the end position is off the board, or the end playerID does not match the player, that
-        // means that the move would not give any valid swaps in this direction.
-        if(!inBounds(movingPos) || grid[movingPos.x][movingPos.y].getCellState() != playerID) {
-            result.clear();
+    public long getChangedMask(int x, int y, int playerID) {
+        if(bitBoard == null) {
+            throw new IllegalStateException("Change masks are only available on an 8x8 grid.");
         }
-        return result;
+        return bitBoard.getFlips(BitBoard.toIndex(x, y), playerID);
+    }
+
+    /**
+     * Finds the pieces that would swap if the player played at a cell, writing their indexes
+     * (x + y*gridWidth) into a buffer supplied by the caller. Works on any grid size and does not create any objects.
+     * The indexes are written in the same order as getChangedPositionsForMove().
+     *
+     * @param x X coordinate to check outward from.
+     * @param y Y coordinate to check outward from.
+     * @param playerID Current player to test with.
+     * @param buffer Receives the changed cell indexes. Must hold at least gridWidth + gridHeight values.
+     * @return The number of indexes written. Will be 0 if the move is invalid.
+     */
+    public int getChangedCells(int x, int y, int playerID, int[] buffer) {
+        int count = 0;
+        if(bitBoard != null) {
+            long flips = bitBoard.getFlips(BitBoard.toIndex(x, y), playerID);
+            for(; flips != 0; flips &= flips - 1) {
+                buffer[count++] = Long.numberOfTrailingZeros(flips);
+            }
+            return count;
+        }
+        return largeBoard.getFlips(x, y, playerID, buffer);
     }
 
     /**
-     * Test a given grid position if it is valid.
+     * Test a given grid coordinate if it is valid.
      *
-     * @param position Grid position to test if valid.
-     * @return True if the grid position is on the grid.
+     * @param x X coordinate to test.
+     * @param y Y coordinate to test.
+     * @return True if the grid coordinate is on the grid.
      */
-    private boolean inBounds(Position position) {
-        return !(position.x < 0 || position.y < 0 || position.x >= grid.length || position.y >= grid[0].length);
+    private boolean inBounds(int x, int y) {
+        return !(x < 0 || y < 0 || x >= grid.length || y >= grid[0].length);
     }
 }
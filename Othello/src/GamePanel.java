@@ -1,8 +1,12 @@
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.util.Arrays;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Othello
@@ -11,6 +15,12 @@ import java.awt.event.MouseListener;
  * GamePanel class:
  * Controls the game state through clicks to iterate between
  * current turns and changing to a game over state once the game ends.
+ * The AI thinks on a background thread so the window keeps painting and taking input,
+ * and ponders on the player's turn so it can often reply straight away.
+ * After a change only the cells that changed and the message at the bottom are repainted.
+ * Pressing H turns on the analysis, which scores every move of the person to move on a background
+ * thread and shows the scores on the highlighted cells with the best move marked, getting more
+ * accurate as the search goes deeper.
  */
 public class GamePanel extends JPanel implements MouseListener {
     /**
@@ -31,6 +41,47 @@ public class GamePanel extends JPanel implements MouseListener {
      * Width of the panel.
      */
     private static final int PANEL_WIDTH = 500;
+    /**
+     * Time the Search AI is allowed to think about each move in milliseconds.
+     */
+    private static final long SEARCH_TIME_MILLIS = 1000;
+    /**
+     * Number of threads the Search AI and MCTS AI search with.
+     */
+    private static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Time the MCTS AI is allowed to think about each move in milliseconds.
+     */
+    private static final long MCTS_TIME_MILLIS = 1000;
+    /**
+     * Time between each step of the thinking animation in milliseconds.
+     */
+    private static final int THINKING_ANIMATION_MILLIS = 300;
+    /**
+     * Height of the area at the bottom of the panel where the game state message is drawn.
+     */
+    private static final int MESSAGE_AREA_HEIGHT = 100;
+    /**
+     * Font of the game state message.
+     */
+    private static final Font MESSAGE_FONT = new Font("Arial", Font.BOLD, 35);
+    /**
+     * Message shown while the AI is choosing a move, without its dots.
+     */
+    private static final String THINKING_MESSAGE = "White AI Thinking";
+    /**
+     * The thinking message with each number of dots, so the animation does not build new strings.
+     */
+    private static final String[] THINKING_MESSAGES = {THINKING_MESSAGE, THINKING_MESSAGE + ".",
+            THINKING_MESSAGE + "..", THINKING_MESSAGE + "..."};
+    /**
+     * Font of the move scores shown by the analysis.
+     */
+    private static final Font ANALYSIS_FONT = new Font("Arial", Font.BOLD, 14);
+    /**
+     * Colour of the box drawn around the best move found by the analysis.
+     */
+    private static final Color BEST_MOVE_COLOUR = new Color(0, 110, 0);
 
     /**
      * The grid of positions controlling maintaining the game state of the board.
@@ -48,7 +99,58 @@ public class GamePanel extends JPanel implements MouseListener {
     /**
      * Null for PvP or set to an AI behaviour to make the AI play out the white turns.
      */
-    private SimpleAI aiBehaviour;
+    private AIBehaviour aiBehaviour;
+    /**
+     * Book of opening moves played instantly by the Search AI, or null if the book file could not be opened.
+     */
+    private OpeningBook openingBook;
+    /**
+     * Runs the AI's turns and pondering one at a time on a background thread.
+     */
+    private final ExecutorService aiExecutor;
+    /**
+     * Counts the work given to the AI. Work that was given out before the latest
+     * change is skipped, and its results are ignored. Only changed on the Swing thread.
+     */
+    private volatile int aiRequest;
+    /**
+     * True while the AI is choosing a move. Clicks on the grid are ignored until it has moved.
+     */
+    private boolean aiThinking;
+    /**
+     * Repaints the thinking message while the AI is choosing a move.
+     */
+    private final Timer thinkingTimer;
+    /**
+     * Number of dots currently shown after the thinking message.
+     */
+    private int thinkingDots;
+    /**
+     * The message shown by the last paint, used to skip repainting the message when it has not changed.
+     */
+    private String paintedMessage;
+    /**
+     * Scores the moves in the background while the analysis is on, otherwise null.
+     */
+    private BackgroundAnalyser analyser;
+    /**
+     * The analysis shown on the grid, or null if there is none for the current position.
+     * Only used on the Swing thread.
+     */
+    private BackgroundAnalyser.Result analysis;
+    /**
+     * Writes finished games to the game record file on a background thread, so the window never waits on the file.
+     */
+    private final ExecutorService recordExecutor;
+    /**
+     * The game record file, opened by the first game that finishes and kept open. Only used on the record thread.
+     */
+    private GameRecordWriter gameRecord;
+    /**
+     * Moves of the last game recorded since the restart, or null. Taking back the final move and playing it
+     * again ends the same game a second time, which is not recorded again. Only used on the Swing thread.
+     */
+    private int[] recordedMoves;
 
     /**
      * Configures the game ready to be played including selection of playing against either
@@ -58,7 +160,23 @@ public class GamePanel extends JPanel implements MouseListener {
         setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
         setBackground(Color.LIGHT_GRAY);
 
-        gameGrid = new GameGrid(new Position(0,0), PANEL_WIDTH, PANEL_HEIGHT-100, 8, 8);
+        gameGrid = new GameGrid(new Position(0,0), PANEL_WIDTH, PANEL_HEIGHT-MESSAGE_AREA_HEIGHT, 8, 8);
+        gameGrid.setBackgroundColour(getBackground());
+        openingBook = loadOpeningBook();
+        aiExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AI");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recordExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Game Record");
+            thread.setDaemon(true);
+            return thread;
+        });
+        thinkingTimer = new Timer(THINKING_ANIMATION_MILLIS, e -> {
+            thinkingDots = (thinkingDots + 1) % THINKING_MESSAGES.length;
+            repaintChanges();
+        });
         setGameState(GameState.BTurn);
         chooseAIType();
         addMouseListener(this);
@@ -70,23 +188,38 @@ public class GamePanel extends JPanel implements MouseListener {
      * @param g Reference to the Graphics object for rendering.
      */
     public void paint(Graphics g) {
+        long startTime = Metrics.startTimer();
         super.paint(g);
         gameGrid.paint(g);
+        drawAnalysis(g);
         drawGameState(g);
+        if(startTime != 0) {
+            // Without a clip the whole panel was painted.
+            java.awt.Rectangle clip = g.getClipBounds(new java.awt.Rectangle(getWidth(), getHeight()));
+            Metrics.recordPaint(startTime, clip.width, clip.height);
+        }
     }
 
     /**
      * Resets the grid and returns the turn back to default.
      */
     public void restart() {
+        cancelAI();
         gameGrid.reset();
+        recordedMoves = null;
         setGameState(GameState.BTurn);
+        updateAI();
     }
 
 
     /**
      * Handles the key input to have Escape exit the game,
-     * R will restart the game, and A will swap the AI mode.
+     * R will restart the game, A will swap the AI mode,
+     * Z will take back the last move, Y will play a taken back move again,
+     * and H will turn the analysis of the moves on or off.
+     * When playing against the AI, the AI's moves are taken back and played again
+     * along with the player's so it is always the player's turn afterwards.
+     * Anything the AI was thinking about is abandoned first.
      *
      * @param keyCode The key that was pressed.
      */
@@ -95,9 +228,25 @@ public class GamePanel extends JPanel implements MouseListener {
             System.exit(0);
         } else if(keyCode == KeyEvent.VK_R) {
             restart();
-            repaint();
+            repaintChanges();
         } else if(keyCode == KeyEvent.VK_A) {
             chooseAIType();
+        } else if(keyCode == KeyEvent.VK_Z) {
+            cancelAI();
+            do {
+                undoTurn();
+            } while(aiBehaviour != null && gameState == GameState.WTurn && gameGrid.canUndo());
+            updateAI();
+            repaintChanges();
+        } else if(keyCode == KeyEvent.VK_Y) {
+            cancelAI();
+            do {
+                redoTurn();
+            } while(aiBehaviour != null && gameState == GameState.WTurn && gameGrid.getRedoPlayer() == 2);
+            updateAI();
+            repaintChanges();
+        } else if(keyCode == KeyEvent.VK_H) {
+            toggleAnalysis();
         }
     }
 
@@ -119,6 +268,27 @@ public class GamePanel extends JPanel implements MouseListener {
         }
     }
 
+    /**
+     * Takes back the last move and returns the turn to the player who played it.
+     */
+    private void undoTurn() {
+        int player = gameGrid.unmakeMove();
+        if(player != 0) {
+            setGameState(player == 1 ? GameState.BTurn : GameState.WTurn);
+        }
+    }
+
+    /**
+     * Plays the last taken back move again, then swaps the game state the same as playTurn().
+     */
+    private void redoTurn() {
+        int player = gameGrid.redoMove();
+        if(player != 0) {
+            setGameState(player == 1 ? GameState.WTurn : GameState.BTurn);
+            testForEndGame(true);
+        }
+    }
+
     /**
      * Changes the state and modifies the message to display
      * at the bottom of the game to show the current state.
@@ -130,13 +300,13 @@ public class GamePanel extends JPanel implements MouseListener {
         switch (gameState) {
             case WTurn:
                 // If there are moves for the White player
-                if(gameGrid.getAllValidMoves().size() > 0) {
+                if(gameGrid.hasValidMoves(2)) {
                     gameStateStr = "White Player Turn";
                 } else {
                     // No moves for the white player. Check the black player
-                    gameGrid.updateValidMoves(1);
-                    if(gameGrid.getAllValidMoves().size() > 0) {
+                    if(gameGrid.hasValidMoves(1)) {
                         // The black player has moves, swap back to them
+                        gameGrid.updateValidMoves(1);
                         setGameState(GameState.BTurn);
                     } else {
                         // No moves for either player found, end the game.
@@ -146,13 +316,13 @@ public class GamePanel extends JPanel implements MouseListener {
                 break;
             case BTurn:
                 // If there are moves for the Black player
-                if(gameGrid.getAllValidMoves().size() > 0) {
+                if(gameGrid.hasValidMoves(1)) {
                     gameStateStr = "Black Player Turn";
                 } else {
                     // No moves for the black player. Check the white player
-                    gameGrid.updateValidMoves(2);
-                    if(gameGrid.getAllValidMoves().size() > 0) {
+                    if(gameGrid.hasValidMoves(2)) {
                         // The white player has moves, swap back to them
+                        gameGrid.updateValidMoves(2);
                         setGameState(GameState.WTurn);
                     } else {
                         // No moves for either player found, end the game.
@@ -172,6 +342,10 @@ public class GamePanel extends JPanel implements MouseListener {
      */
     private void testForEndGame(boolean stillValidMoves) {
         int gameResult = gameGrid.getWinner(stillValidMoves);
+        // Only record the game when it first ends, as this is tested again after the last move.
+        if(gameResult != 0 && (gameState == GameState.BTurn || gameState == GameState.WTurn)) {
+            saveGameRecord(gameResult);
+        }
         if(gameResult == 1) {
             setGameState(GameState.BWins);
         } else if(gameResult == 2) {
@@ -182,50 +356,319 @@ public class GamePanel extends JPanel implements MouseListener {
     }
 
     /**
-     * Only does something if state is WTurn or BTurn.
+     * Only does something if state is WTurn or BTurn and the AI is not choosing a move.
      * Attempts to place the Black or White piece and then checks for change in
      * game state. If the AI is enabled and it is their turn
-     * after a valid move they are told to take a turn with
-     * the game state again evaluated after their turn.
+     * after a valid move they are told to take a turn in the background.
      *
      * @param e Information about the mouse event.
      */
     @Override
     public void mousePressed(MouseEvent e) {
-        if(gameState == GameState.WTurn || gameState == GameState.BTurn) {
+        if((gameState == GameState.WTurn || gameState == GameState.BTurn) && !aiThinking) {
             Position gridPosition = gameGrid.convertMouseToGridPosition(new Position(e.getX(), e.getY()));
-            playTurn(gridPosition);
+            if(gameGrid.isValidMove(gridPosition)) {
+                cancelAI();
+                playTurn(gridPosition);
+                testForEndGame(true);
+                updateAI();
+            }
+        }
+
+        repaintChanges();
+    }
+
+    /**
+     * If the AI is enabled, gives it something to do in the background: choosing a move
+     * when it is the white player's turn, or pondering while the black player decides.
+     * The analysis is also moved on to the current position.
+     */
+    private void updateAI() {
+        updateAnalysis();
+        if(aiBehaviour == null) return;
+        if(gameState == GameState.WTurn) {
+            startAITurn();
+        } else if(gameState == GameState.BTurn) {
+            startPondering();
+        }
+    }
+
+    /**
+     * Asks the AI to choose a move for white on a copy of the board, then plays
+     * the move back on the Swing thread with finishAITurn().
+     */
+    private void startAITurn() {
+        int request = aiRequest;
+        AIBehaviour ai = aiBehaviour;
+        BitBoard board = gameGrid.getSnapshot().toBitBoard();
+        aiThinking = true;
+        thinkingDots = 0;
+        thinkingTimer.start();
+        aiExecutor.execute(() -> {
+            // Cleared before the check so a cancelAI() after it still stops the move.
+            ai.clearStop();
+            if(request != aiRequest) return;
+            long startTime = Metrics.startTimer();
+            int move = ai.chooseMove(board, 2);
+            Metrics.recordAIMove(startTime, ai, move);
+            SwingUtilities.invokeLater(() -> finishAITurn(request, move));
+        });
+    }
+
+    /**
+     * Plays the move the AI chose, unless the game has changed since it was asked,
+     * then gives the AI its next piece of work.
+     *
+     * @param request Value of aiRequest when the AI was asked.
+     * @param move Cell index of the chosen move.
+     */
+    private void finishAITurn(int request, int move) {
+        if(request != aiRequest) return;
+        aiThinking = false;
+        thinkingTimer.stop();
+        if(move >= 0) {
+            playTurn(BitBoard.toPosition(move));
             testForEndGame(true);
+        }
+        updateAI();
+        repaintChanges();
+    }
 
-            while(gameState == GameState.WTurn && aiBehaviour != null) {
-                playTurn(aiBehaviour.chooseMove());
-                testForEndGame(true);
+    /**
+     * Lets the AI think about its next move on a copy of the board while the black player decides.
+     * It keeps going until cancelAI() is called or the AI reaches its own limit for pondering.
+     */
+    private void startPondering() {
+        int request = aiRequest;
+        AIBehaviour ai = aiBehaviour;
+        BitBoard board = gameGrid.getSnapshot().toBitBoard();
+        aiExecutor.execute(() -> {
+            ai.clearStop();
+            if(request == aiRequest) ai.ponder(board, 2);
+        });
+    }
+
+    /**
+     * Abandons whatever the AI is doing: work that has not started is skipped,
+     * work that is running is stopped, and any move it still returns is ignored.
+     */
+    private void cancelAI() {
+        aiRequest++;
+        if(aiBehaviour != null) {
+            aiBehaviour.stop();
+        }
+        aiThinking = false;
+        thinkingTimer.stop();
+    }
+
+    /**
+     * Turns the analysis on with its own single threaded search, or turns it off and removes the scores.
+     */
+    private void toggleAnalysis() {
+        if(analyser == null) {
+            SearchAI analysisAI = new SearchAI(0, 0, BitBoard.CELLS, SearchAI.DEFAULT_TABLE_MB, 1);
+            analyser = new BackgroundAnalyser(analysisAI,
+                    result -> SwingUtilities.invokeLater(() -> showAnalysis(result)));
+            updateAnalysis();
+        } else {
+            analyser.shutdown();
+            analyser = null;
+            clearAnalysis();
+        }
+    }
+
+    /**
+     * Gives the analysis the current position when a person is to move, or stops it while the AI
+     * is moving or the game is over. Scores for any other position are removed.
+     */
+    private void updateAnalysis() {
+        if(analyser == null) return;
+        PositionSnapshot position = isPersonTurn() ? gameGrid.getSnapshot() : null;
+        if(analysis != null && !analysis.getPosition().equals(position)) {
+            clearAnalysis();
+        }
+        analyser.setPosition(position);
+    }
+
+    /**
+     * Shows a result from the analysis if it is still for the current position.
+     * Only the cells with scores are repainted.
+     *
+     * @param result The result passed on from the analysis thread.
+     */
+    private void showAnalysis(BackgroundAnalyser.Result result) {
+        if(analyser == null || !isPersonTurn() || !result.getPosition().equals(gameGrid.getSnapshot())) return;
+        analysis = result;
+        repaintCells(result.getPosition().getValidMoves());
+    }
+
+    /**
+     * Removes the scores shown by the analysis.
+     */
+    private void clearAnalysis() {
+        if(analysis == null) return;
+        repaintCells(analysis.getPosition().getValidMoves());
+        analysis = null;
+    }
+
+    /**
+     * Checks if a person chooses the next move, so there is something to analyse.
+     *
+     * @return True on black's turn, or on white's turn without an AI.
+     */
+    private boolean isPersonTurn() {
+        return gameState == GameState.BTurn || (gameState == GameState.WTurn && aiBehaviour == null);
+    }
+
+    /**
+     * Requests a repaint of the area covering a set of cells.
+     *
+     * @param cells Mask with bit x + y*8 set for each cell.
+     */
+    private void repaintCells(long cells) {
+        if(cells == 0) return;
+        GridCell[][] grid = gameGrid.getGrid();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for(; cells != 0; cells &= cells - 1) {
+            int index = Long.numberOfTrailingZeros(cells);
+            GridCell cell = grid[index % BitBoard.SIZE][index / BitBoard.SIZE];
+            minX = Math.min(minX, cell.position.x);
+            minY = Math.min(minY, cell.position.y);
+            maxX = Math.max(maxX, cell.position.x + cell.width);
+            maxY = Math.max(maxY, cell.position.y + cell.height);
+        }
+        // One extra pixel covers the grid lines along the right and bottom of the cells.
+        repaint(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Draws the score from the analysis in the middle of each valid move, and a box around the best move.
+     * The labels were written on the analysis thread, so this only draws.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     */
+    private void drawAnalysis(Graphics g) {
+        if(analysis == null) return;
+        GridCell[][] grid = gameGrid.getGrid();
+        g.setFont(ANALYSIS_FONT);
+        FontMetrics metrics = g.getFontMetrics();
+        for(long moves = analysis.getPosition().getValidMoves(); moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            GridCell cell = grid[move % BitBoard.SIZE][move / BitBoard.SIZE];
+            if(move == analysis.getBestMove()) {
+                g.setColor(BEST_MOVE_COLOUR);
+                g.drawRect(cell.position.x + 2, cell.position.y + 2, cell.width - 4, cell.height - 4);
+                g.drawRect(cell.position.x + 3, cell.position.y + 3, cell.width - 6, cell.height - 6);
             }
+            String label = analysis.getLabel(move);
+            g.setColor(Color.BLACK);
+            g.drawString(label, cell.position.x + (cell.width - metrics.stringWidth(label)) / 2,
+                    cell.position.y + (cell.height + metrics.getAscent() - metrics.getDescent()) / 2);
+        }
+    }
+
+    /**
+     * Requests a repaint of only the cells that changed since the last paint, and of the
+     * message area if the message has changed. Swing joins the areas into a single paint.
+     */
+    private void repaintChanges() {
+        Rectangle changedCells = gameGrid.getChangedBounds();
+        if(changedCells != null) {
+            // One extra pixel covers the grid lines along the right and bottom of the cells.
+            repaint(changedCells.getPosition().x, changedCells.getPosition().y,
+                    changedCells.getWidth() + 1, changedCells.getHeight() + 1);
         }
+        if(!getMessage().equals(paintedMessage)) {
+            repaint(0, PANEL_HEIGHT-MESSAGE_AREA_HEIGHT, PANEL_WIDTH, MESSAGE_AREA_HEIGHT);
+        }
+    }
 
-        repaint();
+    /**
+     * Gets the message to show at the bottom of the window.
+     *
+     * @return The animated thinking message while the AI is choosing a move, otherwise the game state.
+     */
+    private String getMessage() {
+        return aiThinking ? THINKING_MESSAGES[thinkingDots] : gameStateStr;
     }
 
     /**
      * Draws the text showing the current game state centered at the bottom
-     *  of the window.
+     *  of the window. While the AI is choosing a move an animated thinking message is shown instead.
      *
      * @param g Reference to the Graphics object for rendering.
      */
     private void drawGameState(Graphics g) {
+        String message = getMessage();
+        // Centre the thinking message without its dots so it stays still as they appear.
+        String centredStr = aiThinking ? THINKING_MESSAGE : message;
         g.setColor(Color.BLACK);
-        g.setFont(new Font("Arial", Font.BOLD, 35));
-        int strWidth = g.getFontMetrics().stringWidth(gameStateStr);
-        g.drawString(gameStateStr, PANEL_WIDTH/2-strWidth/2, PANEL_HEIGHT-40);
+        g.setFont(MESSAGE_FONT);
+        int strWidth = g.getFontMetrics().stringWidth(centredStr);
+        g.drawString(message, PANEL_WIDTH/2-strWidth/2, PANEL_HEIGHT-40);
+        paintedMessage = message;
     }
 
     /**
-     * Shows a dialog box with options to select PvP or PvAI with Random.
+     * Maps the opening book file if there is one in the working directory.
+     *
+     * @return The opening book, or null if it could not be opened.
+     */
+    private OpeningBook loadOpeningBook() {
+        try {
+            return new OpeningBook(OpeningBook.DEFAULT_FILE);
+        } catch (IOException e) {
+            System.err.println("Playing without an opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds the finished game to the game record file in the working directory on the record thread.
+     * A game that was already recorded, ended again by taking back its last move and playing it again,
+     * is skipped. The game carries on without being recorded if the file cannot be written.
+     *
+     * @param gameResult The result of the game: 1 for black, 2 for white, or 3 for a draw.
+     */
+    private void saveGameRecord(int gameResult) {
+        int moveCount = gameGrid.getHistorySize();
+        int[] moves = new int[moveCount];
+        for(int i = 0; i < moveCount; i++) {
+            moves[i] = gameGrid.getHistoryMove(i);
+        }
+        if(Arrays.equals(moves, recordedMoves)) return;
+        recordedMoves = moves;
+        int width = gameGrid.getGrid().length;
+        int height = gameGrid.getGrid()[0].length;
+        int whitePlayer = GameRecordWriter.getPlayerType(aiBehaviour);
+        recordExecutor.execute(() -> {
+            try {
+                if(gameRecord == null) {
+                    gameRecord = new GameRecordWriter(GameRecordReader.DEFAULT_FILE, true);
+                }
+                gameRecord.writeGame(width, height, GameRecordReader.PLAYER_HUMAN, whitePlayer,
+                        gameResult, moves, moveCount);
+                // Flushed each time so the game is in the file even if the window is closed straight away.
+                gameRecord.flush();
+            } catch (IOException e) {
+                System.err.println("Could not record the game: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Shows a dialog box with options to select PvP, PvAI with Random, PvAI with Search, or PvAI with MCTS.
      * Choosing PvP leaves the AI behaviour unset, and otherwise creates
-     * an instance of the appropriate AI.
+     * an instance of the appropriate AI. The Search AI plays from the opening book while it can.
+     * Whatever the previous AI was doing is abandoned, and the new AI starts on the current turn.
+     * An AI that is replaced is shut down so its threads and tables are freed.
      */
     private void chooseAIType() {
-        String[] options = new String[] {"Player vs Player", "Player vs Random AI"};
+        cancelAI();
+        AIBehaviour previousAI = aiBehaviour;
+        String[] options = new String[] {"Player vs Player", "Player vs Random AI", "Player vs Search AI",
+                "Player vs MCTS AI"};
         String message = "Select the game mode you would like to use.";
         int difficultyChoice = JOptionPane.showOptionDialog(null, message,
                 "Choose how to play.",
@@ -238,7 +681,39 @@ public class GamePanel extends JPanel implements MouseListener {
             case 1:
                 aiBehaviour = new SimpleAI(gameGrid);
                 break;
+            case 2:
+                aiBehaviour = new SearchAI(SEARCH_TIME_MILLIS, SEARCH_THREADS);
+                if(openingBook != null) {
+                    aiBehaviour = new OpeningBookAI(openingBook, aiBehaviour);
+                }
+                break;
+            case 3:
+                aiBehaviour = new MCTSAI(MCTS_TIME_MILLIS, SEARCH_THREADS);
+                break;
+        }
+        if(previousAI != null && previousAI != aiBehaviour) {
+            shutdownAI(previousAI);
         }
+        updateAI();
+        repaintChanges();
+    }
+
+    /**
+     * Shuts down an AI that is no longer used, along with the search behind an opening book.
+     * This is queued on the AI thread, so any work the AI was stopped in the middle of has
+     * returned before its helper threads are stopped.
+     *
+     * @param ai The AI to shut down.
+     */
+    private void shutdownAI(AIBehaviour ai) {
+        AIBehaviour search = ai instanceof OpeningBookAI ? ((OpeningBookAI) ai).getFallback() : ai;
+        aiExecutor.execute(() -> {
+            if(search instanceof SearchAI) {
+                ((SearchAI) search).shutdown();
+            } else if(search instanceof MCTSAI) {
+                ((MCTSAI) search).shutdown();
+            }
+        });
     }
 
     /**
@@ -0,0 +1,276 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * GameRecordConverter class:
+ * Converts game record files to and from a text notation that can be read and edited by hand,
+ * and replays record files through the rules of GameGrid to check them and measure how fast they can be read.
+ *
+ * The text notation has one game per line: the board size, the black and white player types,
+ * the result, then every move, separated by spaces. For example:
+ *
+ *     8x8 human search 0-1 d4 e4 e5 d5 c4 ...
+ *
+ * Cells are a column letter and a row number from the top left, so a1 is the top left corner.
+ * Columns after z continue aa, ab, and so on. Results are written as 1-0 when black wins, 0-1 when
+ * white wins, 1/2-1/2 for a draw, and * for a game that did not finish. Passes are not written.
+ * Blank lines and lines starting with # are ignored.
+ *
+ * Usage: java GameRecordConverter text RECORDFILE [TEXTFILE]
+ *        java GameRecordConverter binary TEXTFILE RECORDFILE
+ *        java GameRecordConverter replay RECORDFILE
+ */
+public class GameRecordConverter {
+    /**
+     * Text of each result indexed by the result value.
+     */
+    private static final String[] RESULTS = {"*", "1-0", "0-1", "1/2-1/2"};
+
+    /**
+     * Runs the conversion or replay named by the first argument.
+     *
+     * @param args The command followed by its files.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.out.println("Usage: java GameRecordConverter text RECORDFILE [TEXTFILE]");
+            System.out.println("       java GameRecordConverter binary TEXTFILE RECORDFILE");
+            System.out.println("       java GameRecordConverter replay RECORDFILE");
+            return;
+        }
+        switch(args[0]) {
+            case "text":
+                Writer out = args.length > 2 ? new FileWriter(args[2]) : new OutputStreamWriter(System.out);
+                try(PrintWriter text = new PrintWriter(out)) {
+                    int games = toText(new GameRecordReader(args[1]), text);
+                    System.err.println("Converted " + games + " games.");
+                }
+                break;
+            case "binary":
+                try(BufferedReader text = new BufferedReader(new FileReader(args[1]));
+                    GameRecordWriter writer = new GameRecordWriter(args[2], false)) {
+                    toBinary(text, writer);
+                    System.out.println("Converted " + writer.getGameCount() + " games.");
+                }
+                break;
+            case "replay":
+                replay(new GameRecordReader(args[1]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + args[0]);
+        }
+    }
+
+    /**
+     * Writes every game in a record file as a line of text.
+     *
+     * @param reader The games to write. Read from the first game whatever game it is on.
+     * @param text Where to write the lines.
+     * @return The number of games written.
+     */
+    public static int toText(GameRecordReader reader, PrintWriter text) {
+        int games = 0;
+        StringBuilder line = new StringBuilder();
+        reader.rewind();
+        while(reader.next()) {
+            line.setLength(0);
+            line.append(reader.getWidth()).append('x').append(reader.getHeight()).append(' ');
+            line.append(getPlayerName(reader.getBlackPlayer())).append(' ');
+            line.append(getPlayerName(reader.getWhitePlayer())).append(' ');
+            line.append(RESULTS[reader.getResult()]);
+            for(int i = 0; i < reader.getMoveCount(); i++) {
+                line.append(' ').append(toNotation(reader.getMove(i), reader.getWidth()));
+            }
+            text.println(line);
+            games++;
+        }
+        if(reader.isTruncated()) {
+            System.err.println("The last game was cut off and has been left out.");
+        }
+        return games;
+    }
+
+    /**
+     * Reads games written in the text notation and adds them to a record file.
+     *
+     * @param text The lines to read.
+     * @param writer Where to write the games.
+     * @throws IOException If the text cannot be read, a line is not valid, or the file cannot be written.
+     */
+    public static void toBinary(BufferedReader text, GameRecordWriter writer) throws IOException {
+        String line;
+        int lineNumber = 0;
+        int[] moves = new int[0];
+        while((line = text.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            try {
+                if(parts.length < 4) {
+                    throw new IllegalArgumentException("Expected a size, two players, and a result.");
+                }
+                String[] size = parts[0].split("x");
+                int width = Integer.parseInt(size[0]);
+                int height = Integer.parseInt(size[1]);
+                int blackPlayer = parsePlayer(parts[1]);
+                int whitePlayer = parsePlayer(parts[2]);
+                int result = parseResult(parts[3]);
+                int moveCount = parts.length - 4;
+                if(moves.length < moveCount) {
+                    moves = new int[moveCount];
+                }
+                for(int i = 0; i < moveCount; i++) {
+                    moves[i] = parseCell(parts[4 + i], width, height);
+                }
+                writer.writeGame(width, height, blackPlayer, whitePlayer, result, moves, moveCount);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Line " + lineNumber + " is not a valid game: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Replays every game in a record file through GameGrid, checking every move is valid and that
+     * the recorded result matches the final position, then reports how many games and moves were
+     * replayed per second. A plain read of every move is timed first for comparison.
+     *
+     * @param reader The games to replay. Read from the first game whatever game it is on.
+     */
+    public static void replay(GameRecordReader reader) {
+        reader.rewind();
+        long startTime = System.nanoTime();
+        long moveSum = 0;
+        int games = 0;
+        while(reader.next()) {
+            for(int i = 0; i < reader.getMoveCount(); i++) {
+                moveSum += reader.getMove(i);
+            }
+            games++;
+        }
+        double readSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        reader.rewind();
+        startTime = System.nanoTime();
+        GameGrid grid = null;
+        long moves = 0;
+        int illegal = 0;
+        int mismatched = 0;
+        while(reader.next()) {
+            // Grids are only made again when the board size changes between games.
+            if(grid == null || grid.getGrid().length != reader.getWidth()
+                    || grid.getGrid()[0].length != reader.getHeight()) {
+                grid = new GameGrid(new Position(0, 0), 500, 500, reader.getWidth(), reader.getHeight());
+            }
+            int result = reader.replay(grid);
+            if(result < 0) {
+                illegal++;
+            } else if(result != reader.getResult()) {
+                mismatched++;
+            }
+            moves += reader.getMoveCount();
+        }
+        double replaySeconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("Read %d games in %.3f s: %.0f games/s (checksum %d)%n",
+                games, readSeconds, games / readSeconds, moveSum);
+        System.out.printf("Replayed %d games, %d moves in %.3f s: %.0f games/s, %.0f moves/s%n",
+                games, moves, replaySeconds, games / replaySeconds, moves / replaySeconds);
+        System.out.printf("Illegal moves in %d games, wrong results in %d games%n", illegal, mismatched);
+        if(reader.isTruncated()) {
+            System.out.println("The last game was cut off and has been left out.");
+        }
+    }
+
+    /**
+     * Writes a cell in the text notation.
+     *
+     * @param index Cell index (x + y*width).
+     * @param width Number of cells horizontally.
+     * @return The column letters followed by the row number, such as d4.
+     */
+    public static String toNotation(int index, int width) {
+        int x = index % width;
+        String column = x < 26 ? String.valueOf((char) ('a' + x))
+                : String.valueOf((char) ('a' + x / 26 - 1)) + (char) ('a' + x % 26);
+        return column + (index / width + 1);
+    }
+
+    /**
+     * Reads a cell written in the text notation.
+     *
+     * @param cell The column letters followed by the row number, such as d4.
+     * @param width Number of cells horizontally.
+     * @param height Number of cells vertically.
+     * @return The cell index (x + y*width).
+     */
+    public static int parseCell(String cell, int width, int height) {
+        int letters = 0;
+        while(letters < cell.length() && Character.isLetter(cell.charAt(letters))) {
+            letters++;
+        }
+        String column = cell.substring(0, letters).toLowerCase();
+        int x;
+        if(letters == 1) {
+            x = column.charAt(0) - 'a';
+        } else if(letters == 2) {
+            x = (column.charAt(0) - 'a' + 1) * 26 + column.charAt(1) - 'a';
+        } else {
+            throw new IllegalArgumentException("Not a cell: " + cell);
+        }
+        int y = Integer.parseInt(cell.substring(letters)) - 1;
+        if(x < 0 || y < 0 || x >= width || y >= height) {
+            throw new IllegalArgumentException("Cell is not on the board: " + cell);
+        }
+        return x + y * width;
+    }
+
+    /**
+     * Gets the name of a player type for the text notation.
+     *
+     * @param player One of the GameRecordReader.PLAYER_ values.
+     * @return The name, or the number for a type without a name.
+     */
+    private static String getPlayerName(int player) {
+        return player < GameRecordReader.PLAYER_NAMES.length ? GameRecordReader.PLAYER_NAMES[player]
+                : String.valueOf(player);
+    }
+
+    /**
+     * Reads a player type from its name or number.
+     *
+     * @param name The name of the player type, or its number.
+     * @return One of the GameRecordReader.PLAYER_ values.
+     */
+    private static int parsePlayer(String name) {
+        for(int i = 0; i < GameRecordReader.PLAYER_NAMES.length; i++) {
+            if(GameRecordReader.PLAYER_NAMES[i].equalsIgnoreCase(name)) return i;
+        }
+        int player = Integer.parseInt(name);
+        if(player < 0 || player > 15) {
+            throw new IllegalArgumentException("Player types must be from 0 to 15: " + name);
+        }
+        return player;
+    }
+
+    /**
+     * Reads a result written in the text notation.
+     *
+     * @param text The result, such as 1-0.
+     * @return 0 for an unfinished game, 1 for black, 2 for white, and 3 for a draw.
+     */
+    private static int parseResult(String text) {
+        for(int i = 0; i < RESULTS.length; i++) {
+            if(RESULTS[i].equals(text)) return i;
+        }
+        throw new IllegalArgumentException("Unknown result: " + text);
+    }
+}
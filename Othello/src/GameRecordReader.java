@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * GameRecordReader class:
+ * Reads a file of game records written by GameRecordWriter. The file is memory-mapped and read
+ * as a cursor: next() moves to the following game and the getters read its header and moves
+ * straight from the mapped file, so going through millions of games does not create any objects.
+ *
+ * File layout (big-endian):
+ * - Header of 12 bytes: magic number, format version, and the number of games.
+ * - Each game is a header of 8 bytes: width - 1, height - 1, the black player type in the high four bits
+ *   and the white player type in the low four bits of one byte, the result, and the number of moves (4 bytes).
+ *   Then the moves as cell indexes (x + y*width), one byte each on boards of up to 256 cells such as 8x8,
+ *   or two bytes each on larger boards.
+ *
+ * Passes are not stored. A player only passes when they have no valid moves, so the player of
+ * every move follows from the rules when the game is replayed.
+ */
+public class GameRecordReader {
+    /**
+     * File the game appends finished games to, relative to the working directory.
+     */
+    public static final String DEFAULT_FILE = "games.rec";
+    /**
+     * Identifies the file as game records ("GRC1").
+     */
+    static final int MAGIC = 0x47524331;
+    /**
+     * Version of the file layout.
+     */
+    static final int VERSION = 1;
+    /**
+     * Size of the file header in bytes.
+     */
+    static final int HEADER_BYTES = 12;
+    /**
+     * Size of the header of each game in bytes.
+     */
+    static final int GAME_HEADER_BYTES = 8;
+    /**
+     * Largest number of cells on a board whose moves are stored in one byte each.
+     */
+    static final int BYTE_MOVE_CELLS = 256;
+
+    /**
+     * Player type of a player that was not recorded.
+     */
+    public static final int PLAYER_UNKNOWN = 0;
+    /**
+     * Player type of a person playing in the game window.
+     */
+    public static final int PLAYER_HUMAN = 1;
+    /**
+     * Player type of SimpleAI.
+     */
+    public static final int PLAYER_RANDOM = 2;
+    /**
+     * Player type of SearchAI.
+     */
+    public static final int PLAYER_SEARCH = 3;
+    /**
+     * Player type of MCTSAI.
+     */
+    public static final int PLAYER_MCTS = 4;
+    /**
+     * Player type of OpeningBookAI.
+     */
+    public static final int PLAYER_BOOK = 5;
+    /**
+     * Name of each player type, used in the text notation.
+     */
+    public static final String[] PLAYER_NAMES = {"unknown", "human", "random", "search", "mcts", "book"};
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer buffer;
+    /**
+     * Number of games in the file header.
+     */
+    private final int headerGameCount;
+    /**
+     * Offset of the current game, or of the first game before next() is called.
+     */
+    private int gameOffset;
+    /**
+     * Offset just past the end of the current game.
+     */
+    private int gameEnd;
+    /**
+     * Number of cells horizontally in the current game.
+     */
+    private int width;
+    /**
+     * Number of cells vertically in the current game.
+     */
+    private int height;
+    /**
+     * Number of moves in the current game.
+     */
+    private int moveCount;
+    /**
+     * Number of bytes used for each move in the current game.
+     */
+    private int moveBytes;
+    /**
+     * True if the last next() found a game cut off by the end of the file.
+     */
+    private boolean truncated;
+
+    /**
+     * Maps a game record file into memory. Only the header is read straight away.
+     *
+     * @param fileName Path of the record file.
+     * @throws IOException If the file cannot be read or is not a valid record file.
+     */
+    public GameRecordReader(String fileName) throws IOException {
+        // The mapping stays valid after the channel is closed.
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Game record files over 2 GB are not supported: " + fileName);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a game record file: " + fileName);
+        }
+        if(buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported game record version " + buffer.getInt(4) + ": " + fileName);
+        }
+        headerGameCount = buffer.getInt(8);
+        rewind();
+    }
+
+    /**
+     * Moves back to before the first game.
+     */
+    public void rewind() {
+        gameOffset = HEADER_BYTES;
+        gameEnd = HEADER_BYTES;
+        truncated = false;
+    }
+
+    /**
+     * Moves to the next game. A game cut off by the end of the file, as left by a writer
+     * that was never closed, is treated as the end of the file.
+     *
+     * @return True if there was another game, or false at the end of the file.
+     */
+    public boolean next() {
+        int offset = gameEnd;
+        if(offset + GAME_HEADER_BYTES > buffer.capacity()) {
+            truncated = offset != buffer.capacity();
+            return false;
+        }
+        int nextWidth = (buffer.get(offset) & 0xFF) + 1;
+        int nextHeight = (buffer.get(offset + 1) & 0xFF) + 1;
+        int nextMoveCount = buffer.getInt(offset + 4);
+        int nextMoveBytes = nextWidth * nextHeight <= BYTE_MOVE_CELLS ? 1 : 2;
+        long end = offset + GAME_HEADER_BYTES + (long) nextMoveCount * nextMoveBytes;
+        if(nextMoveCount < 0 || end > buffer.capacity()) {
+            truncated = true;
+            return false;
+        }
+        gameOffset = offset;
+        gameEnd = (int) end;
+        width = nextWidth;
+        height = nextHeight;
+        moveCount = nextMoveCount;
+        moveBytes = nextMoveBytes;
+        return true;
+    }
+
+    /**
+     * Checks if reading stopped at a game cut off by the end of the file.
+     *
+     * @return True if next() returned false because the last game was incomplete.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Gets the number of games in the file header. This is only updated when a writer is flushed
+     * or closed, so a file from a writer that was never closed can have more games than this.
+     *
+     * @return The number of games in the header.
+     */
+    public int getHeaderGameCount() {
+        return headerGameCount;
+    }
+
+    /**
+     * Gets the number of cells horizontally in the current game.
+     *
+     * @return Board width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of cells vertically in the current game.
+     *
+     * @return Board height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the type of the player who played black in the current game.
+     *
+     * @return One of the PLAYER_ values.
+     */
+    public int getBlackPlayer() {
+        return (buffer.get(gameOffset + 2) >>> 4) & 0x0F;
+    }
+
+    /**
+     * Gets the type of the player who played white in the current game.
+     *
+     * @return One of the PLAYER_ values.
+     */
+    public int getWhitePlayer() {
+        return buffer.get(gameOffset + 2) & 0x0F;
+    }
+
+    /**
+     * Gets the result of the current game, using the same values as GameGrid.getWinner().
+     *
+     * @return 0 for an unfinished game, 1 for black, 2 for white, and 3 for a draw.
+     */
+    public int getResult() {
+        return buffer.get(gameOffset + 3);
+    }
+
+    /**
+     * Gets the number of moves in the current game, not counting passes.
+     *
+     * @return The number of moves.
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Gets a move of the current game.
+     *
+     * @param move Index of the move, from 0 to getMoveCount() - 1.
+     * @return The cell index (x + y*width) of the move.
+     */
+    public int getMove(int move) {
+        int offset = gameOffset + GAME_HEADER_BYTES;
+        if(moveBytes == 1) {
+            return buffer.get(offset + move) & 0xFF;
+        }
+        return buffer.getShort(offset + move * 2) & 0xFFFF;
+    }
+
+    /**
+     * Plays the current game on a grid with the rules of GameGrid, checking every move is valid.
+     * Each player moves in turn, except that a player with no valid moves passes.
+     *
+     * @param grid Grid of the same size as the game. It is reset first and holds the final position afterwards.
+     * @return The result of the final position using the same values as getResult(),
+     *         or -1 if a move was not valid.
+     */
+    public int replay(GameGrid grid) {
+        if(grid.getGrid().length != width || grid.getGrid()[0].length != height) {
+            throw new IllegalArgumentException("The grid must be " + width + "x" + height + " to replay this game.");
+        }
+        grid.reset();
+        int player = 1;
+        for(int i = 0; i < moveCount; i++) {
+            if(!grid.hasValidMoves(player)) {
+                player = player == 1 ? 2 : 1;
+                if(!grid.hasValidMoves(player)) {
+                    return -1;
+                }
+                grid.updateValidMoves(player);
+            }
+            int move = getMove(i);
+            if(move >= width * height || !grid.isValidMove(move % width, move / width)) {
+                return -1;
+            }
+            grid.playMove(grid.getCellPosition(move % width, move / width), player);
+            player = player == 1 ? 2 : 1;
+        }
+        if(grid.hasValidMoves(1) || grid.hasValidMoves(2)) {
+            return 0;
+        }
+        return grid.getWinner(false);
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * GameRecordWriter class:
+ * Writes games one at a time to a game record file in the layout described in GameRecordReader.
+ * Games are collected in a buffer and written in large blocks, so a whole archive can be written
+ * as the games are played without holding them in memory. Each game is written in one piece, so a
+ * writer that is never closed only loses the games still in its buffer. The game count in the file
+ * header is updated on flush() and close().
+ *
+ * Writing is synchronized, so one writer can be shared by the threads playing games.
+ *
+ * Appending reads the game headers through the same channel the games are written with instead of
+ * mapping the file, so a cut off game can be removed from the end even on systems that do not allow
+ * a mapped file to be truncated. Only the headers are read, skipping over the moves.
+ */
+public class GameRecordWriter implements Closeable {
+    /**
+     * Size of the write buffer in bytes.
+     */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /**
+     * The file being written.
+     */
+    private final FileChannel channel;
+    /**
+     * Games waiting to be written.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Offset in the file where the buffer will be written.
+     */
+    private long fileEnd;
+    /**
+     * Number of games in the file including those still in the buffer.
+     */
+    private int gameCount;
+
+    /**
+     * Opens a record file for writing.
+     *
+     * @param fileName Path of the record file.
+     * @param append True to add games to the end of an existing file, or false to replace it.
+     *               When appending, a game cut off at the end of the file is removed first.
+     * @throws IOException If the file cannot be written, or is not a valid record file when appending.
+     */
+    public GameRecordWriter(String fileName, boolean append) throws IOException {
+        buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        boolean existing = append && Paths.get(fileName).toFile().length() > 0;
+        if(existing) {
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                findEnd(fileName);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            if(fileEnd < channel.size()) {
+                channel.truncate(fileEnd);
+            }
+        } else {
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(GameRecordReader.MAGIC).putInt(GameRecordReader.VERSION).putInt(0);
+        }
+    }
+
+    /**
+     * Adds a game to the file.
+     *
+     * @param width Number of cells horizontally.
+     * @param height Number of cells vertically.
+     * @param blackPlayer Type of the player who played black, one of the GameRecordReader.PLAYER_ values.
+     * @param whitePlayer Type of the player who played white, one of the GameRecordReader.PLAYER_ values.
+     * @param result 0 for an unfinished game, 1 for black, 2 for white, and 3 for a draw.
+     * @param moves Cell index (x + y*width) of every move in order, not including passes.
+     * @param moveCount Number of moves to write from the array.
+     * @throws IOException If the file cannot be written or would grow past 2 GB.
+     */
+    public synchronized void writeGame(int width, int height, int blackPlayer, int whitePlayer, int result,
+                                       int[] moves, int moveCount) throws IOException {
+        if(width < 1 || height < 1 || width > LargeBoard.MAX_SIZE || height > LargeBoard.MAX_SIZE) {
+            throw new IllegalArgumentException("Board sizes must be from 1 to " + LargeBoard.MAX_SIZE);
+        }
+        int moveBytes = width * height <= GameRecordReader.BYTE_MOVE_CELLS ? 1 : 2;
+        int gameBytes = GameRecordReader.GAME_HEADER_BYTES + moveCount * moveBytes;
+        if(fileEnd + buffer.position() + gameBytes > Integer.MAX_VALUE) {
+            throw new IOException("Game record files cannot grow past 2 GB. Start a new file.");
+        }
+        // A game bigger than the buffer is written from a buffer of its own.
+        ByteBuffer out = buffer;
+        if(gameBytes > buffer.remaining()) {
+            writeBuffer();
+            if(gameBytes > buffer.capacity()) {
+                out = ByteBuffer.allocate(gameBytes);
+            }
+        }
+        out.put((byte) (width - 1)).put((byte) (height - 1));
+        out.put((byte) ((blackPlayer << 4) | whitePlayer)).put((byte) result);
+        out.putInt(moveCount);
+        for(int i = 0; i < moveCount; i++) {
+            if(moveBytes == 1) {
+                out.put((byte) moves[i]);
+            } else {
+                out.putShort((short) moves[i]);
+            }
+        }
+        gameCount++;
+        if(out != buffer) {
+            out.flip();
+            fileEnd += writeFully(out, fileEnd);
+        }
+    }
+
+    /**
+     * Gets the number of games in the file, including those not yet written from the buffer.
+     *
+     * @return The number of games.
+     */
+    public synchronized int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Writes every buffered game to the file and updates the game count in the file header.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        writeBuffer();
+        ByteBuffer count = ByteBuffer.allocate(4).putInt(gameCount);
+        count.flip();
+        writeFully(count, 8);
+    }
+
+    /**
+     * Flushes the remaining games and closes the file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Gets the player type stored in game records for an AI.
+     *
+     * @param ai The AI, or null for a person playing in the game window.
+     * @return One of the GameRecordReader.PLAYER_ values.
+     */
+    public static int getPlayerType(AIBehaviour ai) {
+        if(ai == null) return GameRecordReader.PLAYER_HUMAN;
+        if(ai instanceof SimpleAI) return GameRecordReader.PLAYER_RANDOM;
+        if(ai instanceof SearchAI) return GameRecordReader.PLAYER_SEARCH;
+        if(ai instanceof MCTSAI) return GameRecordReader.PLAYER_MCTS;
+        if(ai instanceof OpeningBookAI) return GameRecordReader.PLAYER_BOOK;
+        return GameRecordReader.PLAYER_UNKNOWN;
+    }
+
+    /**
+     * Checks the header of an existing file, then counts the games already there by reading the header
+     * of each game, which also finds where the last complete game ends. Uses the buffer to read the file
+     * in blocks and leaves it empty.
+     *
+     * @param fileName Path of the record file, used in error messages.
+     * @throws IOException If the file cannot be read or is not a valid record file.
+     */
+    private void findEnd(String fileName) throws IOException {
+        long size = channel.size();
+        if(size > Integer.MAX_VALUE) {
+            throw new IOException("Game record files over 2 GB are not supported: " + fileName);
+        }
+        if(size < GameRecordReader.HEADER_BYTES || readBlock(0).getInt(0) != GameRecordReader.MAGIC) {
+            throw new IOException("Not a game record file: " + fileName);
+        }
+        if(buffer.getInt(4) != GameRecordReader.VERSION) {
+            throw new IOException("Unsupported game record version " + buffer.getInt(4) + ": " + fileName);
+        }
+        long blockStart = 0;
+        long offset = GameRecordReader.HEADER_BYTES;
+        while(offset + GameRecordReader.GAME_HEADER_BYTES <= size) {
+            if(offset + GameRecordReader.GAME_HEADER_BYTES > blockStart + buffer.limit()) {
+                blockStart = offset;
+                readBlock(blockStart);
+            }
+            int at = (int) (offset - blockStart);
+            int width = (buffer.get(at) & 0xFF) + 1;
+            int height = (buffer.get(at + 1) & 0xFF) + 1;
+            int moveCount = buffer.getInt(at + 4);
+            int moveBytes = width * height <= GameRecordReader.BYTE_MOVE_CELLS ? 1 : 2;
+            long end = offset + GameRecordReader.GAME_HEADER_BYTES + (long) moveCount * moveBytes;
+            // Same as GameRecordReader.next(), a game cut off by the end of the file ends the file.
+            if(moveCount < 0 || end > size) break;
+            gameCount++;
+            offset = end;
+        }
+        fileEnd = offset;
+        buffer.clear();
+    }
+
+    /**
+     * Fills the buffer from the file starting at an offset, stopping early at the end of the file.
+     *
+     * @param offset Offset in the file to read from.
+     * @return The buffer, ready to read from index 0 up to its limit.
+     * @throws IOException If the file cannot be read.
+     */
+    private ByteBuffer readBlock(long offset) throws IOException {
+        buffer.clear();
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, offset + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes the buffer to the end of the file and empties it.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        fileEnd += writeFully(buffer, fileEnd);
+        buffer.clear();
+    }
+
+    /**
+     * Writes all the remaining bytes of a buffer at an offset in the file.
+     *
+     * @param bytes The bytes to write.
+     * @param offset Offset in the file to write at.
+     * @return The number of bytes written.
+     * @throws IOException If the file cannot be written.
+     */
+    private int writeFully(ByteBuffer bytes, long offset) throws IOException {
+        int written = 0;
+        while(bytes.hasRemaining()) {
+            written += channel.write(bytes, offset + written);
+        }
+        return written;
+    }
+}
@@ -8,8 +8,14 @@ import java.awt.*;
  * GridCell class:
  * Defines a grid cell that can be empty, Black, or White.
  * The cell can also be highlighted to show it is a valid move.
+ * Cells remember if they have changed since they were last drawn so only those need drawing again.
  */
 public class GridCell extends Rectangle {
+    /**
+     * Colour of the highlight shown on valid moves.
+     */
+    static final Color HIGHLIGHT_COLOUR = new Color(255, 187, 22, 203);
+
     /**
      * The state of the grid cell. 0=empty, 2=White, 1=Black
      */
@@ -20,6 +26,11 @@ public class GridCell extends Rectangle {
      */
     private boolean highlight;
 
+    /**
+     * True when the state or highlight has changed since the cell was last drawn. New cells have never been drawn.
+     */
+    private boolean changed = true;
+
     /**
      * Initialises the GridCell and defaults to empty.
      *
@@ -36,8 +47,8 @@ public class GridCell extends Rectangle {
      * Resets to the default of empty.
      */
     public void reset() {
-        cellState = 0;
-        highlight = false;
+        setCellState(0);
+        setHighlight(false);
     }
 
     /**
@@ -46,6 +57,7 @@ public class GridCell extends Rectangle {
      * @param newState The new state to change to.
      */
     public void setCellState(int newState) {
+        if(newState != cellState) changed = true;
         this.cellState = newState;
     }
 
@@ -64,22 +76,60 @@ public class GridCell extends Rectangle {
      * @param highlight True will make a highlight appear in the cell.
      */
     public void setHighlight(boolean highlight) {
+        if(highlight != this.highlight) changed = true;
         this.highlight = highlight;
     }
 
+    /**
+     * Checks if the cell is highlighted.
+     *
+     * @return True if the cell shows a highlight for a valid move.
+     */
+    public boolean isHighlighted() {
+        return highlight;
+    }
+
+    /**
+     * Checks if the cell needs drawing again.
+     *
+     * @return True if the state or highlight has changed since the cell was last drawn.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Marks the cell as drawn after it has been drawn into the cached grid image.
+     */
+    public void clearChanged() {
+        changed = false;
+    }
+
     /**
      * Draws either a White or Black oval as necessary.
      *
      * @param g Reference to the Graphics object for rendering.
      */
     public void paint(Graphics g) {
+        paint(g, cellState, highlight);
+    }
+
+    /**
+     * Draws the cell as it would look with the specified state and highlight, whatever it currently shows.
+     * Used to draw every kind of cell once so they can be copied instead of drawn again.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     * @param state The state to draw. 0=empty, 2=White, 1=Black
+     * @param highlight True to draw the highlight.
+     */
+    public void paint(Graphics g, int state, boolean highlight) {
         if(highlight) {
-            g.setColor(new Color(255, 187, 22, 203));
+            g.setColor(HIGHLIGHT_COLOUR);
             g.fillRect(position.x, position.y, width, height);
         }
 
-        if(cellState == 0) return;
-        g.setColor(cellState == 1 ? Color.BLACK : Color.WHITE);
+        if(state == 0) return;
+        g.setColor(state == 1 ? Color.BLACK : Color.WHITE);
         g.fillOval(position.x, position.y, width, height);
     }
 }
@@ -0,0 +1,612 @@
+import java.util.Arrays;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * LargeBoard class:
+ * Stores a board of any size up to 256x256 as packed bit sets of long words, one bit per cell,
+ * using the same rules as GameGrid and BitBoard: pieces only swap along the four directions
+ * up, down, left, and right, and the first four moves must fill the centre four cells.
+ *
+ * Each row is stored in its own run of words, so every horizontal line is a short packed bit set.
+ * The pieces are also stored a second time column by column, so every vertical line is one too,
+ * and every ray is a scan along a single line that skips over whole words of pieces at a time.
+ *
+ * Valid moves are kept up to date for both players after every move. A cell can only become a
+ * valid move or stop being one when a piece in its own row or column changes, so after a move only
+ * the rows and columns holding the placed and swapped pieces are checked again, each with shifts
+ * of the whole line. The moves found along rows and along columns are kept separately and a cell
+ * is a valid move if it is in either.
+ */
+public class LargeBoard {
+    /**
+     * Largest number of cells along either side of the board.
+     */
+    public static final int MAX_SIZE = 256;
+
+    /**
+     * Number of cells horizontally.
+     */
+    private final int width;
+    /**
+     * Number of cells vertically.
+     */
+    private final int height;
+    /**
+     * Number of words used for each row.
+     */
+    private final int rowWords;
+    /**
+     * Number of words used for each column.
+     */
+    private final int columnWords;
+    /**
+     * Pieces of each player indexed by player ID, row by row. Bit x of row y is at word y*rowWords + x/64.
+     */
+    private final long[][] rowPieces;
+    /**
+     * Pieces of each player indexed by player ID, column by column. Bit y of column x is at word x*columnWords + y/64.
+     */
+    private final long[][] columnPieces;
+    /**
+     * Valid moves of each player indexed by player ID, stored row by row like rowPieces.
+     */
+    private final long[][] moves;
+    /**
+     * Cells of each player indexed by player ID that would swap pieces along their row, stored like rowPieces.
+     */
+    private final long[][] rowMoves;
+    /**
+     * Cells of each player indexed by player ID that would swap pieces along their column, stored like columnPieces.
+     */
+    private final long[][] columnMoves;
+    /**
+     * Number of valid moves for each player indexed by player ID.
+     */
+    private final int[] moveCounts;
+    /**
+     * Number of pieces of each player indexed by player ID.
+     */
+    private final int[] pieceCounts;
+    /**
+     * Rows containing a piece changed by the last move. Only the first changedRowCount are used.
+     */
+    private final int[] changedRows;
+    /**
+     * Number of rows in changedRows.
+     */
+    private int changedRowCount;
+    /**
+     * Columns containing a piece changed by the last move. Only the first changedColumnCount are used.
+     */
+    private final int[] changedColumns;
+    /**
+     * Number of columns in changedColumns.
+     */
+    private int changedColumnCount;
+    /**
+     * Marks the rows already in changedRows.
+     */
+    private final boolean[] rowMarked;
+    /**
+     * Marks the columns already in changedColumns.
+     */
+    private final boolean[] columnMarked;
+    /**
+     * Reused buffer for the moves found along a single line.
+     */
+    private final long[] lineMoves;
+    /**
+     * Reused buffer for the runs of opponent pieces followed along a single line.
+     */
+    private final long[] lineRun;
+    /**
+     * Reused buffer for shifting a single line.
+     */
+    private final long[] lineShift;
+
+    /**
+     * Creates an empty board ready for the first move.
+     *
+     * @param width Number of cells horizontally.
+     * @param height Number of cells vertically.
+     */
+    public LargeBoard(int width, int height) {
+        if(width < 2 || height < 2 || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Board sizes must be from 2 to " + MAX_SIZE + " but got "
+                    + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        rowWords = (width + 63) >>> 6;
+        columnWords = (height + 63) >>> 6;
+        rowPieces = new long[3][height * rowWords];
+        columnPieces = new long[3][width * columnWords];
+        moves = new long[3][height * rowWords];
+        rowMoves = new long[3][height * rowWords];
+        columnMoves = new long[3][width * columnWords];
+        moveCounts = new int[3];
+        pieceCounts = new int[3];
+        changedRows = new int[height];
+        changedColumns = new int[width];
+        rowMarked = new boolean[height];
+        columnMarked = new boolean[width];
+        int lineWords = Math.max(rowWords, columnWords);
+        lineMoves = new long[lineWords];
+        lineRun = new long[lineWords];
+        lineShift = new long[lineWords];
+        reset();
+    }
+
+    /**
+     * Removes all pieces from the board.
+     */
+    public void reset() {
+        for(int playerID = 1; playerID <= 2; playerID++) {
+            Arrays.fill(rowPieces[playerID], 0);
+            Arrays.fill(columnPieces[playerID], 0);
+            pieceCounts[playerID] = 0;
+        }
+        recalculateMoves();
+    }
+
+    /**
+     * Gets the number of cells horizontally.
+     *
+     * @return Width of the board in cells.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of cells vertically.
+     *
+     * @return Height of the board in cells.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Every move places exactly one piece and the board starts empty,
+     * so the number of pieces on the board is the number of moves played.
+     *
+     * @return The number of moves that have been played.
+     */
+    public int getMoveNumber() {
+        return pieceCounts[1] + pieceCounts[2];
+    }
+
+    /**
+     * Gets the number of pieces a player has on the board.
+     *
+     * @param playerID 1 for black, or 2 for white.
+     * @return The number of pieces.
+     */
+    public int getPieceCount(int playerID) {
+        return pieceCounts[playerID];
+    }
+
+    /**
+     * Gets the state of a single cell using the same values as GridCell.
+     *
+     * @param x X coordinate on the grid.
+     * @param y Y coordinate on the grid.
+     * @return 0 for empty, 1 for black, or 2 for white.
+     */
+    public int getCellState(int x, int y) {
+        int word = y * rowWords + (x >>> 6);
+        long bit = 1L << x;
+        if((rowPieces[1][word] & bit) != 0) return 1;
+        if((rowPieces[2][word] & bit) != 0) return 2;
+        return 0;
+    }
+
+    /**
+     * Checks if a cell is a valid move for a player.
+     *
+     * @param x X coordinate on the grid.
+     * @param y Y coordinate on the grid.
+     * @param playerID The player to check.
+     * @return True if the player can play at the cell.
+     */
+    public boolean isValidMove(int x, int y, int playerID) {
+        return (moves[playerID][y * rowWords + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Gets the number of valid moves a player has, which is kept up to date after every move.
+     *
+     * @param playerID The player to check.
+     * @return The number of valid moves.
+     */
+    public int getValidMoveCount(int playerID) {
+        return moveCounts[playerID];
+    }
+
+    /**
+     * Finds the next valid move of a player, so every move can be visited in order without creating any objects.
+     * Whole words without moves are skipped at a time.
+     *
+     * @param playerID The player to find moves for.
+     * @param index Cell index (x + y*width) to start looking from.
+     * @return The cell index of the first valid move at or after index, or -1 if there are no more.
+     */
+    public int nextValidMove(int playerID, int index) {
+        if(index >= width * height) {
+            return -1;
+        }
+        long[] playerMoves = moves[playerID];
+        int y = index / width;
+        int x = index % width;
+        int word = y * rowWords + (x >>> 6);
+        long bits = playerMoves[word] & (-1L << x);
+        while(bits == 0) {
+            if(++word == playerMoves.length) {
+                return -1;
+            }
+            bits = playerMoves[word];
+        }
+        return (word % rowWords) * 64 + Long.numberOfTrailingZeros(bits) + (word / rowWords) * width;
+    }
+
+    /**
+     * Counts the pieces on the board and reports a winner if there is one.
+     * Matches the result values of GameGrid.getWinner().
+     *
+     * @param stillValidMoves If false, ignore empty cells and choose a winner.
+     * @return 0 for no winner, 3 for draw, 1 for player 1, and 2 for player 2.
+     */
+    public int getWinner(boolean stillValidMoves) {
+        if(stillValidMoves && getMoveNumber() < width * height) return 0;
+        else if(pieceCounts[1] == pieceCounts[2]) return 3;
+        else return pieceCounts[1] > pieceCounts[2] ? 1 : 2;
+    }
+
+    /**
+     * Finds the pieces that would swap if the player played at a cell, writing their indexes
+     * (x + y*width) into a buffer supplied by the caller. Does not create any objects.
+     * The indexes are written in the same order as GameGrid.getChangedPositionsForMove().
+     *
+     * @param x X coordinate to check outward from.
+     * @param y Y coordinate to check outward from.
+     * @param playerID Current player to test with.
+     * @param buffer Receives the changed cell indexes. Must hold at least width + height values.
+     * @return The number of indexes written. Will be 0 if the move is invalid.
+     */
+    public int getFlips(int x, int y, int playerID, int[] buffer) {
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        long[] ownColumns = columnPieces[playerID];
+        long[] opponentColumns = columnPieces[otherPlayer];
+        long[] ownRows = rowPieces[playerID];
+        long[] opponentRows = rowPieces[otherPlayer];
+        int count = 0;
+
+        // Down
+        int run = countRun(ownColumns, opponentColumns, x * columnWords, height, y, true);
+        for(int i = 1; i <= run; i++) buffer[count++] = x + (y + i) * width;
+        // Left
+        run = countRun(ownRows, opponentRows, y * rowWords, width, x, false);
+        for(int i = 1; i <= run; i++) buffer[count++] = x - i + y * width;
+        // Up
+        run = countRun(ownColumns, opponentColumns, x * columnWords, height, y, false);
+        for(int i = 1; i <= run; i++) buffer[count++] = x + (y - i) * width;
+        // Right
+        run = countRun(ownRows, opponentRows, y * rowWords, width, x, true);
+        for(int i = 1; i <= run; i++) buffer[count++] = x + i + y * width;
+        return count;
+    }
+
+    /**
+     * Places a piece for the player, swaps all pieces that should be swapped, and updates
+     * the valid moves of both players.
+     *
+     * @param x X coordinate to play the move at.
+     * @param y Y coordinate to play the move at.
+     * @param playerID The player ID of the player who is placing their piece.
+     * @param buffer Receives the indexes (x + y*width) of the swapped pieces. Must hold at least width + height values.
+     * @return The number of pieces that were swapped.
+     */
+    public int playMove(int x, int y, int playerID, int[] buffer) {
+        int count = getFlips(x, y, playerID, buffer);
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        clearChangedLines();
+        setPiece(x, y, 0, playerID);
+        for(int i = 0; i < count; i++) {
+            setPiece(buffer[i] % width, buffer[i] / width, otherPlayer, playerID);
+        }
+        updateMoves();
+        return count;
+    }
+
+    /**
+     * Takes back a move played with playMove(), restoring the board and valid moves exactly.
+     *
+     * @param x X coordinate the move was played at.
+     * @param y Y coordinate the move was played at.
+     * @param playerID The player ID of the player who played the move.
+     * @param flipped Indexes (x + y*width) of the pieces swapped by the move, as written by playMove().
+     * @param count Number of indexes in flipped.
+     */
+    public void undoMove(int x, int y, int playerID, int[] flipped, int count) {
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        clearChangedLines();
+        setPiece(x, y, playerID, 0);
+        for(int i = 0; i < count; i++) {
+            setPiece(flipped[i] % width, flipped[i] / width, playerID, otherPlayer);
+        }
+        updateMoves();
+    }
+
+    /**
+     * Finds the valid moves of both players from scratch by checking every row and every column.
+     */
+    public void recalculateMoves() {
+        for(int playerID = 1; playerID <= 2; playerID++) {
+            for(int y = 0; y < height; y++) {
+                findLineMoves(rowPieces, playerID, y * rowWords, rowWords, width,
+                        rowMoves[playerID], y * rowWords);
+            }
+            for(int x = 0; x < width; x++) {
+                findLineMoves(columnPieces, playerID, x * columnWords, columnWords, height,
+                        columnMoves[playerID], x * columnWords);
+            }
+        }
+        combineMoves();
+    }
+
+    /**
+     * Moves a piece between two states, keeping both copies of the pieces and the piece counts
+     * up to date, and records the row and column as changed.
+     *
+     * @param x X coordinate of the piece.
+     * @param y Y coordinate of the piece.
+     * @param fromState State the cell has now. 0 for empty.
+     * @param toState State the cell should have. 0 for empty.
+     */
+    private void setPiece(int x, int y, int fromState, int toState) {
+        int rowWord = y * rowWords + (x >>> 6);
+        int columnWord = x * columnWords + (y >>> 6);
+        if(fromState != 0) {
+            rowPieces[fromState][rowWord] &= ~(1L << x);
+            columnPieces[fromState][columnWord] &= ~(1L << y);
+            pieceCounts[fromState]--;
+        }
+        if(toState != 0) {
+            rowPieces[toState][rowWord] |= 1L << x;
+            columnPieces[toState][columnWord] |= 1L << y;
+            pieceCounts[toState]++;
+        }
+        if(!rowMarked[y]) {
+            rowMarked[y] = true;
+            changedRows[changedRowCount++] = y;
+        }
+        if(!columnMarked[x]) {
+            columnMarked[x] = true;
+            changedColumns[changedColumnCount++] = x;
+        }
+    }
+
+    /**
+     * Forgets the rows and columns changed by the previous move.
+     */
+    private void clearChangedLines() {
+        for(int i = 0; i < changedRowCount; i++) rowMarked[changedRows[i]] = false;
+        for(int i = 0; i < changedColumnCount; i++) columnMarked[changedColumns[i]] = false;
+        changedRowCount = 0;
+        changedColumnCount = 0;
+    }
+
+    /**
+     * Updates the valid moves of both players after the pieces in the changed rows and columns have changed.
+     * Only the cells whose moves along a changed line became different are looked at individually.
+     */
+    private void updateMoves() {
+        // The opening rule depends on the move number, so when it applies or has just ended check everything.
+        if(getMoveNumber() <= 4) {
+            recalculateMoves();
+            return;
+        }
+        for(int playerID = 1; playerID <= 2; playerID++) {
+            long[] playerRowMoves = rowMoves[playerID];
+            for(int i = 0; i < changedRowCount; i++) {
+                int y = changedRows[i];
+                int start = y * rowWords;
+                findLineMoves(rowPieces, playerID, start, rowWords, width, lineMoves, 0);
+                for(int w = 0; w < rowWords; w++) {
+                    long difference = playerRowMoves[start + w] ^ lineMoves[w];
+                    playerRowMoves[start + w] = lineMoves[w];
+                    for(; difference != 0; difference &= difference - 1) {
+                        updateMove(playerID, w * 64 + Long.numberOfTrailingZeros(difference), y);
+                    }
+                }
+            }
+            long[] playerColumnMoves = columnMoves[playerID];
+            for(int i = 0; i < changedColumnCount; i++) {
+                int x = changedColumns[i];
+                int start = x * columnWords;
+                findLineMoves(columnPieces, playerID, start, columnWords, height, lineMoves, 0);
+                for(int w = 0; w < columnWords; w++) {
+                    long difference = playerColumnMoves[start + w] ^ lineMoves[w];
+                    playerColumnMoves[start + w] = lineMoves[w];
+                    for(; difference != 0; difference &= difference - 1) {
+                        updateMove(playerID, x, w * 64 + Long.numberOfTrailingZeros(difference));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets whether a single cell is a valid move for a player from its row and column moves,
+     * and keeps the move count up to date.
+     *
+     * @param playerID The player to update.
+     * @param x X coordinate of the cell.
+     * @param y Y coordinate of the cell.
+     */
+    private void updateMove(int playerID, int x, int y) {
+        int word = y * rowWords + (x >>> 6);
+        long bit = 1L << x;
+        boolean valid = (rowMoves[playerID][word] & bit) != 0
+                || (columnMoves[playerID][x * columnWords + (y >>> 6)] & (1L << y)) != 0;
+        boolean wasValid = (moves[playerID][word] & bit) != 0;
+        if(valid != wasValid) {
+            moves[playerID][word] ^= bit;
+            moveCounts[playerID] += valid ? 1 : -1;
+        }
+    }
+
+    /**
+     * Builds the valid moves of both players from their row and column moves, or from the
+     * empty centre cells while fewer than four pieces have been played.
+     */
+    private void combineMoves() {
+        boolean opening = getMoveNumber() < 4;
+        int midX = width/2-1;
+        int midY = height/2-1;
+        for(int playerID = 1; playerID <= 2; playerID++) {
+            long[] playerMoves = moves[playerID];
+            Arrays.fill(playerMoves, 0);
+            moveCounts[playerID] = 0;
+            if(opening) {
+                for(int y = midY; y < midY+2; y++) {
+                    for(int x = midX; x < midX+2; x++) {
+                        if(getCellState(x, y) == 0) {
+                            playerMoves[y * rowWords + (x >>> 6)] |= 1L << x;
+                            moveCounts[playerID]++;
+                        }
+                    }
+                }
+                continue;
+            }
+            System.arraycopy(rowMoves[playerID], 0, playerMoves, 0, playerMoves.length);
+            long[] playerColumnMoves = columnMoves[playerID];
+            for(int x = 0; x < width; x++) {
+                for(int w = 0; w < columnWords; w++) {
+                    for(long bits = playerColumnMoves[x * columnWords + w]; bits != 0; bits &= bits - 1) {
+                        int y = w * 64 + Long.numberOfTrailingZeros(bits);
+                        playerMoves[y * rowWords + (x >>> 6)] |= 1L << x;
+                    }
+                }
+            }
+            for(long word : playerMoves) {
+                moveCounts[playerID] += Long.bitCount(word);
+            }
+        }
+    }
+
+    /**
+     * Finds every empty cell along a single line that would swap at least one piece of the opponent
+     * along that line. Runs of opponent pieces are followed from the player's own pieces in both
+     * directions with shifts of the whole line, one cell per step, until no run gets longer.
+     *
+     * @param pieces Pieces of each player indexed by player ID, either row by row or column by column.
+     * @param playerID The player to find moves for.
+     * @param start First word of the line.
+     * @param words Number of words in the line.
+     * @param length Number of cells in the line.
+     * @param out Array to write the moves into.
+     * @param outStart First word to write in the output.
+     */
+    private void findLineMoves(long[][] pieces, int playerID, int start, int words, int length,
+                               long[] out, int outStart) {
+        long[] own = pieces[playerID];
+        long[] opponent = pieces[playerID == 1 ? 2 : 1];
+        for(int w = 0; w < words; w++) {
+            out[outStart + w] = 0;
+        }
+        for(int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            shiftLine(own, start, words, forward, lineRun, 0);
+            boolean any = false;
+            for(int w = 0; w < words; w++) {
+                lineRun[w] &= opponent[start + w];
+                any |= lineRun[w] != 0;
+            }
+            boolean grown = any;
+            while(grown) {
+                shiftLine(lineRun, 0, words, forward, lineShift, 0);
+                grown = false;
+                for(int w = 0; w < words; w++) {
+                    long next = lineRun[w] | (lineShift[w] & opponent[start + w]);
+                    grown |= next != lineRun[w];
+                    lineRun[w] = next;
+                }
+            }
+            if(!any) continue;
+            shiftLine(lineRun, 0, words, forward, lineShift, 0);
+            for(int w = 0; w < words; w++) {
+                out[outStart + w] |= lineShift[w] & ~(own[start + w] | opponent[start + w]);
+            }
+        }
+        // Runs reaching the last cell would otherwise place moves past the end of the line.
+        int lastBits = length & 63;
+        if(lastBits != 0) {
+            out[outStart + words - 1] &= (1L << lastBits) - 1;
+        }
+    }
+
+    /**
+     * Shifts a line one cell along, carrying bits between its words.
+     *
+     * @param in Array holding the line to shift.
+     * @param inStart First word of the line in the input.
+     * @param words Number of words in the line.
+     * @param forward True to move every bit to the next higher cell, false for the next lower cell.
+     * @param out Array to write the shifted line into.
+     * @param outStart First word of the line in the output.
+     */
+    private static void shiftLine(long[] in, int inStart, int words, boolean forward, long[] out, int outStart) {
+        if(forward) {
+            for(int w = words - 1; w >= 0; w--) {
+                long carry = w > 0 ? in[inStart + w - 1] >>> 63 : 0;
+                out[outStart + w] = (in[inStart + w] << 1) | carry;
+            }
+        } else {
+            for(int w = 0; w < words; w++) {
+                long carry = w < words - 1 ? in[inStart + w + 1] << 63 : 0;
+                out[outStart + w] = (in[inStart + w] >>> 1) | carry;
+            }
+        }
+    }
+
+    /**
+     * Counts the opponent pieces that would swap in one direction along a line. Whole words of
+     * opponent pieces are skipped at a time, then the run only swaps if it ends at one of the player's pieces.
+     *
+     * @param own Player's pieces, either row by row or column by column.
+     * @param opponent Opponent's pieces stored the same way.
+     * @param start First word of the line.
+     * @param length Number of cells in the line.
+     * @param from Position along the line of the move.
+     * @param forward True to count toward higher positions, false toward lower positions.
+     * @return The number of pieces that would swap, or 0 if the run does not end at the player's piece.
+     */
+    private static int countRun(long[] own, long[] opponent, int start, int length, int from, boolean forward) {
+        int end;
+        if(forward) {
+            end = from + 1;
+            while(end < length) {
+                int shift = end & 63;
+                int run = Long.numberOfTrailingZeros(~(opponent[start + (end >>> 6)] >>> shift));
+                end += run;
+                if(run < 64 - shift) break;
+            }
+            if(end >= length) return 0;
+        } else {
+            end = from - 1;
+            while(end >= 0) {
+                int shift = 63 - (end & 63);
+                int run = Long.numberOfLeadingZeros(~(opponent[start + (end >>> 6)] << shift));
+                end -= run;
+                if(run < 64 - shift) break;
+            }
+            if(end < 0) return 0;
+        }
+        if((own[start + (end >>> 6)] & (1L << end)) == 0) return 0;
+        return Math.abs(end - from) - 1;
+    }
+}
@@ -0,0 +1,137 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * LargeBoardBenchmark class:
+ * Shows how the cost of each turn grows with the size of the board, from 8x8 up to 256x256.
+ * For every size several positions are made by random play until half the board is filled,
+ * then these are timed on each position:
+ *
+ * - play + undo: LargeBoard.playMove and undoMove of one valid move, including keeping the
+ *   valid moves of both players up to date after each.
+ * - full recalculation: finding the valid moves of both players from scratch, for comparison.
+ * - list valid moves: visiting every valid move of the player to move.
+ * - GameGrid play + undo: the same move on a GameGrid, which also updates its cells and move list.
+ * - viewport paint: drawing a 500x500 pixel LargeBoardView with 20 pixel cells.
+ *
+ * Runs without a window, so it can be used on the machines the game runs on.
+ *
+ * Usage: java LargeBoardBenchmark [iterationMillis]
+ */
+public class LargeBoardBenchmark {
+    /**
+     * Board sizes to time, the number of cells along each side.
+     */
+    private static final int[] SIZES = {8, 16, 32, 64, 128, 256};
+    /**
+     * Number of positions made for each size.
+     */
+    private static final int POSITIONS = 4;
+    /**
+     * Size of the viewport in pixels.
+     */
+    private static final int VIEW_SIZE = 500;
+    /**
+     * Size of each cell in the viewport in pixels.
+     */
+    private static final int VIEW_CELL_SIZE = 20;
+
+    /**
+     * Runs every benchmark on every board size and prints the results.
+     *
+     * @param args Optional duration of each iteration in milliseconds.
+     */
+    public static void main(String[] args) {
+        long iterationMillis = args.length > 0 ? Long.parseLong(args[0]) : 500;
+        BufferedImage frame = new BufferedImage(VIEW_SIZE, VIEW_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+
+        RulesBenchmark.printHeader();
+        for(int size : SIZES) {
+            String phase = size + "x" + size;
+            Random random = new Random(size);
+            LargeBoard[] boards = new LargeBoard[POSITIONS];
+            GameGrid[] grids = new GameGrid[POSITIONS];
+            LargeBoardView[] views = new LargeBoardView[POSITIONS];
+            int[] players = new int[POSITIONS];
+            int[] moves = new int[POSITIONS];
+            for(int i = 0; i < POSITIONS; i++) {
+                boards[i] = new LargeBoard(size, size);
+                grids[i] = new GameGrid(new Position(0, 0), VIEW_SIZE, VIEW_SIZE, size, size);
+                players[i] = playRandomMoves(boards[i], grids[i], size * size / 2, random);
+                moves[i] = boards[i].nextValidMove(players[i], 0);
+                views[i] = new LargeBoardView(new Position(0, 0), VIEW_SIZE, VIEW_SIZE, boards[i], VIEW_CELL_SIZE);
+                views[i].centreOn(moves[i] % size, moves[i] / size);
+                views[i].setHighlightPlayer(players[i]);
+            }
+            int[] buffer = new int[size * 2];
+
+            RulesBenchmark.measure("play + undo", phase, i -> {
+                int x = moves[i] % size, y = moves[i] / size;
+                int count = boards[i].playMove(x, y, players[i], buffer);
+                boards[i].undoMove(x, y, players[i], buffer, count);
+                return count;
+            }, POSITIONS, iterationMillis);
+            RulesBenchmark.measure("full recalculation", phase, i -> {
+                boards[i].recalculateMoves();
+                return boards[i].getValidMoveCount(1);
+            }, POSITIONS, iterationMillis);
+            RulesBenchmark.measure("list valid moves", phase, i -> {
+                long sum = 0;
+                for(int index = boards[i].nextValidMove(players[i], 0); index >= 0;
+                        index = boards[i].nextValidMove(players[i], index + 1)) {
+                    sum += index;
+                }
+                return sum;
+            }, POSITIONS, iterationMillis);
+            RulesBenchmark.measure("GameGrid play + undo", phase, i -> {
+                grids[i].playMove(new Position(moves[i] % size, moves[i] / size), players[i]);
+                return grids[i].unmakeMove();
+            }, POSITIONS, iterationMillis);
+            RulesBenchmark.measure("viewport paint", phase, i -> {
+                views[i].paint(g);
+                return views[i].getViewX();
+            }, POSITIONS, iterationMillis);
+        }
+        g.dispose();
+    }
+
+    /**
+     * Plays random moves on a board and a grid of the same size until the number of moves is reached
+     * or neither player can move. Passes are handled the same way as GamePanel.
+     *
+     * @param board The board to play on.
+     * @param grid The grid to play the same moves on.
+     * @param movesToPlay Number of moves to play.
+     * @param random Source of the random moves.
+     * @return The player to move next, who always has a valid move.
+     */
+    private static int playRandomMoves(LargeBoard board, GameGrid grid, int movesToPlay, Random random) {
+        int[] buffer = new int[board.getWidth() + board.getHeight()];
+        int player = 1;
+        for(int move = 0; move < movesToPlay; move++) {
+            if(board.getValidMoveCount(player) == 0) {
+                player = player == 1 ? 2 : 1;
+                if(board.getValidMoveCount(player) == 0) {
+                    throw new IllegalStateException("The game ended before " + movesToPlay + " moves.");
+                }
+            }
+            int index = board.nextValidMove(player, 0);
+            for(int skip = random.nextInt(board.getValidMoveCount(player)); skip > 0; skip--) {
+                index = board.nextValidMove(player, index + 1);
+            }
+            board.playMove(index % board.getWidth(), index / board.getWidth(), player, buffer);
+            grid.playMove(new Position(index % board.getWidth(), index / board.getWidth()), player);
+            player = player == 1 ? 2 : 1;
+        }
+        if(board.getValidMoveCount(player) == 0) {
+            player = player == 1 ? 2 : 1;
+        }
+        grid.updateValidMoves(player);
+        return player;
+    }
+}
@@ -0,0 +1,299 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * LargeBoardView class:
+ * Draws the part of a LargeBoard that fits in a viewport, so boards far larger than the window
+ * can be shown at a readable cell size. Only the cells inside the viewport are looked at,
+ * so the cost of drawing depends on the size of the viewport and not the size of the board.
+ * The viewport can be scrolled and zoomed, and draws cells the same way as GridCell.
+ *
+ * The empty grid for the viewport and one tile for each kind of cell are drawn once into opaque
+ * images, in the same way as the layers of GameGrid, so drawing a frame only copies the empty
+ * grid and then one tile for each piece or highlight without blending or drawing any shapes.
+ */
+public class LargeBoardView extends Rectangle {
+    /**
+     * Smallest cell size in pixels. Below this pieces are drawn as squares.
+     */
+    public static final int MIN_CELL_SIZE = 2;
+    /**
+     * Cell size in pixels below which pieces are drawn as squares instead of ovals.
+     */
+    private static final int OVAL_CELL_SIZE = 6;
+
+    /**
+     * The board to draw.
+     */
+    private final LargeBoard board;
+    /**
+     * Size of each cell in pixels.
+     */
+    private int cellSize;
+    /**
+     * Column of the board at the left edge of the viewport.
+     */
+    private int viewX;
+    /**
+     * Row of the board at the top edge of the viewport.
+     */
+    private int viewY;
+    /**
+     * Player whose valid moves are highlighted, or 0 to show no highlights.
+     */
+    private int highlightPlayer;
+    /**
+     * Colour behind the grid. The cached images are filled with it so they can be copied without blending.
+     */
+    private Color backgroundColour = Color.LIGHT_GRAY;
+    /**
+     * Grid lines for every visible cell on the background. Null until the first paint after any change of size.
+     */
+    private BufferedImage gridImage;
+    /**
+     * Tiles one pixel larger than a cell with the lines around it, indexed by cell state,
+     * with highlighted empty cells last. Null until the first paint after any change of size.
+     */
+    private BufferedImage[] cellTiles;
+
+    /**
+     * Creates a view of a board with the viewport in the top left corner of the board.
+     *
+     * @param position Top left corner of the viewport on the panel.
+     * @param width Width of the viewport in pixels.
+     * @param height Height of the viewport in pixels.
+     * @param board The board to draw.
+     * @param cellSize Size of each cell in pixels.
+     */
+    public LargeBoardView(Position position, int width, int height, LargeBoard board, int cellSize) {
+        super(position, width, height);
+        this.board = board;
+        this.cellSize = Math.max(MIN_CELL_SIZE, cellSize);
+    }
+
+    /**
+     * Gets the board drawn by this view.
+     *
+     * @return The board.
+     */
+    public LargeBoard getBoard() {
+        return board;
+    }
+
+    /**
+     * Gets the size of each cell in pixels.
+     *
+     * @return The cell size.
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Changes the size of each cell, keeping the cell at the centre of the viewport in the centre.
+     *
+     * @param cellSize The new cell size in pixels. Sizes below MIN_CELL_SIZE are raised to it.
+     */
+    public void setCellSize(int cellSize) {
+        int centreX = viewX + getVisibleColumns() / 2;
+        int centreY = viewY + getVisibleRows() / 2;
+        this.cellSize = Math.max(MIN_CELL_SIZE, cellSize);
+        gridImage = null;
+        centreOn(centreX, centreY);
+    }
+
+    /**
+     * Sets the colour behind the grid, which should match the panel it is drawn on.
+     *
+     * @param backgroundColour The colour behind the grid.
+     */
+    public void setBackgroundColour(Color backgroundColour) {
+        this.backgroundColour = backgroundColour;
+        gridImage = null;
+    }
+
+    /**
+     * Sets the player whose valid moves are highlighted.
+     *
+     * @param playerID The player to show moves for, or 0 to show no highlights.
+     */
+    public void setHighlightPlayer(int playerID) {
+        highlightPlayer = playerID;
+    }
+
+    /**
+     * Moves the viewport by a number of cells, stopping at the edges of the board.
+     *
+     * @param dx Number of cells to move right. Negative to move left.
+     * @param dy Number of cells to move down. Negative to move up.
+     */
+    public void scroll(int dx, int dy) {
+        setView(viewX + dx, viewY + dy);
+    }
+
+    /**
+     * Moves the viewport so the specified cell is as close to its centre as the edges of the board allow.
+     *
+     * @param x X coordinate of the cell on the board.
+     * @param y Y coordinate of the cell on the board.
+     */
+    public void centreOn(int x, int y) {
+        setView(x - getVisibleColumns() / 2, y - getVisibleRows() / 2);
+    }
+
+    /**
+     * Gets the column of the board at the left edge of the viewport.
+     *
+     * @return The first visible column.
+     */
+    public int getViewX() {
+        return viewX;
+    }
+
+    /**
+     * Gets the row of the board at the top edge of the viewport.
+     *
+     * @return The first visible row.
+     */
+    public int getViewY() {
+        return viewY;
+    }
+
+    /**
+     * Gets the number of columns that fit in the viewport, including a partly visible last column.
+     *
+     * @return The number of visible columns, never more than the board has.
+     */
+    public int getVisibleColumns() {
+        return Math.min(board.getWidth(), (width + cellSize - 1) / cellSize);
+    }
+
+    /**
+     * Gets the number of rows that fit in the viewport, including a partly visible last row.
+     *
+     * @return The number of visible rows, never more than the board has.
+     */
+    public int getVisibleRows() {
+        return Math.min(board.getHeight(), (height + cellSize - 1) / cellSize);
+    }
+
+    /**
+     * Converts the mouse position to a position on the board.
+     *
+     * @param mousePosition Position of the mouse in the panel.
+     * @return The board position under the mouse or a position with -1,-1 if it is outside the board or the viewport.
+     */
+    public Position convertMouseToGridPosition(Position mousePosition) {
+        if(!isPositionInside(mousePosition)) {
+            return new Position(-1,-1);
+        }
+        int gridX = viewX + (mousePosition.x - position.x) / cellSize;
+        int gridY = viewY + (mousePosition.y - position.y) / cellSize;
+        if(gridX >= board.getWidth() || gridY >= board.getHeight()) {
+            return new Position(-1,-1);
+        }
+        return new Position(gridX, gridY);
+    }
+
+    /**
+     * Draws the cells inside the viewport with grid lines around them, highlights on the valid moves
+     * of the highlighted player, and the pieces. Empty cells without a highlight are already in the
+     * copied grid, so only the other cells need a tile. Everything is clipped to the viewport.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     */
+    public void paint(Graphics g) {
+        if(gridImage == null) {
+            createImages();
+        }
+        g.drawImage(gridImage, position.x, position.y, null);
+        // Tiles in a partly visible last column or row would otherwise reach past the viewport.
+        Shape oldClip = g.getClip();
+        g.clipRect(position.x, position.y, width, height);
+        int columns = Math.min(getVisibleColumns(), board.getWidth() - viewX);
+        int rows = Math.min(getVisibleRows(), board.getHeight() - viewY);
+        BufferedImage highlightTile = cellTiles[3];
+        for(int y = 0; y < rows; y++) {
+            for(int x = 0; x < columns; x++) {
+                int state = board.getCellState(viewX + x, viewY + y);
+                BufferedImage tile;
+                if(state != 0) {
+                    tile = cellTiles[state];
+                } else if(highlightPlayer != 0 && board.isValidMove(viewX + x, viewY + y, highlightPlayer)) {
+                    tile = highlightTile;
+                } else {
+                    continue;
+                }
+                g.drawImage(tile, position.x + x * cellSize, position.y + y * cellSize, null);
+            }
+        }
+        g.setClip(oldClip);
+    }
+
+    /**
+     * Creates the grid image for the viewport and the cell tiles. The grid only has lines around
+     * cells on the board, so a board smaller than the viewport leaves the rest as background.
+     */
+    private void createImages() {
+        int columns = getVisibleColumns();
+        int rows = getVisibleRows();
+        gridImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D gridGraphics = gridImage.createGraphics();
+        gridGraphics.setColor(backgroundColour);
+        gridGraphics.fillRect(0, 0, width, height);
+        drawGridLines(gridGraphics, columns, rows);
+        gridGraphics.dispose();
+
+        cellTiles = new BufferedImage[4];
+        for(int tile = 1; tile < cellTiles.length; tile++) {
+            cellTiles[tile] = new BufferedImage(cellSize + 1, cellSize + 1, BufferedImage.TYPE_INT_RGB);
+            Graphics2D tileGraphics = cellTiles[tile].createGraphics();
+            tileGraphics.setColor(backgroundColour);
+            tileGraphics.fillRect(0, 0, cellSize + 1, cellSize + 1);
+            drawGridLines(tileGraphics, 1, 1);
+            if(tile == 3) {
+                tileGraphics.setColor(GridCell.HIGHLIGHT_COLOUR);
+                tileGraphics.fillRect(0, 0, cellSize, cellSize);
+            } else {
+                tileGraphics.setColor(tile == 1 ? Color.BLACK : Color.WHITE);
+                if(cellSize < OVAL_CELL_SIZE) {
+                    tileGraphics.fillRect(0, 0, cellSize, cellSize);
+                } else {
+                    tileGraphics.fillOval(0, 0, cellSize, cellSize);
+                }
+            }
+            tileGraphics.dispose();
+        }
+    }
+
+    /**
+     * Draws lines to box in a number of cells from the top left corner.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     * @param columns Number of cells horizontally.
+     * @param rows Number of cells vertically.
+     */
+    private void drawGridLines(Graphics g, int columns, int rows) {
+        g.setColor(Color.BLACK);
+        for(int x = 0; x <= columns; x++) {
+            g.drawLine(x * cellSize, 0, x * cellSize, rows * cellSize);
+        }
+        for(int y = 0; y <= rows; y++) {
+            g.drawLine(0, y * cellSize, columns * cellSize, y * cellSize);
+        }
+    }
+
+    /**
+     * Moves the viewport to start at the specified cell, stopping at the edges of the board.
+     *
+     * @param x Column to show at the left edge.
+     * @param y Row to show at the top edge.
+     */
+    private void setView(int x, int y) {
+        viewX = Math.max(0, Math.min(x, board.getWidth() - getVisibleColumns()));
+        viewY = Math.max(0, Math.min(y, board.getHeight() - getVisibleRows()));
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * LatencyHistogram class:
+ * Counts durations in a fixed number of buckets so percentiles can be reported for any number of
+ * measurements without keeping them. Values below 64 each have their own bucket,
+ * and every doubling above that is split into 64 buckets, so every percentile is within about
+ * 1.6% of the true value. Not thread safe.
+ *
+ * Durations counted with record() are kept in microseconds. Other values, such as nodes or durations
+ * that need more precision, can be counted in any unit with recordValue().
+ */
+public class LatencyHistogram {
+    /**
+     * Number of buckets for each doubling of the duration.
+     */
+    private static final int SUB_BUCKETS = 64;
+    /**
+     * Number of bits needed for the sub bucket index.
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /**
+     * Number of durations counted in each bucket.
+     */
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    /**
+     * Number of durations counted.
+     */
+    private long count;
+    /**
+     * Sum of all the values counted.
+     */
+    private long total;
+    /**
+     * Largest value counted.
+     */
+    private long max;
+
+    /**
+     * Counts a duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        recordValue(nanos / 1000);
+    }
+
+    /**
+     * Counts a value.
+     *
+     * @param value The value, where negative values are counted as 0.
+     */
+    public void recordValue(long value) {
+        value = Math.max(0, value);
+        counts[getBucket(value)]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all the durations counted by another histogram to this one.
+     *
+     * @param other The histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Gets the number of durations counted.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the mean of the values counted.
+     *
+     * @return The mean in microseconds for durations, or 0 if nothing has been counted.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Gets the largest value counted.
+     *
+     * @return The maximum in microseconds for durations.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Finds the value that the specified fraction of the values were no larger than.
+     *
+     * @param fraction Fraction of the values from 0 to 1, such as 0.99 for the 99th percentile.
+     * @return The value in microseconds for durations, or 0 if nothing has been counted.
+     */
+    public long getPercentile(double fraction) {
+        long target = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= target && seen > 0) {
+                return Math.min(getBucketValue(i), max);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the count, mean, common percentiles, and maximum of durations counted with record() on one line.
+     *
+     * @return The summary in milliseconds.
+     */
+    @Override
+    public String toString() {
+        return toString(1000, "ms");
+    }
+
+    /**
+     * Writes the count, mean, common percentiles, and maximum on one line.
+     *
+     * @param divisor Number to divide the values by before they are written.
+     * @param unit Unit of the values after dividing.
+     * @return The summary.
+     */
+    public String toString(double divisor, String unit) {
+        return String.format("n=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f %s", count,
+                getMean() / divisor, getPercentile(0.5) / divisor, getPercentile(0.9) / divisor,
+                getPercentile(0.99) / divisor, getPercentile(0.999) / divisor, max / divisor, unit);
+    }
+
+    /**
+     * Finds the bucket that counts a value.
+     *
+     * @param value The value, at least 0.
+     * @return Index of the bucket.
+     */
+    private static int getBucket(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the highest value counted by a bucket.
+     *
+     * @param bucket Index of the bucket.
+     * @return The value.
+     */
+    private static long getBucketValue(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,535 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * MCTSAI class:
+ * Chooses moves with Monte Carlo Tree Search using UCT. Each iteration walks down the tree picking
+ * the child with the best upper confidence bound, adds the children of the leaf it reaches, plays a
+ * random game to the end from one of them, and adds the result to every node on the way back up.
+ * The move played is the root move that was visited the most.
+ *
+ * With more than one thread the search is root parallel: every thread grows its own tree from the
+ * same position and the visits of the root moves are added together at the end, so threads never
+ * wait on each other. Trees are stored in preallocated arrays and random games are played on
+ * bare masks with the BitBoard rules, so searching does not create any objects.
+ */
+public class MCTSAI implements AIBehaviour {
+    /**
+     * Default weight of the exploration term in the upper confidence bound.
+     */
+    public static final double DEFAULT_EXPLORATION = 1.0;
+    /**
+     * Default maximum number of nodes in each thread's tree.
+     */
+    public static final int DEFAULT_TREE_NODES = 1 << 17;
+    /**
+     * How many random games are played between each check of the time limit.
+     */
+    private static final int CHECK_INTERVAL = 16;
+
+    /**
+     * Maximum time to spend choosing each move in milliseconds, or 0 for no limit.
+     */
+    private final long timeLimitMillis;
+    /**
+     * Maximum number of random games to play for each move across all threads, or 0 for no limit.
+     */
+    private final long playoutLimit;
+    /**
+     * Weight of the exploration term in the upper confidence bound.
+     */
+    private final double exploration;
+    /**
+     * Tree and random number state for each thread. Worker 0 runs on the thread calling chooseMove().
+     */
+    private final Worker[] workers;
+    /**
+     * Threads running the helper workers, or null when searching with a single thread.
+     */
+    private final ExecutorService helperPool;
+
+    /**
+     * Time from System.nanoTime() at which the current search must stop.
+     */
+    private long deadline;
+    /**
+     * Set by stop() to make every worker stop growing its tree, until clearStop() is called.
+     */
+    private volatile boolean stopRequested;
+    /**
+     * Set by shutdown(), after which every tree is grown on the calling thread by worker 0.
+     */
+    private volatile boolean shutDown;
+    /**
+     * Number of random games played by all threads in the most recent search.
+     */
+    private long playouts;
+    /**
+     * Time taken by the most recent search in nanoseconds.
+     */
+    private long elapsedNanos;
+    /**
+     * Visits of each root move in the most recent search added over all threads, indexed by cell.
+     */
+    private final long[] rootVisits = new long[BitBoard.CELLS];
+    /**
+     * Results of each root move in the most recent search added over all threads, indexed by cell.
+     * A win counts 1 and a draw 0.5 for the player choosing the move.
+     */
+    private final double[] rootWins = new double[BitBoard.CELLS];
+
+    /**
+     * Creates an MCTS AI with the specified limits.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds, or 0 for no limit.
+     * @param playoutLimit Maximum random games to play for each move across all threads, or 0 for no limit.
+     * @param exploration Weight of the exploration term, higher tries less visited moves more often.
+     * @param threads Number of threads to search with.
+     * @param treeNodes Maximum number of nodes in each thread's tree.
+     */
+    public MCTSAI(long timeLimitMillis, long playoutLimit, double exploration, int threads, int treeNodes) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.playoutLimit = playoutLimit;
+        this.exploration = exploration;
+        workers = new Worker[Math.max(1, threads)];
+        for(int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(treeNodes, 0x9E3779B97F4A7C15L * (i + 1));
+        }
+        if(workers.length > 1) {
+            helperPool = Executors.newFixedThreadPool(workers.length - 1, runnable -> {
+                Thread thread = new Thread(runnable, "MCTSAI helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            helperPool = null;
+        }
+    }
+
+    /**
+     * Creates an MCTS AI with the default exploration and tree size.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds, or 0 for no limit.
+     * @param playoutLimit Maximum random games to play for each move across all threads, or 0 for no limit.
+     * @param threads Number of threads to search with.
+     */
+    public MCTSAI(long timeLimitMillis, long playoutLimit, int threads) {
+        this(timeLimitMillis, playoutLimit, DEFAULT_EXPLORATION, threads, DEFAULT_TREE_NODES);
+    }
+
+    /**
+     * Creates an MCTS AI that spends a fixed time on each move using the specified number of threads.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds.
+     * @param threads Number of threads to search with.
+     */
+    public MCTSAI(long timeLimitMillis, int threads) {
+        this(timeLimitMillis, 0, threads);
+    }
+
+    /**
+     * Grows the trees until a limit is reached, then plays the root move visited the most.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for.
+     * @return The cell index of the chosen move, or -1 if there are no valid moves.
+     */
+    @Override
+    public int chooseMove(BitBoard board, int playerID) {
+        long startTime = System.nanoTime();
+        deadline = startTime + timeLimitMillis * 1000000L;
+        playouts = 0;
+        Arrays.fill(rootVisits, 0);
+        Arrays.fill(rootWins, 0);
+        if(board.getValidMoves(playerID) == 0) {
+            elapsedNanos = System.nanoTime() - startTime;
+            return -1;
+        }
+        long black = board.getBlack();
+        long white = board.getWhite();
+        int activeWorkers = shutDown ? 1 : workers.length;
+        // Share the playout limit between the threads, rounding up so it is never 0.
+        long workerLimit = playoutLimit > 0 ? (playoutLimit + activeWorkers - 1) / activeWorkers : 0;
+
+        Future<?>[] helpers = new Future<?>[activeWorkers - 1];
+        for(int i = 1; i < activeWorkers; i++) {
+            Worker helper = workers[i];
+            helpers[i - 1] = helperPool.submit(() -> helper.search(black, white, playerID, workerLimit));
+        }
+        workers[0].search(black, white, playerID, workerLimit);
+        for(Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("MCTS helper failed", e.getCause());
+            }
+        }
+
+        for(int i = 0; i < activeWorkers; i++) {
+            Worker worker = workers[i];
+            playouts += worker.playouts;
+            worker.addRootStatistics(rootVisits, rootWins);
+        }
+        int bestMove = -1;
+        for(int move = 0; move < BitBoard.CELLS; move++) {
+            if(rootVisits[move] == 0) continue;
+            if(bestMove < 0 || rootVisits[move] > rootVisits[bestMove]
+                    || (rootVisits[move] == rootVisits[bestMove] && getRootWinRate(move) > getRootWinRate(bestMove))) {
+                bestMove = move;
+            }
+        }
+        if(bestMove < 0) {
+            // The limit was reached before the root was expanded.
+            bestMove = Long.numberOfTrailingZeros(board.getValidMoves(playerID));
+        }
+        elapsedNanos = System.nanoTime() - startTime;
+        return bestMove;
+    }
+
+    /**
+     * Gets the number of random games played by the most recent search across all threads.
+     *
+     * @return Number of playouts.
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Gets how many random games were played each second by the most recent search.
+     *
+     * @return Playouts per second across all threads.
+     */
+    public double getPlayoutsPerSecond() {
+        return playouts / Math.max(elapsedNanos / 1e9, 1e-9);
+    }
+
+    /**
+     * Gets the time taken by the most recent search.
+     *
+     * @return Time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the number of times a root move was visited by the most recent search across all threads.
+     *
+     * @param move Cell index of the move.
+     * @return Number of visits, 0 if the move was not valid.
+     */
+    public long getRootVisits(int move) {
+        return rootVisits[move];
+    }
+
+    /**
+     * Gets the share of random games through a root move that the player choosing the move went on to win,
+     * counting draws as half.
+     *
+     * @param move Cell index of the move.
+     * @return Win rate between 0 and 1, or 0 if the move was not visited.
+     */
+    public double getRootWinRate(int move) {
+        return rootVisits[move] == 0 ? 0 : rootWins[move] / rootVisits[move];
+    }
+
+    /**
+     * Gets the number of threads this AI searches with.
+     *
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * Stops a running chooseMove(), and any started before clearStop() is called.
+     * A stopped chooseMove() plays the root move visited the most so far.
+     */
+    @Override
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Forgets any earlier stop() so the next chooseMove() runs until its limits.
+     */
+    @Override
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Stops the helper threads. Later calls to chooseMove() still work, playing every random game
+     * on the calling thread.
+     */
+    public void shutdown() {
+        shutDown = true;
+        if(helperPool != null) {
+            helperPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Worker class:
+     * The tree of a single thread stored as parallel arrays indexed by node, with the
+     * children of each node next to each other. Node 0 is the root.
+     */
+    private class Worker {
+        /**
+         * Black pieces at each node.
+         */
+        private final long[] blacks;
+        /**
+         * White pieces at each node.
+         */
+        private final long[] whites;
+        /**
+         * Player to move at each node after any passes, or 0 if the game is over.
+         */
+        private final byte[] players;
+        /**
+         * Player who played the move leading to each node.
+         */
+        private final byte[] movers;
+        /**
+         * Cell index of the move leading to each node.
+         */
+        private final byte[] moves;
+        /**
+         * Parent of each node, -1 for the root.
+         */
+        private final int[] parents;
+        /**
+         * First child of each node, or -1 if the children have not been added yet.
+         */
+        private final int[] firstChildren;
+        /**
+         * Number of children of each node.
+         */
+        private final byte[] childCounts;
+        /**
+         * Number of random games played through each node.
+         */
+        private final int[] visits;
+        /**
+         * Results of the random games through each node for the player who moved into it.
+         */
+        private final double[] wins;
+        /**
+         * Number of nodes in use.
+         */
+        private int nodeCount;
+        /**
+         * State of the xorshift random number generator.
+         */
+        private long seed;
+        /**
+         * Number of random games played in the current search.
+         */
+        private long playouts;
+
+        /**
+         * Creates the worker with a tree of a fixed size.
+         *
+         * @param treeNodes Maximum number of nodes in the tree.
+         * @param seed Starting state of the random number generator. Must not be 0.
+         */
+        private Worker(int treeNodes, long seed) {
+            blacks = new long[treeNodes];
+            whites = new long[treeNodes];
+            players = new byte[treeNodes];
+            movers = new byte[treeNodes];
+            moves = new byte[treeNodes];
+            parents = new int[treeNodes];
+            firstChildren = new int[treeNodes];
+            childCounts = new byte[treeNodes];
+            visits = new int[treeNodes];
+            wins = new double[treeNodes];
+            this.seed = seed;
+        }
+
+        /**
+         * Grows the tree from a new root until the time or playout limit is reached.
+         * Once the tree is full the leaves stop being expanded but random games continue.
+         *
+         * @param black Black pieces at the root.
+         * @param white White pieces at the root.
+         * @param playerID The player to move at the root.
+         * @param limit Maximum random games to play, or 0 for no limit.
+         */
+        private void search(long black, long white, int playerID, long limit) {
+            playouts = 0;
+            nodeCount = 1;
+            setNode(0, black, white, playerID, playerID == 1 ? 2 : 1, -1, -1);
+            while(true) {
+                if(limit > 0 && playouts >= limit) break;
+                if((playouts & (CHECK_INTERVAL - 1)) == 0 && (stopRequested
+                        || (timeLimitMillis > 0 && System.nanoTime() - deadline > 0))) break;
+                int node = 0;
+                while(firstChildren[node] >= 0 && childCounts[node] > 0) {
+                    node = selectChild(node);
+                }
+                if(players[node] != 0 && (node == 0 || visits[node] > 0) && nodeCount + BitBoard.CELLS <= blacks.length) {
+                    expand(node);
+                    node = firstChildren[node] + nextInt(childCounts[node]);
+                }
+                int result = playout(blacks[node], whites[node], players[node]);
+                playouts++;
+                for(; node >= 0; node = parents[node]) {
+                    visits[node]++;
+                    wins[node] += result == 3 ? 0.5 : result == movers[node] ? 1 : 0;
+                }
+            }
+        }
+
+        /**
+         * Adds the visits and results of the root moves to the totals over all threads.
+         *
+         * @param totalVisits Visits of each root move indexed by cell.
+         * @param totalWins Results of each root move indexed by cell.
+         */
+        private void addRootStatistics(long[] totalVisits, double[] totalWins) {
+            if(firstChildren[0] < 0) return;
+            for(int child = firstChildren[0]; child < firstChildren[0] + childCounts[0]; child++) {
+                totalVisits[moves[child]] += visits[child];
+                totalWins[moves[child]] += wins[child];
+            }
+        }
+
+        /**
+         * Picks the child with the highest upper confidence bound, or the first child that has not been visited.
+         *
+         * @param node The node to pick a child of.
+         * @return The chosen child.
+         */
+        private int selectChild(int node) {
+            double logVisits = Math.log(visits[node]);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for(int child = firstChildren[node]; child < firstChildren[node] + childCounts[node]; child++) {
+                if(visits[child] == 0) return child;
+                double value = wins[child] / visits[child] + exploration * Math.sqrt(logVisits / visits[child]);
+                if(value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Adds a child for every valid move of a node. The turn passes to the player
+         * who moved when the other player has no valid moves, the same as in GamePanel.
+         *
+         * @param node The node to expand. The player to move must have a valid move.
+         */
+        private void expand(int node) {
+            int player = players[node];
+            int otherPlayer = player == 1 ? 2 : 1;
+            long own = player == 1 ? blacks[node] : whites[node];
+            long opponent = player == 1 ? whites[node] : blacks[node];
+            long validMoves = BitBoard.getMoves(own, opponent);
+            firstChildren[node] = nodeCount;
+            childCounts[node] = (byte) Long.bitCount(validMoves);
+            for(; validMoves != 0; validMoves &= validMoves - 1) {
+                int move = Long.numberOfTrailingZeros(validMoves);
+                long flips = BitBoard.getFlips(own, opponent, move);
+                long newOwn = own | flips | (1L << move);
+                long newOpponent = opponent & ~flips;
+                int next = otherPlayer;
+                if(BitBoard.getMoves(newOpponent, newOwn) == 0) {
+                    next = BitBoard.getMoves(newOwn, newOpponent) == 0 ? 0 : player;
+                }
+                setNode(nodeCount++, player == 1 ? newOwn : newOpponent, player == 1 ? newOpponent : newOwn,
+                        next, player, move, node);
+            }
+        }
+
+        /**
+         * Fills in a new node with no visits and no children.
+         *
+         * @param node Index of the node.
+         * @param black Black pieces.
+         * @param white White pieces.
+         * @param player Player to move, or 0 if the game is over.
+         * @param mover Player who played the move leading to the node.
+         * @param move Cell index of the move leading to the node.
+         * @param parent Parent of the node, -1 for the root.
+         */
+        private void setNode(int node, long black, long white, int player, int mover, int move, int parent) {
+            blacks[node] = black;
+            whites[node] = white;
+            players[node] = (byte) player;
+            movers[node] = (byte) mover;
+            moves[node] = (byte) move;
+            parents[node] = parent;
+            firstChildren[node] = -1;
+            childCounts[node] = 0;
+            visits[node] = 0;
+            wins[node] = 0;
+        }
+
+        /**
+         * Plays random moves until neither player can move.
+         *
+         * @param black Black pieces to start from.
+         * @param white White pieces to start from.
+         * @param player Player to move, or 0 if the game is already over.
+         * @return The result from BitBoard.getWinner(false): 1 for black, 2 for white, or 3 for a draw.
+         */
+        private int playout(long black, long white, int player) {
+            if(player != 0) {
+                long own = player == 1 ? black : white;
+                long opponent = player == 1 ? white : black;
+                while(true) {
+                    long validMoves = BitBoard.getMoves(own, opponent);
+                    if(validMoves == 0) {
+                        validMoves = BitBoard.getMoves(opponent, own);
+                        if(validMoves == 0) break;
+                        long swap = own;
+                        own = opponent;
+                        opponent = swap;
+                        player = player == 1 ? 2 : 1;
+                    }
+                    for(int skip = nextInt(Long.bitCount(validMoves)); skip > 0; skip--) {
+                        validMoves &= validMoves - 1;
+                    }
+                    int move = Long.numberOfTrailingZeros(validMoves);
+                    long flips = BitBoard.getFlips(own, opponent, move);
+                    long newOwn = opponent & ~flips;
+                    opponent = own | flips | (1L << move);
+                    own = newOwn;
+                    player = player == 1 ? 2 : 1;
+                }
+                black = player == 1 ? own : opponent;
+                white = player == 1 ? opponent : own;
+            }
+            int blackCount = Long.bitCount(black);
+            int whiteCount = Long.bitCount(white);
+            return blackCount == whiteCount ? 3 : blackCount > whiteCount ? 1 : 2;
+        }
+
+        /**
+         * Steps the xorshift generator and scales the result to a range.
+         *
+         * @param bound Upper bound, exclusive. Must be positive.
+         * @return A random number from 0 to bound - 1.
+         */
+        private int nextInt(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) (((seed >>> 32) * bound) >>> 32);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * MCTSBenchmark class:
+ * Measures the throughput of MCTSAI so its settings can be tuned. Every position in the standard
+ * PositionCorpus is searched for a fixed time once for each thread count, and the playouts per
+ * second are printed along with the scaling compared to one thread. The visits and win rate of
+ * each root move are then shown for the first position, to see how the search spreads its playouts.
+ *
+ * Usage: java MCTSBenchmark [millisPerPosition] [positionsPerPhase] [threadCounts...]
+ */
+public class MCTSBenchmark {
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args Optional time per position, positions per phase, and the list of thread counts to test.
+     */
+    public static void main(String[] args) {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 200;
+        int perPhase = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int[] threadCounts = {1, 2, 4, 8, 16};
+        if(args.length > 2) {
+            threadCounts = new int[args.length - 2];
+            for(int i = 2; i < args.length; i++) {
+                threadCounts[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        PositionCorpus corpus = PositionCorpus.standard(perPhase);
+        System.out.printf("Searching %d positions for %d ms each on %d available processors%n",
+                corpus.size(), millis, Runtime.getRuntime().availableProcessors());
+
+        // Warm up the JIT so the first thread count is not penalised.
+        runAll(new MCTSAI(millis, 1), corpus, new long[2]);
+
+        System.out.printf("%8s %14s %14s %12s%n", "threads", "playouts", "playouts/s", "scaling");
+        double basePlayoutsPerSecond = 0;
+        for(int threads : threadCounts) {
+            MCTSAI mctsAI = new MCTSAI(millis, threads);
+            long[] totals = new long[2];
+            runAll(mctsAI, corpus, totals);
+            mctsAI.shutdown();
+            double playoutsPerSecond = totals[1] / (totals[0] / 1e9);
+            if(basePlayoutsPerSecond == 0) {
+                basePlayoutsPerSecond = playoutsPerSecond;
+            }
+            System.out.printf("%8d %14d %14.0f %12.2f%n", threads, totals[1],
+                    playoutsPerSecond, playoutsPerSecond / basePlayoutsPerSecond);
+        }
+
+        MCTSAI mctsAI = new MCTSAI(millis, 1);
+        int move = mctsAI.chooseMove(corpus.getBoard(0), corpus.getPlayer(0));
+        System.out.println("Root moves of the first position:");
+        System.out.println(corpus.getBoard(0));
+        for(int i = 0; i < BitBoard.CELLS; i++) {
+            if(mctsAI.getRootVisits(i) == 0) continue;
+            System.out.printf("  (%d,%d) %8d visits %6.1f%%%s%n", i % BitBoard.SIZE, i / BitBoard.SIZE,
+                    mctsAI.getRootVisits(i), mctsAI.getRootWinRate(i) * 100, i == move ? "  chosen" : "");
+        }
+    }
+
+    /**
+     * Searches every position in the corpus.
+     *
+     * @param mctsAI The AI to search with.
+     * @param corpus The positions to search.
+     * @param totals Filled with the total time in nanoseconds and the total playouts.
+     */
+    private static void runAll(MCTSAI mctsAI, PositionCorpus corpus, long[] totals) {
+        for(int i = 0; i < corpus.size(); i++) {
+            mctsAI.chooseMove(corpus.getBoard(i), corpus.getPlayer(i));
+            totals[0] += mctsAI.getElapsedNanos();
+            totals[1] += mctsAI.getPlayouts();
+        }
+    }
+}
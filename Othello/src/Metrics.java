@@ -0,0 +1,304 @@
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * Metrics class:
+ * Measures the hot paths of the game while it is played: listing valid moves, playing moves,
+ * the AI choosing moves, and painting the window. Each measurement is counted in a LatencyHistogram
+ * so percentiles can be printed when the game exits, and is also sent to Java Flight Recorder as
+ * one of the EngineEvents so it can be lined up with garbage collection and thread activity.
+ *
+ * Everything is off until enable() is called, from Game.main() when the game is started with --profile.
+ * While it is off, startTimer() returns 0 and every record method returns straight away, so the cost
+ * at each measured place is one static field check.
+ */
+public class Metrics {
+    /**
+     * File the flight recording is written to when no file is given.
+     */
+    public static final String DEFAULT_RECORDING_FILE = "othello.jfr";
+
+    /**
+     * True once enable() has been called.
+     */
+    private static boolean enabled;
+    /**
+     * Every metric in the order they were registered.
+     */
+    private static final List<Metric> METRICS = new ArrayList<>();
+
+    /**
+     * Time taken by GameGrid.updateValidMoves() in nanoseconds.
+     */
+    public static final Metric MOVE_GENERATION = register("GameGrid.updateValidMoves", 1000, "us");
+    /**
+     * Time taken by GameGrid.playMove() in nanoseconds.
+     */
+    public static final Metric MOVE_APPLICATION = register("GameGrid.playMove", 1000, "us");
+    /**
+     * Time taken by the AI to choose each move in nanoseconds.
+     */
+    public static final Metric AI_TIME_TO_MOVE = register("AI time to move", 1e6, "ms");
+    /**
+     * Nodes searched by the AI for each move, or playouts for MCTSAI.
+     */
+    public static final Metric AI_NODES = register("AI nodes", 1, "nodes");
+    /**
+     * Nodes searched per second by the AI for each move, or playouts per second for MCTSAI.
+     */
+    public static final Metric AI_NODES_PER_SECOND = register("AI nodes/second", 1000, "k/s");
+    /**
+     * Depth reached by the search for each move.
+     */
+    public static final Metric AI_DEPTH = register("AI depth reached", 1, "plies");
+    /**
+     * Time taken by GamePanel.paint() in nanoseconds.
+     */
+    public static final Metric PAINT = register("GamePanel.paint", 1000, "us");
+
+    /**
+     * A single measured value with the histogram of everything recorded for it.
+     */
+    public static class Metric {
+        /**
+         * Name shown in the summary.
+         */
+        private final String name;
+        /**
+         * Number to divide the recorded values by in the summary.
+         */
+        private final double divisor;
+        /**
+         * Unit of the values in the summary after dividing.
+         */
+        private final String unit;
+        /**
+         * Every value recorded.
+         */
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /**
+         * Creates a metric.
+         *
+         * @param name Name shown in the summary.
+         * @param divisor Number to divide the recorded values by in the summary.
+         * @param unit Unit of the values in the summary after dividing.
+         */
+        private Metric(String name, double divisor, String unit) {
+            this.name = name;
+            this.divisor = divisor;
+            this.unit = unit;
+        }
+
+        /**
+         * Counts a value. Can be called from any thread.
+         *
+         * @param value The value to count.
+         */
+        public synchronized void record(long value) {
+            histogram.recordValue(value);
+        }
+
+        /**
+         * Gets the name shown in the summary.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Writes the count, mean, percentiles, and maximum of the recorded values.
+         *
+         * @return The summary.
+         */
+        @Override
+        public synchronized String toString() {
+            return histogram.toString(divisor, unit);
+        }
+    }
+
+    /**
+     * Turns on measuring and prints the summary of every metric to standard error when the program exits.
+     *
+     * @param recordingFile File to write a flight recording to when the program exits, or null for no recording.
+     * @throws IOException If the flight recording could not be started.
+     */
+    public static void enable(String recordingFile) throws IOException {
+        if(recordingFile != null) {
+            try {
+                Recording recording = new Recording(Configuration.getConfiguration("default"));
+                recording.enable(EngineEvents.MoveGeneration.class);
+                recording.enable(EngineEvents.MoveApplication.class);
+                recording.enable(EngineEvents.AIMove.class);
+                recording.enable(EngineEvents.Paint.class);
+                recording.setDestination(Paths.get(recordingFile));
+                recording.setDumpOnExit(true);
+                recording.start();
+            } catch (ParseException e) {
+                throw new IOException("Could not read the default flight recorder settings", e);
+            }
+        }
+        enabled = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> printSummary(System.err)));
+    }
+
+    /**
+     * Checks if measuring is on.
+     *
+     * @return True once enable() has been called.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the time to measure from. Pass it to one of the record methods when the work is done.
+     *
+     * @return The current System.nanoTime(), or 0 if measuring is off.
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the end of GameGrid.updateValidMoves().
+     *
+     * @param startTime Value of startTimer() when it started.
+     * @param playerID The player whose moves were listed.
+     * @param validMoves Number of valid moves found.
+     */
+    public static void recordMoveGeneration(long startTime, int playerID, int validMoves) {
+        if(startTime == 0) return;
+        long elapsed = System.nanoTime() - startTime;
+        MOVE_GENERATION.record(elapsed);
+        EngineEvents.MoveGeneration event = new EngineEvents.MoveGeneration();
+        if(event.isEnabled()) {
+            event.elapsed = elapsed;
+            event.playerID = playerID;
+            event.validMoves = validMoves;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the end of GameGrid.playMove().
+     *
+     * @param startTime Value of startTimer() when it started.
+     * @param playerID The player who played the move.
+     * @param cell Cell index (x + y*width) of the move.
+     */
+    public static void recordMoveApplication(long startTime, int playerID, int cell) {
+        if(startTime == 0) return;
+        long elapsed = System.nanoTime() - startTime;
+        MOVE_APPLICATION.record(elapsed);
+        EngineEvents.MoveApplication event = new EngineEvents.MoveApplication();
+        if(event.isEnabled()) {
+            event.elapsed = elapsed;
+            event.playerID = playerID;
+            event.cell = cell;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the AI choosing a move, with the nodes and depth of its search when it has them.
+     *
+     * @param startTime Value of startTimer() when the AI was asked.
+     * @param ai The AI that chose the move.
+     * @param move Cell index of the move chosen.
+     */
+    public static void recordAIMove(long startTime, AIBehaviour ai, int move) {
+        if(startTime == 0) return;
+        long elapsed = System.nanoTime() - startTime;
+        AI_TIME_TO_MOVE.record(elapsed);
+        boolean fromBook = false;
+        if(ai instanceof OpeningBookAI) {
+            fromBook = ((OpeningBookAI) ai).isLastMoveFromBook();
+            ai = ((OpeningBookAI) ai).getFallback();
+        }
+        long nodes = 0;
+        int depth = 0;
+        if(!fromBook && ai instanceof SearchAI) {
+            SearchAI search = (SearchAI) ai;
+            nodes = search.getNodes();
+            depth = search.getDepthReached();
+            AI_DEPTH.record(depth);
+        } else if(!fromBook && ai instanceof MCTSAI) {
+            nodes = ((MCTSAI) ai).getPlayouts();
+        }
+        long nodesPerSecond = nodes * 1_000_000_000L / Math.max(1, elapsed);
+        if(nodes > 0) {
+            AI_NODES.record(nodes);
+            AI_NODES_PER_SECOND.record(nodesPerSecond);
+        }
+        EngineEvents.AIMove event = new EngineEvents.AIMove();
+        if(event.isEnabled()) {
+            event.elapsed = elapsed;
+            event.ai = ai.getClass().getSimpleName();
+            event.move = move;
+            event.nodes = nodes;
+            event.nodesPerSecond = nodesPerSecond;
+            event.depth = depth;
+            event.fromBook = fromBook;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the end of GamePanel.paint().
+     *
+     * @param startTime Value of startTimer() when it started.
+     * @param clipWidth Width of the area that was painted in pixels.
+     * @param clipHeight Height of the area that was painted in pixels.
+     */
+    public static void recordPaint(long startTime, int clipWidth, int clipHeight) {
+        if(startTime == 0) return;
+        long elapsed = System.nanoTime() - startTime;
+        PAINT.record(elapsed);
+        EngineEvents.Paint event = new EngineEvents.Paint();
+        if(event.isEnabled()) {
+            event.elapsed = elapsed;
+            event.clipWidth = clipWidth;
+            event.clipHeight = clipHeight;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds a metric to the registry so it is included in the summary.
+     *
+     * @param name Name shown in the summary.
+     * @param divisor Number to divide the recorded values by in the summary.
+     * @param unit Unit of the values in the summary after dividing.
+     * @return The new metric.
+     */
+    public static synchronized Metric register(String name, double divisor, String unit) {
+        Metric metric = new Metric(name, divisor, unit);
+        METRICS.add(metric);
+        return metric;
+    }
+
+    /**
+     * Writes the summary of every metric, one per line.
+     *
+     * @param out Where to write the summary.
+     */
+    public static synchronized void printSummary(PrintStream out) {
+        out.println("Metrics summary:");
+        for(Metric metric : METRICS) {
+            out.printf("%-26s %s%n", metric.getName(), metric);
+        }
+    }
+}
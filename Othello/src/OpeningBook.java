@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * OpeningBook class:
+ * Reads a book of known good moves for early positions from a binary file made by OpeningBookBuilder.
+ * The file is memory-mapped instead of being read onto the heap, and the entries are sorted by
+ * Zobrist hash so finding a position is a single binary search over the mapped file with no parsing.
+ * Positions are stored in their canonical orientation from Symmetry, so the rotations and reflections
+ * of a position share one entry, and each move is stored in that orientation and turned back on lookup.
+ *
+ * File layout (big-endian):
+ * - Header of 16 bytes: magic number, format version, number of entries, and the number of plies covered.
+ * - Entries of 16 bytes sorted by hash: hash (8 bytes), move (2 bytes), search depth (2 bytes), score (4 bytes).
+ *   The hash and move are of the canonical orientation.
+ */
+public class OpeningBook {
+    /**
+     * File the game loads the book from, relative to the working directory.
+     */
+    public static final String DEFAULT_FILE = "opening.book";
+    /**
+     * Identifies the file as an opening book ("OBK1").
+     */
+    private static final int MAGIC = 0x4F424B31;
+    /**
+     * Version of the file layout.
+     */
+    private static final int VERSION = 2;
+    /**
+     * Size of the header in bytes.
+     */
+    private static final int HEADER_BYTES = 16;
+    /**
+     * Size of each entry in bytes.
+     */
+    private static final int ENTRY_BYTES = 16;
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer buffer;
+    /**
+     * Number of entries in the book.
+     */
+    private final int size;
+    /**
+     * Number of plies from the empty board the book was built to.
+     */
+    private final int plies;
+
+    /**
+     * Maps a book file into memory. Only the header is read straight away.
+     *
+     * @param fileName Path of the book file.
+     * @throws IOException If the file cannot be read or is not a valid book.
+     */
+    public OpeningBook(String fileName) throws IOException {
+        // The mapping stays valid after the channel is closed.
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an opening book: " + fileName);
+        }
+        if(buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported opening book version " + buffer.getInt(4) + ": " + fileName
+                    + ". Build it again with OpeningBookBuilder.");
+        }
+        size = buffer.getInt(8);
+        plies = buffer.getInt(12);
+        if(size < 0 || HEADER_BYTES + (long) size * ENTRY_BYTES > buffer.capacity()) {
+            throw new IOException("Opening book is truncated: " + fileName);
+        }
+    }
+
+    /**
+     * Finds the book move for a position. The move is checked against the valid moves
+     * so a hash collision can never produce an illegal move.
+     *
+     * @param board The current board.
+     * @param playerID The player to move.
+     * @return The cell index (x + y*8) of the book move, or -1 if the position is not in the book.
+     */
+    public int getMove(BitBoard board, int playerID) {
+        int transform = Symmetry.getCanonicalTransform(board.getBlack(), board.getWhite());
+        int entry = find(Zobrist.hash(Symmetry.transform(board.getBlack(), transform),
+                Symmetry.transform(board.getWhite(), transform), playerID));
+        if(entry < 0) {
+            return -1;
+        }
+        int move = Symmetry.transformIndex(getMove(entry), Symmetry.inverse(transform));
+        return (board.getValidMoves(playerID) & (1L << move)) != 0 ? move : -1;
+    }
+
+    /**
+     * Binary searches the entries for a hash.
+     *
+     * @param hash Zobrist hash of the canonical orientation of the position, including the side to move.
+     * @return The index of the entry, or -1 if it is not in the book.
+     */
+    public int find(long hash) {
+        int low = 0;
+        int high = size - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            long key = getKey(middle);
+            if(key < hash) {
+                low = middle + 1;
+            } else if(key > hash) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the hash of an entry.
+     *
+     * @param entry Index of the entry.
+     * @return Zobrist hash of the canonical orientation of the position.
+     */
+    public long getKey(int entry) {
+        return buffer.getLong(HEADER_BYTES + entry * ENTRY_BYTES);
+    }
+
+    /**
+     * Gets the move stored in an entry.
+     *
+     * @param entry Index of the entry.
+     * @return Cell index (x + y*8) of the move in the canonical orientation.
+     */
+    public int getMove(int entry) {
+        return buffer.getShort(HEADER_BYTES + entry * ENTRY_BYTES + 8);
+    }
+
+    /**
+     * Gets the depth of the search that chose the move in an entry.
+     *
+     * @param entry Index of the entry.
+     * @return Depth in moves.
+     */
+    public int getDepth(int entry) {
+        return buffer.getShort(HEADER_BYTES + entry * ENTRY_BYTES + 10);
+    }
+
+    /**
+     * Gets the search score of the move in an entry.
+     *
+     * @param entry Index of the entry.
+     * @return Score from the point of view of the player to move, on the same scale as SearchAI.
+     */
+    public int getScore(int entry) {
+        return buffer.getInt(HEADER_BYTES + entry * ENTRY_BYTES + 12);
+    }
+
+    /**
+     * Gets the number of positions in the book.
+     *
+     * @return Number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of plies from the empty board that every line in the book was built to.
+     *
+     * @return Number of plies.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Writes a book file. The entries are sorted by hash before writing, and must have distinct hashes.
+     *
+     * @param fileName Path of the book file.
+     * @param keys Zobrist hash of the canonical orientation of each position.
+     * @param moves Cell index of the move for each position in the canonical orientation.
+     * @param depths Search depth of each move.
+     * @param scores Search score of each move.
+     * @param count Number of entries to write from the arrays.
+     * @param plies Number of plies from the empty board the book covers.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(String fileName, long[] keys, int[] moves, int[] depths, int[] scores,
+                             int count, int plies) throws IOException {
+        Integer[] order = new Integer[count];
+        for(int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(plies);
+        for(int i : order) {
+            out.putLong(keys[i]).putShort((short) moves[i]).putShort((short) depths[i]).putInt(scores[i]);
+        }
+        out.flip();
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+}
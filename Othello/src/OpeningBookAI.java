@@ -0,0 +1,92 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * OpeningBookAI class:
+ * Plays the book move straight away while the game is still in the opening book,
+ * and asks another AI to choose once the game leaves it.
+ */
+public class OpeningBookAI implements AIBehaviour {
+    /**
+     * The book to play moves from.
+     */
+    private final OpeningBook book;
+    /**
+     * The AI that chooses moves for positions not in the book.
+     */
+    private final AIBehaviour fallback;
+    /**
+     * True if the most recent move came from the book.
+     */
+    private boolean lastMoveFromBook;
+
+    /**
+     * Creates an AI that plays from the book before handing over to another AI.
+     *
+     * @param book The book to play moves from.
+     * @param fallback The AI to use for positions not in the book.
+     */
+    public OpeningBookAI(OpeningBook book, AIBehaviour fallback) {
+        this.book = book;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Plays the book move if the position is in the book, otherwise asks the fallback AI.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for.
+     * @return The cell index of the chosen move, or -1 if there are no valid moves.
+     */
+    @Override
+    public int chooseMove(BitBoard board, int playerID) {
+        int move = book.getMove(board, playerID);
+        lastMoveFromBook = move >= 0;
+        return lastMoveFromBook ? move : fallback.chooseMove(board, playerID);
+    }
+
+    /**
+     * Lets the fallback AI think while the opponent chooses a move.
+     *
+     * @param board The current board with the opponent to move. Must not be modified.
+     * @param playerID The player this AI chooses moves for.
+     */
+    @Override
+    public void ponder(BitBoard board, int playerID) {
+        fallback.ponder(board, playerID);
+    }
+
+    /**
+     * Stops the fallback AI if it is choosing a move or pondering.
+     */
+    @Override
+    public void stop() {
+        fallback.stop();
+    }
+
+    /**
+     * Forgets any earlier stop() of the fallback AI.
+     */
+    @Override
+    public void clearStop() {
+        fallback.clearStop();
+    }
+
+    /**
+     * Checks where the most recent move came from.
+     *
+     * @return True if the most recent move was played from the book.
+     */
+    public boolean isLastMoveFromBook() {
+        return lastMoveFromBook;
+    }
+
+    /**
+     * Gets the AI used for positions not in the book.
+     *
+     * @return The fallback AI.
+     */
+    public AIBehaviour getFallback() {
+        return fallback;
+    }
+}
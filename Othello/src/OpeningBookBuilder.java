@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * OpeningBookBuilder class:
+ * Builds an opening book file offline for OpeningBook. Every position reachable from the empty board
+ * within a number of plies is searched to a fixed depth with SearchAI, which always includes the forced
+ * opening where the first four moves fill the centre. The book can then be extended with self-play lines:
+ * from each of those positions both sides keep playing the searched move for more plies, so the lines the
+ * AI actually plays stay in book for longer. Positions reached by different move orders, and rotations or
+ * reflections of a position, are searched once: every position is turned to its canonical orientation
+ * from Symmetry before it is searched, which is the orientation OpeningBook stores.
+ *
+ * Usage: java OpeningBookBuilder [file] [plies] [depth] [linePlies] [threads]
+ */
+public class OpeningBookBuilder {
+    /**
+     * Size of the transposition table given to each searching thread in megabytes.
+     */
+    private static final int TABLE_MB = 16;
+
+    /**
+     * Number of plies from the empty board where every move is followed.
+     */
+    private final int plies;
+    /**
+     * Number of further plies where only the searched move is followed.
+     */
+    private final int linePlies;
+    /**
+     * Depth every position is searched to.
+     */
+    private final int depth;
+    /**
+     * Number of threads to search positions on.
+     */
+    private final int threads;
+
+    /**
+     * Hash of every position in the book.
+     */
+    private long[] keys = new long[1024];
+    /**
+     * Searched move of every position in the book.
+     */
+    private int[] moves = new int[1024];
+    /**
+     * Depth reached by the search of every position in the book.
+     */
+    private int[] depths = new int[1024];
+    /**
+     * Search score of every position in the book.
+     */
+    private int[] scores = new int[1024];
+    /**
+     * Number of positions in the book.
+     */
+    private int size;
+
+    /**
+     * Builds a book from the command line and writes it to a file.
+     *
+     * @param args Optional file, plies, search depth, self-play line plies, and threads.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String fileName = args.length > 0 ? args[0] : OpeningBook.DEFAULT_FILE;
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        int linePlies = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        long startTime = System.nanoTime();
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies, linePlies, depth, threads);
+        builder.build();
+        builder.write(fileName);
+        System.out.printf("Wrote %d positions to %s in %.1f s%n",
+                builder.size(), fileName, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * Sets up a builder.
+     *
+     * @param plies Number of plies from the empty board where every move is followed.
+     * @param linePlies Number of further plies where only the searched move is followed.
+     * @param depth Depth to search each position to.
+     * @param threads Number of threads to search positions on.
+     */
+    public OpeningBookBuilder(int plies, int linePlies, int depth, int threads) {
+        this.plies = plies;
+        this.linePlies = linePlies;
+        this.depth = depth;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Searches every position one ply at a time, using the moves found at each ply to decide
+     * which positions make up the next ply.
+     */
+    public void build() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<SearchAI> searches = ThreadLocal.withInitial(() -> new SearchAI(0, 0, depth, TABLE_MB));
+        Set<Long> seen = new HashSet<>();
+        List<long[]> level = new ArrayList<>();
+        level.add(new long[] {0, 0, 1});
+        try {
+            for(int ply = 0; ply < plies + linePlies && !level.isEmpty(); ply++) {
+                List<Future<int[]>> results = new ArrayList<>();
+                for(long[] position : level) {
+                    results.add(pool.submit(() -> search(searches.get(), position)));
+                }
+                List<long[]> nextLevel = new ArrayList<>();
+                for(int i = 0; i < level.size(); i++) {
+                    long[] position = level.get(i);
+                    int[] result = results.get(i).get();
+                    add(Zobrist.hash(position[0], position[1], (int) position[2]), result);
+                    if(ply < plies) {
+                        long moves = new BitBoard(position[0], position[1]).getValidMoves((int) position[2]);
+                        for(; moves != 0; moves &= moves - 1) {
+                            addChild(position, Long.numberOfTrailingZeros(moves), seen, nextLevel);
+                        }
+                    } else {
+                        addChild(position, result[0], seen, nextLevel);
+                    }
+                }
+                System.out.printf("ply %2d: %6d positions%n", ply, level.size());
+                level = nextLevel;
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Book search failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes the book to a file.
+     *
+     * @param fileName Path of the book file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(String fileName) throws IOException {
+        OpeningBook.write(fileName, keys, moves, depths, scores, size, plies + linePlies);
+    }
+
+    /**
+     * Gets the number of positions in the book.
+     *
+     * @return Number of positions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Searches a single position.
+     *
+     * @param search The search to use.
+     * @param position Black pieces, white pieces, and the player to move.
+     * @return The move, the depth reached, and the score.
+     */
+    private static int[] search(SearchAI search, long[] position) {
+        int move = search.chooseMove(new BitBoard(position[0], position[1]), (int) position[2]);
+        return new int[] {move, search.getDepthReached(), search.getScore()};
+    }
+
+    /**
+     * Adds a searched position to the book.
+     *
+     * @param key Hash of the position.
+     * @param result The move, the depth reached, and the score.
+     */
+    private void add(long key, int[] result) {
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            moves = Arrays.copyOf(moves, size * 2);
+            depths = Arrays.copyOf(depths, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        keys[size] = key;
+        moves[size] = result[0];
+        depths[size] = result[1];
+        scores[size] = result[2];
+        size++;
+    }
+
+    /**
+     * Plays a move and adds the canonical orientation of the position after it to the next ply, unless it
+     * has already been added. The turn passes the same way as in GamePanel.setGameState(), and finished
+     * games are not added.
+     *
+     * @param position Black pieces, white pieces, and the player to move.
+     * @param move Cell index of the move to play.
+     * @param seen Hashes of the canonical orientation of every position added so far.
+     * @param nextLevel Receives the new position.
+     */
+    private static void addChild(long[] position, int move, Set<Long> seen, List<long[]> nextLevel) {
+        int player = (int) position[2];
+        BitBoard board = new BitBoard(position[0], position[1]);
+        board.playMove(move, player);
+        int next = player == 1 ? 2 : 1;
+        if(board.getValidMoves(next) == 0) {
+            next = player;
+            if(board.getValidMoves(next) == 0) return;
+        }
+        int transform = Symmetry.getCanonicalTransform(board.getBlack(), board.getWhite());
+        long black = Symmetry.transform(board.getBlack(), transform);
+        long white = Symmetry.transform(board.getWhite(), transform);
+        if(seen.add(Zobrist.hash(black, white, next))) {
+            nextLevel.add(new long[] {black, white, next});
+        }
+    }
+}
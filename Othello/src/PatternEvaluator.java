@@ -0,0 +1,444 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * PatternEvaluator class:
+ * Estimates the final piece difference of a position from lookup tables indexed by the pieces in
+ * groups of cells (patterns), plus weights for mobility and frontier. Each pattern is read as a base 3
+ * number (0 empty, 1 own, 2 opponent) that indexes a table of weights, so evaluating a position is
+ * 20 table lookups and two counts, without creating any objects.
+ *
+ * Pieces in this game only swap along rows and columns, so the patterns follow the lines that can
+ * actually swap: every row and column is one pattern, with lines the same distance from the edge
+ * sharing a table (edge, second, third, and fourth line). The 3x3 block in each corner is another
+ * pattern. Diagonals are left out because nothing can ever swap along them.
+ * Frontier likewise counts empty cells next to the opponent's pieces up, down, left, or right only.
+ *
+ * The weights are split into phases by the number of pieces on the board, and are loaded from a
+ * gzip compressed binary file made by PatternTrainer. Without a file, default weights are built
+ * from piece-square values, corners, and mobility.
+ */
+public class PatternEvaluator {
+    /**
+     * File the weights are loaded from by getDefault(), relative to the working directory.
+     */
+    public static final String DEFAULT_FILE = "patterns.weights";
+    /**
+     * Number of game phases with their own weights.
+     */
+    public static final int PHASES = 6;
+    /**
+     * Number of entries in a line table, one for each arrangement of 8 cells.
+     */
+    static final int LINE_SIZE = 6561;
+    /**
+     * Number of entries in the corner table, one for each arrangement of 9 cells.
+     */
+    static final int CORNER_SIZE = 19683;
+    /**
+     * Start of the edge line table in the weights of a phase.
+     */
+    static final int EDGE = 0;
+    /**
+     * Start of the table for the second line from the edge.
+     */
+    static final int LINE2 = EDGE + LINE_SIZE;
+    /**
+     * Start of the table for the third line from the edge.
+     */
+    static final int LINE3 = LINE2 + LINE_SIZE;
+    /**
+     * Start of the table for the fourth line from the edge.
+     */
+    static final int LINE4 = LINE3 + LINE_SIZE;
+    /**
+     * Start of the corner block table.
+     */
+    static final int CORNER = LINE4 + LINE_SIZE;
+    /**
+     * Weight for each valid move more than the opponent has.
+     */
+    static final int MOBILITY = CORNER + CORNER_SIZE;
+    /**
+     * Weight for each empty cell next to the opponent's pieces more than next to the player's own.
+     */
+    static final int FRONTIER = MOBILITY + 1;
+    /**
+     * Constant added for the player to move.
+     */
+    static final int BIAS = FRONTIER + 1;
+    /**
+     * Number of weights in each phase.
+     */
+    static final int PHASE_SIZE = BIAS + 1;
+    /**
+     * Table start used for each row and column by distance from the edge.
+     */
+    static final int[] LINE_TABLES = {EDGE, LINE2, LINE3, LINE4, LINE4, LINE3, LINE2, EDGE};
+    /**
+     * Number of values in each 20 entry list of table indexes filled by getIndexes().
+     */
+    static final int PATTERNS = 2 * BitBoard.SIZE + 4;
+
+    /**
+     * Identifies the file as pattern weights ("PAT1").
+     */
+    private static final int MAGIC = 0x50415431;
+    /**
+     * Base 3 value of each 8 bit mask, with bit i worth 3^i.
+     */
+    private static final int[] BASE3 = new int[512];
+    /**
+     * Index of the same line read in the opposite direction, for each line index.
+     */
+    static final int[] MIRROR_LINE = new int[LINE_SIZE];
+    /**
+     * Index of the same corner block mirrored along its diagonal, for each corner index.
+     */
+    static final int[] TRANSPOSE_CORNER = new int[CORNER_SIZE];
+    /**
+     * Reverses the order of 3 bits.
+     */
+    private static final int[] REVERSE3 = {0, 4, 2, 6, 1, 5, 3, 7};
+    /**
+     * Multiplier that gathers the bits of the left column into a single byte, y = 0 in the lowest bit.
+     */
+    private static final long COLUMN_MAGIC = 0x0102040810204080L;
+
+    static {
+        for(int mask = 0; mask < BASE3.length; mask++) {
+            int value = 0;
+            for(int bit = 8; bit >= 0; bit--) {
+                value = value * 3 + ((mask >> bit) & 1);
+            }
+            BASE3[mask] = value;
+        }
+        for(int index = 0; index < LINE_SIZE; index++) {
+            int mirror = 0;
+            for(int i = 0, rest = index; i < 8; i++, rest /= 3) {
+                mirror = mirror * 3 + rest % 3;
+            }
+            MIRROR_LINE[index] = mirror;
+        }
+        // Corner cells are numbered row by row, 3^(row*3 + column), and transposing swaps row and column.
+        for(int index = 0; index < CORNER_SIZE; index++) {
+            int transposed = 0;
+            for(int row = 0, power = 1; row < 3; row++) {
+                for(int column = 0; column < 3; column++, power *= 3) {
+                    int cell = index / power % 3;
+                    transposed += cell * pow3(column * 3 + row);
+                }
+            }
+            TRANSPOSE_CORNER[index] = transposed;
+        }
+    }
+
+    /**
+     * Shared evaluator used when no other is given, loaded once on first use.
+     */
+    private static PatternEvaluator defaultEvaluator;
+
+    /**
+     * All weights, indexed by phase then by table start plus index.
+     */
+    private final short[][] weights;
+
+    /**
+     * Creates an evaluator with the specified weights.
+     *
+     * @param weights PHASE_SIZE weights for each of the PHASES phases.
+     */
+    PatternEvaluator(short[][] weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Gets the shared evaluator. The weights come from DEFAULT_FILE if it can be read,
+     * otherwise from createDefault().
+     *
+     * @return The shared evaluator.
+     */
+    public static synchronized PatternEvaluator getDefault() {
+        if(defaultEvaluator == null) {
+            try {
+                defaultEvaluator = load(DEFAULT_FILE);
+            } catch (IOException e) {
+                defaultEvaluator = createDefault();
+            }
+        }
+        return defaultEvaluator;
+    }
+
+    /**
+     * Reads weights saved by save().
+     *
+     * @param fileName Path of the weights file.
+     * @return An evaluator using the weights.
+     * @throws IOException If the file cannot be read or is not a weights file.
+     */
+    public static PatternEvaluator load(String fileName) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(fileName))))) {
+            if(in.readInt() != MAGIC || in.readInt() != PHASES || in.readInt() != PHASE_SIZE) {
+                throw new IOException("Not a pattern weights file: " + fileName);
+            }
+            short[][] weights = new short[PHASES][PHASE_SIZE];
+            for(short[] phase : weights) {
+                for(int i = 0; i < PHASE_SIZE; i++) {
+                    phase[i] = in.readShort();
+                }
+            }
+            return new PatternEvaluator(weights);
+        }
+    }
+
+    /**
+     * Writes the weights to a gzip compressed file. Unused pattern entries are 0, so the file compresses well.
+     *
+     * @param fileName Path of the weights file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String fileName) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(fileName))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(PHASES);
+            out.writeInt(PHASE_SIZE);
+            for(short[] phase : weights) {
+                for(short weight : phase) {
+                    out.writeShort(weight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds weights by hand: a value for every cell with corners worth the most and the cells next
+     * to them negative, a weight for mobility, and the number of pieces counting more as the board fills.
+     *
+     * @return An evaluator using the default weights.
+     */
+    public static PatternEvaluator createDefault() {
+        // Value of each cell along a line from the edge inwards, in hundredths of a piece.
+        int[][] lineValues = {
+                {0, -20, 10, 5, 5, 10, -20, 0},
+                {-20, -30, -2, -2, -2, -2, -30, -20},
+                {10, -2, 1, 1, 1, 1, -2, 10},
+                {5, -2, 1, 0, 0, 1, -2, 5}
+        };
+        short[][] weights = new short[PHASES][PHASE_SIZE];
+        for(int phase = 0; phase < PHASES; phase++) {
+            // Each cell is in one row and one column, so half the piece count goes to each line.
+            int pieceValue = phase >= PHASES - 2 ? 100 : 0;
+            short[] phaseWeights = weights[phase];
+            for(int line = 0; line < 4; line++) {
+                for(int index = 0; index < LINE_SIZE; index++) {
+                    int value = 0;
+                    for(int i = 0, rest = index; i < 8; i++, rest /= 3) {
+                        int sign = rest % 3 == 1 ? 1 : rest % 3 == 2 ? -1 : 0;
+                        value += sign * (lineValues[line][i] / 2 + pieceValue / 2);
+                    }
+                    phaseWeights[LINE_TABLES[line] + index] = (short) value;
+                }
+            }
+            for(int index = 0; index < CORNER_SIZE; index++) {
+                int cell = index % 3;
+                phaseWeights[CORNER + index] = (short) (cell == 1 ? 500 : cell == 2 ? -500 : 0);
+            }
+            phaseWeights[MOBILITY] = 100;
+        }
+        return new PatternEvaluator(weights);
+    }
+
+    /**
+     * Estimates the final piece difference for the player to move.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @return Estimated difference in hundredths of a piece, positive when the player to move is ahead.
+     */
+    public int evaluate(long own, long opponent) {
+        short[] phaseWeights = weights[getPhase(own, opponent)];
+        int value = phaseWeights[BIAS];
+        for(int line = 0; line < BitBoard.SIZE; line++) {
+            int table = LINE_TABLES[line];
+            value += phaseWeights[table + getRowIndex(own, opponent, line)];
+            value += phaseWeights[table + getColumnIndex(own, opponent, line)];
+        }
+        value += phaseWeights[CORNER + getCornerIndex(own, opponent, 0)];
+        value += phaseWeights[CORNER + getCornerIndex(own, opponent, 1)];
+        value += phaseWeights[CORNER + getCornerIndex(own, opponent, 2)];
+        value += phaseWeights[CORNER + getCornerIndex(own, opponent, 3)];
+        value += phaseWeights[MOBILITY] * getMobility(own, opponent);
+        value += phaseWeights[FRONTIER] * getFrontier(own, opponent);
+        return value;
+    }
+
+    /**
+     * Gets the phase of a position from the number of pieces on the board.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @return Phase from 0 to PHASES - 1.
+     */
+    static int getPhase(long own, long opponent) {
+        return Math.min(PHASES - 1, Long.bitCount(own | opponent) * PHASES / BitBoard.CELLS);
+    }
+
+    /**
+     * Fills a list with the table position of every pattern in a position, the 8 rows,
+     * then the 8 columns, then the 4 corners. Used for training.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param indexes Receives PATTERNS table positions, each a table start plus an index.
+     */
+    static void getIndexes(long own, long opponent, int[] indexes) {
+        for(int line = 0; line < BitBoard.SIZE; line++) {
+            indexes[line] = LINE_TABLES[line] + getRowIndex(own, opponent, line);
+            indexes[BitBoard.SIZE + line] = LINE_TABLES[line] + getColumnIndex(own, opponent, line);
+        }
+        for(int corner = 0; corner < 4; corner++) {
+            indexes[2 * BitBoard.SIZE + corner] = CORNER + getCornerIndex(own, opponent, corner);
+        }
+    }
+
+    /**
+     * Reads a row as a base 3 number, x = 0 as the lowest digit.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param row Row to read.
+     * @return Index into a line table.
+     */
+    private static int getRowIndex(long own, long opponent, int row) {
+        int shift = row * BitBoard.SIZE;
+        return BASE3[(int) (own >>> shift) & 0xFF] + 2 * BASE3[(int) (opponent >>> shift) & 0xFF];
+    }
+
+    /**
+     * Reads a column as a base 3 number, y = 0 as the lowest digit.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param column Column to read.
+     * @return Index into a line table.
+     */
+    private static int getColumnIndex(long own, long opponent, int column) {
+        return BASE3[getColumnBits(own, column)] + 2 * BASE3[getColumnBits(opponent, column)];
+    }
+
+    /**
+     * Gathers the cells of a column into a byte.
+     *
+     * @param pieces Mask of pieces.
+     * @param column Column to read.
+     * @return Bit y set for each piece in the column.
+     */
+    private static int getColumnBits(long pieces, int column) {
+        return (int) ((((pieces >>> column) & BitBoard.LEFT_COLUMN) * COLUMN_MAGIC) >>> 56);
+    }
+
+    /**
+     * Reads the 3x3 block in a corner as a base 3 number. Every corner is read starting from
+     * the corner cell, along its row away from the corner, then the next rows inwards,
+     * so all four corners share one table.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param corner 0 top left, 1 top right, 2 bottom left, 3 bottom right.
+     * @return Index into the corner table.
+     */
+    private static int getCornerIndex(long own, long opponent, int corner) {
+        return BASE3[getCornerBits(own, corner)] + 2 * BASE3[getCornerBits(opponent, corner)];
+    }
+
+    /**
+     * Gathers the cells of a corner block into 9 bits, 3 for each row starting from the corner.
+     *
+     * @param pieces Mask of pieces.
+     * @param corner 0 top left, 1 top right, 2 bottom left, 3 bottom right.
+     * @return The bits of the block.
+     */
+    private static int getCornerBits(long pieces, int corner) {
+        boolean right = (corner & 1) != 0;
+        boolean bottom = (corner & 2) != 0;
+        int bits = 0;
+        for(int i = 0; i < 3; i++) {
+            int row = bottom ? 7 - i : i;
+            int rowBits = (int) (pieces >>> (row * BitBoard.SIZE)) & 0xFF;
+            int three = right ? REVERSE3[rowBits >>> 5] : rowBits & 7;
+            bits |= three << (i * 3);
+        }
+        return bits;
+    }
+
+    /**
+     * Counts the valid moves of the player to move minus those of the opponent.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @return Mobility difference.
+     */
+    static int getMobility(long own, long opponent) {
+        return Long.bitCount(BitBoard.getMoves(own, opponent)) - Long.bitCount(BitBoard.getMoves(opponent, own));
+    }
+
+    /**
+     * Counts the empty cells next to the opponent's pieces minus those next to the player's own.
+     * Having pieces next to empty cells gives the other player places to move, so lower is usually better
+     * for the player whose pieces they are. Only up, down, left, and right count as next to.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @return Frontier difference.
+     */
+    static int getFrontier(long own, long opponent) {
+        long empty = ~(own | opponent);
+        return Long.bitCount(getNeighbours(opponent) & empty) - Long.bitCount(getNeighbours(own) & empty);
+    }
+
+    /**
+     * Finds every cell next to a piece up, down, left, or right.
+     *
+     * @param pieces Mask of pieces.
+     * @return Mask of the neighbouring cells.
+     */
+    private static long getNeighbours(long pieces) {
+        return ((pieces << 1) & ~BitBoard.LEFT_COLUMN) | ((pieces >>> 1) & ~BitBoard.RIGHT_COLUMN)
+                | (pieces << 8) | (pieces >>> 8);
+    }
+
+    /**
+     * Gets the weights, for training.
+     *
+     * @return The weights indexed by phase then position. Changes apply to this evaluator.
+     */
+    short[][] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Calculates a power of 3.
+     *
+     * @param exponent The power.
+     * @return 3 to the power of exponent.
+     */
+    private static int pow3(int exponent) {
+        int value = 1;
+        for(int i = 0; i < exponent; i++) {
+            value *= 3;
+        }
+        return value;
+    }
+}
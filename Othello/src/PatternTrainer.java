@@ -0,0 +1,364 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * PatternTrainer class:
+ * Trains the weights used by PatternEvaluator offline and writes them to a file. Games are played
+ * by SearchAI against itself with a small node budget, starting from a few random moves and with
+ * the occasional random move after that so the games cover many different positions. Once few enough
+ * cells are empty the rest of the game is played perfectly by EndgameSolver, so those positions are
+ * labelled with their exact result. Every position is labelled with the final piece difference
+ * for the player to move, and the weights of each phase are fitted to the labels by gradient descent.
+ *
+ * A row read backwards is another row of a mirrored board, and a corner block mirrored along its
+ * diagonal is the same block of a mirrored board, so these pairs of entries are always trained together
+ * and the weights give the same value to every mirror image of a position.
+ *
+ * Usage: java PatternTrainer [file] [games] [nodes] [epochs] [threads]
+ */
+public class PatternTrainer {
+    /**
+     * Size of the transposition table given to each playing thread in megabytes.
+     */
+    private static final int TABLE_MB = 4;
+    /**
+     * Number of moves at the start of every game that are played at random.
+     */
+    private static final int RANDOM_PLIES = 8;
+    /**
+     * After the opening, one move in this many is played at random.
+     */
+    private static final int RANDOM_MOVE_CHANCE = 16;
+    /**
+     * Once this many cells are empty the rest of the game is played perfectly.
+     */
+    private static final int EXACT_EMPTIES = 14;
+    /**
+     * One game in this many is kept out of training to check the weights on positions they were not fitted to.
+     */
+    private static final int TEST_GAMES = 10;
+    /**
+     * Learning rate for the pattern weights at the start of training.
+     */
+    private static final float PATTERN_RATE = 0.005f;
+    /**
+     * Learning rate for the mobility, frontier, and bias weights, which are used by every position.
+     */
+    private static final float SHARED_RATE = 0.0002f;
+
+    /**
+     * Number of games to play.
+     */
+    private final int games;
+    /**
+     * Node budget per move for the search playing the games.
+     */
+    private final long nodes;
+    /**
+     * Number of threads to play games on.
+     */
+    private final int threads;
+
+    /**
+     * Pieces of the player to move in every position.
+     */
+    private long[] own = new long[1 << 16];
+    /**
+     * Pieces of the other player in every position.
+     */
+    private long[] opponent = new long[1 << 16];
+    /**
+     * Final piece difference for the player to move in hundredths of a piece, for every position.
+     */
+    private int[] targets = new int[1 << 16];
+    /**
+     * True for every position kept out of training.
+     */
+    private boolean[] test = new boolean[1 << 16];
+    /**
+     * Number of positions collected.
+     */
+    private int size;
+
+    /**
+     * Plays games, trains weights from them, and writes the weights to a file.
+     *
+     * @param args Optional file, number of games, node budget per move, training epochs, and threads.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String fileName = args.length > 0 ? args[0] : PatternEvaluator.DEFAULT_FILE;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        long nodes = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        int epochs = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        long startTime = System.nanoTime();
+        PatternTrainer trainer = new PatternTrainer(games, nodes, threads);
+        trainer.playGames();
+        System.out.printf("Collected %d positions from %d games in %.1f s%n",
+                trainer.size, games, (System.nanoTime() - startTime) / 1e9);
+        PatternEvaluator evaluator = trainer.train(epochs);
+        evaluator.save(fileName);
+        System.out.printf("Wrote %s in %.1f s%n", fileName, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * Sets up a trainer.
+     *
+     * @param games Number of games to play.
+     * @param nodes Node budget per move for the search playing the games.
+     * @param threads Number of threads to play games on.
+     */
+    public PatternTrainer(int games, long nodes, int threads) {
+        this.games = games;
+        this.nodes = nodes;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Plays every game and collects its positions. Each game uses its own random seed,
+     * so the same games are played whatever the number of threads.
+     */
+    public void playGames() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<SearchAI> searches = ThreadLocal.withInitial(
+                () -> new SearchAI(0, nodes, BitBoard.CELLS, TABLE_MB, 1, PatternEvaluator.getDefault()));
+        ThreadLocal<EndgameSolver> solvers = ThreadLocal.withInitial(() -> new EndgameSolver(TABLE_MB));
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for(int game = 0; game < games; game++) {
+                long seed = game;
+                results.add(pool.submit(() -> playGame(searches.get(), solvers.get(), new Random(seed))));
+            }
+            for(int game = 0; game < games; game++) {
+                addGame(results.get(game).get(), game % TEST_GAMES == 0);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training game failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays a single game from the empty board. The turn passes the same way as in GamePanel.setGameState().
+     *
+     * @param search The search choosing most moves.
+     * @param solver The solver playing the end of the game.
+     * @param random Chooses the random moves.
+     * @return Pieces of the player to move then the other player for every position, followed by
+     *         the final piece difference for black and a mask of the positions where black was to move.
+     */
+    private static long[] playGame(SearchAI search, EndgameSolver solver, Random random) {
+        long[] positions = new long[2 * BitBoard.CELLS + 2];
+        long blackToMove = 0;
+        int count = 0;
+        BitBoard board = new BitBoard();
+        int player = 1;
+        for(int ply = 0; ; ply++) {
+            long moves = board.getValidMoves(player);
+            if(moves == 0) {
+                player = player == 1 ? 2 : 1;
+                moves = board.getValidMoves(player);
+                if(moves == 0) break;
+            }
+            positions[2 * count] = board.getPieces(player);
+            positions[2 * count + 1] = board.getPieces(player == 1 ? 2 : 1);
+            if(player == 1) blackToMove |= 1L << count;
+            count++;
+
+            int empties = BitBoard.CELLS - Long.bitCount(board.getBlack() | board.getWhite());
+            int move;
+            if(empties <= EXACT_EMPTIES) {
+                move = solver.solve(board, player, true, 0, 0);
+            } else if(ply < RANDOM_PLIES || random.nextInt(RANDOM_MOVE_CHANCE) == 0) {
+                move = randomMove(moves, random);
+            } else {
+                move = search.chooseMove(board, player);
+            }
+            board.playMove(move, player);
+            player = player == 1 ? 2 : 1;
+        }
+        long[] game = Arrays.copyOf(positions, 2 * count + 2);
+        game[2 * count] = Long.bitCount(board.getBlack()) - Long.bitCount(board.getWhite());
+        game[2 * count + 1] = blackToMove;
+        return game;
+    }
+
+    /**
+     * Picks one of the valid moves at random.
+     *
+     * @param moves Mask of valid moves, not empty.
+     * @param random Chooses the move.
+     * @return Cell index of the move.
+     */
+    private static int randomMove(long moves, Random random) {
+        for(int skip = random.nextInt(Long.bitCount(moves)); skip > 0; skip--) {
+            moves &= moves - 1;
+        }
+        return Long.numberOfTrailingZeros(moves);
+    }
+
+    /**
+     * Adds the positions of a game labelled with its result.
+     *
+     * @param game Positions and result as returned by playGame().
+     * @param isTest True to keep the positions out of training.
+     */
+    private void addGame(long[] game, boolean isTest) {
+        int count = (game.length - 2) / 2;
+        int blackDifference = (int) game[2 * count];
+        long blackToMove = game[2 * count + 1];
+        if(size + count > own.length) {
+            int capacity = Math.max(own.length * 2, size + count);
+            own = Arrays.copyOf(own, capacity);
+            opponent = Arrays.copyOf(opponent, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            test = Arrays.copyOf(test, capacity);
+        }
+        for(int i = 0; i < count; i++) {
+            own[size] = game[2 * i];
+            opponent[size] = game[2 * i + 1];
+            targets[size] = 100 * (((blackToMove >>> i) & 1) != 0 ? blackDifference : -blackDifference);
+            test[size] = isTest;
+            size++;
+        }
+    }
+
+    /**
+     * Fits the weights to the collected positions, printing the average error after every epoch.
+     * The learning rate is reduced over the epochs so the weights settle.
+     *
+     * @param epochs Number of passes over the positions.
+     * @return An evaluator using the trained weights.
+     */
+    public PatternEvaluator train(int epochs) {
+        float[][] weights = new float[PatternEvaluator.PHASES][PatternEvaluator.PHASE_SIZE];
+        int[] indexes = new int[PatternEvaluator.PATTERNS];
+        int[] order = new int[size];
+        for(int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(0);
+        for(int epoch = 0; epoch < epochs; epoch++) {
+            float decay = 1.0f - (float) epoch / epochs;
+            float patternRate = PATTERN_RATE * decay;
+            float sharedRate = SHARED_RATE * decay;
+            shuffle(order, random);
+            double trainError = 0;
+            int trainCount = 0;
+            for(int position : order) {
+                if(test[position]) continue;
+                float[] phaseWeights = weights[PatternEvaluator.getPhase(own[position], opponent[position])];
+                PatternEvaluator.getIndexes(own[position], opponent[position], indexes);
+                int mobility = PatternEvaluator.getMobility(own[position], opponent[position]);
+                int frontier = PatternEvaluator.getFrontier(own[position], opponent[position]);
+                float error = targets[position] - predict(phaseWeights, indexes, mobility, frontier);
+                trainError += Math.abs(error);
+                trainCount++;
+
+                float step = error * patternRate;
+                for(int i = 0; i < PatternEvaluator.PATTERNS; i++) {
+                    int index = indexes[i];
+                    phaseWeights[index] += step;
+                    int mirror = getMirror(index);
+                    if(mirror != index) phaseWeights[mirror] += step;
+                }
+                phaseWeights[PatternEvaluator.MOBILITY] += error * sharedRate * mobility;
+                phaseWeights[PatternEvaluator.FRONTIER] += error * sharedRate * frontier;
+                phaseWeights[PatternEvaluator.BIAS] += error * sharedRate;
+            }
+            System.out.printf("epoch %2d: train error %.2f, test error %.2f pieces%n", epoch,
+                    trainError / Math.max(1, trainCount) / 100, getTestError(weights, indexes) / 100);
+        }
+
+        short[][] rounded = new short[PatternEvaluator.PHASES][PatternEvaluator.PHASE_SIZE];
+        for(int phase = 0; phase < PatternEvaluator.PHASES; phase++) {
+            for(int i = 0; i < PatternEvaluator.PHASE_SIZE; i++) {
+                float weight = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, weights[phase][i]));
+                rounded[phase][i] = (short) Math.round(weight);
+            }
+        }
+        return new PatternEvaluator(rounded);
+    }
+
+    /**
+     * Calculates the average error over the positions kept out of training.
+     *
+     * @param weights The weights being trained.
+     * @param indexes Space for the table positions of a position.
+     * @return Average error in hundredths of a piece.
+     */
+    private double getTestError(float[][] weights, int[] indexes) {
+        double error = 0;
+        int count = 0;
+        for(int position = 0; position < size; position++) {
+            if(!test[position]) continue;
+            float[] phaseWeights = weights[PatternEvaluator.getPhase(own[position], opponent[position])];
+            PatternEvaluator.getIndexes(own[position], opponent[position], indexes);
+            int mobility = PatternEvaluator.getMobility(own[position], opponent[position]);
+            int frontier = PatternEvaluator.getFrontier(own[position], opponent[position]);
+            error += Math.abs(targets[position] - predict(phaseWeights, indexes, mobility, frontier));
+            count++;
+        }
+        return error / Math.max(1, count);
+    }
+
+    /**
+     * Calculates the value of a position the same way as PatternEvaluator.evaluate().
+     *
+     * @param phaseWeights The weights for the phase of the position.
+     * @param indexes Table positions of the patterns in the position.
+     * @param mobility Mobility difference of the position.
+     * @param frontier Frontier difference of the position.
+     * @return Estimated piece difference in hundredths of a piece.
+     */
+    private static float predict(float[] phaseWeights, int[] indexes, int mobility, int frontier) {
+        float value = phaseWeights[PatternEvaluator.BIAS]
+                + phaseWeights[PatternEvaluator.MOBILITY] * mobility
+                + phaseWeights[PatternEvaluator.FRONTIER] * frontier;
+        for(int index : indexes) {
+            value += phaseWeights[index];
+        }
+        return value;
+    }
+
+    /**
+     * Finds the entry for the mirror image of a pattern, which always shares its weight.
+     *
+     * @param index Table start plus index of a pattern.
+     * @return Table start plus index of its mirror image.
+     */
+    private static int getMirror(int index) {
+        if(index >= PatternEvaluator.CORNER) {
+            return PatternEvaluator.CORNER + PatternEvaluator.TRANSPOSE_CORNER[index - PatternEvaluator.CORNER];
+        }
+        int table = index / PatternEvaluator.LINE_SIZE * PatternEvaluator.LINE_SIZE;
+        return table + PatternEvaluator.MIRROR_LINE[index - table];
+    }
+
+    /**
+     * Shuffles the order positions are trained in.
+     *
+     * @param order Position numbers to shuffle.
+     * @param random Source of the shuffle.
+     */
+    private static void shuffle(int[] order, Random random) {
+        for(int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * Perft class:
+ * Counts every position reachable in exactly N moves, to check that move generation is correct
+ * and to measure how fast it is. When the player to move has no valid moves the turn passes to the
+ * other player without counting as a move, the same as GamePanel.setGameState(). A game that ends
+ * before N moves counts as a single position.
+ *
+ * The reference counts from the empty board can be used to check any change to move generation.
+ * Depths 1 to 13 were produced by both the original cell by cell scan in GameGrid and by BitBoard,
+ * and the deeper counts by BitBoard alone.
+ *
+ * Usage:
+ * java Perft [depth]                  Counts from the start and checks the reference counts.
+ * java Perft depth cells side         Counts from a position, e.g. the output of BitBoard.toString() and B or W.
+ */
+public class Perft {
+    /**
+     * Known counts from the empty board with black to move, index is the depth.
+     */
+    public static final long[] REFERENCE_COUNTS = {
+            1L, 4L, 12L, 24L, 24L, 64L, 128L, 256L, 544L, 1440L,
+            3584L, 10176L, 31872L, 106144L, 390976L, 1501056L, 6281216L, 27056224L, 126182336L
+    };
+
+    /**
+     * Counts the positions from the command line, printing nodes and nodes per second for each depth.
+     *
+     * @param args Optional depth, and optional position and side to move.
+     */
+    public static void main(String[] args) {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : REFERENCE_COUNTS.length - 1;
+        BitBoard board = args.length > 2 ? BitBoard.fromString(args[1]) : new BitBoard();
+        int playerID = args.length > 2 && args[2].equalsIgnoreCase("W") ? 2 : 1;
+        boolean fromStart = args.length <= 2;
+
+        boolean allMatched = true;
+        for(int depth = 1; depth <= maxDepth; depth++) {
+            long startTime = System.nanoTime();
+            long nodes = perft(board, playerID, depth);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            String check = "";
+            if(fromStart && depth < REFERENCE_COUNTS.length) {
+                boolean matched = nodes == REFERENCE_COUNTS[depth];
+                allMatched &= matched;
+                check = matched ? "  ok" : "  MISMATCH, expected " + REFERENCE_COUNTS[depth];
+            }
+            System.out.printf("depth %2d %16d nodes %8.3f s %14.0f nodes/s%s%n",
+                    depth, nodes, seconds, nodes / Math.max(seconds, 1e-9), check);
+        }
+        if(!allMatched) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Counts the positions reachable from a board in exactly the specified number of moves.
+     *
+     * @param board The board to count from.
+     * @param playerID The player to move.
+     * @param depth Number of moves to play.
+     * @return Number of positions.
+     */
+    public static long perft(BitBoard board, int playerID, int depth) {
+        long own = board.getPieces(playerID);
+        long opponent = board.getPieces(playerID == 1 ? 2 : 1);
+        return perft(own, opponent, depth);
+    }
+
+    /**
+     * Counts the positions reachable in exactly the specified number of moves.
+     * Positions one move from the end are counted from the number of valid moves
+     * without playing them.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @param depth Number of moves to play.
+     * @return Number of positions.
+     */
+    public static long perft(long own, long opponent, int depth) {
+        if(depth == 0) return 1;
+        long moves = BitBoard.getMoves(own, opponent);
+        if(moves == 0) {
+            // Pass to the other player, or the game is over and counts as one position.
+            if(BitBoard.getMoves(opponent, own) == 0) return 1;
+            return perft(opponent, own, depth);
+        }
+        if(depth == 1) return Long.bitCount(moves);
+        long nodes = 0;
+        for(; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long flips = BitBoard.getFlips(own, opponent, move);
+            nodes += perft(opponent & ~flips, own | flips | (1L << move), depth - 1);
+        }
+        return nodes;
+    }
+}
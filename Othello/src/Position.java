@@ -123,6 +123,17 @@ public class Position {
         return x == position.x && y == position.y;
     }
 
+    /**
+     * Generates a hash code from x and y so that equal Positions have equal hash codes,
+     * allowing Positions to be used in hash based sets and maps.
+     *
+     * @return A hash code for this Position.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
+    }
+
     /**
      * Gets a string version of the Position.
      *
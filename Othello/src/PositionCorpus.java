@@ -0,0 +1,155 @@
+import java.util.Random;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * PositionCorpus class:
+ * A repeatable set of positions reached by random play from the start of the game.
+ * The same seed always gives the same positions, so timings from different runs
+ * and different machines can be compared.
+ */
+public class PositionCorpus {
+    /**
+     * Black pieces of each position.
+     */
+    private final long[] black;
+    /**
+     * White pieces of each position.
+     */
+    private final long[] white;
+    /**
+     * Player to move in each position.
+     */
+    private final int[] players;
+
+    /**
+     * Generates positions by playing random moves until the specified number of pieces
+     * are on the board. Passes are handled the same way as GamePanel, and games that
+     * end early are thrown away so every position has a player with valid moves.
+     *
+     * @param count Number of positions to generate.
+     * @param movesPlayed Number of moves to play before recording each position.
+     * @param seed Seed for the random moves.
+     * @throws IllegalArgumentException If the count is negative or the number of moves would leave no
+     *                                  empty cell to move to.
+     */
+    public PositionCorpus(int count, int movesPlayed, long seed) {
+        if(count < 0) {
+            throw new IllegalArgumentException("The number of positions cannot be negative but got " + count);
+        }
+        if(movesPlayed < 0 || movesPlayed >= BitBoard.CELLS) {
+            throw new IllegalArgumentException("The number of moves played must be from 0 to "
+                    + (BitBoard.CELLS - 1) + " but got " + movesPlayed);
+        }
+        black = new long[count];
+        white = new long[count];
+        players = new int[count];
+        SimpleAI randomAI = new SimpleAI(new Random(seed));
+        BitBoard board = new BitBoard();
+        int found = 0;
+        while(found < count) {
+            board.reset();
+            int player = 1;
+            while(board.getMoveNumber() < movesPlayed) {
+                player = getPlayerToMove(board, player);
+                if(player == 0) break;
+                board.playMove(randomAI.chooseMove(board, player), player);
+                player = player == 1 ? 2 : 1;
+            }
+            player = getPlayerToMove(board, player);
+            if(player == 0) continue;
+            black[found] = board.getBlack();
+            white[found] = board.getWhite();
+            players[found] = player;
+            found++;
+        }
+    }
+
+    /**
+     * Creates an empty corpus to be filled by combine().
+     *
+     * @param count Number of positions.
+     */
+    private PositionCorpus(int count) {
+        black = new long[count];
+        white = new long[count];
+        players = new int[count];
+    }
+
+    /**
+     * Creates the standard set used by the benchmarks: a third each from the opening,
+     * the midgame, and the endgame.
+     *
+     * @param countPerPhase Number of positions to generate for each phase.
+     * @return The combined corpus.
+     */
+    public static PositionCorpus standard(int countPerPhase) {
+        return combine(new PositionCorpus(countPerPhase, 12, 1),
+                new PositionCorpus(countPerPhase, 30, 2),
+                new PositionCorpus(countPerPhase, 46, 3));
+    }
+
+    /**
+     * Joins several corpora together in order.
+     *
+     * @param parts The corpora to join.
+     * @return A corpus containing all the positions.
+     */
+    public static PositionCorpus combine(PositionCorpus... parts) {
+        int total = 0;
+        for(PositionCorpus part : parts) total += part.size();
+        PositionCorpus result = new PositionCorpus(total);
+        int index = 0;
+        for(PositionCorpus part : parts) {
+            System.arraycopy(part.black, 0, result.black, index, part.size());
+            System.arraycopy(part.white, 0, result.white, index, part.size());
+            System.arraycopy(part.players, 0, result.players, index, part.size());
+            index += part.size();
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of positions.
+     *
+     * @return Number of positions in the corpus.
+     */
+    public int size() {
+        return players.length;
+    }
+
+    /**
+     * Creates a new board holding one of the positions.
+     *
+     * @param index Index of the position.
+     * @return A new BitBoard with the position.
+     */
+    public BitBoard getBoard(int index) {
+        return new BitBoard(black[index], white[index]);
+    }
+
+    /**
+     * Gets the player to move in one of the positions.
+     *
+     * @param index Index of the position.
+     * @return 1 for black or 2 for white.
+     */
+    public int getPlayer(int index) {
+        return players[index];
+    }
+
+    /**
+     * Finds who moves next, passing the turn like GamePanel.setGameState() when the player has no moves.
+     *
+     * @param board The board to check.
+     * @param player The player whose turn it would normally be.
+     * @return The player to move, or 0 if neither player can move.
+     */
+    private static int getPlayerToMove(BitBoard board, int player) {
+        if(board.getValidMoves(player) != 0) return player;
+        int otherPlayer = player == 1 ? 2 : 1;
+        if(board.getValidMoves(otherPlayer) != 0) return otherPlayer;
+        return 0;
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * PositionSnapshot class:
+ * An unchangeable copy of an 8x8 position: the pieces of both players and the player to move.
+ * All fields are final, so once a snapshot has been handed to another thread it can be read there
+ * without locks or copying, while the game it came from carries on. GameGrid makes a new one after
+ * every change and publishes it with getSnapshot().
+ *
+ * Playing a move returns a new snapshot and leaves this one as it was. Passing works the same way
+ * as in GamePanel.setGameState(): if the next player has no valid moves and the player who moved
+ * does, the player who moved goes again.
+ */
+public final class PositionSnapshot {
+    /**
+     * The position at the start of a game with black to move.
+     */
+    public static final PositionSnapshot START = new PositionSnapshot(0, 0, 1);
+
+    /**
+     * Black pieces, player 1.
+     */
+    private final long black;
+    /**
+     * White pieces, player 2.
+     */
+    private final long white;
+    /**
+     * The player to move, 1 for black or 2 for white.
+     */
+    private final int playerID;
+
+    /**
+     * Creates a snapshot of the specified position.
+     *
+     * @param black Mask of the black pieces.
+     * @param white Mask of the white pieces.
+     * @param playerID The player to move, 1 for black or 2 for white.
+     */
+    public PositionSnapshot(long black, long white, int playerID) {
+        if(playerID != 1 && playerID != 2) {
+            throw new IllegalArgumentException("The player to move must be 1 or 2 but got " + playerID);
+        }
+        if((black & white) != 0) {
+            throw new IllegalArgumentException("A cell cannot hold both a black and a white piece");
+        }
+        this.black = black;
+        this.white = white;
+        this.playerID = playerID;
+    }
+
+    /**
+     * Creates a snapshot of the pieces on a BitBoard. Later changes to the board do not change the snapshot.
+     *
+     * @param board The board to copy the pieces from.
+     * @param playerID The player to move.
+     */
+    public PositionSnapshot(BitBoard board, int playerID) {
+        this(board.getBlack(), board.getWhite(), playerID);
+    }
+
+    /**
+     * Gets the mask of black pieces.
+     *
+     * @return Mask of the black pieces.
+     */
+    public long getBlack() {
+        return black;
+    }
+
+    /**
+     * Gets the mask of white pieces.
+     *
+     * @return Mask of the white pieces.
+     */
+    public long getWhite() {
+        return white;
+    }
+
+    /**
+     * Gets the player to move.
+     *
+     * @return 1 for black, or 2 for white.
+     */
+    public int getPlayerID() {
+        return playerID;
+    }
+
+    /**
+     * Gets the number of moves played, which is the number of pieces on the board.
+     *
+     * @return The number of moves that have been played.
+     */
+    public int getMoveNumber() {
+        return Long.bitCount(black | white);
+    }
+
+    /**
+     * Gets the state of a single cell using the same values as GridCell.
+     *
+     * @param x X coordinate on the grid.
+     * @param y Y coordinate on the grid.
+     * @return 0 for empty, 1 for black, or 2 for white.
+     */
+    public int getCellState(int x, int y) {
+        long bit = 1L << BitBoard.toIndex(x, y);
+        if((black & bit) != 0) return 1;
+        if((white & bit) != 0) return 2;
+        return 0;
+    }
+
+    /**
+     * Finds the valid moves of the player to move.
+     *
+     * @return Mask with bit x + y*8 set for every valid move.
+     */
+    public long getValidMoves() {
+        return playerID == 1 ? BitBoard.getMoves(black, white) : BitBoard.getMoves(white, black);
+    }
+
+    /**
+     * Checks if a move can be played by the player to move.
+     *
+     * @param index Cell index (x + y*8) of the move.
+     * @return True if the move is valid.
+     */
+    public boolean isValidMove(int index) {
+        return index >= 0 && index < BitBoard.CELLS && (getValidMoves() & (1L << index)) != 0;
+    }
+
+    /**
+     * Plays a valid move for the player to move and returns the position after it.
+     * This snapshot is not changed.
+     *
+     * @param index Cell index (x + y*8) of the move.
+     * @return The snapshot after the move, with the next player to move.
+     * @throws IllegalArgumentException If the move is not valid.
+     */
+    public PositionSnapshot playMove(int index) {
+        if(!isValidMove(index)) {
+            throw new IllegalArgumentException("Not a valid move for player " + playerID + ": " + index);
+        }
+        long own = playerID == 1 ? black : white;
+        long opponent = playerID == 1 ? white : black;
+        long flips = BitBoard.getFlips(own, opponent, index);
+        own |= flips | (1L << index);
+        opponent &= ~flips;
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        // The next player passes when they have no moves and the player who moved still has one.
+        int nextPlayer = otherPlayer;
+        if(BitBoard.getMoves(opponent, own) == 0 && BitBoard.getMoves(own, opponent) != 0) {
+            nextPlayer = playerID;
+        }
+        return playerID == 1 ? new PositionSnapshot(own, opponent, nextPlayer)
+                : new PositionSnapshot(opponent, own, nextPlayer);
+    }
+
+    /**
+     * Checks if the game has ended, which happens when neither player has a valid move.
+     *
+     * @return True if the game is over.
+     */
+    public boolean isGameOver() {
+        return BitBoard.getMoves(black, white) == 0 && BitBoard.getMoves(white, black) == 0;
+    }
+
+    /**
+     * Reports the winner once the game is over. Uses the same values as GameGrid.getWinner().
+     *
+     * @return 0 while the game is still going, 3 for draw, 1 for player 1, and 2 for player 2.
+     */
+    public int getWinner() {
+        if(!isGameOver()) return 0;
+        int blackCount = Long.bitCount(black);
+        int whiteCount = Long.bitCount(white);
+        if(blackCount == whiteCount) return 3;
+        return blackCount > whiteCount ? 1 : 2;
+    }
+
+    /**
+     * Creates a new BitBoard with the pieces of this snapshot that can be changed freely,
+     * such as for an AI to search on.
+     *
+     * @return A new board.
+     */
+    public BitBoard toBitBoard() {
+        return new BitBoard(black, white);
+    }
+
+    /**
+     * Compares the snapshot against another object. Snapshots are equal when they have the
+     * same pieces and the same player to move.
+     *
+     * @param o Object to compare this snapshot against.
+     * @return True if o is a snapshot of the same position.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PositionSnapshot snapshot = (PositionSnapshot) o;
+        return black == snapshot.black && white == snapshot.white && playerID == snapshot.playerID;
+    }
+
+    /**
+     * Generates a hash code from the pieces and player to move so that equal snapshots have equal hash codes.
+     *
+     * @return A hash code for this snapshot.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(black) + Long.hashCode(white)) + playerID;
+    }
+
+    /**
+     * Writes the snapshot as the board from BitBoard.toString() followed by B or W for the player to move.
+     *
+     * @return The snapshot as text.
+     */
+    @Override
+    public String toString() {
+        return new BitBoard(black, white) + " " + (playerID == 1 ? 'B' : 'W');
+    }
+}
@@ -0,0 +1,180 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * RenderBenchmark class:
+ * Times drawing a frame of the game window and counts the bytes allocated per frame, comparing the
+ * old way of drawing (grid lines and all 64 cells straight onto the window, with a new Font every frame)
+ * against the cached grid image where only the changed cells are drawn again and only their area is repainted.
+ *
+ * Frames are drawn into an image the size of GamePanel the same way GamePanel.paint() draws them:
+ * the background is cleared, then the grid and the game state message are drawn. The move frames
+ * play a move on a midgame position from PositionCorpus and take it back on alternate frames,
+ * so every frame shows the changes of a single move. "move only" times the moves without drawing,
+ * to subtract from the move frames.
+ *
+ * Runs without a window, so it can be used on the machines the game runs on.
+ *
+ * Usage: java RenderBenchmark [iterationMillis]
+ */
+public class RenderBenchmark {
+    /**
+     * Width of the frame, the same as GamePanel.
+     */
+    private static final int PANEL_WIDTH = 500;
+    /**
+     * Height of the frame, the same as GamePanel.
+     */
+    private static final int PANEL_HEIGHT = 600;
+    /**
+     * Height of the message area at the bottom of the frame.
+     */
+    private static final int MESSAGE_AREA_HEIGHT = 100;
+    /**
+     * Number of positions to cycle through. Each has its own grid and cached image.
+     */
+    private static final int POSITIONS = 16;
+    /**
+     * Moves played before each position.
+     */
+    private static final int MOVES_PLAYED = 30;
+    /**
+     * Message drawn at the bottom of every frame.
+     */
+    private static final String MESSAGE = "White Player Turn";
+    /**
+     * Message font created once, as GamePanel now does.
+     */
+    private static final Font MESSAGE_FONT = new Font("Arial", Font.BOLD, 35);
+
+    /**
+     * Runs every benchmark and prints the results.
+     *
+     * @param args Optional duration of each iteration in milliseconds.
+     */
+    public static void main(String[] args) {
+        long iterationMillis = args.length > 0 ? Long.parseLong(args[0]) : 500;
+        PositionCorpus corpus = new PositionCorpus(POSITIONS, MOVES_PLAYED, 2);
+        BufferedImage frame = new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+
+        RulesBenchmark.printHeader();
+        for(String name : new String[] {"full frame, direct", "full frame, cached",
+                "move frame, direct", "move frame, changed area", "move only"}) {
+            RulesBenchmark.measure(name, "midgame", createBenchmark(name, corpus, g), corpus.size(), iterationMillis);
+        }
+        g.dispose();
+    }
+
+    /**
+     * Creates the benchmark with the given name drawing positions from the corpus.
+     *
+     * @param name Name of the benchmark.
+     * @param corpus Positions to draw.
+     * @param g Graphics of the frame to draw into.
+     * @return The benchmark.
+     */
+    private static RulesBenchmark.Benchmark createBenchmark(String name, PositionCorpus corpus, Graphics2D g) {
+        GameGrid[] grids = new GameGrid[corpus.size()];
+        Position[] moves = new Position[corpus.size()];
+        boolean[] played = new boolean[corpus.size()];
+        for(int i = 0; i < corpus.size(); i++) {
+            grids[i] = new GameGrid(new Position(0, 0), PANEL_WIDTH, PANEL_HEIGHT - MESSAGE_AREA_HEIGHT, 8, 8);
+            grids[i].setPosition(corpus.getBoard(i), corpus.getPlayer(i));
+            moves[i] = grids[i].getAllValidMoves().get(0);
+            // Build the cached images before timing starts.
+            grids[i].paint(g);
+        }
+        switch(name) {
+            case "full frame, direct":
+                return i -> paintDirect(g, grids[i]);
+            case "full frame, cached":
+                return i -> paintCached(g, grids[i], 0, 0, PANEL_WIDTH, PANEL_HEIGHT);
+            case "move frame, direct":
+                return i -> {
+                    toggleMove(grids[i], moves[i], corpus.getPlayer(i), played, i);
+                    return paintDirect(g, grids[i]);
+                };
+            case "move frame, changed area":
+                return i -> {
+                    toggleMove(grids[i], moves[i], corpus.getPlayer(i), played, i);
+                    // The message changes every turn, and Swing joins the two repaint requests into one area
+                    // running from the highest changed cell to the bottom of the window.
+                    int top = grids[i].getChangedBounds().getPosition().y;
+                    long drawn = paintCached(g, grids[i], 0, top, PANEL_WIDTH, PANEL_HEIGHT - top);
+                    g.setClip(null);
+                    return drawn;
+                };
+            case "move only":
+                return i -> {
+                    toggleMove(grids[i], moves[i], corpus.getPlayer(i), played, i);
+                    return grids[i].getAllValidMoves().size();
+                };
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+    }
+
+    /**
+     * Plays a move on a grid, or takes it back if it was played by the previous call.
+     *
+     * @param grid The grid to change.
+     * @param move The move to play.
+     * @param player The player to play the move for.
+     * @param played Whether the move of each position is currently played.
+     * @param i Index of the position.
+     */
+    private static void toggleMove(GameGrid grid, Position move, int player, boolean[] played, int i) {
+        if(played[i]) {
+            grid.unmakeMove();
+        } else {
+            grid.playMove(move, player);
+        }
+        played[i] = !played[i];
+    }
+
+    /**
+     * Draws a whole frame the way GamePanel did before the cached grid image.
+     *
+     * @param g Graphics of the frame.
+     * @param grid The grid to draw.
+     * @return Any value depending on the drawing.
+     */
+    private static long paintDirect(Graphics2D g, GameGrid grid) {
+        g.setColor(Color.LIGHT_GRAY);
+        g.fillRect(0, 0, PANEL_WIDTH, PANEL_HEIGHT);
+        grid.paintAllCells(g);
+        g.setColor(Color.BLACK);
+        g.setFont(new Font("Arial", Font.BOLD, 35));
+        int strWidth = g.getFontMetrics().stringWidth(MESSAGE);
+        g.drawString(MESSAGE, PANEL_WIDTH/2-strWidth/2, PANEL_HEIGHT-40);
+        return strWidth;
+    }
+
+    /**
+     * Draws the area of a frame that a repaint request covers, the way GamePanel does now.
+     * Swing clips the paint to the requested area, so that is done here too.
+     *
+     * @param g Graphics of the frame.
+     * @param grid The grid to draw.
+     * @param x Left of the area to repaint.
+     * @param y Top of the area to repaint.
+     * @param width Width of the area to repaint.
+     * @param height Height of the area to repaint.
+     * @return Any value depending on the drawing.
+     */
+    private static long paintCached(Graphics2D g, GameGrid grid, int x, int y, int width, int height) {
+        g.setClip(x, y, width, height);
+        g.setColor(Color.LIGHT_GRAY);
+        g.fillRect(x, y, width, height);
+        grid.paint(g);
+        g.setColor(Color.BLACK);
+        g.setFont(MESSAGE_FONT);
+        int strWidth = g.getFontMetrics().stringWidth(MESSAGE);
+        g.drawString(MESSAGE, PANEL_WIDTH/2-strWidth/2, PANEL_HEIGHT-40);
+        return strWidth;
+    }
+}
@@ -0,0 +1,352 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * RulesBenchmark class:
+ * Times the hot paths of the rules (GameGrid.updateValidMoves, getChangedPositionsForMove,
+ * playMove, getWinner, and SimpleAI.chooseMove) on opening, midgame, and endgame positions
+ * from PositionCorpus, next to the allocation free GameGrid methods and the BitBoard methods
+ * they delegate to.
+ *
+ * Each benchmark is run for several warmup iterations and then several measured iterations
+ * of a fixed duration, in the same way as JMH. For every benchmark the report gives the
+ * average time per operation with its standard deviation over the measured iterations,
+ * the bytes allocated per operation by the benchmark thread, and the number of garbage
+ * collections and the time spent in them while measuring.
+ *
+ * Every benchmark and phase runs in its own JVM, the same as a JMH fork, so the JIT profile of one
+ * benchmark never carries over to the next. Timing them all in one JVM would leave the call to
+ * Benchmark.run() megamorphic after the first few, so the nanosecond scale BitBoard benchmarks would
+ * mostly time interface dispatch and change with the order they ran in.
+ *
+ * Results are printed as a table and can also be written as CSV so runs can be compared.
+ *
+ * Usage: java RulesBenchmark [csvFile] [iterationMillis] [benchmark]
+ */
+public class RulesBenchmark {
+    /**
+     * Number of unmeasured iterations run first to let the JIT compile the code.
+     */
+    private static final int WARMUP_ITERATIONS = 3;
+    /**
+     * Number of measured iterations.
+     */
+    private static final int MEASURED_ITERATIONS = 5;
+    /**
+     * Number of positions generated for each phase of the game.
+     */
+    private static final int POSITIONS_PER_PHASE = 64;
+    /**
+     * Names of the phases of the game the positions are taken from.
+     */
+    private static final String[] PHASES = {"opening", "midgame", "endgame"};
+    /**
+     * Number of moves played before the positions of each phase.
+     */
+    private static final int[] MOVES_PLAYED = {12, 30, 46};
+    /**
+     * First argument that makes main() run a single benchmark in this JVM for the parent process.
+     */
+    private static final String CHILD_ARGUMENT = "--child";
+    /**
+     * Start of the line a child process writes its CSV row on.
+     */
+    private static final String CSV_PREFIX = "csv ";
+
+    /**
+     * Benchmark interface:
+     * A single operation to time. Returns a value so the JIT cannot remove the work.
+     */
+    interface Benchmark {
+        /**
+         * Runs the operation once on one of the positions.
+         *
+         * @param position Index of the position to use.
+         * @return Any value depending on the result.
+         */
+        long run(int position);
+    }
+
+    /**
+     * Stops the results of each operation from being optimised away.
+     */
+    private static long sink;
+
+    /**
+     * Runs every benchmark, or only the one named, on every phase in a new JVM each and prints the results.
+     *
+     * @param args Optional CSV file to write the results to, the duration of each iteration, and the name
+     *             of a single benchmark to run.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length > 0 && args[0].equals(CHILD_ARGUMENT)) {
+            runChild(args[1], Integer.parseInt(args[2]), Long.parseLong(args[3]));
+            return;
+        }
+        String csvFile = args.length > 0 && !args[0].isEmpty() ? args[0] : null;
+        long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 500;
+        String[] names = args.length > 2 ? new String[] {args[2]} : getBenchmarkNames();
+
+        List<String> rows = new ArrayList<>();
+        rows.add("benchmark,phase,ns_per_op,ns_error,bytes_per_op,gc_count,gc_ms");
+        printHeader();
+        for(int p = 0; p < PHASES.length; p++) {
+            for(String name : names) {
+                rows.add(runFork(name, p, iterationMillis));
+            }
+        }
+
+        if(csvFile != null) {
+            try(PrintWriter writer = new PrintWriter(new FileWriter(csvFile))) {
+                for(String row : rows) {
+                    writer.println(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one benchmark on one phase in a new JVM with the same class path, passing on its table row.
+     *
+     * @param name Name of the benchmark.
+     * @param phase Index of the phase.
+     * @param iterationMillis Duration of each iteration.
+     * @return The result as a CSV row.
+     * @throws IOException If the JVM cannot be started or the benchmark fails.
+     * @throws InterruptedException If interrupted while waiting for the JVM to finish.
+     */
+    private static String runFork(String name, int phase, long iterationMillis)
+            throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RulesBenchmark.class.getName(), CHILD_ARGUMENT, name, String.valueOf(phase),
+                String.valueOf(iterationMillis))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String row = null;
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.startsWith(CSV_PREFIX)) {
+                    row = line.substring(CSV_PREFIX.length());
+                } else {
+                    System.out.println(line);
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if(exitCode != 0 || row == null) {
+            throw new IOException(name + " on the " + PHASES[phase] + " positions failed with exit code " + exitCode);
+        }
+        return row;
+    }
+
+    /**
+     * Runs one benchmark on one phase in this JVM, printing its table row and then its CSV row for the parent.
+     *
+     * @param name Name of the benchmark.
+     * @param phase Index of the phase.
+     * @param iterationMillis Duration of each iteration.
+     */
+    private static void runChild(String name, int phase, long iterationMillis) {
+        PositionCorpus corpus = new PositionCorpus(POSITIONS_PER_PHASE, MOVES_PLAYED[phase], phase + 1);
+        Benchmark benchmark = createBenchmark(name, corpus);
+        String row = measure(name, PHASES[phase], benchmark, corpus.size(), iterationMillis);
+        System.out.println(CSV_PREFIX + row);
+        if(sink == 42) System.out.println();
+    }
+
+    /**
+     * Gets the names of all the benchmarks in the order they are run.
+     *
+     * @return The benchmark names.
+     */
+    private static String[] getBenchmarkNames() {
+        return new String[] {
+                "GameGrid.setPosition",
+                "GameGrid.updateValidMoves",
+                "GameGrid.getChangedPositionsForMove",
+                "GameGrid.getChangedMask",
+                "GameGrid.getChangedCells",
+                "GameGrid.isValidMove",
+                "GameGrid.playMove",
+                "GameGrid.getWinner",
+                "SimpleAI.chooseMove(grid)",
+                "SimpleAI.chooseMove(board)",
+                "BitBoard.getMoves",
+                "BitBoard.getFlips"
+        };
+    }
+
+    /**
+     * Creates the benchmark with the given name working on the positions in the corpus.
+     * Every position gets its own GameGrid loaded before timing starts, so benchmarks that
+     * do not change the grid time only the operation itself.
+     *
+     * @param name Name of the benchmark.
+     * @param corpus Positions to run on.
+     * @return The benchmark.
+     */
+    private static Benchmark createBenchmark(String name, PositionCorpus corpus) {
+        GameGrid[] grids = new GameGrid[corpus.size()];
+        BitBoard[] boards = new BitBoard[corpus.size()];
+        Position[] firstMoves = new Position[corpus.size()];
+        for(int i = 0; i < corpus.size(); i++) {
+            boards[i] = corpus.getBoard(i);
+            grids[i] = new GameGrid(new Position(0, 0), 500, 500, 8, 8);
+            grids[i].setPosition(boards[i], corpus.getPlayer(i));
+            firstMoves[i] = grids[i].getAllValidMoves().get(0);
+        }
+        GameGrid scratchGrid = new GameGrid(new Position(0, 0), 500, 500, 8, 8);
+        switch(name) {
+            case "GameGrid.setPosition":
+                return i -> {
+                    scratchGrid.setPosition(boards[i], corpus.getPlayer(i));
+                    return scratchGrid.getAllValidMoves().size();
+                };
+            case "GameGrid.updateValidMoves":
+                return i -> {
+                    grids[i].updateValidMoves(corpus.getPlayer(i));
+                    return grids[i].getAllValidMoves().size();
+                };
+            case "GameGrid.getChangedPositionsForMove":
+                return i -> grids[i].getChangedPositionsForMove(firstMoves[i], corpus.getPlayer(i)).size();
+            case "GameGrid.getChangedMask":
+                return i -> grids[i].getChangedMask(firstMoves[i].x, firstMoves[i].y, corpus.getPlayer(i));
+            case "GameGrid.getChangedCells":
+                int[] buffer = new int[BitBoard.SIZE * 2];
+                return i -> grids[i].getChangedCells(firstMoves[i].x, firstMoves[i].y, corpus.getPlayer(i), buffer);
+            case "GameGrid.isValidMove":
+                return i -> grids[i].isValidMove(firstMoves[i]) ? 1 : 0;
+            case "GameGrid.playMove":
+                // The grid has to be put back before every move, so this includes the cost of setPosition.
+                return i -> {
+                    scratchGrid.setPosition(boards[i], corpus.getPlayer(i));
+                    scratchGrid.playMove(firstMoves[i], corpus.getPlayer(i));
+                    return scratchGrid.getAllValidMoves().size();
+                };
+            case "GameGrid.getWinner":
+                return i -> grids[i].getWinner(false);
+            case "SimpleAI.chooseMove(grid)":
+                SimpleAI[] gridAIs = new SimpleAI[corpus.size()];
+                for(int i = 0; i < gridAIs.length; i++) {
+                    gridAIs[i] = new SimpleAI(grids[i]);
+                }
+                return i -> gridAIs[i].chooseMove().x;
+            case "SimpleAI.chooseMove(board)":
+                SimpleAI boardAI = new SimpleAI(new Random(1));
+                return i -> boardAI.chooseMove(boards[i], corpus.getPlayer(i));
+            case "BitBoard.getMoves":
+                return i -> boards[i].getValidMoves(corpus.getPlayer(i));
+            case "BitBoard.getFlips":
+                return i -> boards[i].getFlips(BitBoard.toIndex(firstMoves[i].x, firstMoves[i].y), corpus.getPlayer(i));
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+    }
+
+    /**
+     * Prints the column headings of the results table.
+     */
+    static void printHeader() {
+        System.out.printf("%-36s %-8s %12s %10s %12s %6s %8s%n",
+                "benchmark", "phase", "ns/op", "error", "bytes/op", "gcs", "gc ms");
+    }
+
+    /**
+     * Runs the warmup and measured iterations of a benchmark and prints the result.
+     * Also used by RenderBenchmark.
+     *
+     * @param name Name of the benchmark.
+     * @param phase Name of the phase the positions come from.
+     * @param benchmark The benchmark to run.
+     * @param positions Number of positions to cycle through.
+     * @param iterationMillis Duration of each iteration.
+     * @return The result as a CSV row.
+     */
+    static String measure(String name, String phase, Benchmark benchmark, int positions, long iterationMillis) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        long totalOps = 0;
+        long allocatedBytes = 0;
+        long gcCount = -getGcCount();
+        long gcMillis = -getGcMillis();
+        for(int iteration = -WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration++) {
+            if(iteration == 0) {
+                gcCount = -getGcCount();
+                gcMillis = -getGcMillis();
+            }
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long ops = 0;
+            long startTime = System.nanoTime();
+            long endTime = startTime + iterationMillis * 1000000L;
+            long now;
+            do {
+                // Time batches of one pass over the positions to keep the clock out of the measurement.
+                for(int i = 0; i < positions; i++) {
+                    sink += benchmark.run(i);
+                }
+                ops += positions;
+                now = System.nanoTime();
+            } while(now < endTime);
+            if(iteration >= 0) {
+                nanosPerOp[iteration] = (double) (now - startTime) / ops;
+                totalOps += ops;
+                allocatedBytes += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+        }
+        gcCount += getGcCount();
+        gcMillis += getGcMillis();
+
+        double mean = 0;
+        for(double value : nanosPerOp) mean += value;
+        mean /= nanosPerOp.length;
+        double variance = 0;
+        for(double value : nanosPerOp) variance += (value - mean) * (value - mean);
+        double error = Math.sqrt(variance / (nanosPerOp.length - 1));
+        double bytesPerOp = (double) allocatedBytes / totalOps;
+
+        System.out.printf("%-36s %-8s %12.1f %10.1f %12.1f %6d %8d%n",
+                name, phase, mean, error, bytesPerOp, gcCount, gcMillis);
+        return String.format("%s,%s,%.2f,%.2f,%.2f,%d,%d", name, phase, mean, error, bytesPerOp, gcCount, gcMillis);
+    }
+
+    /**
+     * Gets the total number of garbage collections so far.
+     *
+     * @return Collections across all collectors.
+     */
+    private static long getGcCount() {
+        long count = 0;
+        for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Gets the total time spent in garbage collection so far.
+     *
+     * @return Milliseconds across all collectors.
+     */
+    private static long getGcMillis() {
+        long time = 0;
+        for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+}
@@ -0,0 +1,1076 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * SearchAI class:
+ * Chooses moves by looking ahead with a negamax alpha-beta search on a BitBoard.
+ * The search deepens one move at a time (iterative deepening) and stops when either
+ * the time limit or the node limit has been used, returning the best move from the
+ * deepest search that finished. Moves are ordered so the most promising are tried first,
+ * starting with the best move found by the previous iteration.
+ *
+ * With more than one thread the search runs as Lazy SMP: every thread searches the same
+ * root position independently and they share results through the transposition table.
+ * Helper threads start one move deeper on alternate threads so they fill the table ahead
+ * of the main thread. The move comes from whichever thread completed the deepest search.
+ *
+ * While the opponent is thinking the AI can ponder: it guesses the opponent's move and searches
+ * the position after it until stopped. If the guess was right, chooseMove() plays the
+ * pondered move straight away once the pondering used as much time or as many nodes as a normal move
+ * would, and otherwise carries on for whatever is left, starting from the results kept in the table.
+ * Pondering stops on its own after PONDER_LIMIT_FACTOR times the limits of a move, so a stop() that
+ * never comes cannot keep the AI busy forever.
+ *
+ * A stop() stays in effect until clearStop() is called, so it is never lost when it lands just before
+ * a search starts. Whoever starts the searches clears it first, on the thread that will search.
+ *
+ * analyse() searches with no limits to score every move instead of only finding the best one,
+ * reporting the scores each time a depth is finished. The table is kept between searches, so
+ * analysing the position after the expected moves starts from what was already found.
+ */
+public class SearchAI implements AIBehaviour {
+    /**
+     * AnalysisListener interface:
+     * Receives the scores found by analyse() as the search deepens.
+     */
+    public interface AnalysisListener {
+        /**
+         * Called on the searching thread each time a depth has been searched for every move.
+         *
+         * @param depth The depth that was finished.
+         * @param bestMove Cell index of the best move.
+         * @param scores Score of each valid move indexed by cell, from the point of view of the player
+         *               to move. Estimates are in hundredths of a piece, and finished games are scored
+         *               as WIN_SCORE plus the piece difference. The array is not used again by the search.
+         * @param nodes Number of positions visited so far.
+         */
+        void depthFinished(int depth, int bestMove, int[] scores, long nodes);
+    }
+
+    /**
+     * Score given to a finished game that has been won. The final piece difference is added on top.
+     */
+    public static final int WIN_SCORE = 10000;
+    /**
+     * Default size of the transposition table in megabytes.
+     */
+    public static final int DEFAULT_TABLE_MB = 16;
+    /**
+     * The endgame solver's table is this many times smaller than the transposition table.
+     */
+    private static final int SOLVER_TABLE_DIVISOR = 8;
+    /**
+     * Larger than any score the search can return.
+     */
+    private static final int INFINITY = 1000000;
+    /**
+     * Maximum depth of the search. A game can never have more moves than there are cells.
+     */
+    private static final int MAX_PLY = BitBoard.CELLS;
+    /**
+     * How many nodes are searched between each check of the time and node limits.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+    /**
+     * Pondering stops once it has used this many times the time or node limit of a move.
+     */
+    private static final int PONDER_LIMIT_FACTOR = 4;
+    /**
+     * Longest time pondering can take in milliseconds, used when the AI has no time or node limit.
+     */
+    private static final long MAX_PONDER_MILLIS = 60000;
+    /**
+     * Static value of each cell used to order moves near the leaves of the search.
+     * Corners are best. Cells next to a corner give the opponent a chance to take it along the edge.
+     */
+    private static final int[] SQUARE_VALUES = {
+            100, -20, 10,  5,  5, 10, -20, 100,
+            -20, -30, -2, -2, -2, -2, -30, -20,
+             10,  -2,  1,  1,  1,  1,  -2,  10,
+              5,  -2,  1,  0,  0,  1,  -2,   5,
+              5,  -2,  1,  0,  0,  1,  -2,   5,
+             10,  -2,  1,  1,  1,  1,  -2,  10,
+            -20, -30, -2, -2, -2, -2, -30, -20,
+            100, -20, 10,  5,  5, 10, -20, 100
+    };
+
+    /**
+     * Maximum time to spend choosing each move in milliseconds, or 0 for no limit.
+     */
+    private final long timeLimitMillis;
+    /**
+     * Maximum number of positions to visit when choosing each move, or 0 for no limit.
+     */
+    private final long nodeLimit;
+    /**
+     * Maximum depth to search to.
+     */
+    private final int maxDepth;
+    /**
+     * Results of earlier searches kept between iterations and between moves, shared by all threads.
+     */
+    private final TranspositionTable table;
+    /**
+     * Search state for each thread. Worker 0 runs on the thread calling chooseMove().
+     */
+    private final Worker[] workers;
+    /**
+     * Threads running the helper workers, or null when searching with a single thread.
+     */
+    private final ExecutorService helperPool;
+    /**
+     * Size of the endgame solver's table in megabytes.
+     */
+    private final int solverTableMB;
+    /**
+     * Plays the last moves of the game perfectly once few enough cells are empty, or null until first needed.
+     */
+    private volatile EndgameSolver solver;
+    /**
+     * Estimates the value of positions at the end of the search.
+     */
+    private final PatternEvaluator evaluator;
+
+    /**
+     * Set to make every worker stop searching.
+     */
+    private volatile boolean stopAll;
+    /**
+     * Set by stop() until clearStop() is called. Every search started while it is set stops at once.
+     */
+    private volatile boolean stopRequested;
+    /**
+     * Set by shutdown() once the helper threads are stopped, so later searches only use worker 0.
+     */
+    private volatile boolean shutDown;
+    /**
+     * Time limit of the current search in milliseconds, or 0 for no limit. Lower than
+     * timeLimitMillis when pondering has already used some of the time.
+     */
+    private long searchTimeMillis;
+    /**
+     * Node limit of the current search, or 0 for no limit.
+     */
+    private long searchNodeLimit;
+    /**
+     * Time from System.nanoTime() at which the current search started.
+     */
+    private long startTime;
+    /**
+     * Time from System.nanoTime() at which the current search must stop.
+     */
+    private long deadline;
+    /**
+     * Number of positions visited by all threads in the most recent search.
+     */
+    private long nodes;
+    /**
+     * Number of table probes made by all threads in the most recent search.
+     */
+    private long tableProbes;
+    /**
+     * Number of table probes that found their position in the most recent search.
+     */
+    private long tableHits;
+    /**
+     * Number of table stores that replaced a current entry for a different position in the most recent search.
+     */
+    private long tableCollisions;
+    /**
+     * Deepest iteration that was completed by the most recent search.
+     */
+    private int depthReached;
+    /**
+     * Score of the chosen move from the point of view of the player who moved.
+     */
+    private int score;
+    /**
+     * Time taken by the most recent search in nanoseconds.
+     */
+    private long elapsedNanos;
+    /**
+     * Zobrist hash of the position searched by the most recent ponder(), or 0 if there is no result to reuse.
+     */
+    private long ponderHash;
+    /**
+     * Move found by the most recent ponder().
+     */
+    private int ponderMove;
+    /**
+     * Deepest iteration completed by the most recent ponder().
+     */
+    private int ponderDepth;
+    /**
+     * Score of the move found by the most recent ponder().
+     */
+    private int ponderScore;
+    /**
+     * Number of positions visited by the most recent ponder().
+     */
+    private long ponderNodes;
+    /**
+     * Time taken by the most recent ponder() in nanoseconds.
+     */
+    private long ponderNanos;
+    /**
+     * True if the most recent ponder() searched as far as it could before being stopped.
+     */
+    private boolean ponderComplete;
+    /**
+     * True if the most recent chooseMove() reused the results of ponder().
+     */
+    private boolean lastMovePondered;
+    /**
+     * Receives the scores while analyse() is running, otherwise null.
+     */
+    private AnalysisListener analysisListener;
+
+    /**
+     * Creates a search AI with the specified limits and evaluation.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds, or 0 for no limit.
+     * @param nodeLimit Maximum positions to visit for each move across all threads, or 0 for no limit.
+     * @param maxDepth Maximum depth in moves to search to.
+     * @param tableSizeMB Size of the transposition table in megabytes. The endgame solver adds a table an
+     *                    eighth of this size the first time it is used, so the AI uses up to 1.125 times this.
+     * @param threads Number of threads to search with.
+     * @param evaluator Estimates the value of positions at the end of the search.
+     */
+    public SearchAI(long timeLimitMillis, long nodeLimit, int maxDepth, int tableSizeMB, int threads,
+                    PatternEvaluator evaluator) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.evaluator = evaluator;
+        this.nodeLimit = nodeLimit;
+        this.maxDepth = Math.min(maxDepth, MAX_PLY);
+        this.table = new TranspositionTable(tableSizeMB);
+        this.solverTableMB = Math.max(1, tableSizeMB / SOLVER_TABLE_DIVISOR);
+        workers = new Worker[Math.max(1, threads)];
+        for(int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+        if(workers.length > 1) {
+            helperPool = Executors.newFixedThreadPool(workers.length - 1, runnable -> {
+                Thread thread = new Thread(runnable, "SearchAI helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            helperPool = null;
+        }
+    }
+
+    /**
+     * Creates a search AI with the specified limits using the shared PatternEvaluator.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds, or 0 for no limit.
+     * @param nodeLimit Maximum positions to visit for each move across all threads, or 0 for no limit.
+     * @param maxDepth Maximum depth in moves to search to.
+     * @param tableSizeMB Size of the transposition table in megabytes. The endgame solver adds an eighth
+     *                    more the first time it is used.
+     * @param threads Number of threads to search with.
+     */
+    public SearchAI(long timeLimitMillis, long nodeLimit, int maxDepth, int tableSizeMB, int threads) {
+        this(timeLimitMillis, nodeLimit, maxDepth, tableSizeMB, threads, PatternEvaluator.getDefault());
+    }
+
+    /**
+     * Creates a single threaded search AI with the specified limits.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds, or 0 for no limit.
+     * @param nodeLimit Maximum positions to visit for each move, or 0 for no limit.
+     * @param maxDepth Maximum depth in moves to search to.
+     * @param tableSizeMB Size of the transposition table in megabytes. The endgame solver adds an eighth
+     *                    more the first time it is used.
+     */
+    public SearchAI(long timeLimitMillis, long nodeLimit, int maxDepth, int tableSizeMB) {
+        this(timeLimitMillis, nodeLimit, maxDepth, tableSizeMB, 1);
+    }
+
+    /**
+     * Creates a single threaded search AI with the specified limits and the default table size.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds, or 0 for no limit.
+     * @param nodeLimit Maximum positions to visit for each move, or 0 for no limit.
+     * @param maxDepth Maximum depth in moves to search to.
+     */
+    public SearchAI(long timeLimitMillis, long nodeLimit, int maxDepth) {
+        this(timeLimitMillis, nodeLimit, maxDepth, DEFAULT_TABLE_MB);
+    }
+
+    /**
+     * Creates a search AI that spends up to a fixed time on each move using the specified number of threads.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds.
+     * @param threads Number of threads to search with.
+     */
+    public SearchAI(long timeLimitMillis, int threads) {
+        this(timeLimitMillis, 0, MAX_PLY, DEFAULT_TABLE_MB, threads);
+    }
+
+    /**
+     * Creates a single threaded search AI that spends up to a fixed time on each move.
+     *
+     * @param timeLimitMillis Maximum time to spend on each move in milliseconds.
+     */
+    public SearchAI(long timeLimitMillis) {
+        this(timeLimitMillis, 1);
+    }
+
+    /**
+     * Searches deeper and deeper until a limit is reached, then plays the best
+     * move from the deepest search that was completed. When the position is the one
+     * the last ponder() searched, its results are reused instead.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for.
+     * @return The cell index of the chosen move, or -1 if there are no valid moves.
+     */
+    @Override
+    public int chooseMove(BitBoard board, int playerID) {
+        long start = System.nanoTime();
+        lastMovePondered = false;
+        long timeMillis = timeLimitMillis;
+        long nodeBudget = nodeLimit;
+        if(ponderHash != 0 && ponderHash == Zobrist.hash(board.getBlack(), board.getWhite(), playerID)) {
+            lastMovePondered = true;
+            long ponderMillis = ponderNanos / 1000000L;
+            if(ponderComplete || (timeLimitMillis > 0 && ponderMillis >= timeLimitMillis)
+                    || (nodeLimit > 0 && ponderNodes >= nodeLimit)) {
+                ponderHash = 0;
+                depthReached = ponderDepth;
+                score = ponderScore;
+                nodes = ponderNodes;
+                elapsedNanos = System.nanoTime() - start;
+                return ponderMove;
+            }
+            // Only spend what is left of the limits. The table still holds everything pondering found.
+            if(timeLimitMillis > 0) timeMillis = timeLimitMillis - ponderMillis;
+            if(nodeLimit > 0) nodeBudget = nodeLimit - ponderNodes;
+        }
+        ponderHash = 0;
+        return search(board, playerID, timeMillis, nodeBudget);
+    }
+
+    /**
+     * Chooses a move with a time limit for this move only, in place of the one the AI was made with.
+     * Used when one AI serves many games that each ask for their own time, so pondering is not used.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for.
+     * @param timeLimitMillis Maximum time to spend in milliseconds, or 0 for no limit.
+     * @return The cell index of the chosen move, or -1 if there are no valid moves.
+     */
+    public int chooseMove(BitBoard board, int playerID, long timeLimitMillis) {
+        lastMovePondered = false;
+        ponderHash = 0;
+        return search(board, playerID, timeLimitMillis, nodeLimit);
+    }
+
+    /**
+     * Guesses the opponent's move and searches the position after it until stop() is called,
+     * the search reaches the depth limit, or it has used PONDER_LIMIT_FACTOR times the limits
+     * of a move (MAX_PONDER_MILLIS without limits), keeping the result for chooseMove().
+     * The guess is the best move stored in the table from the last search, which is usually
+     * the reply that search expected, or else the move the evaluation likes best.
+     *
+     * @param board The current board with the opponent to move. Must not be modified.
+     * @param playerID The player this AI chooses moves for.
+     */
+    @Override
+    public void ponder(BitBoard board, int playerID) {
+        ponderHash = 0;
+        int opponentID = playerID == 1 ? 2 : 1;
+        long moves = board.getValidMoves(opponentID);
+        if(moves == 0) return;
+        BitBoard next = new BitBoard(board);
+        next.playMove(predictMove(board, opponentID, moves), opponentID);
+        // If this AI would have to pass, the opponent moves again and there is nothing to ponder.
+        if(next.getValidMoves(playerID) == 0) return;
+
+        long ponderMillis = timeLimitMillis > 0
+                ? Math.min(timeLimitMillis * PONDER_LIMIT_FACTOR, MAX_PONDER_MILLIS) : MAX_PONDER_MILLIS;
+        long ponderNodeLimit = nodeLimit > 0 ? nodeLimit * PONDER_LIMIT_FACTOR : 0;
+        ponderMove = search(next, playerID, ponderMillis, ponderNodeLimit);
+        ponderDepth = depthReached;
+        ponderScore = score;
+        ponderNodes = nodes;
+        ponderNanos = elapsedNanos;
+        // Without limits of its own the AI only takes the result as a start if the cap cut it short.
+        ponderComplete = !stopRequested && (timeLimitMillis > 0 || nodeLimit > 0
+                || ponderNanos < MAX_PONDER_MILLIS * 1000000L);
+        ponderHash = Zobrist.hash(next.getBlack(), next.getWhite(), playerID);
+    }
+
+    /**
+     * Scores every valid move by searching deeper and deeper until stop() is called or the search
+     * reaches the end of the game, calling the listener after each depth. Every move is searched
+     * with a full window so all the scores are exact for their depth, which costs more than finding
+     * only the best move. Pondering results are not used or kept.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to move.
+     * @param listener Receives the scores after each depth.
+     * @return The cell index of the best move, or -1 if there are no valid moves.
+     */
+    public int analyse(BitBoard board, int playerID, AnalysisListener listener) {
+        lastMovePondered = false;
+        ponderHash = 0;
+        analysisListener = listener;
+        try {
+            return search(board, playerID, 0, 0);
+        } finally {
+            analysisListener = null;
+        }
+    }
+
+    /**
+     * Stops a running chooseMove(), ponder(), or analyse(), and any started before clearStop() is called.
+     * A stopped chooseMove() plays the best move from the deepest iteration that finished, the same as
+     * when the time runs out.
+     */
+    @Override
+    public void stop() {
+        stopRequested = true;
+        stopAll = true;
+        EndgameSolver current = solver;
+        if(current != null) current.stop();
+    }
+
+    /**
+     * Forgets any earlier stop() so the next search runs until its limits.
+     */
+    @Override
+    public void clearStop() {
+        stopRequested = false;
+        EndgameSolver current = solver;
+        if(current != null) current.clearStop();
+    }
+
+    /**
+     * Checks if the most recent chooseMove() reused the results of ponder().
+     *
+     * @return True if the opponent played the move that was pondered.
+     */
+    public boolean isLastMovePondered() {
+        return lastMovePondered;
+    }
+
+    /**
+     * Runs a search with the specified limits. Once few enough cells are empty and the depth
+     * limit allows searching to the end of the game, the endgame solver is tried first with half
+     * of the limits, and the search only runs if it could not finish.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for.
+     * @param timeMillis Maximum time to spend in milliseconds, or 0 for no limit.
+     * @param nodeBudget Maximum positions to visit across all threads, or 0 for no limit.
+     * @return The cell index of the chosen move, or -1 if there are no valid moves.
+     */
+    private int search(BitBoard board, int playerID, long timeMillis, long nodeBudget) {
+        long own = board.getPieces(playerID);
+        long opponent = board.getPieces(playerID == 1 ? 2 : 1);
+        startTime = System.nanoTime();
+        searchTimeMillis = timeMillis;
+        searchNodeLimit = nodeBudget;
+        deadline = startTime + timeMillis * 1000000L;
+        nodes = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        tableCollisions = 0;
+        depthReached = 0;
+        score = 0;
+        stopAll = stopRequested;
+        table.newSearch();
+
+        long moves = BitBoard.getMoves(own, opponent);
+        if(moves == 0) {
+            elapsedNanos = System.nanoTime() - startTime;
+            return -1;
+        }
+        int empties = BitBoard.CELLS - Long.bitCount(own | opponent);
+        // The solver only finds the best move, so analysis searches to the end of the game instead.
+        if(empties <= EndgameSolver.DEFAULT_EMPTIES && maxDepth >= empties && analysisListener == null) {
+            int move = solveEndgame(board, playerID, empties);
+            if(move >= 0) {
+                return move;
+            }
+        }
+        long hash = Zobrist.hash(board.getBlack(), board.getWhite(), playerID);
+
+        int activeWorkers = shutDown ? 1 : workers.length;
+        for(int i = activeWorkers; i < workers.length; i++) {
+            // Idle helpers must not add their last search to the node limit.
+            workers[i].publishedNodes = 0;
+        }
+        Future<?>[] helpers = new Future<?>[activeWorkers - 1];
+        for(int i = 1; i < activeWorkers; i++) {
+            Worker helper = workers[i];
+            helpers[i - 1] = helperPool.submit(() -> helper.iterate(own, opponent, hash, playerID, moves));
+        }
+        workers[0].iterate(own, opponent, hash, playerID, moves);
+        stopAll = true;
+        for(Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+        }
+
+        // Play the move from the deepest completed search, preferring the main thread.
+        Worker best = workers[0];
+        for(int i = 0; i < activeWorkers; i++) {
+            Worker worker = workers[i];
+            nodes += worker.nodes;
+            tableProbes += worker.tableProbes;
+            tableHits += worker.tableHits;
+            tableCollisions += worker.tableCollisions;
+            if(worker.depthReached > best.depthReached) best = worker;
+        }
+        depthReached = best.depthReached;
+        score = best.score;
+        elapsedNanos = System.nanoTime() - startTime;
+        return best.bestMove;
+    }
+
+    /**
+     * Solves the rest of the game using at most half of the time and node limits. Whether the game
+     * is won, lost, or drawn is found first because it is much faster, then the exact final difference
+     * with whatever is left. If only the first finishes its move is played, so a won game is never thrown away.
+     *
+     * @param board The current board.
+     * @param playerID The player to choose a move for.
+     * @param empties Number of empty cells.
+     * @return The cell index of the move, or -1 if the solver could not finish in time.
+     */
+    private int solveEndgame(BitBoard board, int playerID, int empties) {
+        long solveMillis = searchTimeMillis > 0 ? Math.max(1, searchTimeMillis / 2) : 0;
+        long solveNodes = searchNodeLimit > 0 ? Math.max(1, searchNodeLimit / 2) : 0;
+        EndgameSolver solver = getSolver();
+        int move = stopAll ? -1 : solver.solve(board, playerID, false, solveMillis, solveNodes);
+        if(move < 0) {
+            nodes = solver.getNodes();
+            return -1;
+        }
+        long usedNodes = solver.getNodes();
+        score = Integer.signum(solver.getScore()) * WIN_SCORE;
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000L;
+        if(!stopAll && (solveMillis == 0 || elapsedMillis < solveMillis) && (solveNodes == 0 || usedNodes < solveNodes)) {
+            int exactMove = solver.solve(board, playerID, true,
+                    solveMillis > 0 ? solveMillis - elapsedMillis : 0, solveNodes > 0 ? solveNodes - usedNodes : 0);
+            usedNodes += solver.getNodes();
+            if(exactMove >= 0) {
+                move = exactMove;
+                int difference = solver.getScore();
+                score = difference + Integer.signum(difference) * WIN_SCORE;
+            }
+        }
+        nodes = usedNodes;
+        depthReached = empties;
+        elapsedNanos = System.nanoTime() - startTime;
+        return move;
+    }
+
+    /**
+     * Gets the endgame solver, creating it the first time so AIs that never reach the endgame
+     * do not hold its table.
+     *
+     * @return The solver.
+     */
+    private EndgameSolver getSolver() {
+        EndgameSolver current = solver;
+        if(current == null) {
+            current = new EndgameSolver(solverTableMB);
+            solver = current;
+            // A stop() that ran before the solver was published could not reach it.
+            if(stopRequested) current.stop();
+        }
+        return current;
+    }
+
+    /**
+     * Gets the number of positions visited by the most recent search across all threads.
+     *
+     * @return Number of nodes searched.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the number of transposition table probes made by the most recent search across all threads.
+     * Each thread counts its own and they are added up once the search ends.
+     *
+     * @return Number of probes.
+     */
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    /**
+     * Gets the number of probes in the most recent search that found their position.
+     *
+     * @return Number of hits.
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * Gets the number of stores in the most recent search that replaced an entry from the same
+     * search for a different position.
+     *
+     * @return Number of collisions.
+     */
+    public long getTableCollisions() {
+        return tableCollisions;
+    }
+
+    /**
+     * Gets the deepest iteration completed by the most recent search.
+     *
+     * @return Depth in moves.
+     */
+    public int getDepthReached() {
+        return depthReached;
+    }
+
+    /**
+     * Gets the score of the chosen move. Values beyond WIN_SCORE are proven wins,
+     * and values below -WIN_SCORE are proven losses.
+     *
+     * @return Score from the point of view of the player who was choosing a move.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Gets the time taken by the most recent search.
+     *
+     * @return Time in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000L;
+    }
+
+    /**
+     * Gets the time taken by the most recent search.
+     *
+     * @return Time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the transposition table used by this AI, for clearing or sizing it between searches.
+     * The probe, hit and collision counts of a search are given by getTableProbes(), getTableHits()
+     * and getTableCollisions().
+     *
+     * @return The transposition table.
+     */
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    /**
+     * Gets the number of threads this AI searches with.
+     *
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * Stops the helper threads. The AI can still be used afterwards, searching with a single thread.
+     */
+    public void shutdown() {
+        shutDown = true;
+        if(helperPool != null) {
+            helperPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Guesses the move the opponent will play.
+     *
+     * @param board The current board.
+     * @param playerID The opponent.
+     * @param moves Mask of the opponent's valid moves, not empty.
+     * @return Cell index of the expected move.
+     */
+    private int predictMove(BitBoard board, int playerID, long moves) {
+        long entry = table.probe(Zobrist.hash(board.getBlack(), board.getWhite(), playerID));
+        if(entry != 0) {
+            int move = TranspositionTable.getMove(entry);
+            if(move >= 0 && (moves & (1L << move)) != 0) return move;
+        }
+        long own = board.getPieces(playerID);
+        long opponent = board.getPieces(playerID == 1 ? 2 : 1);
+        int bestMove = Long.numberOfTrailingZeros(moves);
+        int bestValue = -INFINITY;
+        for(; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long flips = BitBoard.getFlips(own, opponent, move);
+            int value = -evaluate(opponent & ~flips, own | flips | (1L << move));
+            if(value > bestValue) {
+                bestValue = value;
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Adds up the nodes published by every worker during the current search.
+     *
+     * @return Approximate number of nodes searched so far by all threads.
+     */
+    private long countPublishedNodes() {
+        long total = 0;
+        for(Worker worker : workers) {
+            total += worker.publishedNodes;
+        }
+        return total;
+    }
+
+    /**
+     * Estimates how good a position is for the player to move without looking ahead, using the
+     * pattern evaluator. The estimate is kept inside the scores of finished games so a proven
+     * result is always preferred over an estimate.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @return Estimated score from the point of view of the player to move.
+     */
+    private int evaluate(long own, long opponent) {
+        int value = evaluator.evaluate(own, opponent);
+        return Math.max(-WIN_SCORE + 1, Math.min(WIN_SCORE - 1, value));
+    }
+
+    /**
+     * Writes a score as a short label: the expected piece difference such as +2.5, W+8 or L-4
+     * for a game that is won or lost by that many pieces, W or L for a game that is won or lost by
+     * an unknown number of pieces, or D for a draw.
+     *
+     * @param score A score from the search, from the point of view of the player to move.
+     * @param exact True if the search reached the end of the game, so a score of 0 is a draw.
+     * @return The label.
+     */
+    public static String toLabel(int score, boolean exact) {
+        if(score == WIN_SCORE) return "W";
+        if(score == -WIN_SCORE) return "L";
+        if(score > WIN_SCORE) return "W+" + (score - WIN_SCORE);
+        if(score < -WIN_SCORE) return "L" + (score + WIN_SCORE);
+        if(exact) return "D";
+        return String.format("%+.1f", score / 100.0);
+    }
+
+    /**
+     * Scores a finished game so any win is better than any estimate.
+     *
+     * @param own Pieces of the player to move.
+     * @param opponent Pieces of the other player.
+     * @return WIN_SCORE plus the piece difference for a win, the negative for a loss, or 0 for a draw.
+     */
+    static int finalScore(long own, long opponent) {
+        int difference = Long.bitCount(own) - Long.bitCount(opponent);
+        if(difference > 0) return WIN_SCORE + difference;
+        if(difference < 0) return -WIN_SCORE + difference;
+        return 0;
+    }
+
+    /**
+     * Worker class:
+     * The search state of a single thread. Each worker has its own move lists and counters,
+     * and only the transposition table is shared between them.
+     */
+    private class Worker {
+        /**
+         * Index of the worker, 0 for the main thread.
+         */
+        private final int id;
+        /**
+         * Preallocated move lists for each ply so the search does not allocate.
+         */
+        private final int[][] moveLists = new int[MAX_PLY + 1][BitBoard.CELLS];
+        /**
+         * Preallocated ordering scores matching the move lists.
+         */
+        private final int[][] moveScores = new int[MAX_PLY + 1][BitBoard.CELLS];
+
+        /**
+         * Number of positions visited by this worker in the current search.
+         */
+        private long nodes;
+        /**
+         * Number of table probes made by this worker in the current search.
+         */
+        private long tableProbes;
+        /**
+         * Number of this worker's table probes that found their position.
+         */
+        private long tableHits;
+        /**
+         * Number of this worker's table stores that replaced a current entry for a different position.
+         */
+        private long tableCollisions;
+        /**
+         * Copy of nodes updated at every limit check so the main thread can total the node count.
+         */
+        private volatile long publishedNodes;
+        /**
+         * Set once this worker should unwind its search.
+         */
+        private boolean stopped;
+        /**
+         * Score of every root move from the iteration currently running, filled only while analysing.
+         */
+        private final int[] rootScores = new int[BitBoard.CELLS];
+        /**
+         * Best move found at the root by the iteration currently running.
+         */
+        private int rootBestMove;
+        /**
+         * Best move from the deepest iteration this worker completed.
+         */
+        private int bestMove;
+        /**
+         * Deepest iteration this worker completed.
+         */
+        private int depthReached;
+        /**
+         * Score of the best move from the deepest iteration this worker completed.
+         */
+        private int score;
+
+        /**
+         * Creates the worker.
+         *
+         * @param id Index of the worker, 0 for the main thread.
+         */
+        private Worker(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Runs iterative deepening on the root position until a limit is reached or
+         * the search reaches the end of the game. Odd numbered helpers start one move deeper.
+         *
+         * @param own Pieces of the player to move.
+         * @param opponent Pieces of the other player.
+         * @param hash Zobrist hash of the position.
+         * @param playerID The player to move.
+         * @param moves Mask of valid moves at the root.
+         */
+        private void iterate(long own, long opponent, long hash, int playerID, long moves) {
+            nodes = 0;
+            tableProbes = 0;
+            tableHits = 0;
+            tableCollisions = 0;
+            publishedNodes = 0;
+            stopped = false;
+            depthReached = 0;
+            score = 0;
+            bestMove = Long.numberOfTrailingZeros(moves);
+            int empties = BitBoard.CELLS - Long.bitCount(own | opponent);
+            for(int depth = 1 + (id & 1); depth <= maxDepth; depth++) {
+                int result = searchRoot(own, opponent, hash, playerID, moves, depth, bestMove);
+                if(stopped) break;
+                bestMove = rootBestMove;
+                score = result;
+                depthReached = depth;
+                if(id == 0 && analysisListener != null) {
+                    analysisListener.depthFinished(depth, bestMove, rootScores.clone(), countPublishedNodes());
+                }
+                // Every move fills a cell, so this depth already reaches the end of the game.
+                // A single move is always played, unless it is being analysed for its score.
+                if(depth >= empties || (Long.bitCount(moves) == 1 && analysisListener == null)) break;
+                // The next iteration takes several times longer, so do not start one that cannot finish.
+                if(id == 0 && searchTimeMillis > 0 && System.nanoTime() - startTime > searchTimeMillis * 500000L) break;
+            }
+        }
+
+        /**
+         * Searches every root move to the specified depth, trying the previous best move first.
+         * While analysing every move gets a full window and its score is kept in rootScores.
+         *
+         * @param own Pieces of the player to move.
+         * @param opponent Pieces of the other player.
+         * @param hash Zobrist hash of the position.
+         * @param playerID The player to move.
+         * @param moves Mask of valid moves at the root.
+         * @param depth Depth to search to.
+         * @param firstMove Move to search first.
+         * @return Score of the best move.
+         */
+        private int searchRoot(long own, long opponent, long hash, int playerID, long moves, int depth, int firstMove) {
+            int count = orderMoves(own, opponent, moves, 0, depth, firstMove);
+            int[] moveList = moveLists[0];
+            int otherPlayer = playerID == 1 ? 2 : 1;
+            int alpha = -INFINITY;
+            boolean scoreAll = analysisListener != null;
+            rootBestMove = moveList[0];
+            for(int i = 0; i < count; i++) {
+                int move = moveList[i];
+                long flips = BitBoard.getFlips(own, opponent, move);
+                int value = -negamax(opponent & ~flips, own | flips | (1L << move),
+                        Zobrist.playMove(hash, move, flips, playerID), otherPlayer, depth - 1, 1,
+                        -INFINITY, scoreAll ? INFINITY : -alpha);
+                if(stopped) break;
+                rootScores[move] = value;
+                if(value > alpha) {
+                    alpha = value;
+                    rootBestMove = move;
+                }
+            }
+            if(!stopped && table.store(hash, depth, TranspositionTable.EXACT, alpha, rootBestMove)) {
+                tableCollisions++;
+            }
+            return alpha;
+        }
+
+        /**
+         * Searches a position with alpha-beta pruning. When the player to move cannot move
+         * the turn passes to the opponent without using up depth, matching GamePanel where
+         * the same player keeps playing while the other has no valid moves.
+         * Results are stored in the transposition table, and a stored result that was searched
+         * deep enough and is inside the window is returned without searching again.
+         *
+         * @param own Pieces of the player to move.
+         * @param opponent Pieces of the other player.
+         * @param hash Zobrist hash of the position.
+         * @param playerID The player to move.
+         * @param depth Remaining depth to search.
+         * @param ply Distance from the root.
+         * @param alpha Lower bound of the search window.
+         * @param beta Upper bound of the search window.
+         * @return Score from the point of view of the player to move.
+         */
+        private int negamax(long own, long opponent, long hash, int playerID, int depth, int ply, int alpha, int beta) {
+            if((++nodes & (CHECK_INTERVAL - 1)) == 0) checkLimits();
+            if(stopped) return 0;
+
+            int otherPlayer = playerID == 1 ? 2 : 1;
+            long moves = BitBoard.getMoves(own, opponent);
+            if(moves == 0) {
+                if(BitBoard.getMoves(opponent, own) == 0) {
+                    return finalScore(own, opponent);
+                }
+                return -negamax(opponent, own, hash ^ Zobrist.WHITE_TO_MOVE, otherPlayer, depth, ply + 1, -beta, -alpha);
+            }
+            if(depth <= 0) {
+                return evaluate(own, opponent);
+            }
+
+            int tableMove = -1;
+            long entry = table.probe(hash);
+            tableProbes++;
+            if(entry != 0) {
+                tableHits++;
+                tableMove = TranspositionTable.getMove(entry);
+                if(TranspositionTable.getDepth(entry) >= depth) {
+                    int tableScore = TranspositionTable.getScore(entry);
+                    int bound = TranspositionTable.getBound(entry);
+                    if(bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && tableScore >= beta)
+                            || (bound == TranspositionTable.UPPER && tableScore <= alpha)) {
+                        return tableScore;
+                    }
+                }
+            }
+
+            int originalAlpha = alpha;
+            int count = orderMoves(own, opponent, moves, ply, depth, tableMove);
+            int[] moveList = moveLists[ply];
+            int best = -INFINITY;
+            int bestMove = -1;
+            for(int i = 0; i < count; i++) {
+                int move = moveList[i];
+                long flips = BitBoard.getFlips(own, opponent, move);
+                int value = -negamax(opponent & ~flips, own | flips | (1L << move),
+                        Zobrist.playMove(hash, move, flips, playerID), otherPlayer, depth - 1, ply + 1, -beta, -alpha);
+                if(value > best) {
+                    best = value;
+                    bestMove = move;
+                    if(value > alpha) {
+                        alpha = value;
+                        if(alpha >= beta) break;
+                    }
+                }
+            }
+            if(!stopped) {
+                int bound = best >= beta ? TranspositionTable.LOWER
+                          : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+                if(table.store(hash, depth, bound, best, bestMove)) tableCollisions++;
+            }
+            return best;
+        }
+
+        /**
+         * Fills the move list for the ply with the moves sorted from most to least promising.
+         * Deeper in the tree moves are ranked by how few replies they leave the opponent,
+         * and close to the leaves by the static value of the cell.
+         *
+         * @param own Pieces of the player to move.
+         * @param opponent Pieces of the other player.
+         * @param moves Mask of valid moves.
+         * @param ply Distance from the root, selects which list to fill.
+         * @param depth Remaining depth to search.
+         * @param firstMove Move to always place first, or -1 for none.
+         * @return The number of moves in the list.
+         */
+        private int orderMoves(long own, long opponent, long moves, int ply, int depth, int firstMove) {
+            int[] moveList = moveLists[ply];
+            int[] scores = moveScores[ply];
+            int count = 0;
+            for(; moves != 0; moves &= moves - 1) {
+                int move = Long.numberOfTrailingZeros(moves);
+                int value;
+                if(move == firstMove) {
+                    value = INFINITY;
+                } else if(depth > 2) {
+                    long flips = BitBoard.getFlips(own, opponent, move);
+                    long replies = BitBoard.getMoves(opponent & ~flips, own | flips | (1L << move));
+                    value = SQUARE_VALUES[move] - 16 * Long.bitCount(replies);
+                } else {
+                    value = SQUARE_VALUES[move];
+                }
+                // Insertion sort, the lists are short.
+                int i = count++;
+                while(i > 0 && scores[i - 1] < value) {
+                    scores[i] = scores[i - 1];
+                    moveList[i] = moveList[i - 1];
+                    i--;
+                }
+                scores[i] = value;
+                moveList[i] = move;
+            }
+            return count;
+        }
+
+        /**
+         * Publishes the node count, and stops the search once the time or node limit has been
+         * reached or another worker has stopped every worker. Only the main worker enforces the limits.
+         */
+        private void checkLimits() {
+            publishedNodes = nodes;
+            if(stopAll) {
+                stopped = true;
+            } else if(id == 0 && ((searchTimeMillis > 0 && System.nanoTime() - deadline > 0)
+                    || (searchNodeLimit > 0 && countPublishedNodes() >= searchNodeLimit))) {
+                stopAll = true;
+                stopped = true;
+            }
+        }
+    }
+}
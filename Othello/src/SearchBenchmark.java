@@ -0,0 +1,79 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * SearchBenchmark class:
+ * Measures how the SearchAI scales with threads. Every position in the standard
+ * PositionCorpus is searched to a fixed depth with an empty transposition table,
+ * once for each thread count, and the totals are printed as a table:
+ *
+ * - speedup: time with one thread divided by the time with this many threads.
+ * - efficiency: speedup divided by the thread count (1.00 is perfect scaling).
+ * - nodes ratio: total nodes searched compared to one thread, the extra work done by the helpers.
+ * - nps scaling: nodes per second compared to one thread.
+ *
+ * Usage: java SearchBenchmark [depth] [positionsPerPhase] [threadCounts...]
+ */
+public class SearchBenchmark {
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args Optional depth, positions per phase, and the list of thread counts to test.
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int perPhase = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int[] threadCounts = {1, 2, 4, 8, 16};
+        if(args.length > 2) {
+            threadCounts = new int[args.length - 2];
+            for(int i = 2; i < args.length; i++) {
+                threadCounts[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        PositionCorpus corpus = PositionCorpus.standard(perPhase);
+        System.out.printf("Searching %d positions to depth %d on %d available processors%n",
+                corpus.size(), depth, Runtime.getRuntime().availableProcessors());
+
+        // Warm up the JIT so the first thread count is not penalised.
+        runAll(new SearchAI(0, 0, depth, 64, 1), corpus, new long[2]);
+
+        System.out.printf("%8s %12s %14s %12s %9s %11s %12s %12s%n",
+                "threads", "time ms", "nodes", "nps", "speedup", "efficiency", "nodes ratio", "nps scaling");
+        double baseTime = 0;
+        double baseNodes = 0;
+        double baseNps = 0;
+        for(int threads : threadCounts) {
+            SearchAI searchAI = new SearchAI(0, 0, depth, 64, threads);
+            long[] totals = new long[2];
+            runAll(searchAI, corpus, totals);
+            searchAI.shutdown();
+            double timeMillis = totals[0] / 1e6;
+            double nps = totals[1] / (totals[0] / 1e9);
+            if(baseTime == 0) {
+                baseTime = timeMillis;
+                baseNodes = totals[1];
+                baseNps = nps;
+            }
+            double speedup = baseTime / timeMillis;
+            System.out.printf("%8d %12.1f %14d %12.0f %9.2f %11.2f %12.2f %12.2f%n",
+                    threads, timeMillis, totals[1], nps, speedup, speedup / threads,
+                    totals[1] / baseNodes, nps / baseNps);
+        }
+    }
+
+    /**
+     * Searches every position in the corpus with a cleared table.
+     *
+     * @param searchAI The AI to search with.
+     * @param corpus The positions to search.
+     * @param totals Filled with the total time in nanoseconds and the total nodes.
+     */
+    private static void runAll(SearchAI searchAI, PositionCorpus corpus, long[] totals) {
+        for(int i = 0; i < corpus.size(); i++) {
+            searchAI.getTranspositionTable().clear();
+            searchAI.chooseMove(corpus.getBoard(i), corpus.getPlayer(i));
+            totals[0] += searchAI.getElapsedNanos();
+            totals[1] += searchAI.getNodes();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Random;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * SessionLoadTest class:
+ * Runs thousands of games at once in a SessionManager and reports the memory used by each game and how
+ * long AI turns take. Every game is a simulated person playing black against the AI. The person waits a
+ * random time of up to twice the think time, then plays a random valid move, so the AI is asked for about
+ * games / thinkTime moves per second. Finished games are ended and replaced with new ones, so the number
+ * of games stays the same for the whole run.
+ *
+ * For comparison the memory used by a GameGrid is measured as well, which is what each game in the window
+ * needs on top of its GamePanel, even before the images it draws from are made.
+ *
+ * Usage: java SessionLoadTest [seconds] [thinkMillis] [ai] [gameCounts...]
+ */
+public class SessionLoadTest {
+    /**
+     * Number of GameGrid objects made to measure the memory of one.
+     */
+    private static final int GRID_SAMPLES = 20;
+
+    /**
+     * Runs the load test for each number of games and prints the results.
+     *
+     * @param args Optional seconds per run, think time, AI description for Tournament, and numbers of games.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long thinkMillis = args.length > 1 ? Long.parseLong(args[1]) : 5000;
+        String aiSpec = args.length > 2 ? args[2] : "depth:2";
+        int[] gameCounts = {10000, 100000};
+        if(args.length > 3) {
+            gameCounts = new int[args.length - 3];
+            for(int i = 3; i < args.length; i++) {
+                gameCounts[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("AI %s on %d threads, think time up to %d ms, %d s per run%n",
+                aiSpec, threads, thinkMillis * 2, seconds);
+
+        long before = getUsedMemory();
+        GameGrid[] grids = new GameGrid[GRID_SAMPLES];
+        for(int i = 0; i < grids.length; i++) {
+            grids[i] = new GameGrid(new Position(0, 0), 500, 500, 8, 8);
+        }
+        long gridBytes = (getUsedMemory() - before) / grids.length;
+        System.out.printf("GameGrid with 64 GridCells and Positions, before its images are made on the first paint:"
+                + " %,d bytes per game%n", gridBytes);
+        grids = null;
+
+        for(int games : gameCounts) {
+            run(games, seconds, thinkMillis, aiSpec, threads);
+        }
+    }
+
+    /**
+     * Runs one load test.
+     *
+     * @param games Number of games to keep running.
+     * @param seconds Time to run for.
+     * @param thinkMillis Average time the simulated people take to move in milliseconds.
+     * @param aiSpec AI description for Tournament.createPlayer().
+     * @param threads Number of AI threads.
+     */
+    private static void run(int games, int seconds, long thinkMillis, String aiSpec, int threads)
+            throws InterruptedException {
+        long before = getUsedMemory();
+        SessionManager manager = new SessionManager(games, threads, Tournament.createPlayer(aiSpec));
+        for(int i = 0; i < games; i++) {
+            manager.createGame(2);
+        }
+        long bytesPerGame = (getUsedMemory() - before) / games;
+
+        LatencyHistogram turnLatencies = new LatencyHistogram();
+        manager.setTurnListener((game, move, latencyNanos) -> {
+            synchronized(turnLatencies) {
+                turnLatencies.record(latencyNanos);
+            }
+        });
+
+        // Time each person will move at, or 0 while it is not their turn.
+        long[] moveTimes = new long[games];
+        Random random = new Random(games);
+        long personMoves = 0;
+        long finishedGames = 0;
+        long startTime = System.nanoTime();
+        long endTime = startTime + seconds * 1000000000L;
+        long now;
+        while((now = System.nanoTime()) < endTime) {
+            for(int game = 0; game < games; game++) {
+                if(manager.isWaitingForPerson(game)) {
+                    if(moveTimes[game] == 0) {
+                        moveTimes[game] = now + (long) (random.nextDouble() * 2 * thinkMillis * 1000000L);
+                    } else if(now >= moveTimes[game]) {
+                        long moves = manager.getValidMoves(game);
+                        int choice = random.nextInt(Long.bitCount(moves));
+                        for(int i = 0; i < choice; i++) {
+                            moves &= moves - 1;
+                        }
+                        if(manager.playMove(game, Long.numberOfTrailingZeros(moves))) personMoves++;
+                        moveTimes[game] = 0;
+                    }
+                } else if(manager.getWinner(game) != 0) {
+                    manager.endGame(game);
+                    // Ended slots are reused last in first out, so the new game takes the same number.
+                    manager.createGame(2);
+                    finishedGames++;
+                }
+            }
+            Thread.sleep(1);
+        }
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+        manager.shutdown();
+
+        synchronized(turnLatencies) {
+            System.out.printf("%n%,d games: %,d bytes per game, %,d person moves, %,.0f AI turns/s, %,d games finished%n",
+                    games, bytesPerGame, personMoves, turnLatencies.getCount() / elapsed, finishedGames);
+            System.out.println("AI turn latency: " + turnLatencies);
+        }
+    }
+
+    /**
+     * Measures the memory in use after collecting garbage.
+     *
+     * @return Bytes used on the heap.
+     */
+    private static long getUsedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,452 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * SessionManager class:
+ * Hosts many games at once without a window, each against the AI or between two people. Games are not
+ * objects: every game is a slot in a set of primitive arrays holding its board masks, the player to move,
+ * whether the AI is thinking, and the moves played, so a game takes under a hundred bytes however many
+ * are running. A game is referred to by its slot number, and slots of ended games are reused.
+ *
+ * The rules are those of GameGrid, using the BitBoard move generation GameGrid uses on an 8x8 grid.
+ * A player with no valid moves passes the same way as in GamePanel.setGameState().
+ *
+ * AI turns run on a fixed number of worker threads that each keep one AI, so the threads and memory used
+ * by the AI do not grow with the number of games. Turns waiting for a worker are queued in order. Each
+ * game is guarded by one of a fixed set of locks, so games on different locks never wait for each other.
+ */
+public class SessionManager {
+    /**
+     * Most moves a game can have, one for every cell.
+     */
+    public static final int MAX_MOVES = BitBoard.CELLS;
+    /**
+     * Number of locks shared between the games.
+     */
+    private static final int LOCK_STRIPES = 256;
+    /**
+     * Value of playerToMove for a slot with no game in it.
+     */
+    private static final byte NO_GAME = 0;
+    /**
+     * Value of playerToMove once neither player has a valid move.
+     */
+    private static final byte GAME_OVER = 3;
+
+    /**
+     * Told about every turn played by the AI.
+     */
+    public interface TurnListener {
+        /**
+         * Called on the worker thread after the AI has played a move.
+         *
+         * @param game The game the move was played in.
+         * @param move Cell index (x + y*8) of the move.
+         * @param latencyNanos Time from the turn being queued to the move being played, in nanoseconds.
+         */
+        void turnPlayed(int game, int move, long latencyNanos);
+    }
+
+    /**
+     * Black pieces of each game.
+     */
+    private final long[] black;
+    /**
+     * White pieces of each game.
+     */
+    private final long[] white;
+    /**
+     * Player to move in each game: 1 for black, 2 for white, GAME_OVER, or NO_GAME for an empty slot.
+     */
+    private final byte[] playerToMove;
+    /**
+     * The player the AI plays in each game, or 0 if both players are people.
+     */
+    private final byte[] aiPlayer;
+    /**
+     * True while the AI is choosing a move for a game.
+     */
+    private final boolean[] aiThinking;
+    /**
+     * Number of moves played in each game, not counting passes.
+     */
+    private final byte[] moveCount;
+    /**
+     * Cell index of every move of every game, MAX_MOVES for each game.
+     */
+    private final byte[] history;
+    /**
+     * Changed whenever a slot is given a new game, so an AI turn for an ended game is thrown away.
+     */
+    private final int[] generation;
+    /**
+     * Locks shared between the games, chosen by the game number.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /**
+     * Slots with no game in them.
+     */
+    private final int[] freeSlots;
+    /**
+     * Number of entries in freeSlots.
+     */
+    private int freeCount;
+
+    /**
+     * Runs the AI turns.
+     */
+    private final ExecutorService workers;
+    /**
+     * The AI of each worker thread.
+     */
+    private final ThreadLocal<AIBehaviour> workerAI;
+    /**
+     * Told about every AI turn, or null.
+     */
+    private volatile TurnListener listener;
+
+    /**
+     * Creates a manager with room for a fixed number of games.
+     *
+     * @param capacity Most games that can be running at once.
+     * @param aiThreads Number of AI turns that can run at once.
+     * @param aiFactory Creates the AI for each worker thread, such as Tournament.createPlayer("depth:2").
+     */
+    public SessionManager(int capacity, int aiThreads, Supplier<AIBehaviour> aiFactory) {
+        black = new long[capacity];
+        white = new long[capacity];
+        playerToMove = new byte[capacity];
+        aiPlayer = new byte[capacity];
+        aiThinking = new boolean[capacity];
+        moveCount = new byte[capacity];
+        history = new byte[capacity * MAX_MOVES];
+        generation = new int[capacity];
+        freeSlots = new int[capacity];
+        for(int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+        for(int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        workers = Executors.newFixedThreadPool(Math.max(1, aiThreads), runnable -> {
+            Thread thread = new Thread(runnable, "SessionManager AI");
+            thread.setDaemon(true);
+            return thread;
+        });
+        workerAI = ThreadLocal.withInitial(aiFactory);
+    }
+
+    /**
+     * Sets the listener told about every AI turn.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setTurnListener(TurnListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts a new game. If the AI plays black it starts choosing its first move straight away.
+     *
+     * @param aiPlayerID The player the AI plays, 1 for black or 2 for white, or 0 for two people.
+     * @return The game number.
+     * @throws IllegalArgumentException If the AI player is not 0, 1 or 2.
+     * @throws IllegalStateException If every slot has a game in it.
+     */
+    public int createGame(int aiPlayerID) {
+        if(aiPlayerID < 0 || aiPlayerID > 2) {
+            throw new IllegalArgumentException("The AI player must be 0, 1 or 2 but got " + aiPlayerID);
+        }
+        int game;
+        synchronized(freeSlots) {
+            if(freeCount == 0) {
+                throw new IllegalStateException("All " + freeSlots.length + " games are in use.");
+            }
+            game = freeSlots[--freeCount];
+        }
+        synchronized(getLock(game)) {
+            black[game] = 0;
+            white[game] = 0;
+            playerToMove[game] = 1;
+            aiPlayer[game] = (byte) aiPlayerID;
+            aiThinking[game] = false;
+            moveCount[game] = 0;
+            generation[game]++;
+            startAITurnIfNeeded(game);
+        }
+        return game;
+    }
+
+    /**
+     * Ends a game and frees its slot. An AI turn still running for it is thrown away.
+     *
+     * @param game The game number.
+     */
+    public void endGame(int game) {
+        synchronized(getLock(game)) {
+            if(playerToMove[game] == NO_GAME) return;
+            playerToMove[game] = NO_GAME;
+            aiThinking[game] = false;
+            generation[game]++;
+        }
+        synchronized(freeSlots) {
+            freeSlots[freeCount++] = game;
+        }
+    }
+
+    /**
+     * Plays a move for a person. If it is then the AI's turn, the AI starts choosing its move.
+     *
+     * @param game The game number.
+     * @param move Cell index (x + y*8) of the move.
+     * @return True if the move was played, or false if it is not a person's turn or the move is not valid.
+     */
+    public boolean playMove(int game, int move) {
+        synchronized(getLock(game)) {
+            int player = playerToMove[game];
+            if(player != 1 && player != 2 || player == aiPlayer[game] || move < 0 || move >= BitBoard.CELLS
+                    || (getValidMoves(game, player) & (1L << move)) == 0) {
+                return false;
+            }
+            applyMove(game, move);
+            startAITurnIfNeeded(game);
+            return true;
+        }
+    }
+
+    /**
+     * Gets the valid moves of the player to move.
+     *
+     * @param game The game number.
+     * @return Mask of the valid moves, or 0 when the game is over.
+     */
+    public long getValidMoves(int game) {
+        synchronized(getLock(game)) {
+            int player = playerToMove[game];
+            return player == 1 || player == 2 ? getValidMoves(game, player) : 0;
+        }
+    }
+
+    /**
+     * Checks if a game is waiting for a person to move.
+     *
+     * @param game The game number.
+     * @return True if the game is running and the player to move is not the AI.
+     */
+    public boolean isWaitingForPerson(int game) {
+        synchronized(getLock(game)) {
+            int player = playerToMove[game];
+            return (player == 1 || player == 2) && player != aiPlayer[game];
+        }
+    }
+
+    /**
+     * Checks if the AI is choosing a move for a game.
+     *
+     * @param game The game number.
+     * @return True while the AI is thinking.
+     */
+    public boolean isAIThinking(int game) {
+        synchronized(getLock(game)) {
+            return aiThinking[game];
+        }
+    }
+
+    /**
+     * Gets the player to move.
+     *
+     * @param game The game number.
+     * @return 1 for black, 2 for white, or 0 if the game is over or the slot is empty.
+     */
+    public int getPlayerToMove(int game) {
+        synchronized(getLock(game)) {
+            int player = playerToMove[game];
+            return player == 1 || player == 2 ? player : 0;
+        }
+    }
+
+    /**
+     * Gets the result of a game with the same values as GameGrid.getWinner().
+     *
+     * @param game The game number.
+     * @return 0 while the game is running, 3 for a draw, 1 for black, and 2 for white.
+     */
+    public int getWinner(int game) {
+        synchronized(getLock(game)) {
+            if(playerToMove[game] != GAME_OVER) return 0;
+            return new BitBoard(black[game], white[game]).getWinner(false);
+        }
+    }
+
+    /**
+     * Gets a copy of the board of a game.
+     *
+     * @param game The game number.
+     * @return The board.
+     */
+    public BitBoard getBoard(int game) {
+        synchronized(getLock(game)) {
+            return new BitBoard(black[game], white[game]);
+        }
+    }
+
+    /**
+     * Gets the number of moves played in a game, not counting passes.
+     *
+     * @param game The game number.
+     * @return The number of moves.
+     */
+    public int getMoveCount(int game) {
+        synchronized(getLock(game)) {
+            return moveCount[game];
+        }
+    }
+
+    /**
+     * Gets a move played in a game, as written to game records.
+     *
+     * @param game The game number.
+     * @param move Index of the move, from 0 to getMoveCount() - 1.
+     * @return Cell index (x + y*8) of the move.
+     */
+    public int getMove(int game, int move) {
+        synchronized(getLock(game)) {
+            return history[game * MAX_MOVES + move];
+        }
+    }
+
+    /**
+     * Gets the number of games running.
+     *
+     * @return The number of games.
+     */
+    public int getGameCount() {
+        synchronized(freeSlots) {
+            return freeSlots.length - freeCount;
+        }
+    }
+
+    /**
+     * Stops the worker threads. AI turns that have not run are dropped.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Gets the lock that guards a game.
+     *
+     * @param game The game number.
+     * @return The lock.
+     */
+    private Object getLock(int game) {
+        return locks[game & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Finds the valid moves of a player. Must be called holding the game's lock.
+     *
+     * @param game The game number.
+     * @param player The player.
+     * @return Mask of the valid moves.
+     */
+    private long getValidMoves(int game, int player) {
+        return player == 1 ? BitBoard.getMoves(black[game], white[game]) : BitBoard.getMoves(white[game], black[game]);
+    }
+
+    /**
+     * Plays a valid move for the player to move, records it, and passes the turn. Must be called
+     * holding the game's lock.
+     *
+     * @param game The game number.
+     * @param move Cell index of the move.
+     */
+    private void applyMove(int game, int move) {
+        int player = playerToMove[game];
+        long placed = 1L << move;
+        if(player == 1) {
+            long flips = BitBoard.getFlips(black[game], white[game], move);
+            black[game] |= placed | flips;
+            white[game] &= ~flips;
+        } else {
+            long flips = BitBoard.getFlips(white[game], black[game], move);
+            white[game] |= placed | flips;
+            black[game] &= ~flips;
+        }
+        history[game * MAX_MOVES + moveCount[game]] = (byte) move;
+        moveCount[game]++;
+        int otherPlayer = player == 1 ? 2 : 1;
+        if(getValidMoves(game, otherPlayer) != 0) {
+            playerToMove[game] = (byte) otherPlayer;
+        } else if(getValidMoves(game, player) == 0) {
+            playerToMove[game] = GAME_OVER;
+        }
+    }
+
+    /**
+     * Queues an AI turn if it is the AI's turn and it is not already thinking. Must be called
+     * holding the game's lock. After shutdown() the turn is dropped and the AI is not left thinking.
+     *
+     * @param game The game number.
+     */
+    private void startAITurnIfNeeded(int game) {
+        if(playerToMove[game] != aiPlayer[game] || aiThinking[game]) return;
+        aiThinking[game] = true;
+        int turnGeneration = generation[game];
+        long queuedTime = System.nanoTime();
+        try {
+            workers.execute(() -> playAITurn(game, turnGeneration, queuedTime));
+        } catch (RejectedExecutionException e) {
+            aiThinking[game] = false;
+        }
+    }
+
+    /**
+     * Lets the AI choose and play a move on a worker thread. The game is not locked while the AI thinks,
+     * and the move is dropped if the game ended in the meantime. If the AI fails, the game stops
+     * waiting on it before the failure is passed on.
+     *
+     * @param game The game number.
+     * @param turnGeneration Generation of the game when the turn was queued.
+     * @param queuedTime Value of System.nanoTime() when the turn was queued.
+     */
+    private void playAITurn(int game, int turnGeneration, long queuedTime) {
+        BitBoard board;
+        int player;
+        synchronized(getLock(game)) {
+            if(generation[game] != turnGeneration) return;
+            board = new BitBoard(black[game], white[game]);
+            player = playerToMove[game];
+        }
+        int move = -1;
+        try {
+            move = workerAI.get().chooseMove(board, player);
+        } finally {
+            if(move < 0) {
+                synchronized(getLock(game)) {
+                    if(generation[game] == turnGeneration) aiThinking[game] = false;
+                }
+            }
+        }
+        if(move < 0) return;
+        long latency;
+        synchronized(getLock(game)) {
+            if(generation[game] != turnGeneration) return;
+            aiThinking[game] = false;
+            applyMove(game, move);
+            latency = System.nanoTime() - queuedTime;
+            // The person may have to pass, giving the AI another turn.
+            startAITurnIfNeeded(game);
+        }
+        TurnListener turnListener = listener;
+        if(turnListener != null) {
+            turnListener.turnPlayed(game, move, latency);
+        }
+    }
+}
@@ -1,4 +1,5 @@
-import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Othello
@@ -7,11 +8,15 @@ import java.util.Collections;
  * SimpleAI class:
  * Chooses moves at random.
  */
-public class SimpleAI {
+public class SimpleAI implements AIBehaviour {
     /**
      * Reference to the game grid to choose moves.
      */
     private GameGrid gameGrid;
+    /**
+     * Source of randomness used when choosing from a BitBoard.
+     */
+    private Random random;
 
     /**
      * Sets up the AI ready to play moves.
@@ -20,15 +25,44 @@ public class SimpleAI {
      */
     public SimpleAI(GameGrid gameGrid) {
         this.gameGrid = gameGrid;
+        this.random = new Random();
+    }
+
+    /**
+     * Sets up the AI to play moves on a BitBoard without a game grid.
+     *
+     * @param random Source of randomness, seed it to make the moves repeatable.
+     */
+    public SimpleAI(Random random) {
+        this.random = random;
     }
 
     /**
      * Chooses a move at random for all the valid moves.
+     * Picks an index instead of shuffling, because the list is shared with the grid.
      *
      * @return The position selected by the AI to play.
      */
     public Position chooseMove() {
-        Collections.shuffle(gameGrid.getAllValidMoves());
-        return gameGrid.getAllValidMoves().get(0);
+        List<Position> validMoves = gameGrid.getAllValidMoves();
+        return validMoves.get(random.nextInt(validMoves.size()));
+    }
+
+    /**
+     * Chooses a move at random from all the valid moves on the board.
+     *
+     * @param board The current board. Must not be modified.
+     * @param playerID The player to choose a move for.
+     * @return The cell index of the chosen move, or -1 if there are no valid moves.
+     */
+    @Override
+    public int chooseMove(BitBoard board, int playerID) {
+        long moves = board.getValidMoves(playerID);
+        if(moves == 0) return -1;
+        // Skip a random number of the set bits to pick one of them.
+        for(int skip = random.nextInt(Long.bitCount(moves)); skip > 0; skip--) {
+            moves &= moves - 1;
+        }
+        return Long.numberOfTrailingZeros(moves);
     }
 }
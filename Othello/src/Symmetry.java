@@ -0,0 +1,191 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * Symmetry class:
+ * Maps 8x8 positions to a canonical orientation. Moves only flip along rows and columns and the
+ * first four moves fill the centre, so the rules look the same after any of the 8 rotations and
+ * reflections of the board, and a position scores the same in all of its orientations. Anything
+ * keyed by position can store one entry for the canonical orientation instead of up to eight.
+ *
+ * Each transform is a number from 0 to 7. Bit 2 swaps x and y, then bit 0 mirrors left to right,
+ * then bit 1 flips top to bottom. Transforms work on whole bitboards with a few shifts and masks.
+ * The canonical orientation is the one with the smallest black mask, then the smallest white mask,
+ * comparing them as unsigned numbers.
+ */
+public class Symmetry {
+    /**
+     * Number of rotations and reflections, including the identity.
+     */
+    public static final int TRANSFORMS = 8;
+    /**
+     * The transform that leaves the board unchanged.
+     */
+    public static final int IDENTITY = 0;
+    /**
+     * Transform bit that mirrors the board left to right.
+     */
+    private static final int MIRROR = 1;
+    /**
+     * Transform bit that flips the board top to bottom.
+     */
+    private static final int FLIP = 2;
+    /**
+     * Transform bit that swaps x and y.
+     */
+    private static final int TRANSPOSE = 4;
+
+    /**
+     * Cell index each cell index moves to under each transform.
+     */
+    private static final int[][] INDEX_MAP = new int[TRANSFORMS][BitBoard.CELLS];
+    /**
+     * The transform that undoes each transform.
+     */
+    private static final int[] INVERSE = new int[TRANSFORMS];
+
+    static {
+        for(int transform = 0; transform < TRANSFORMS; transform++) {
+            for(int index = 0; index < BitBoard.CELLS; index++) {
+                int x = index % BitBoard.SIZE;
+                int y = index / BitBoard.SIZE;
+                if((transform & TRANSPOSE) != 0) {
+                    int swap = x;
+                    x = y;
+                    y = swap;
+                }
+                if((transform & MIRROR) != 0) x = BitBoard.SIZE - 1 - x;
+                if((transform & FLIP) != 0) y = BitBoard.SIZE - 1 - y;
+                INDEX_MAP[transform][index] = BitBoard.toIndex(x, y);
+            }
+        }
+        for(int transform = 0; transform < TRANSFORMS; transform++) {
+            for(int inverse = 0; inverse < TRANSFORMS; inverse++) {
+                if(INDEX_MAP[inverse][INDEX_MAP[transform][1]] == 1
+                        && INDEX_MAP[inverse][INDEX_MAP[transform][BitBoard.SIZE]] == BitBoard.SIZE) {
+                    INVERSE[transform] = inverse;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a transform to a mask of cells.
+     *
+     * @param bits Mask of cells (bit x + y*8).
+     * @param transform Transform from 0 to 7.
+     * @return The mask of the cells the cells move to.
+     */
+    public static long transform(long bits, int transform) {
+        if((transform & TRANSPOSE) != 0) bits = transpose(bits);
+        if((transform & MIRROR) != 0) bits = mirror(bits);
+        if((transform & FLIP) != 0) bits = Long.reverseBytes(bits);
+        return bits;
+    }
+
+    /**
+     * Applies a transform to a single cell.
+     *
+     * @param index Cell index (x + y*8).
+     * @param transform Transform from 0 to 7.
+     * @return The cell index the cell moves to.
+     */
+    public static int transformIndex(int index, int transform) {
+        return INDEX_MAP[transform][index];
+    }
+
+    /**
+     * Gets the transform that undoes a transform.
+     *
+     * @param transform Transform from 0 to 7.
+     * @return The inverse transform.
+     */
+    public static int inverse(int transform) {
+        return INVERSE[transform];
+    }
+
+    /**
+     * Finds the transform that turns a position into its canonical orientation. When several
+     * orientations are the same because the position is symmetrical, the lowest transform is used.
+     *
+     * @param black Mask of the black pieces.
+     * @param white Mask of the white pieces.
+     * @return Transform from 0 to 7.
+     */
+    public static int getCanonicalTransform(long black, long white) {
+        // The eight orientations share work: each of the last six is one step from an earlier one.
+        long transposedBlack = transpose(black);
+        long transposedWhite = transpose(white);
+        long mirroredBlack = mirror(black);
+        long mirroredWhite = mirror(white);
+        long transposedMirroredBlack = mirror(transposedBlack);
+        long transposedMirroredWhite = mirror(transposedWhite);
+
+        int best = IDENTITY;
+        long bestBlack = black;
+        long bestWhite = white;
+        for(int transform = 1; transform < TRANSFORMS; transform++) {
+            long b;
+            long w;
+            switch(transform & (TRANSPOSE | MIRROR)) {
+                case MIRROR: b = mirroredBlack; w = mirroredWhite; break;
+                case TRANSPOSE: b = transposedBlack; w = transposedWhite; break;
+                case TRANSPOSE | MIRROR: b = transposedMirroredBlack; w = transposedMirroredWhite; break;
+                default: b = black; w = white;
+            }
+            if((transform & FLIP) != 0) {
+                b = Long.reverseBytes(b);
+                w = Long.reverseBytes(w);
+            }
+            int compare = Long.compareUnsigned(b, bestBlack);
+            if(compare < 0 || (compare == 0 && Long.compareUnsigned(w, bestWhite) < 0)) {
+                best = transform;
+                bestBlack = b;
+                bestWhite = w;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calculates the Zobrist hash of the canonical orientation of a position, so every orientation
+     * of the position has the same hash.
+     *
+     * @param black Mask of the black pieces.
+     * @param white Mask of the white pieces.
+     * @param playerID The player to move, 1 for black or 2 for white.
+     * @return The hash of the canonical orientation.
+     */
+    public static long canonicalHash(long black, long white, int playerID) {
+        int transform = getCanonicalTransform(black, white);
+        return Zobrist.hash(transform(black, transform), transform(white, transform), playerID);
+    }
+
+    /**
+     * Mirrors a mask left to right by swapping bits within each byte.
+     *
+     * @param bits Mask of cells.
+     * @return The mirrored mask.
+     */
+    private static long mirror(long bits) {
+        bits = ((bits >>> 1) & 0x5555555555555555L) | ((bits & 0x5555555555555555L) << 1);
+        bits = ((bits >>> 2) & 0x3333333333333333L) | ((bits & 0x3333333333333333L) << 2);
+        return ((bits >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((bits & 0x0F0F0F0F0F0F0F0FL) << 4);
+    }
+
+    /**
+     * Swaps x and y of every cell in a mask, by swapping blocks of 4x4, then 2x2, then single cells
+     * across the diagonal.
+     *
+     * @param bits Mask of cells.
+     * @return The transposed mask.
+     */
+    private static long transpose(long bits) {
+        long swap = 0x0F0F0F0F00000000L & (bits ^ (bits << 28));
+        bits ^= swap ^ (swap >>> 28);
+        swap = 0x3333000033330000L & (bits ^ (bits << 14));
+        bits ^= swap ^ (swap >>> 14);
+        swap = 0x5500550055005500L & (bits ^ (bits << 7));
+        return bits ^ swap ^ (swap >>> 7);
+    }
+}
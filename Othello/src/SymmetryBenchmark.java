@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * SymmetryBenchmark class:
+ * Measures how much smaller tables keyed by position get when positions are stored in their canonical
+ * orientation from Symmetry, and how long finding the canonical orientation takes:
+ *
+ * - Opening: every distinct position reachable at each ply from the empty board, as stored by an opening
+ *   book, counted by Zobrist hash and by canonical hash.
+ * - Search trees: the distinct positions within a few plies of opening, midgame, and endgame positions from
+ *   PositionCorpus, which is what a transposition table would hold for a search of that depth.
+ * - Records: the distinct positions played in a game record file, as an index of the file would hold.
+ * - Speed: nanoseconds per Zobrist.hash(), Symmetry.canonicalHash(), and incremental Zobrist.playMove().
+ *
+ * Usage: java SymmetryBenchmark [plies] [treeDepth] [positionsPerPhase] [recordFile]
+ */
+public class SymmetryBenchmark {
+    /**
+     * Runs every measurement and prints the results.
+     *
+     * @param args Optional plies from the empty board, search tree depth, positions per phase, and record file.
+     */
+    public static void main(String[] args) throws IOException {
+        int plies = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+        int treeDepth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int perPhase = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        measureOpening(plies);
+        System.out.println();
+        measureSearchTrees(treeDepth, perPhase);
+        if(args.length > 3) {
+            System.out.println();
+            measureRecords(args[3]);
+        }
+        System.out.println();
+        measureSpeed(PositionCorpus.standard(1000));
+    }
+
+    /**
+     * Counts the distinct positions at each ply from the empty board, with and without symmetry.
+     * The turn passes the same way as in GamePanel.setGameState(), and finished games are left out.
+     *
+     * @param plies Number of plies to count.
+     */
+    private static void measureOpening(int plies) {
+        System.out.println("Distinct positions at each ply from the empty board");
+        System.out.printf("%5s %12s %12s %7s %14s %14s %7s%n",
+                "ply", "positions", "canonical", "ratio", "total", "total canon.", "ratio");
+        List<long[]> level = new ArrayList<>();
+        level.add(new long[] {0, 0, 1});
+        long total = 0;
+        long totalCanonical = 0;
+        for(int ply = 0; ply <= plies && !level.isEmpty(); ply++) {
+            Set<Long> canonical = new HashSet<>();
+            for(long[] position : level) {
+                canonical.add(Symmetry.canonicalHash(position[0], position[1], (int) position[2]));
+            }
+            total += level.size();
+            totalCanonical += canonical.size();
+            System.out.printf("%5d %12d %12d %7.2f %14d %14d %7.2f%n", ply, level.size(), canonical.size(),
+                    (double) level.size() / canonical.size(), total, totalCanonical, (double) total / totalCanonical);
+            if(ply == plies) break;
+
+            Set<Long> seen = new HashSet<>();
+            List<long[]> nextLevel = new ArrayList<>();
+            for(long[] position : level) {
+                int player = (int) position[2];
+                BitBoard board = new BitBoard(position[0], position[1]);
+                for(long moves = board.getValidMoves(player); moves != 0; moves &= moves - 1) {
+                    int move = Long.numberOfTrailingZeros(moves);
+                    long flips = board.playMove(move, player);
+                    int next = player == 1 ? 2 : 1;
+                    if(board.getValidMoves(next) == 0) {
+                        next = player;
+                    }
+                    if(board.getValidMoves(next) != 0
+                            && seen.add(Zobrist.hash(board.getBlack(), board.getWhite(), next))) {
+                        nextLevel.add(new long[] {board.getBlack(), board.getWhite(), next});
+                    }
+                    board.undoMove(move, flips, player);
+                }
+            }
+            level = nextLevel;
+        }
+    }
+
+    /**
+     * Counts the distinct positions in full width trees from the corpus positions of each phase,
+     * with and without symmetry.
+     *
+     * @param depth Number of plies in each tree.
+     * @param perPhase Number of positions from each phase.
+     */
+    private static void measureSearchTrees(int depth, int perPhase) {
+        System.out.println("Distinct positions within " + depth + " plies of corpus positions");
+        System.out.printf("%9s %12s %12s %7s%n", "phase", "positions", "canonical", "ratio");
+        String[] phases = {"opening", "midgame", "endgame"};
+        PositionCorpus corpus = PositionCorpus.standard(perPhase);
+        for(int phase = 0; phase < phases.length; phase++) {
+            long positions = 0;
+            long canonicalPositions = 0;
+            for(int i = phase * perPhase; i < (phase + 1) * perPhase; i++) {
+                Set<Long> raw = new HashSet<>();
+                Set<Long> canonical = new HashSet<>();
+                collectTree(corpus.getBoard(i), corpus.getPlayer(i), depth, raw, canonical);
+                positions += raw.size();
+                canonicalPositions += canonical.size();
+            }
+            System.out.printf("%9s %12d %12d %7.2f%n", phases[phase], positions, canonicalPositions,
+                    (double) positions / canonicalPositions);
+        }
+    }
+
+    /**
+     * Adds every position in a full width tree to the sets.
+     *
+     * @param board The position at the root, which is left unchanged.
+     * @param playerID The player to move.
+     * @param depth Number of plies left.
+     * @param raw Receives the Zobrist hash of each position.
+     * @param canonical Receives the canonical hash of each position.
+     */
+    private static void collectTree(BitBoard board, int playerID, int depth, Set<Long> raw, Set<Long> canonical) {
+        if(!raw.add(Zobrist.hash(board.getBlack(), board.getWhite(), playerID))) return;
+        canonical.add(Symmetry.canonicalHash(board.getBlack(), board.getWhite(), playerID));
+        if(depth == 0) return;
+        int otherPlayer = playerID == 1 ? 2 : 1;
+        long moves = board.getValidMoves(playerID);
+        if(moves == 0) {
+            if(board.getValidMoves(otherPlayer) != 0) {
+                collectTree(board, otherPlayer, depth, raw, canonical);
+            }
+            return;
+        }
+        for(; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long flips = board.playMove(move, playerID);
+            collectTree(board, otherPlayer, depth - 1, raw, canonical);
+            board.undoMove(move, flips, playerID);
+        }
+    }
+
+    /**
+     * Counts the distinct positions played in the 8x8 games of a record file, with and without symmetry.
+     *
+     * @param fileName The game record file.
+     * @throws IOException If the file cannot be read.
+     */
+    private static void measureRecords(String fileName) throws IOException {
+        GameRecordReader reader = new GameRecordReader(fileName);
+        Set<Long> raw = new HashSet<>();
+        Set<Long> canonical = new HashSet<>();
+        BitBoard board = new BitBoard();
+        long positions = 0;
+        int games = 0;
+        while(reader.next()) {
+            if(reader.getWidth() != BitBoard.SIZE || reader.getHeight() != BitBoard.SIZE) continue;
+            games++;
+            board.reset();
+            int player = 1;
+            for(int i = 0; i < reader.getMoveCount(); i++) {
+                if(board.getValidMoves(player) == 0) {
+                    player = player == 1 ? 2 : 1;
+                }
+                int move = reader.getMove(i);
+                if((board.getValidMoves(player) & (1L << move)) == 0) break;
+                board.playMove(move, player);
+                player = player == 1 ? 2 : 1;
+                raw.add(Zobrist.hash(board.getBlack(), board.getWhite(), player));
+                canonical.add(Symmetry.canonicalHash(board.getBlack(), board.getWhite(), player));
+                positions++;
+            }
+        }
+        System.out.printf("Positions in %d games of %s: %d played, %d distinct, %d canonical, ratio %.2f%n",
+                games, fileName, positions, raw.size(), canonical.size(), (double) raw.size() / canonical.size());
+    }
+
+    /**
+     * Times hashing every corpus position from scratch, in its canonical orientation, and incrementally.
+     *
+     * @param corpus The positions to hash.
+     */
+    private static void measureSpeed(PositionCorpus corpus) {
+        long[] black = new long[corpus.size()];
+        long[] white = new long[corpus.size()];
+        int[] players = new int[corpus.size()];
+        int[] moves = new int[corpus.size()];
+        long[] flips = new long[corpus.size()];
+        for(int i = 0; i < corpus.size(); i++) {
+            BitBoard board = corpus.getBoard(i);
+            black[i] = board.getBlack();
+            white[i] = board.getWhite();
+            players[i] = corpus.getPlayer(i);
+            moves[i] = Long.numberOfTrailingZeros(board.getValidMoves(players[i]));
+            flips[i] = board.getFlips(moves[i], players[i]);
+        }
+        System.out.println("Time per position over " + corpus.size() + " positions");
+        String[] names = {"Zobrist.hash", "Symmetry.canonicalHash", "Zobrist.playMove"};
+        for(int run = 0; run < 2; run++) {
+            for(int method = 0; method < names.length; method++) {
+                long checksum = 0;
+                int repeats = 200;
+                long startTime = System.nanoTime();
+                for(int repeat = 0; repeat < repeats; repeat++) {
+                    for(int i = 0; i < black.length; i++) {
+                        if(method == 0) {
+                            checksum += Zobrist.hash(black[i], white[i], players[i]);
+                        } else if(method == 1) {
+                            checksum += Symmetry.canonicalHash(black[i], white[i], players[i]);
+                        } else {
+                            checksum += Zobrist.playMove(checksum, moves[i], flips[i], players[i]);
+                        }
+                    }
+                }
+                double nanos = (double) (System.nanoTime() - startTime) / repeats / black.length;
+                // The first run only warms up the JIT.
+                if(run == 1) {
+                    System.out.printf("%24s %8.1f ns (checksum %d)%n", names[method], nanos, checksum & 0xFFFF);
+                }
+            }
+        }
+    }
+}
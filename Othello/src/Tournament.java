@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * Tournament class:
+ * Plays many AI vs AI games without a window and reports how the first player did against the second.
+ * Games are spread over a pool of threads, and the players swap colours every game so neither
+ * gets more turns as black. Every thread creates its own copy of each player so the AIs never
+ * share state between threads.
+ *
+ * Players are described as:
+ * - random: SimpleAI.
+ * - time:MS: SearchAI with MS milliseconds per move.
+ * - nodes:N: SearchAI with a budget of N nodes per move.
+ * - depth:D: SearchAI searching to a fixed depth of D moves.
+ * - time, nodes, or depth followed by :FILE: the same SearchAI evaluating positions with pattern weights
+ *   loaded from FILE, or with the hand made weights from PatternEvaluator.createDefault() when FILE is "handmade".
+ * - mcts:MS: MCTSAI with MS milliseconds per move.
+ * - playouts:N: MCTSAI with a budget of N random games per move.
+ * - playouts:N:C: MCTSAI with a budget of N random games per move and exploration weight C.
+ *
+ * Every game can also be written to a game record file for GameRecordConverter and later analysis.
+ * If any thread fails, such as when the record file cannot be written, the remaining games are
+ * abandoned and no results are printed, so partial results are never reported as complete.
+ *
+ * Usage: java Tournament [playerA] [playerB] [games] [threads] [recordFile]
+ */
+public class Tournament {
+    /**
+     * Size of the transposition table given to each SearchAI in megabytes. Kept small because
+     * there is one per player per thread.
+     */
+    private static final int TABLE_MB = 4;
+
+    /**
+     * Creates player A, whose results are reported.
+     */
+    private final Supplier<AIBehaviour> playerA;
+    /**
+     * Creates player B.
+     */
+    private final Supplier<AIBehaviour> playerB;
+    /**
+     * Number of games to play.
+     */
+    private final int games;
+    /**
+     * Number of threads to play games on.
+     */
+    private final int threads;
+
+    /**
+     * Games won by player A.
+     */
+    private final AtomicInteger wins = new AtomicInteger();
+    /**
+     * Games drawn.
+     */
+    private final AtomicInteger draws = new AtomicInteger();
+    /**
+     * Games lost by player A.
+     */
+    private final AtomicInteger losses = new AtomicInteger();
+    /**
+     * Total moves played over all games.
+     */
+    private final AtomicLong movesPlayed = new AtomicLong();
+    /**
+     * Index of the next game to be played.
+     */
+    private final AtomicInteger nextGame = new AtomicInteger();
+    /**
+     * Writes every game to a record file, or null to not record games.
+     */
+    private GameRecordWriter recorder;
+
+    /**
+     * Plays a tournament from the command line and prints the results.
+     *
+     * @param args Optional player A, player B, number of games, number of threads, and record file.
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        String specA = args.length > 0 ? args[0] : "nodes:2000";
+        String specB = args.length > 1 ? args[1] : "random";
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Tournament tournament = new Tournament(createPlayer(specA), createPlayer(specB), games, threads);
+        GameRecordWriter recorder = args.length > 4 ? new GameRecordWriter(args[4], false) : null;
+        tournament.setRecorder(recorder);
+        long startTime = System.nanoTime();
+        try {
+            tournament.play();
+        } finally {
+            if(recorder != null) {
+                recorder.close();
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("%s vs %s: %d games on %d threads%n", specA, specB, games, threads);
+        tournament.printResults(seconds);
+    }
+
+    /**
+     * Sets up a tournament between two players.
+     *
+     * @param playerA Creates player A, whose results are reported.
+     * @param playerB Creates player B.
+     * @param games Number of games to play, at least one.
+     * @param threads Number of threads to play games on.
+     */
+    public Tournament(Supplier<AIBehaviour> playerA, Supplier<AIBehaviour> playerB, int games, int threads) {
+        if(games < 1) {
+            throw new IllegalArgumentException("At least one game must be played but got " + games);
+        }
+        this.playerA = playerA;
+        this.playerB = playerB;
+        this.games = games;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets where every game is recorded. Must be set before play() is called.
+     *
+     * @param recorder Writer shared by every thread, or null to not record games.
+     */
+    public void setRecorder(GameRecordWriter recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Plays all the games and waits for them to finish. If a thread fails, the games that have
+     * not started are abandoned and the failure is thrown once the other threads have stopped.
+     *
+     * @throws IllegalStateException If a game or recording it failed on any thread.
+     */
+    public void play() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Future<?>[] workers = new Future<?>[threads];
+        for(int i = 0; i < threads; i++) {
+            workers[i] = pool.submit(this::playGames);
+        }
+        pool.shutdown();
+        Throwable failure = null;
+        for(Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                // The failed thread has already stopped the others from starting any more games.
+                if(failure == null) failure = e.getCause();
+            }
+        }
+        if(failure != null) {
+            throw new IllegalStateException("Tournament game failed", failure);
+        }
+    }
+
+    /**
+     * Prints the win/draw/loss count of player A, the Elo difference with a 95% confidence interval,
+     * and the number of games played per second.
+     *
+     * @param seconds Time taken to play all the games.
+     */
+    public void printResults(double seconds) {
+        int w = wins.get(), d = draws.get(), l = losses.get();
+        int n = w + d + l;
+        double score = (w + d / 2.0) / n;
+        // Standard error of the mean score from the spread of the individual game results.
+        double variance = (w * Math.pow(1 - score, 2) + d * Math.pow(0.5 - score, 2) + l * Math.pow(score, 2)) / n;
+        double error = 1.96 * Math.sqrt(variance / n);
+        System.out.printf("W/D/L: %d/%d/%d  score %.1f%%%n", w, d, l, score * 100);
+        System.out.printf("Elo difference: %s (95%%: %s to %s)%n",
+                formatElo(score), formatElo(score - error), formatElo(score + error));
+        System.out.printf("%.1f games/s, %.0f moves/s%n", n / seconds, movesPlayed.get() / seconds);
+    }
+
+    /**
+     * Gets the number of games won by player A.
+     *
+     * @return Number of wins.
+     */
+    public int getWins() {
+        return wins.get();
+    }
+
+    /**
+     * Gets the number of drawn games.
+     *
+     * @return Number of draws.
+     */
+    public int getDraws() {
+        return draws.get();
+    }
+
+    /**
+     * Gets the number of games lost by player A.
+     *
+     * @return Number of losses.
+     */
+    public int getLosses() {
+        return losses.get();
+    }
+
+    /**
+     * Creates a player from a description like "random" or "time:100".
+     *
+     * @param spec Description of the player.
+     * @return Creates a new instance of the player each time it is called.
+     */
+    public static Supplier<AIBehaviour> createPlayer(String spec) {
+        String[] parts = spec.split(":");
+        switch(parts[0]) {
+            case "random":
+                return () -> new SimpleAI(new Random());
+            case "time":
+                PatternEvaluator timeEvaluator = getEvaluator(parts);
+                return () -> new SearchAI(Long.parseLong(parts[1]), 0, BitBoard.CELLS, TABLE_MB, 1, timeEvaluator);
+            case "nodes":
+                PatternEvaluator nodesEvaluator = getEvaluator(parts);
+                return () -> new SearchAI(0, Long.parseLong(parts[1]), BitBoard.CELLS, TABLE_MB, 1, nodesEvaluator);
+            case "depth":
+                PatternEvaluator depthEvaluator = getEvaluator(parts);
+                return () -> new SearchAI(0, 0, Integer.parseInt(parts[1]), TABLE_MB, 1, depthEvaluator);
+            case "mcts":
+                return () -> new MCTSAI(Long.parseLong(parts[1]), 1);
+            case "playouts":
+                double exploration = parts.length > 2 ? Double.parseDouble(parts[2]) : MCTSAI.DEFAULT_EXPLORATION;
+                return () -> new MCTSAI(0, Long.parseLong(parts[1]), exploration, 1, MCTSAI.DEFAULT_TREE_NODES);
+            default:
+                throw new IllegalArgumentException("Unknown player: " + spec);
+        }
+    }
+
+    /**
+     * Gets the evaluator named by the third part of a SearchAI description. The evaluator is
+     * only read from, so every copy of the player shares it.
+     *
+     * @param parts The description split at each ':'.
+     * @return The named evaluator, or the shared default when no evaluator is named.
+     */
+    private static PatternEvaluator getEvaluator(String[] parts) {
+        if(parts.length < 3) return PatternEvaluator.getDefault();
+        if(parts[2].equals("handmade")) return PatternEvaluator.createDefault();
+        try {
+            return PatternEvaluator.load(parts[2]);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read pattern weights: " + parts[2], e);
+        }
+    }
+
+    /**
+     * Plays a single game from the empty board. The turn passes the same way as in GamePanel.setGameState():
+     * a player with no valid moves is skipped, and the game ends when neither player can move.
+     *
+     * @param black AI playing the black pieces.
+     * @param white AI playing the white pieces.
+     * @param board Board to play on. It is reset first and holds the final position afterwards.
+     * @return The result from BitBoard.getWinner(false): 1 for black, 2 for white, or 3 for a draw.
+     */
+    public static int playGame(AIBehaviour black, AIBehaviour white, BitBoard board) {
+        return playGame(black, white, board, null);
+    }
+
+    /**
+     * Plays a single game from the empty board the same way as playGame(black, white, board),
+     * and records every move.
+     *
+     * @param black AI playing the black pieces.
+     * @param white AI playing the white pieces.
+     * @param board Board to play on. It is reset first and holds the final position afterwards.
+     * @param moves Receives the cell index of every move in order, one for each piece on the final board.
+     *              Must hold BitBoard.CELLS values, or be null to not record the moves.
+     * @return The result from BitBoard.getWinner(false): 1 for black, 2 for white, or 3 for a draw.
+     */
+    public static int playGame(AIBehaviour black, AIBehaviour white, BitBoard board, int[] moves) {
+        board.reset();
+        int player = 1;
+        int moveCount = 0;
+        while(true) {
+            if(board.getValidMoves(player) == 0) {
+                player = player == 1 ? 2 : 1;
+                if(board.getValidMoves(player) == 0) break;
+            }
+            int move = (player == 1 ? black : white).chooseMove(board, player);
+            board.playMove(move, player);
+            if(moves != null) {
+                moves[moveCount++] = move;
+            }
+            player = player == 1 ? 2 : 1;
+        }
+        return board.getWinner(false);
+    }
+
+    /**
+     * Keeps taking the next game and playing it until all the games are played.
+     * Player A is black in even numbered games and white in odd numbered games.
+     * If anything fails, every game that has not started is taken so the other threads stop.
+     */
+    private void playGames() {
+        try {
+            AIBehaviour a = playerA.get();
+            AIBehaviour b = playerB.get();
+            try {
+                playGamesBetween(a, b);
+            } finally {
+                if(a instanceof SearchAI) ((SearchAI) a).shutdown();
+                if(b instanceof SearchAI) ((SearchAI) b).shutdown();
+                if(a instanceof MCTSAI) ((MCTSAI) a).shutdown();
+                if(b instanceof MCTSAI) ((MCTSAI) b).shutdown();
+            }
+        } catch (RuntimeException | Error e) {
+            nextGame.set(games);
+            throw e;
+        }
+    }
+
+    /**
+     * Plays games between this thread's copies of the players until all the games are taken.
+     *
+     * @param a This thread's copy of player A.
+     * @param b This thread's copy of player B.
+     */
+    private void playGamesBetween(AIBehaviour a, AIBehaviour b) {
+        BitBoard board = new BitBoard();
+        int[] moves = recorder != null ? new int[BitBoard.CELLS] : null;
+        int game;
+        while((game = nextGame.getAndIncrement()) < games) {
+            boolean aIsBlack = game % 2 == 0;
+            AIBehaviour black = aIsBlack ? a : b;
+            AIBehaviour white = aIsBlack ? b : a;
+            int result = playGame(black, white, board, moves);
+            movesPlayed.addAndGet(board.getMoveNumber());
+            if(recorder != null) {
+                try {
+                    recorder.writeGame(BitBoard.SIZE, BitBoard.SIZE, GameRecordWriter.getPlayerType(black),
+                            GameRecordWriter.getPlayerType(white), result, moves, board.getMoveNumber());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if(result == 3) {
+                draws.incrementAndGet();
+            } else if((result == 1) == aIsBlack) {
+                wins.incrementAndGet();
+            } else {
+                losses.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Converts an expected score into an Elo rating difference.
+     *
+     * @param score Expected score between 0 and 1.
+     * @return The Elo difference formatted with a sign, or +inf/-inf at the limits.
+     */
+    private static String formatElo(double score) {
+        if(score >= 1) return "+inf";
+        if(score <= 0) return "-inf";
+        return String.format("%+.0f", -400 * Math.log10(1 / score - 1));
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.Arrays;
+
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * TranspositionTable class:
+ * A fixed size table of search results keyed by Zobrist hash, so positions reached
+ * through different move orders only need to be searched once. All memory is allocated
+ * up front in two primitive arrays, and probing or storing never allocates.
+ *
+ * Each entry is packed into a single long holding the score, depth, bound type, best move,
+ * and the search generation it was stored in. Entries are grouped into buckets of two slots:
+ * the first slot keeps the deepest result from the current search (it is replaced by results
+ * that are at least as deep, or by anything once its entry is from an older search), and the
+ * second slot always takes whatever the first slot turned away.
+ *
+ * The table keeps no counters of its own, because every search thread shares it and writing a
+ * shared counter on every probe would make the threads fight over it. Callers count hits from
+ * what probe() returns and collisions from what store() returns, each thread separately.
+ */
+public class TranspositionTable {
+    /**
+     * Bound type for a score that is exact.
+     */
+    public static final int EXACT = 1;
+    /**
+     * Bound type for a score that is at least the stored value (the search failed high).
+     */
+    public static final int LOWER = 2;
+    /**
+     * Bound type for a score that is at most the stored value (the search failed low).
+     */
+    public static final int UPPER = 3;
+    /**
+     * Stored in place of a move when no best move is known.
+     */
+    private static final int NO_MOVE = 0x7F;
+    /**
+     * Number of bytes used by each entry, one long for the key and one for the data.
+     */
+    private static final int ENTRY_BYTES = 16;
+
+    /**
+     * The key of each entry stored XORed with its data, so an entry torn by two
+     * threads writing at once fails to match instead of returning bad data.
+     */
+    private final long[] keys;
+    /**
+     * The packed data of each entry.
+     */
+    private final long[] data;
+    /**
+     * Mask to convert a hash into the index of the first slot of its bucket.
+     */
+    private final int bucketMask;
+    /**
+     * Generation of the current search, stored with each entry to age out old results.
+     */
+    private int generation;
+
+    /**
+     * Creates a table using up to the specified amount of memory. The number of entries
+     * is rounded down to a power of two.
+     *
+     * @param sizeMB Memory to use in megabytes. At least one bucket is always allocated.
+     */
+    public TranspositionTable(int sizeMB) {
+        long maxEntries = Math.max(2, (long) sizeMB * 1024 * 1024 / ENTRY_BYTES);
+        int entries = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+        keys = new long[entries];
+        data = new long[entries];
+        bucketMask = (entries - 1) & ~1;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        generation = 0;
+    }
+
+    /**
+     * Starts a new search. Entries from earlier searches can still be used but are replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash Zobrist hash of the position.
+     * @return The packed entry for the position, or 0 if it is not in the table.
+     */
+    public long probe(long hash) {
+        int index = (int) hash & bucketMask;
+        long entry = data[index];
+        if((keys[index] ^ entry) == hash && entry != 0) {
+            return entry;
+        }
+        entry = data[index + 1];
+        if((keys[index + 1] ^ entry) == hash && entry != 0) {
+            return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     *
+     * @param hash Zobrist hash of the position.
+     * @param depth Depth the position was searched to.
+     * @param bound EXACT, LOWER, or UPPER.
+     * @param score Score found by the search.
+     * @param move Best move found, or -1 if none.
+     * @return True if an entry from the current search for a different position was overwritten.
+     */
+    public boolean store(long hash, int depth, int bound, int score, int move) {
+        int index = (int) hash & bucketMask;
+        long entry = data[index];
+        boolean samePosition = entry != 0 && (keys[index] ^ entry) == hash;
+        if(!samePosition && data[index + 1] != 0 && (keys[index + 1] ^ data[index + 1]) == hash) {
+            // The position is already in the always replace slot, update it there.
+            index++;
+            entry = data[index];
+            samePosition = true;
+        } else if(!samePosition && entry != 0 && getGeneration(entry) == generation && getDepth(entry) > depth) {
+            // The deeper result from this search stays, the new one goes in the always replace slot.
+            index++;
+            entry = data[index];
+        }
+        boolean collision = false;
+        if(samePosition) {
+            // Keep the known best move if the new result does not have one.
+            if(move < 0) move = getMove(entry);
+        } else {
+            collision = entry != 0 && getGeneration(entry) == generation;
+        }
+        long packed = pack(depth, bound, score, move);
+        data[index] = packed;
+        keys[index] = hash ^ packed;
+        return collision;
+    }
+
+    /**
+     * Gets the number of entries the table can hold.
+     *
+     * @return Capacity in entries.
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the score from a packed entry.
+     *
+     * @param entry Entry returned by probe().
+     * @return The stored score.
+     */
+    public static int getScore(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Gets the depth from a packed entry.
+     *
+     * @param entry Entry returned by probe().
+     * @return The stored depth.
+     */
+    public static int getDepth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * Gets the bound type from a packed entry.
+     *
+     * @param entry Entry returned by probe().
+     * @return EXACT, LOWER, or UPPER.
+     */
+    public static int getBound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * Gets the best move from a packed entry.
+     *
+     * @param entry Entry returned by probe().
+     * @return The stored cell index, or -1 if none was stored.
+     */
+    public static int getMove(long entry) {
+        int move = (int) (entry >>> 42) & 0x7F;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Gets the search generation from a packed entry.
+     *
+     * @param entry Entry returned by probe().
+     * @return The generation the entry was stored in.
+     */
+    private static int getGeneration(long entry) {
+        return (int) (entry >>> 49) & 0xFF;
+    }
+
+    /**
+     * Packs the fields of an entry into a long. The bound is never 0, so a stored entry never packs to 0.
+     *
+     * @param depth Depth the position was searched to.
+     * @param bound EXACT, LOWER, or UPPER.
+     * @param score Score found by the search.
+     * @param move Best move, or -1 if none.
+     * @return The packed entry.
+     */
+    private long pack(int depth, int bound, int score, int move) {
+        return (score & 0xFFFFFFFFL)
+                | ((long) (depth & 0xFF) << 32)
+                | ((long) bound << 40)
+                | ((long) (move < 0 ? NO_MOVE : move) << 42)
+                | ((long) generation << 49);
+    }
+}
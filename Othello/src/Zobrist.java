@@ -0,0 +1,101 @@
+/**
+ * Othello
+ * Author: Peter Mitchell (2021)
+ *
+ * Zobrist class:
+ * Generates 64-bit hash keys for positions by combining a random key for every
+ * piece on the board with a key for the side to move. The keys are generated
+ * from a fixed seed so the same position always gives the same hash, even
+ * between runs, which lets hashes be saved to files.
+ */
+public class Zobrist {
+    /**
+     * Key for a black piece on each cell.
+     */
+    private static final long[] BLACK_KEYS = new long[BitBoard.CELLS];
+    /**
+     * Key for a white piece on each cell.
+     */
+    private static final long[] WHITE_KEYS = new long[BitBoard.CELLS];
+    /**
+     * Key combining both colours for each cell. Swapping the colour of a piece
+     * changes the hash by this key.
+     */
+    private static final long[] SWAP_KEYS = new long[BitBoard.CELLS];
+    /**
+     * Key included when white is the player to move.
+     */
+    public static final long WHITE_TO_MOVE;
+
+    static {
+        long seed = 0x4F7468656C6C6FL;
+        for(int i = 0; i < BitBoard.CELLS; i++) {
+            seed = nextKey(seed);
+            BLACK_KEYS[i] = mix(seed);
+            seed = nextKey(seed);
+            WHITE_KEYS[i] = mix(seed);
+            SWAP_KEYS[i] = BLACK_KEYS[i] ^ WHITE_KEYS[i];
+        }
+        seed = nextKey(seed);
+        WHITE_TO_MOVE = mix(seed);
+    }
+
+    /**
+     * Calculates the hash of a position from scratch.
+     *
+     * @param black Mask of the black pieces.
+     * @param white Mask of the white pieces.
+     * @param playerID The player to move, 1 for black or 2 for white.
+     * @return The hash of the position.
+     */
+    public static long hash(long black, long white, int playerID) {
+        long hash = playerID == 2 ? WHITE_TO_MOVE : 0;
+        for(; black != 0; black &= black - 1) {
+            hash ^= BLACK_KEYS[Long.numberOfTrailingZeros(black)];
+        }
+        for(; white != 0; white &= white - 1) {
+            hash ^= WHITE_KEYS[Long.numberOfTrailingZeros(white)];
+        }
+        return hash;
+    }
+
+    /**
+     * Calculates the hash after a move from the hash before it, only touching the changed cells.
+     * The side to move is swapped, so a pass must still toggle WHITE_TO_MOVE separately.
+     *
+     * @param hash The hash before the move.
+     * @param index Cell index where the piece was placed.
+     * @param flips Mask of the pieces that were swapped.
+     * @param playerID The player who played the move.
+     * @return The hash after the move.
+     */
+    public static long playMove(long hash, int index, long flips, int playerID) {
+        hash ^= (playerID == 1 ? BLACK_KEYS[index] : WHITE_KEYS[index]) ^ WHITE_TO_MOVE;
+        for(; flips != 0; flips &= flips - 1) {
+            hash ^= SWAP_KEYS[Long.numberOfTrailingZeros(flips)];
+        }
+        return hash;
+    }
+
+    /**
+     * Steps the seed of the key generator.
+     *
+     * @param seed Current seed.
+     * @return The next seed.
+     */
+    private static long nextKey(long seed) {
+        return seed + 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Scrambles a seed into a well distributed key (SplitMix64 finaliser).
+     *
+     * @param z Seed to scramble.
+     * @return The scrambled key.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}